@@ -3,6 +3,7 @@ package org.motechproject.callflow.domain;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.ektorp.support.TypeDiscriminator;
 import org.motechproject.commons.couchdb.model.MotechBaseDataObject;
@@ -16,7 +17,13 @@ import java.util.Map;
 
 /**
  * A record representing a call flow session, persisted in Couchdb.
+ * <p/>
+ * The current node isn't persisted, only a reference to it: the tree it belongs to, the revision of that tree, the id
+ * the node got when the tree was compiled and the transition keys which lead to it from the root node. The node is
+ * looked up again from that reference once the session is read back. Sessions written before that carried the whole
+ * node, it's ignored when reading them.
  */
+@JsonIgnoreProperties({"currentNode"})
 @TypeDiscriminator("doc.type === 'FlowSessionRecord'")
 public class FlowSessionRecord extends MotechBaseDataObject implements FlowSession {
 
@@ -27,6 +34,14 @@ public class FlowSessionRecord extends MotechBaseDataObject implements FlowSessi
     @JsonProperty
     private Map<String, Object> data;
     @JsonProperty
+    private String treeName;
+    @JsonProperty
+    private String treeRevision;
+    @JsonProperty
+    private Integer currentNodeId;
+    @JsonProperty
+    private String currentNodePath;
+    @JsonIgnore
     private Node currentNode;
 
     private FlowSessionRecord() {
@@ -74,9 +89,55 @@ public class FlowSessionRecord extends MotechBaseDataObject implements FlowSessi
         return currentNode;
     }
 
+    /**
+     * Sets the current node without any reference to it, a session read back from the database starts over from the
+     * root node.
+     */
     @Override
     public void setCurrentNode(Node currentNode) {
         this.currentNode = currentNode;
+        this.treeName = null;
+        this.treeRevision = null;
+        this.currentNodeId = null;
+        this.currentNodePath = null;
+    }
+
+    /**
+     * Sets the current node along with the reference persisted in its place
+     *
+     * @param nodeId   the id of the node in the compiled tree, null or CompiledTree.NO_NODE if it hasn't got one
+     * @param nodePath the transition keys leading to the node from the root node
+     */
+    public void setCurrentNode(Node currentNode, String treeName, String treeRevision, Integer nodeId, String nodePath) {
+        setCurrentNode(currentNode);
+        this.treeName = treeName;
+        this.treeRevision = treeRevision;
+        this.currentNodeId = nodeId;
+        this.currentNodePath = nodePath;
+    }
+
+    public String getTreeName() {
+        return treeName;
+    }
+
+    public String getTreeRevision() {
+        return treeRevision;
+    }
+
+    public Integer getCurrentNodeId() {
+        return currentNodeId;
+    }
+
+    public String getCurrentNodePath() {
+        return currentNodePath;
+    }
+
+    /**
+     * Whether the current node can be looked up again, i.e. it's been set along with a reference to it
+     */
+    @JsonIgnore
+    public boolean hasCurrentNodeReference() {
+        return treeName != null && currentNodePath != null;
     }
 
     @Override
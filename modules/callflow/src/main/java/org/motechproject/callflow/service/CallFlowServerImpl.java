@@ -4,6 +4,7 @@ import org.apache.commons.lang.StringEscapeUtils;
 import org.motechproject.callflow.domain.FlowSessionRecord;
 import org.motechproject.ivr.domain.CallEventLog;
 import org.motechproject.callflow.domain.IvrEvent;
+import org.motechproject.decisiontree.CompiledTree;
 import org.motechproject.decisiontree.DecisionTreeService;
 import org.motechproject.decisiontree.model.FlowSession;
 import org.motechproject.decisiontree.TreeNodeLocator;
@@ -19,7 +20,6 @@ import org.motechproject.ivr.domain.CallEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -47,15 +47,13 @@ public class CallFlowServerImpl implements CallFlowServer {
 
     private DecisionTreeService decisionTreeService;
     private TreeEventProcessor treeEventProcessor;
-    private ApplicationContext applicationContext;
     private FlowSessionService flowSessionService;
     private EventRelay eventRelay;
 
     @Autowired
-    public CallFlowServerImpl(DecisionTreeService decisionTreeService, TreeEventProcessor treeEventProcessor, ApplicationContext applicationContext, FlowSessionService flowSessionService, EventRelay eventRelay) {
+    public CallFlowServerImpl(DecisionTreeService decisionTreeService, TreeEventProcessor treeEventProcessor, FlowSessionService flowSessionService, EventRelay eventRelay) {
         this.decisionTreeService = decisionTreeService;
         this.treeEventProcessor = treeEventProcessor;
-        this.applicationContext = applicationContext;
         this.flowSessionService = flowSessionService;
         this.eventRelay = eventRelay;
     }
@@ -67,6 +65,10 @@ public class CallFlowServerImpl implements CallFlowServer {
         if (language != null) {
             session.setLanguage(language);
         }
+        CallDetailRecord callDetailRecord = session.getCallDetailRecord();
+        if (provider != null && callDetailRecord != null && callDetailRecord.getProvider() == null) {
+            callDetailRecord.setProvider(provider);
+        }
 
         ModelAndView view;
         try {
@@ -104,11 +106,13 @@ public class CallFlowServerImpl implements CallFlowServer {
         }
 
         Node node = getCurrentNode(session);
+        String path = ((FlowSessionRecord) session).getCurrentNodePath();
         try {
             if (node == null) {
+                path = "";
                 addFlowStartEvent(session, tree);
+                // already autowired when the tree was compiled
                 node = decisionTreeService.getRootNode(tree, session);
-                autowire(node);
                 executeOperations(transitionKey, session, node);
             } else {
                 addDTMFEvent(session, transitionKey);
@@ -117,10 +121,9 @@ public class CallFlowServerImpl implements CallFlowServer {
             validateNode(node);
 
             if (transitionKey == null) {
-                return constructModelViewForNode(node, session, provider, tree);
+                return constructModelViewForNode(node, session, provider, tree, path);
             } else {
                 ITransition nextTransition = getTransitionForUserInput(transitionKey, node);
-                autowire(nextTransition);
 
                 Map<String, Object> params = new HashMap<String, Object>();
                 params.put(FLOW_SESSION_ID_FIELD, session.getSessionId());
@@ -131,14 +134,15 @@ public class CallFlowServerImpl implements CallFlowServer {
                     treeEventProcessor.sendTransitionActions((Transition) nextTransition, params);
                 }
 
-                node = nextTransition.getDestinationNode(transitionKey, session);
-                autowire(node);
+                // the compiled tree autowires what custom transitions build, and nothing else
+                node = decisionTreeService.getCompiledTree(tree).getDestinationNode(node, transitionKey, session);
 
                 if (isEmptyNode(node)) {
                     return new ModelAndView(templateNameFor(provider, EXIT_TEMPLATE_NAME));
                 } else {
                     executeOperations(transitionKey, session, node);
-                    return constructModelViewForNode(node, session, provider, tree);
+                    String nodePath = path == null ? null : path + TreeNodeLocator.PATH_DELIMITER + transitionKey;
+                    return constructModelViewForNode(node, session, provider, tree, nodePath);
                 }
             }
         } finally {
@@ -166,7 +170,7 @@ public class CallFlowServerImpl implements CallFlowServer {
         flowSessionService.updateSession(session);
     }
 
-    private ModelAndView constructModelViewForNode(Node node, FlowSession session, String provider, String tree) {
+    private ModelAndView constructModelViewForNode(Node node, FlowSession session, String provider, String tree, String path) {
         Map<String, Object> params = new HashMap<String, Object>();
         params.put(FLOW_SESSION_ID_FIELD, session.getSessionId());
 
@@ -183,10 +187,16 @@ public class CallFlowServerImpl implements CallFlowServer {
         mav.addObject("maxTimeout", maxTimeout(node));
         mav.addObject("transitionKeyEndMarker", transitionKeyEndMarker(node));
         mav.addObject("isUserInputNeeded", isUserInputNeeded(node));
-        session.setCurrentNode(node);
+        setCurrentNode(session, node, tree, path);
         return mav;
     }
 
+    private void setCurrentNode(FlowSession session, Node node, String tree, String path) {
+        CompiledTree compiledTree = decisionTreeService.getCompiledTree(tree);
+        ((FlowSessionRecord) session).setCurrentNode(node, tree, compiledTree.getRevision(),
+                compiledTree.getNodeId(node), path);
+    }
+
     private boolean isEmptyNode(Node node) {
         return node == null || hasNoActionableItems(node);
     }
@@ -205,12 +215,31 @@ public class CallFlowServerImpl implements CallFlowServer {
         }
     }
 
-    private void autowire(Object transition) {
-        applicationContext.getAutowireCapableBeanFactory().autowireBean(transition);
-    }
-
     private Node getCurrentNode(FlowSession session) {
-        return session.getCurrentNode();
+        Node node = session.getCurrentNode();
+        FlowSessionRecord record = (FlowSessionRecord) session;
+        if (node != null || !record.hasCurrentNodeReference()) {
+            return node;
+        }
+
+        // read back from the database, look the node up again
+        CompiledTree compiledTree = decisionTreeService.getCompiledTree(record.getTreeName());
+        Integer nodeId = record.getCurrentNodeId();
+        if (nodeId != null && nodeId != CompiledTree.NO_NODE && compiledTree.getRevision() != null
+                && compiledTree.getRevision().equals(record.getTreeRevision())) {
+            node = compiledTree.getNode(nodeId);
+        } else {
+            // built by a custom transition, or the tree has been changed since
+            node = compiledTree.getNode(record.getCurrentNodePath(), session);
+        }
+        if (node == null) {
+            logger.warn(format("Node %s of tree %s is gone, starting over", record.getCurrentNodePath(), record.getTreeName()));
+            session.setCurrentNode(null);
+        } else {
+            record.setCurrentNode(node, record.getTreeName(), compiledTree.getRevision(), compiledTree.getNodeId(node),
+                    record.getCurrentNodePath());
+        }
+        return node;
     }
 
     private void validateNode(Node node) {
@@ -5,26 +5,121 @@ import org.motechproject.decisiontree.model.Node;
 import org.motechproject.decisiontree.model.Transition;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Responsible for emitting various tree events, e.g., before landing on to a node, after landing on to a node, whenever a transition happens, etc.
+ * <p/>
+ * Events are queued and sent to the event relay by dispatcher threads, so that the IVR response doesn't wait on them.
+ * Sessions are spread over DISPATCHER_COUNT queues by their flow session id, the events of a session are sent in the
+ * order they were emitted. Each dispatcher sends whatever got queued while it was busy in one go, up to MAX_BATCH_SIZE
+ * events. Until dispatching starts, and once it's stopped, events are sent right away.
  */
 @Component
 public class TreeEventProcessor {
+    static final int DISPATCHER_COUNT = 4;
+    static final int MAX_BATCH_SIZE = 100;
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+    private static final String FLOW_SESSION_ID_FIELD = "flowSessionId";
+
+    private Logger logger = LoggerFactory.getLogger(TreeEventProcessor.class);
 
     @Autowired
     private EventRelay eventRelay;
 
+    private Dispatcher[] dispatchers;
+    private volatile boolean running;
+    private final AtomicLong dispatchedEvents = new AtomicLong();
+    private final AtomicLong totalLagMillis = new AtomicLong();
+    private volatile long lastLagMillis;
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    @PostConstruct
+    public synchronized void start() {
+        if (dispatchers != null) {
+            return;
+        }
+        dispatchers = new Dispatcher[DISPATCHER_COUNT];
+        for (int i = 0; i < DISPATCHER_COUNT; i++) {
+            dispatchers[i] = new Dispatcher("tree-event-dispatcher-" + i);
+        }
+        running = true;
+        for (Dispatcher dispatcher : dispatchers) {
+            dispatcher.start();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (dispatchers == null) {
+            return;
+        }
+        for (Dispatcher dispatcher : dispatchers) {
+            dispatcher.interrupt();
+        }
+        for (Dispatcher dispatcher : dispatchers) {
+            try {
+                dispatcher.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // whatever the dispatcher didn't get to
+            dispatcher.drain();
+        }
+    }
+
     private void sendActions(List<Action> actions, Map<String, Object> params) {
+        if (actions.isEmpty()) {
+            return;
+        }
+        Object sessionId = params.get(FLOW_SESSION_ID_FIELD);
+        long now = System.currentTimeMillis();
         for (Action action : actions) {
-            eventRelay.sendEventMessage(new MotechEvent(action.getEventId(), params));
+            // the caller goes on changing params
+            QueuedEvent event = new QueuedEvent(new MotechEvent(action.getEventId(), new HashMap<>(params)), now);
+            if (running) {
+                dispatcherFor(sessionId).enqueue(event);
+            } else {
+                send(event);
+            }
+        }
+    }
+
+    private Dispatcher dispatcherFor(Object sessionId) {
+        int hash = sessionId == null ? 0 : sessionId.hashCode();
+        return dispatchers[(hash & Integer.MAX_VALUE) % dispatchers.length];
+    }
+
+    private void send(QueuedEvent event) {
+        try {
+            eventRelay.sendEventMessage(event.motechEvent);
+        } catch (RuntimeException e) {
+            logger.error("Unable to send tree event " + event.motechEvent.getSubject(), e);
         }
+        long lag = System.currentTimeMillis() - event.queuedAt;
+        lastLagMillis = lag;
+        long max;
+        do {
+            max = maxLagMillis.get();
+        } while (lag > max && !maxLagMillis.compareAndSet(max, lag));
+        totalLagMillis.addAndGet(lag);
+        dispatchedEvents.incrementAndGet();
     }
 
     /**
@@ -63,4 +158,109 @@ public class TreeEventProcessor {
         params.put("transitionName", transition.getName());
         sendActions(transition.getActions(), params);
     }
+
+    /**
+     * How many events are waiting to be sent
+     */
+    public int getQueuedEvents() {
+        Dispatcher[] current = dispatchers;
+        int queued = 0;
+        if (current != null) {
+            for (Dispatcher dispatcher : current) {
+                queued += dispatcher.queue.size();
+            }
+        }
+        return queued;
+    }
+
+    public long getDispatchedEvents() {
+        return dispatchedEvents.get();
+    }
+
+    /**
+     * Time between the last event sent being emitted and it being handed to the event relay
+     */
+    public long getLastDispatchLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getMaxDispatchLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    public long getAverageDispatchLagMillis() {
+        long dispatched = dispatchedEvents.get();
+        return dispatched == 0 ? 0 : totalLagMillis.get() / dispatched;
+    }
+
+    private static class QueuedEvent {
+        private final MotechEvent motechEvent;
+        private final long queuedAt;
+
+        QueuedEvent(MotechEvent motechEvent, long queuedAt) {
+            this.motechEvent = motechEvent;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private class Dispatcher extends Thread {
+        private final BlockingQueue<QueuedEvent> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        // held while sending, so that a drain from another thread can't overtake a batch
+        private final Object sendLock = new Object();
+
+        Dispatcher(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        void enqueue(QueuedEvent event) {
+            try {
+                // a full queue holds the caller back rather than sending out of order
+                queue.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drain();
+                send(event);
+                return;
+            }
+            if (!running) {
+                // stopped meanwhile, nobody might be left to send it
+                drain();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<QueuedEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    // stop() interrupts us
+                    break;
+                }
+                synchronized (sendLock) {
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    for (QueuedEvent event : batch) {
+                        send(event);
+                    }
+                }
+                batch.clear();
+            }
+            // what got queued after the last batch, in case stop() came between the check of running and the take
+            drain();
+        }
+
+        void drain() {
+            synchronized (sendLock) {
+                List<QueuedEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+                while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+                    for (QueuedEvent event : batch) {
+                        send(event);
+                    }
+                    batch.clear();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package org.motechproject.callflow.service.impl;
+
+import org.ektorp.UpdateConflictException;
+import org.motechproject.callflow.domain.FlowSessionRecord;
+import org.motechproject.callflow.repository.AllFlowSessionRecords;
+import org.motechproject.ivr.service.contract.CallRecordsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The flow sessions of calls in progress, kept in memory and written back to CouchDB behind the IVR webhooks: every
+ * updateSession made during a hop only marks the session dirty, and flush writes each dirty session and its call
+ * detail record once. Sessions nobody touched for a while are dropped, the next hop of that call reads them back.
+ * Sessions are keyed by their upper cased id, like AllFlowSessionRecords looks them up.
+ */
+class FlowSessionCache {
+    static final long IDLE_MILLIS = 15 * 60 * 1000;
+
+    private final AllFlowSessionRecords allFlowSessionRecords;
+    private final CallRecordsService callRecordsService;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private Logger logger = LoggerFactory.getLogger(FlowSessionCache.class);
+
+    FlowSessionCache(AllFlowSessionRecords allFlowSessionRecords, CallRecordsService callRecordsService) {
+        this.allFlowSessionRecords = allFlowSessionRecords;
+        this.callRecordsService = callRecordsService;
+    }
+
+    private static String key(String sessionId) {
+        return sessionId.toUpperCase();
+    }
+
+    FlowSessionRecord get(String sessionId) {
+        Entry entry = entries.get(key(sessionId));
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return entry.record;
+    }
+
+    /**
+     * Starts caching the given session, as read from the database. Returns whichever session is cached under its id
+     * if another thread got there first.
+     */
+    FlowSessionRecord put(FlowSessionRecord record) {
+        Entry entry = new Entry(record);
+        Entry existing = entries.putIfAbsent(key(record.getSessionId()), entry);
+        return existing == null ? record : existing.record;
+    }
+
+    void markDirty(FlowSessionRecord record) {
+        String key = key(record.getSessionId());
+        Entry entry = entries.get(key);
+        if (entry == null || entry.record != record) {
+            // not read through us, or since replaced: cache this instance, it's the one the caller changed
+            entry = new Entry(record);
+            entries.put(key, entry);
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        entry.dirty = true;
+    }
+
+    /**
+     * Stops caching the given session, without writing it
+     */
+    FlowSessionRecord remove(String sessionId) {
+        Entry entry = entries.remove(key(sessionId));
+        return entry == null ? null : entry.record;
+    }
+
+    /**
+     * Writes the given session now if it has unwritten changes
+     */
+    void flush(String sessionId) {
+        String key = key(sessionId);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            flush(key, entry);
+        }
+    }
+
+    /**
+     * Writes every session with unwritten changes and drops the idle ones
+     */
+    void flushAll() {
+        long idleSince = System.currentTimeMillis() - IDLE_MILLIS;
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            flush(mapEntry.getKey(), entry);
+            if (!entry.dirty && entry.lastAccess < idleSince) {
+                entries.remove(mapEntry.getKey(), entry);
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void flush(String key, Entry entry) {
+        synchronized (entry) {
+            if (!entry.dirty) {
+                return;
+            }
+            // changes made while we write get written next time
+            entry.dirty = false;
+            try {
+                callRecordsService.add(entry.record.getCallDetailRecord());
+                allFlowSessionRecords.update(entry.record);
+            } catch (UpdateConflictException e) {
+                // someone else wrote the session, theirs is the one to keep: read it again next time
+                logger.warn("Flow session {} was changed elsewhere, dropping our changes", key);
+                entries.remove(key, entry);
+            } catch (RuntimeException e) {
+                logger.error("Unable to write flow session {}, will try again: {}", key, e.toString());
+                entry.dirty = true;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final FlowSessionRecord record;
+        private volatile boolean dirty;
+        private volatile long lastAccess;
+
+        Entry(FlowSessionRecord record) {
+            this.record = record;
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -10,46 +10,102 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of the <code>FlowSessionService</code> interface. Allows manipulation and retrieval of flow sessions.
+ * Sessions of calls in progress are served from memory and written to the database every second at most, however
+ * many times they were updated in between, see <code>FlowSessionCache</code>. A call's webhooks are expected to be
+ * served by the same server.
  */
 @Service("flowSessionService")
 public class FlowSessionServiceImpl implements FlowSessionService {
 
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+
     private AllFlowSessionRecords allFlowSessionRecords;
-    private CallRecordsService callRecordsService;
+    private FlowSessionCache flowSessionCache;
+    private ScheduledExecutorService flusher;
 
     @Autowired
     public FlowSessionServiceImpl(AllFlowSessionRecords allFlowSessionRecords, CallRecordsService callRecordsService) {
         this.allFlowSessionRecords = allFlowSessionRecords;
-        this.callRecordsService = callRecordsService;
+        this.flowSessionCache = new FlowSessionCache(allFlowSessionRecords, callRecordsService);
+    }
+
+    @PostConstruct
+    public void startFlushing() {
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "flow-session-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushSessions();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopFlushing() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushSessions();
+    }
+
+    /**
+     * Writes the sessions updated since the last flush
+     */
+    void flushSessions() {
+        flowSessionCache.flushAll();
     }
 
     @Override
     public FlowSession findOrCreate(String sessionId, String phoneNumber) {
         String flowSessionId = (StringUtils.isBlank(sessionId)) ? UUID.randomUUID().toString() : sessionId;
-        return allFlowSessionRecords.findOrCreate(flowSessionId, phoneNumber);
+        FlowSessionRecord cached = flowSessionCache.get(flowSessionId);
+        if (cached != null) {
+            return cached;
+        }
+        return flowSessionCache.put(allFlowSessionRecords.findOrCreate(flowSessionId, phoneNumber));
     }
 
     @ResponseBody
     @Override
     public FlowSession getSession(String sessionId) {
-        return allFlowSessionRecords.findBySessionId(sessionId);
+        FlowSessionRecord cached = flowSessionCache.get(sessionId);
+        if (cached != null) {
+            return cached;
+        }
+        FlowSessionRecord flowSessionRecord = allFlowSessionRecords.findBySessionId(sessionId);
+        return flowSessionRecord == null ? null : flowSessionCache.put(flowSessionRecord);
     }
 
     @Override
     public void updateSession(FlowSession flowSession) {
-        callRecordsService.add(flowSession.getCallDetailRecord());
-        allFlowSessionRecords.update((FlowSessionRecord) flowSession);
+        flowSessionCache.markDirty((FlowSessionRecord) flowSession);
     }
 
     @Override
     public void removeCallSession(String sessionId) {
-        FlowSessionRecord flowSessionRecord = allFlowSessionRecords.findBySessionId(sessionId);
+        FlowSessionRecord flowSessionRecord = flowSessionCache.remove(sessionId);
+        if (flowSessionRecord == null) {
+            flowSessionRecord = allFlowSessionRecords.findBySessionId(sessionId);
+        }
         if (flowSessionRecord != null) {
             allFlowSessionRecords.remove(flowSessionRecord);
         }
@@ -57,14 +113,17 @@ public class FlowSessionServiceImpl implements FlowSessionService {
 
     @Override
     public boolean isValidSession(String sessionId) {
-        return allFlowSessionRecords.findBySessionId(sessionId) != null;
+        return getSession(sessionId) != null;
     }
 
     @Override
     public FlowSession updateSessionId(String sessionId, String newSessionId) {
-        FlowSessionRecord flowSession = allFlowSessionRecords.findBySessionId(sessionId);
+        FlowSessionRecord flowSession = (FlowSessionRecord) getSession(sessionId);
+        flowSessionCache.remove(sessionId);
         flowSession.setSessionId(newSessionId);
-        allFlowSessionRecords.update(flowSession);
+        // written right away, the provider will look the session up under its new id
+        flowSessionCache.markDirty(flowSession);
+        flowSessionCache.flush(newSessionId);
         return flowSession;
     }
 
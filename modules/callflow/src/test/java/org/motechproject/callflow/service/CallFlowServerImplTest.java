@@ -11,7 +11,6 @@ import org.motechproject.decisiontree.DecisionTreeService;
 import org.motechproject.decisiontree.model.FlowSession;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.ivr.domain.CallEvent;
-import org.springframework.context.ApplicationContext;
 
 import static junit.framework.Assert.assertEquals;
 import static org.mockito.Mockito.verify;
@@ -30,8 +29,6 @@ public class CallFlowServerImplTest {
     @Mock
     private TreeEventProcessor treeEventProcessor;
     @Mock
-    private ApplicationContext applicationContext;
-    @Mock
     private FlowSessionService flowSessionService;
     @Mock
     private EventRelay eventRelay;
@@ -39,7 +36,7 @@ public class CallFlowServerImplTest {
     @Before
     public void setup() {
         initMocks(this);
-        callFlowServer = new CallFlowServerImpl(decisionTreeService, treeEventProcessor, applicationContext, flowSessionService, eventRelay);
+        callFlowServer = new CallFlowServerImpl(decisionTreeService, treeEventProcessor, flowSessionService, eventRelay);
     }
 
     @Test
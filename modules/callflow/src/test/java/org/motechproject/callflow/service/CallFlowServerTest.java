@@ -7,6 +7,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.motechproject.callflow.domain.FlowSessionRecord;
+import org.motechproject.decisiontree.CompiledTree;
 import org.motechproject.decisiontree.DecisionTreeService;
 import org.motechproject.decisiontree.model.FlowSession;
 import org.motechproject.decisiontree.model.Action;
@@ -14,9 +15,9 @@ import org.motechproject.decisiontree.model.INodeOperation;
 import org.motechproject.decisiontree.model.Node;
 import org.motechproject.decisiontree.model.TextToSpeechPrompt;
 import org.motechproject.decisiontree.model.Transition;
+import org.motechproject.decisiontree.model.Tree;
 import org.motechproject.event.listener.EventRelay;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
-import org.springframework.context.ApplicationContext;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.io.Serializable;
@@ -26,7 +27,9 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.anyObject;
 import static org.mockito.Mockito.doNothing;
@@ -47,8 +50,6 @@ public class CallFlowServerTest {
     @Mock
     private TreeEventProcessor treeEventProcessor;
     @Mock
-    ApplicationContext applicationContext;
-    @Mock
     AutowireCapableBeanFactory autoWireCapableFactory;
     @Mock
     FlowSessionService flowSessionService;
@@ -62,12 +63,13 @@ public class CallFlowServerTest {
         initMocks(this);
 
         doNothing().when(autoWireCapableFactory).autowireBean(anyObject());
-        when(applicationContext.getAutowireCapableBeanFactory()).thenReturn(autoWireCapableFactory);
+        when(decisionTreeService.getCompiledTree(anyString())).thenReturn(CompiledTree.compile(
+                new Tree().setName("sometree").setRootTransition(new Transition().setDestinationNode(new Node())), null));
 
         flowSession = new InMemoryFlowSession("sid", "3443434");
         when(flowSessionService.findOrCreate(anyString(), anyString())).thenReturn(flowSession);
 
-        decisionTreeServer = new CallFlowServerImpl(decisionTreeService, treeEventProcessor, applicationContext, flowSessionService, eventRelay);
+        decisionTreeServer = new CallFlowServerImpl(decisionTreeService, treeEventProcessor, flowSessionService, eventRelay);
     }
 
     @Test
@@ -228,6 +230,86 @@ public class CallFlowServerTest {
         verify(treeEventProcessor, times(0)).sendActionsAfter(node, params);
     }
 
+    private CompiledTree compiledTree(String revision, Node rootNode) {
+        Tree tree = new Tree().setName("sometree").setRootTransition(new Transition().setDestinationNode(rootNode));
+        tree.setRevision(revision);
+        CompiledTree compiledTree = CompiledTree.compile(tree, autoWireCapableFactory);
+        when(decisionTreeService.getCompiledTree("sometree")).thenReturn(compiledTree);
+        when(decisionTreeService.getRootNode(anyString(), any(FlowSession.class))).thenReturn(rootNode);
+        return compiledTree;
+    }
+
+    @Test
+    public void shouldKeepReferenceToCurrentNode() {
+        Node childNode = new Node().setPrompts(new TextToSpeechPrompt().setName("child"));
+        Node rootNode = new Node().setTransitions(new Object[][]{{"1", new Transition().setDestinationNode(childNode)}});
+        compiledTree("1-abc", rootNode);
+        FlowSessionRecord session = (FlowSessionRecord) flowSession;
+
+        decisionTreeServer.getResponse(flowSession.getSessionId(), "1234567890", "freeivr", "sometree", null, "en");
+
+        assertEquals("sometree", session.getTreeName());
+        assertEquals("1-abc", session.getTreeRevision());
+        assertEquals(Integer.valueOf(0), session.getCurrentNodeId());
+        assertEquals("", session.getCurrentNodePath());
+
+        decisionTreeServer.getResponse(flowSession.getSessionId(), "1234567890", "freeivr", "sometree", "1", "en");
+
+        assertSame(childNode, flowSession.getCurrentNode());
+        assertEquals(Integer.valueOf(1), session.getCurrentNodeId());
+        assertEquals("/1", session.getCurrentNodePath());
+    }
+
+    @Test
+    public void shouldNotAutowireCompiledTreeOnEachHop() {
+        Node childNode = new Node().setPrompts(new TextToSpeechPrompt().setName("child"));
+        Node rootNode = new Node().setTransitions(new Object[][]{{"1", new Transition().setDestinationNode(childNode)}});
+        compiledTree("1-abc", rootNode);
+
+        decisionTreeServer.getResponse(flowSession.getSessionId(), "1234567890", "freeivr", "sometree", null, "en");
+        decisionTreeServer.getResponse(flowSession.getSessionId(), "1234567890", "freeivr", "sometree", "1", "en");
+
+        assertSame(childNode, flowSession.getCurrentNode());
+        // root transition, root node, its transition and the child node, once when compiled
+        verify(autoWireCapableFactory, times(4)).autowireBean(any());
+    }
+
+    @Test
+    public void shouldLookUpCurrentNodeOfSessionReadBackByItsId() {
+        Node childNode = new Node().setPrompts(new TextToSpeechPrompt().setName("child"));
+        Node rootNode = new Node().setTransitions(new Object[][]{{"1", new Transition().setDestinationNode(childNode)}});
+        compiledTree("1-abc", rootNode);
+        FlowSessionRecord readBack = new FlowSessionRecord("sid", "3443434");
+        readBack.setCurrentNode(null, "sometree", "1-abc", 0, "");
+        when(flowSessionService.findOrCreate(anyString(), anyString())).thenReturn(readBack);
+
+        decisionTreeServer.getResponse(readBack.getSessionId(), "3443434", "freeivr", "sometree", "1", "en");
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(FLOW_SESSION_ID_FIELD, readBack.getSessionId());
+        verify(treeEventProcessor).sendActionsAfter(rootNode, params);
+        assertSame(childNode, readBack.getCurrentNode());
+        assertEquals("/1", readBack.getCurrentNodePath());
+    }
+
+    @Test
+    public void shouldFollowPathToCurrentNodeOnceTreeHasChanged() {
+        Node grandChildNode = new Node().setPrompts(new TextToSpeechPrompt().setName("grand child"));
+        Node childNode = new Node().setTransitions(new Object[][]{{"2", new Transition().setDestinationNode(grandChildNode)}});
+        Node rootNode = new Node().setTransitions(new Object[][]{{"1", new Transition().setDestinationNode(childNode)}});
+        compiledTree("2-def", rootNode);
+        FlowSessionRecord readBack = new FlowSessionRecord("sid", "3443434");
+        readBack.setCurrentNode(null, "sometree", "1-abc", 7, "/1");
+        when(flowSessionService.findOrCreate(anyString(), anyString())).thenReturn(readBack);
+
+        decisionTreeServer.getResponse(readBack.getSessionId(), "3443434", "freeivr", "sometree", "2", "en");
+
+        assertSame(grandChildNode, readBack.getCurrentNode());
+        assertEquals("2-def", readBack.getTreeRevision());
+        assertEquals(Integer.valueOf(2), readBack.getCurrentNodeId());
+        assertEquals("/1/2", readBack.getCurrentNodePath());
+    }
+
     static class InMemoryFlowSession extends FlowSessionRecord {
 
         private String language;
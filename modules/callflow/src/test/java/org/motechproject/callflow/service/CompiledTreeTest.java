@@ -0,0 +1,109 @@
+package org.motechproject.callflow.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.decisiontree.CompiledTree;
+import org.motechproject.decisiontree.TreeNodeLocator;
+import org.motechproject.decisiontree.model.FlowSession;
+import org.motechproject.decisiontree.model.ITransition;
+import org.motechproject.decisiontree.model.Node;
+import org.motechproject.decisiontree.model.Transition;
+import org.motechproject.decisiontree.model.Tree;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CompiledTreeTest {
+
+    @Mock
+    private AutowireCapableBeanFactory autowireCapableBeanFactory;
+
+    private Node sick1;
+    private Node ill;
+    private Node custom;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        sick1 = new Node();
+        ill = new Node();
+        custom = new Node();
+    }
+
+    private Tree tree() {
+        return new Tree().setName("tree1").setRootTransition(new Transition().setDestinationNode(
+                new Node().setTransitions(new Object[][]{
+                        {"1", new Transition().setName("t1").setDestinationNode(new Node().setTransitions(new Object[][]{
+                                {"1", new Transition().setName("sick1").setDestinationNode(sick1)},
+                                {TreeNodeLocator.ANY_KEY, new Transition().setName("sick2").setDestinationNode(new Node())},
+                        }))},
+                        {"2", new Transition().setName("ill").setDestinationNode(ill)},
+                        {"3", new CustomTransition()}
+                })));
+    }
+
+    @Test
+    public void shouldFollowPathsLikeTheNodeLocator() {
+        CompiledTree compiledTree = CompiledTree.compile(tree(), autowireCapableBeanFactory);
+
+        assertNotNull(compiledTree.getNode("/", null));
+        assertSame(sick1, compiledTree.getNode("/1/1", null));
+        assertSame(sick1, compiledTree.getNode("//1/1/", null));
+        assertNotNull(compiledTree.getNode("/1/9", null));
+        assertSame(ill, compiledTree.getNode("/2", null));
+        assertNull(compiledTree.getNode("/2/1", null));
+        assertNull(compiledTree.getNode("4", null));
+    }
+
+    @Test
+    public void shouldAutowireOnlyWhenCompiling() {
+        CompiledTree compiledTree = CompiledTree.compile(tree(), autowireCapableBeanFactory);
+        // root transition, 5 nodes and 5 transitions
+        verify(autowireCapableBeanFactory, times(11)).autowireBean(any());
+
+        compiledTree.getNode("/1/1", null);
+        compiledTree.getNode("/2", null);
+
+        verify(autowireCapableBeanFactory, times(11)).autowireBean(any());
+    }
+
+    @Test
+    public void shouldAskCustomTransitionsEveryTime() {
+        CompiledTree compiledTree = CompiledTree.compile(tree(), autowireCapableBeanFactory);
+
+        assertSame(custom, compiledTree.getNode("/3", null));
+        assertEquals(CompiledTree.NO_NODE, compiledTree.getNodeId(custom));
+    }
+
+    @Test
+    public void shouldGiveSameIdsToSameTree() {
+        CompiledTree first = CompiledTree.compile(tree(), autowireCapableBeanFactory);
+        CompiledTree second = CompiledTree.compile(tree(), autowireCapableBeanFactory);
+
+        assertEquals(5, first.getNodeCount());
+        int sick1Id = first.getNodeId(first.getNode("/1/1", null));
+        assertEquals(sick1Id, second.getNodeId(second.getNode("/1/1", null)));
+        assertSame(second.getNode("/1/1", null), second.getNode(sick1Id));
+        assertNull(second.getNode(42));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotCompileMissingTree() {
+        CompiledTree.compile(null, autowireCapableBeanFactory);
+    }
+
+    private class CustomTransition implements ITransition {
+        @Override
+        public Node getDestinationNode(String input, FlowSession session) {
+            return custom;
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package org.motechproject.callflow.service;
 
 
+import org.ektorp.changes.ChangesFeed;
+import org.ektorp.changes.DocumentChange;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.motechproject.decisiontree.DecisionTreeService;
 import org.motechproject.decisiontree.DecisionTreeServiceImpl;
 import org.motechproject.decisiontree.model.FlowSession;
@@ -13,8 +18,19 @@ import org.motechproject.decisiontree.model.Node;
 import org.motechproject.decisiontree.model.Transition;
 import org.motechproject.decisiontree.model.Tree;
 import org.motechproject.decisiontree.repository.AllTrees;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.ApplicationContext;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -24,7 +40,12 @@ public class DecisionTreeServiceTest {
     private AllTrees allTrees;
 
     @Mock
-    private TreeNodeLocator treeNodeLocator;
+    private ApplicationContext applicationContext;
+    @Mock
+    private AutowireCapableBeanFactory autowireCapableBeanFactory;
+
+    @InjectMocks
+    private TreeNodeLocator treeNodeLocator = new TreeNodeLocator();
 
     private DecisionTreeService decisionTreeService;
 
@@ -35,6 +56,7 @@ public class DecisionTreeServiceTest {
     @Before
     public void SetUp() {
         initMocks(this);
+        when(applicationContext.getAutowireCapableBeanFactory()).thenReturn(autowireCapableBeanFactory);
         nextNode = new Node()
                 .addOperations(new NextOperation());
         rootNode = new Node()
@@ -57,18 +79,91 @@ public class DecisionTreeServiceTest {
 
     @Test
     public void shouldFetchCommandForRootNode() {
-        when(treeNodeLocator.findNode(pillReminderTree, "", null)).thenReturn(rootNode);
         Node nextNode = decisionTreeService.getNode(pillReminderTree.getName(), "", null);
         assertEquals(RootNodeOpteration.class, nextNode.getOperations().get(0).getClass());
     }
 
     @Test
     public void shouldFetchNextCommand() {
-        when(treeNodeLocator.findNode(pillReminderTree, "/1", null)).thenReturn(nextNode);
         Node nextNode = decisionTreeService.getNode(pillReminderTree.getName(), "/1", null);
         assertEquals(NextOperation.class, nextNode.getOperations().get(0).getClass());
     }
 
+    @Test
+    public void shouldCompileTreeOnlyOnce() {
+        decisionTreeService.getRootNode(pillReminderTree.getName(), null);
+        decisionTreeService.getNode(pillReminderTree.getName(), "/1", null);
+        decisionTreeService.getNode(pillReminderTree.getName(), "/1", null);
+
+        verify(allTrees, times(1)).findByName(pillReminderTree.getName());
+        // root transition, root node, its transition and the next node
+        verify(autowireCapableBeanFactory, times(4)).autowireBean(any());
+    }
+
+    @Test
+    public void shouldCompileTreeAgainOnceSaved() {
+        Node before = decisionTreeService.getRootNode(pillReminderTree.getName(), null);
+        Node root = new Node().addOperations(new NextOperation());
+        Tree newTree = new Tree().setName("PillReminderTree")
+                .setRootTransition(new Transition().setDestinationNode(root));
+
+        decisionTreeService.saveDecisionTree(newTree);
+        when(allTrees.findByName(pillReminderTree.getName())).thenReturn(newTree);
+
+        assertSame(rootNode, before);
+        assertSame(root, decisionTreeService.getRootNode(pillReminderTree.getName(), null));
+        verify(allTrees).addOrReplace(newTree);
+    }
+
+    @Test
+    public void shouldCompileTreeAgainOnceChangedElsewhere() throws InterruptedException {
+        pillReminderTree.setId("treeId");
+        pillReminderTree.setRevision("1-abc");
+        final CountDownLatch following = new CountDownLatch(1);
+        final CountDownLatch changed = new CountDownLatch(1);
+        final DocumentChange change = mock(DocumentChange.class);
+        when(change.getId()).thenReturn("treeId");
+        when(change.getRevision()).thenReturn("2-def");
+        ChangesFeed feed = mock(ChangesFeed.class);
+        when(allTrees.changesFeed()).thenReturn(feed);
+        when(feed.isAlive()).thenReturn(true);
+        when(feed.next()).thenAnswer(new Answer<DocumentChange>() {
+            private boolean first = true;
+
+            @Override
+            public DocumentChange answer(InvocationOnMock invocation) throws InterruptedException {
+                if (first) {
+                    first = false;
+                    following.countDown();
+                    changed.await();
+                    return change;
+                }
+                Thread.sleep(Long.MAX_VALUE);
+                return null;
+            }
+        });
+
+        DecisionTreeServiceImpl service = new DecisionTreeServiceImpl(allTrees, treeNodeLocator);
+        try {
+            service.watchChanges();
+            assertTrue(following.await(5, TimeUnit.SECONDS));
+            assertSame(rootNode, service.getRootNode(pillReminderTree.getName(), null));
+
+            Node root = new Node().addOperations(new NextOperation());
+            when(allTrees.findByName(pillReminderTree.getName())).thenReturn(new Tree().setName("PillReminderTree")
+                    .setRootTransition(new Transition().setDestinationNode(root)));
+            changed.countDown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (service.getRootNode(pillReminderTree.getName(), null) != root && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertSame(root, service.getRootNode(pillReminderTree.getName(), null));
+        } finally {
+            service.stopWatchingChanges();
+        }
+    }
+
     private class RootNodeOpteration implements INodeOperation {
         @Override
         public void perform(String userInput, FlowSession session) {
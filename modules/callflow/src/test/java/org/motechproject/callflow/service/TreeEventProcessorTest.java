@@ -3,10 +3,13 @@ package org.motechproject.callflow.service;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.motechproject.callflow.service.TreeEventProcessor;
 import org.motechproject.decisiontree.model.Action;
 import org.motechproject.decisiontree.model.Node;
@@ -14,11 +17,18 @@ import org.motechproject.decisiontree.model.Transition;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -104,4 +114,57 @@ public class TreeEventProcessorTest {
     public void testActionsEdgeCase6() {
         treeEventProcessor.sendActionsAfter(new Node(), null);
     }
+
+    @Test
+    public void shouldSendEventsOfASessionInOrderOnceDispatchingStarted() {
+        params.put("flowSessionId", "session1");
+        treeEventProcessor.start();
+        try {
+            treeEventProcessor.sendActionsAfter(node, params);
+            treeEventProcessor.sendTransitionActions((Transition) node.getTransitions().get("1"), params);
+            treeEventProcessor.sendActionsBefore(node, params);
+        } finally {
+            treeEventProcessor.stop();
+        }
+
+        ArgumentCaptor<MotechEvent> events = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(6)).sendEventMessage(events.capture());
+        List<String> subjects = new ArrayList<>();
+        for (MotechEvent event : events.getAllValues()) {
+            subjects.add(event.getSubject());
+        }
+        assertEquals(Arrays.asList("eventafter1", "eventafter2", "eventr1", "eventbefore1", "eventbefore2", "eventbefore3"), subjects);
+        // params as they were when the action was emitted
+        assertFalse(events.getAllValues().get(0).getParameters().containsKey("transitionName"));
+        assertEquals("tr1", events.getAllValues().get(2).getParameters().get("transitionName"));
+        assertEquals(6, treeEventProcessor.getDispatchedEvents());
+    }
+
+    @Test
+    public void shouldNotWaitForTheEventRelay() throws InterruptedException {
+        final CountDownLatch relayReleased = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                relayReleased.await();
+                return null;
+            }
+        }).when(eventRelay).sendEventMessage(any(MotechEvent.class));
+        treeEventProcessor.start();
+        try {
+            treeEventProcessor.sendActionsBefore(node, params);
+            treeEventProcessor.sendActionsAfter(node, params);
+
+            assertEquals(0, treeEventProcessor.getDispatchedEvents());
+
+            Thread.sleep(20);
+            relayReleased.countDown();
+        } finally {
+            treeEventProcessor.stop();
+        }
+
+        verify(eventRelay, times(5)).sendEventMessage(any(MotechEvent.class));
+        assertEquals(5, treeEventProcessor.getDispatchedEvents());
+        assertTrue(treeEventProcessor.getMaxDispatchLagMillis() >= 20);
+    }
 }
@@ -2,11 +2,14 @@ package org.motechproject.callflow.service.impl;
 
 import org.junit.Test;
 import org.motechproject.callflow.domain.FlowSessionRecord;
+import org.motechproject.decisiontree.model.Node;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertThat;
 
 public class FlowSessionTest {
@@ -29,4 +32,16 @@ public class FlowSessionTest {
         assertThat("value", is(flowSessionRecord1.get("key")));
         assertNull(flowSessionRecord1.get("invalid-key"));
     }
+
+    @Test
+    public void shouldForgetNodeReferenceWhenCurrentNodeIsSetWithoutOne() {
+        FlowSessionRecord flowSessionRecord = new FlowSessionRecord("1234", "1234567890");
+        flowSessionRecord.setCurrentNode(new Node(), "tree", "1-abc", 3, "/1/2");
+        assertTrue(flowSessionRecord.hasCurrentNodeReference());
+
+        flowSessionRecord.setCurrentNode(new Node());
+
+        assertFalse(flowSessionRecord.hasCurrentNodeReference());
+        assertNull(flowSessionRecord.getCurrentNodeId());
+    }
 }
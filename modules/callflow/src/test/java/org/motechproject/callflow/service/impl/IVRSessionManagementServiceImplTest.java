@@ -10,6 +10,8 @@ import org.motechproject.ivr.service.contract.CallRecordsService;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -34,7 +36,38 @@ public class IVRSessionManagementServiceImplTest {
     public void shouldUpdateAnExistingSessionRecord()  {
         FlowSessionRecord flowSessionRecord = new FlowSessionRecord("foo", "1234567890");
         ivrSessionManagementService.updateSession(flowSessionRecord);
+        ivrSessionManagementService.flushSessions();
         verify(allFlowSessionRecords, times(1)).update(flowSessionRecord);
+        verify(callRecordsService, times(1)).add(flowSessionRecord.getCallDetailRecord());
+    }
+
+    @Test
+    public void shouldWriteSessionOnceHoweverManyTimesItWasUpdatedBetweenFlushes() {
+        FlowSessionRecord flowSessionRecord = new FlowSessionRecord("FOO", "1234567890");
+        when(allFlowSessionRecords.findOrCreate("foo", "1234567890")).thenReturn(flowSessionRecord);
+
+        FlowSessionRecord session = (FlowSessionRecord) ivrSessionManagementService.findOrCreate("foo", "1234567890");
+        ivrSessionManagementService.updateSession(session);
+        ivrSessionManagementService.updateSession(session);
+        ivrSessionManagementService.flushSessions();
+        ivrSessionManagementService.flushSessions();
+
+        verify(allFlowSessionRecords, times(1)).update(flowSessionRecord);
+        verify(callRecordsService, times(1)).add(flowSessionRecord.getCallDetailRecord());
+    }
+
+    @Test
+    public void shouldServeSessionsOfCallsInProgressFromMemory() {
+        FlowSessionRecord flowSessionRecord = new FlowSessionRecord("FOO", "1234567890");
+        when(allFlowSessionRecords.findOrCreate("foo", "1234567890")).thenReturn(flowSessionRecord);
+
+        ivrSessionManagementService.findOrCreate("foo", "1234567890");
+
+        assertThat((FlowSessionRecord) ivrSessionManagementService.getSession("foo"), is(flowSessionRecord));
+        assertThat((FlowSessionRecord) ivrSessionManagementService.findOrCreate("FOO", "1234567890"),
+                is(flowSessionRecord));
+        verify(allFlowSessionRecords, times(1)).findOrCreate("foo", "1234567890");
+        verify(allFlowSessionRecords, never()).findBySessionId(anyString());
     }
 
     @Test
@@ -1,8 +1,10 @@
 package org.motechproject.commcare.client;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.GetMethod;
@@ -24,10 +26,13 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 
 @Component
 public class CommCareAPIHttpClient {
+    private static final String JSON_CHARSET = "UTF-8";
+
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private HttpClient commonsHttpClient;
@@ -48,6 +53,14 @@ public class CommCareAPIHttpClient {
         return this.getRequest(commcareUserUrl(), null);
     }
 
+    /**
+     * Requests the users unless the ones held, read along with the given ETag, are still current. Failures are thrown
+     * rather than logged, so that the caller can keep what it holds.
+     */
+    public ConditionalResponse usersRequest(String etag) throws IOException {
+        return this.conditionalGetRequest(commcareUserUrl(), etag);
+    }
+
     public String appStructureRequest() {
         return this.getRequest(commcareAppStructureUrl(), null);
     }
@@ -59,6 +72,15 @@ public class CommCareAPIHttpClient {
     public String casesRequest(CaseRequest caseRequest) {
         return this.getRequest(commcareCasesUrl(), caseRequest);
     }
+
+    /**
+     * Requests a page of cases and hands its body to the given reader as it comes in. Unlike the other requests,
+     * failures are thrown rather than logged, so that a caller going through the pages can tell a failed page from
+     * an empty one.
+     */
+    public <T> T casesRequest(CaseRequest caseRequest, ResponseReader<T> responseReader) throws IOException {
+        return this.getRequest(commcareCasesUrl(), caseRequest, responseReader);
+    }
     
     public String singleCaseRequest(String caseId) {
         return this.getRequest(commcareCaseUrl(caseId), null);
@@ -68,6 +90,14 @@ public class CommCareAPIHttpClient {
         return this.getRequest(commcareFixturesUrl(), null);
     }
 
+    /**
+     * Requests the fixtures unless the ones held, read along with the given ETag, are still current, see
+     * {@link #usersRequest(String)}.
+     */
+    public ConditionalResponse fixturesRequest(String etag) throws IOException {
+        return this.conditionalGetRequest(commcareFixturesUrl(), etag);
+    }
+
     public String fixtureRequest(String fixtureId) {
         return this.getRequest(commcareFixtureUrl(fixtureId), null);
     }
@@ -88,8 +118,6 @@ public class CommCareAPIHttpClient {
     public boolean verifyConnection() {
         HttpMethod getMethod = new GetMethod(commcareDataForwardingEndpointUrl());
 
-        authenticate();
-
         int status = executeMethod(getMethod);
 
         return status == HttpStatus.SC_OK;
@@ -110,8 +138,6 @@ public class CommCareAPIHttpClient {
 
         postMethod.setRequestEntity(stringEntity);
 
-        authenticate();
-
         return executeMethod(postMethod);
     }
 
@@ -119,7 +145,7 @@ public class CommCareAPIHttpClient {
         int status = 0;
 
         try {
-            status = commonsHttpClient.executeMethod(httpMethod);
+            status = commonsHttpClient.executeMethod(null, httpMethod, authenticate());
         } catch (HttpException e) {
             logger.warn("HttpException while sending request to CommCareHQ: " + e.getMessage());
         } catch (IOException e) {
@@ -146,15 +172,12 @@ public class CommCareAPIHttpClient {
 
         putMethod.setRequestEntity(stringEntity);
 
-        authenticate();
-
         return executeMethod(putMethod);
     }
 
     private HttpMethod buildRequest(String url, CaseRequest caseRequest) {
         HttpMethod requestMethod = new GetMethod(url);
 
-        authenticate();
         if (caseRequest != null) {
             requestMethod.setQueryString(caseRequest.toQueryString());
         }
@@ -167,7 +190,7 @@ public class CommCareAPIHttpClient {
         HttpMethod getMethod = buildRequest(requestUrl, caseRequest);
 
         try {
-            commonsHttpClient.executeMethod(getMethod);
+            commonsHttpClient.executeMethod(null, getMethod, authenticate());
             InputStream responseBodyAsStream = getMethod.getResponseBodyAsStream();
             return IOUtils.toString(responseBodyAsStream);
         } catch (HttpException e) {
@@ -181,12 +204,54 @@ public class CommCareAPIHttpClient {
         return null;
     }
 
-    private void authenticate() {
-        commonsHttpClient.getParams().setAuthenticationPreemptive(true);
+    private <T> T getRequest(String requestUrl, CaseRequest caseRequest, ResponseReader<T> responseReader)
+            throws IOException {
+
+        HttpMethod getMethod = buildRequest(requestUrl, caseRequest);
 
-        commonsHttpClient.getState().setCredentials(
-                AuthScope.ANY,
-                new UsernamePasswordCredentials(getUsername(), getPassword()));
+        try {
+            int status = commonsHttpClient.executeMethod(null, getMethod, authenticate());
+            if (status != HttpStatus.SC_OK) {
+                throw new HttpException(String.format("CommCareHQ responded with status %d to %s", status, requestUrl));
+            }
+            return responseReader.read(new InputStreamReader(getMethod.getResponseBodyAsStream(), JSON_CHARSET));
+        } finally {
+            getMethod.releaseConnection();
+        }
+    }
+
+    private ConditionalResponse conditionalGetRequest(String requestUrl, String etag) throws IOException {
+
+        HttpMethod getMethod = buildRequest(requestUrl, null);
+        if (etag != null) {
+            getMethod.setRequestHeader("If-None-Match", etag);
+        }
+
+        try {
+            int status = commonsHttpClient.executeMethod(null, getMethod, authenticate());
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                return ConditionalResponse.notModified(etag);
+            }
+            if (status != HttpStatus.SC_OK) {
+                throw new HttpException(String.format("CommCareHQ responded with status %d to %s", status, requestUrl));
+            }
+            Header etagHeader = getMethod.getResponseHeader("ETag");
+            return new ConditionalResponse(IOUtils.toString(getMethod.getResponseBodyAsStream(), JSON_CHARSET),
+                    etagHeader == null ? null : etagHeader.getValue());
+        } finally {
+            getMethod.releaseConnection();
+        }
+    }
+
+    /**
+     * Credentials go in a per-request HttpState rather than the client's shared one: requests run concurrently over
+     * the pooled connections and must always go out with the currently configured credentials. Preemptive
+     * authentication is turned on for the client in applicationCommcareAPI.xml.
+     */
+    private HttpState authenticate() {
+        HttpState httpState = new HttpState();
+        httpState.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(getUsername(), getPassword()));
+        return httpState;
     }
 
     private OpenRosaResponse postRequest(String requestUrl, String body)
@@ -205,19 +270,19 @@ public class CommCareAPIHttpClient {
 
         postMethod.setRequestEntity(stringEntity);
 
-        authenticate();
-
         String response = "";
 
         int status = 0;
 
         try {
-            status = commonsHttpClient.executeMethod(postMethod);
+            status = commonsHttpClient.executeMethod(null, postMethod, authenticate());
             response = postMethod.getResponseBodyAsString();
         } catch (HttpException e) {
             logger.warn("HttpException while posting case xml to CommCareHQ: " + e.getMessage());
         } catch (IOException e) {
             logger.warn("IOException while posting case xml to CommcareHQ: " + e.getMessage());
+        } finally {
+            postMethod.releaseConnection();
         }
 
         OpenRosaResponseParser responseParser = new OpenRosaResponseParser();
@@ -0,0 +1,40 @@
+package org.motechproject.commcare.client;
+
+/**
+ * The response to a request made with the ETag of what the caller already holds: either a new body along with its
+ * ETag, or word that what the caller holds is still current.
+ */
+public class ConditionalResponse {
+    private final String body;
+    private final String etag;
+    private final boolean notModified;
+
+    public ConditionalResponse(String body, String etag) {
+        this(body, etag, false);
+    }
+
+    private ConditionalResponse(String body, String etag, boolean notModified) {
+        this.body = body;
+        this.etag = etag;
+        this.notModified = notModified;
+    }
+
+    public static ConditionalResponse notModified(String etag) {
+        return new ConditionalResponse(null, etag, true);
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * The ETag CommCareHQ sent along with the body, null if it didn't send one
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+}
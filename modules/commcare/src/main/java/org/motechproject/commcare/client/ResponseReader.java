@@ -0,0 +1,14 @@
+package org.motechproject.commcare.client;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads what it needs of a response body straight off the connection, instead of having the whole body buffered
+ * first. The connection is released once the reader returns, so it must not hold on to the given reader.
+ * @param <T> What is read out of the body
+ */
+public interface ResponseReader<T> {
+
+    T read(Reader body) throws IOException;
+}
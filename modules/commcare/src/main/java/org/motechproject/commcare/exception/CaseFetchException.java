@@ -0,0 +1,12 @@
+package org.motechproject.commcare.exception;
+
+/**
+ * Thrown while going through the cases read off CommCareHQ a page at a time, when one of the pages could not be
+ * fetched or read.
+ */
+public class CaseFetchException extends RuntimeException {
+
+    public CaseFetchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,40 +1,50 @@
 package org.motechproject.commcare.parser;
 
-import org.apache.xerces.parsers.DOMParser;
 import org.motechproject.commcare.domain.CaseXml;
 import org.motechproject.commcare.exception.CaseParserException;
 import org.motechproject.commcare.util.CaseMapper;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import java.io.IOException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Reads case XML in a single pass, straight off the given reader.
+ */
 public class CaseParser<T> {
 
+    private static final String CASE_TYPE = "case_type";
+    private static final String CASE_NAME = "case_name";
+    private static final String OWNER_ID = "owner_id";
+
     private CaseMapper<T> domainMapper;
-    private String xmlDoc;
+    private Reader xmlDoc;
     private String caseAction;
 
     public CaseParser(Class<T> clazz, String xmlDocument) {
+        this(clazz, new StringReader(xmlDocument));
+    }
+
+    public CaseParser(Class<T> clazz, Reader xmlDocument) {
         domainMapper = new CaseMapper<T>(clazz);
         this.xmlDoc = xmlDocument;
     }
 
     public T parseCase() throws CaseParserException {
-        DOMParser parser = new DOMParser();
-
-        InputSource inputSource = new InputSource();
-        inputSource.setCharacterStream(new StringReader(xmlDoc));
         CaseXml ccCase;
         try {
-            parser.parse(inputSource);
-            ccCase = parseCase(parser.getDocument());
-        } catch (IOException | SAXException ex) {
+            XMLStreamReader reader = XmlStreams.open(xmlDoc);
+            try {
+                ccCase = readCase(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
             throw new CaseParserException(ex,
                     "Exception while trying to parse caseXml");
         }
@@ -42,53 +52,125 @@ public class CaseParser<T> {
         return domainMapper.mapToDomainObject(ccCase);
     }
 
-    public CaseXml parseCase(Document document) {
-        Element item = (Element) document.getElementsByTagName("case").item(0);
-        CaseXml ccCase = createCase(item);
-        updateAction(ccCase, item);
+    /**
+     * Goes through the document once, picking the first case element along with the values of its create, update and
+     * index elements, and the namespace of the first data element
+     */
+    private CaseXml readCase(XMLStreamReader reader) throws XMLStreamException, CaseParserException {
+        CaseXml ccCase = null;
+        String dataXmlns = null;
+
+        Map<String, String> creationValues = new HashMap<>();
+        Map<String, String> updateValues = null;
+        Map<String, String> indexValues = null;
+        Map<String, String> collected = null;
+        boolean create = false;
+        boolean close = false;
+
+        int depth = 0;
+        int caseDepth = -1;
+        int collectedDepth = -1;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == caseDepth) {
+                    caseDepth = Integer.MAX_VALUE;
+                } else if (depth == collectedDepth) {
+                    collectedDepth = -1;
+                    collected = null;
+                }
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            depth++;
+
+            String name = XmlStreams.qualifiedName(reader);
+            if (dataXmlns == null && "data".equals(name)) {
+                dataXmlns = XmlStreams.attribute(reader, "xmlns");
+            }
+
+            if (ccCase == null) {
+                if ("case".equals(name)) {
+                    ccCase = createCase(reader);
+                    caseDepth = depth;
+                }
+                continue;
+            }
+            if (depth <= caseDepth) {
+                continue;
+            }
+
+            if (collected != null && depth == collectedDepth + 1) {
+                String value = XmlStreams.elementText(reader);
+                depth--;
+                collected.put(name, value);
+                if (isCreationValue(name) && !creationValues.containsKey(name)) {
+                    creationValues.put(name, value);
+                }
+            } else if ("create".equals(name)) {
+                create = true;
+            } else if ("close".equals(name)) {
+                close = true;
+            } else if ("update".equals(name) && updateValues == null) {
+                updateValues = new LinkedHashMap<>();
+                collected = updateValues;
+                collectedDepth = depth;
+            } else if ("index".equals(name) && indexValues == null) {
+                indexValues = new LinkedHashMap<>();
+                collected = indexValues;
+                collectedDepth = depth;
+            } else if (isCreationValue(name) && !creationValues.containsKey(name)) {
+                creationValues.put(name, XmlStreams.elementText(reader));
+                depth--;
+            }
+        }
+
+        if (ccCase == null) {
+            throw new CaseParserException("No case element in caseXml");
+        }
 
-        Element dataItem = (Element) document.getElementsByTagName("data").item(0);
-        updateDataFields(ccCase, dataItem);
+        updateAction(ccCase, create, updateValues, close, creationValues);
+        addFieldValues(ccCase, indexValues);
+        if (dataXmlns != null) {
+            ccCase.setCaseDataXmlns(dataXmlns);
+        }
 
         return ccCase;
     }
 
-    private CaseXml createCase(Element item) {
+    private CaseXml createCase(XMLStreamReader item) {
         CaseXml ccCase = new CaseXml();
-        ccCase.setCaseId(item.getAttribute("case_id"));
-        ccCase.setApiKey(item.getAttribute("api_key"));
-        ccCase.setDateModified(item.getAttribute("date_modified"));
-        ccCase.setUserId(item.getAttribute("user_id"));
+        ccCase.setCaseId(XmlStreams.attribute(item, "case_id"));
+        ccCase.setApiKey(XmlStreams.attribute(item, "api_key"));
+        ccCase.setDateModified(XmlStreams.attribute(item, "date_modified"));
+        ccCase.setUserId(XmlStreams.attribute(item, "user_id"));
         return ccCase;
     }
 
-    private void updateAction(CaseXml ccCase, Element item) {
+    private void updateAction(CaseXml ccCase, boolean create, Map<String, String> updateValues, boolean close,
+                              Map<String, String> creationValues) {
 
-        if (getMatchingChildNode(item, "create") != null) {
+        if (create) {
             setCaseAction(ccCase, "CREATE");
-            populateValuesForCreation(ccCase, item);
-            populateValuesFor(ccCase, item, "update");
+            ccCase.setCaseType(creationValues.get(CASE_TYPE));
+            ccCase.setCaseName(creationValues.get(CASE_NAME));
+            ccCase.setOwnerId(creationValues.get(OWNER_ID));
+            addFieldValues(ccCase, updateValues);
 
         } else {
-            if (getMatchingChildNode(item, "update") != null) {
+            if (updateValues != null) {
                 setCaseAction(ccCase, "UPDATE");
-                populateValuesFor(ccCase, item, "update");
+                addFieldValues(ccCase, updateValues);
             } else {
-                if (getMatchingChildNode(item, "close") != null) {
+                if (close) {
                     setCaseAction(ccCase, "CLOSE");
                 }
             }
         }
-        if (getMatchingChildNode(item, "index") != null) {
-            populateValuesFor(ccCase, item, "index");
-        }
-    }
-
-    private void updateDataFields(CaseXml ccCase, Element dataItem) {
-        if (dataItem != null) {
-            String xmlns = dataItem.getAttribute("xmlns");
-            ccCase.setCaseDataXmlns(xmlns);
-        }
     }
 
     private void setCaseAction(CaseXml ccCase, String action) {
@@ -96,49 +178,16 @@ public class CaseParser<T> {
         ccCase.setAction(action);
     }
 
-    private void populateValuesForCreation(CaseXml ccCase, Element item) {
-        ccCase.setCaseType(getTextValue(item, "case_type"));
-        ccCase.setCaseName(getTextValue(item, "case_name"));
-        ccCase.setOwnerId(getTextValue(item, "owner_id"));
-    }
-
-    private void populateValuesFor(CaseXml ccCase, Element item, String tagName) {
-        Node matchingNode = getMatchingNode(item, tagName);
-        NodeList childNodes = matchingNode.getChildNodes();
-
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node childNode = childNodes.item(i);
-            if (!childNode.getNodeName().contains("text")) {
-                ccCase.addFieldValue(childNode.getNodeName(),
-                        childNode.getTextContent());
+    private void addFieldValues(CaseXml ccCase, Map<String, String> values) {
+        if (values != null) {
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                ccCase.addFieldValue(value.getKey(), value.getValue());
             }
         }
     }
 
-    private String getTextValue(Element ele, String tagName) {
-        String textVal = null;
-        NodeList nl = ele.getElementsByTagName(tagName);
-        if (nl != null && nl.getLength() > 0) {
-            Element el = (Element) nl.item(0);
-            Node textNode = el.getFirstChild();
-            if (textNode != null) {
-                textVal = textNode.getNodeValue();
-            }
-        }
-        return textVal;
-    }
-
-    private Node getMatchingChildNode(Element ele, String tagName) {
-        return getMatchingNode(ele, tagName);
-    }
-
-    private Node getMatchingNode(Element ele, String tagName) {
-        Node element = null;
-        NodeList nl = ele.getElementsByTagName(tagName);
-        if (nl != null && nl.getLength() > 0) {
-            element = nl.item(0);
-        }
-        return element;
+    private boolean isCreationValue(String name) {
+        return CASE_TYPE.equals(name) || CASE_NAME.equals(name) || OWNER_ID.equals(name);
     }
 
     public String getCaseAction() {
@@ -1,19 +1,14 @@
 package org.motechproject.commcare.parser;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.xerces.parsers.DOMParser;
 import org.motechproject.commcare.domain.FormValueElement;
 import org.motechproject.commcare.exception.FullFormParserException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import java.io.IOException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.StringReader;
+import java.util.Map;
 
 public class FullFormParser {
     private String xmlDoc;
@@ -31,91 +26,123 @@ public class FullFormParser {
     /**
      * Method to parse incoming "full" XML forms from CommCareHQ.
      * Parser assumes the form has an element with the tag "data".
-     * If the form does not, and instead has a device report, a null
-     * form is returned. Otherwise an exception is thrown indicating
-     * an unknown or faulty form XML.
-     * @return The parsed form, null if a device report
+     * If the form does not, and instead has a device report, the
+     * device report is returned. Otherwise an exception is thrown indicating
+     * an unknown or faulty form XML. The form is read in a single pass,
+     * without building a DOM of it first.
+     * @return The parsed form or device report
      * @throws FullFormParserException Thrown if the form does not parse correctly and is not a device report form
      */
     public FormValueElement parse() throws FullFormParserException {
-        DOMParser parser = new DOMParser();
-
-        InputSource inputSource = new InputSource();
-        inputSource.setCharacterStream(new StringReader(xmlDoc));
-        FormValueElement root;
+        FormValueElement root = null;
 
         try {
-            parser.parse(inputSource);
-
-            Document document = parser.getDocument();
-            Node item = document.getElementsByTagName(FORM_DATA_ELEMENT).item(0);
-            root = new FormValueElement();
-
-            if (item == null && document.getElementsByTagName(DEVICE_REPORT_ELEMENT).item(0) != null) {
-                item = document.getElementsByTagName(DEVICE_REPORT_ELEMENT).item(0);
-                root.setElementName(DEVICE_LOG);
-                root.setValue(DEVICE_REPORT_ELEMENT);
-                addAttributes(root, item.getAttributes());
-                addSubElements(root, item.getChildNodes());
-                return root;
+            XMLStreamReader reader = XmlStreams.open(new StringReader(xmlDoc));
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = XmlStreams.qualifiedName(reader);
+
+                    if (FORM_DATA_ELEMENT.equals(name)) {
+                        root = readRoot(reader, FORM, FORM_DATA_ELEMENT);
+                        break;
+                    } else if (DEVICE_REPORT_ELEMENT.equals(name) && root == null) {
+                        // a form further down still takes precedence over the device report
+                        root = readRoot(reader, DEVICE_LOG, DEVICE_REPORT_ELEMENT);
+                    }
+                }
+            } finally {
+                reader.close();
             }
-
-            root.setElementName(FORM);
-            root.setValue(FORM_DATA_ELEMENT);
-            addAttributes(root, item.getAttributes());
-            addSubElements(root, item.getChildNodes());
-        } catch (SAXException | IOException | NullPointerException ex) {
+        } catch (XMLStreamException ex) {
             throw new FullFormParserException(ex, "Exception while trying to parse formXml: " + xmlDoc);
         }
 
+        if (root == null) {
+            throw new FullFormParserException("Exception while trying to parse formXml: " + xmlDoc);
+        }
+
         return root;
     }
 
-    private void addAttributes(FormValueElement element, NamedNodeMap attributes) {
-        for (int i = 0; i < attributes.getLength(); ++i) {
-            Node attr = attributes.item(i);
-            String key = attr.getNodeName();
+    private FormValueElement readRoot(XMLStreamReader reader, String elementName, String value)
+            throws XMLStreamException {
+        FormValueElement root = new FormValueElement();
+        root.setElementName(elementName);
+        root.setValue(value);
+        addAttributes(root, XmlStreams.attributes(reader));
+        addSubElements(root, reader, reader.next());
+        return root;
+    }
+
+    private void addAttributes(FormValueElement element, Map<String, String> attributes) {
+        for (Map.Entry<String, String> attr : attributes.entrySet()) {
+            String key = attr.getKey();
 
             if (key.startsWith(XMLNS_ELEMENT)) {
                 key = XMLNS_ELEMENT;
             }
 
             if (!element.containsAttribute(key)) {
-                element.addAttribute(key, attr.getNodeValue());
+                element.addAttribute(key, attr.getValue());
             }
         }
     }
 
-    private void addSubElements(FormValueElement element, NodeList children) {
-        for (int i = 0; i < children.getLength(); ++i) {
-            Node child = children.item(i);
-
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-                FormValueElement childElement = new FormValueElement();
-                childElement.setElementName(child.getLocalName());
-
-                String value = getTextValue((Element) child);
-
-                if (StringUtils.isNotBlank(value)) {
-                    childElement.setValue(value);
-                } else {
-                    addAttributes(childElement, child.getAttributes());
-                    addSubElements(childElement, child.getChildNodes());
-                }
+    /**
+     * Reads the remaining children of an element, from the given event on, leaving the reader at its end
+     */
+    private void addSubElements(FormValueElement element, XMLStreamReader reader, int event)
+            throws XMLStreamException {
+        int current = event;
 
+        while (current != XMLStreamConstants.END_ELEMENT) {
+            if (current == XMLStreamConstants.START_ELEMENT) {
+                FormValueElement childElement = readElement(reader);
                 element.addFormValueElement(childElement.getElementName(), childElement);
             }
+            current = reader.next();
         }
     }
 
-    private String getTextValue(Element ele) {
-        Node textNode = ele.getFirstChild();
-        String textVal = null;
+    /**
+     * Reads the element the reader is at: its leading text if there is any, otherwise its attributes and children
+     */
+    private FormValueElement readElement(XMLStreamReader reader) throws XMLStreamException {
+        FormValueElement element = new FormValueElement();
+        element.setElementName(reader.getLocalName());
+        Map<String, String> attributes = XmlStreams.attributes(reader);
+
+        StringBuilder text = new StringBuilder();
+        int event = reader.next();
+        while (XmlStreams.isText(event)) {
+            text.append(reader.getText());
+            event = reader.next();
+        }
+
+        String value = text.toString();
 
-        if (textNode != null) {
-            textVal = textNode.getNodeValue();
+        if (StringUtils.isNotBlank(value)) {
+            element.setValue(value);
+            skipRest(reader, event);
+        } else {
+            addAttributes(element, attributes);
+            addSubElements(element, reader, event);
         }
 
-        return textVal;
+        return element;
+    }
+
+    private void skipRest(XMLStreamReader reader, int event) throws XMLStreamException {
+        int current = event;
+
+        while (current != XMLStreamConstants.END_ELEMENT) {
+            if (current == XMLStreamConstants.START_ELEMENT) {
+                XmlStreams.skipElement(reader);
+            }
+            current = reader.next();
+        }
     }
 }
@@ -1,51 +1,51 @@
 package org.motechproject.commcare.parser;
 
-import org.apache.xerces.parsers.DOMParser;
 import org.motechproject.commcare.exception.CaseParserException;
 import org.motechproject.commcare.response.OpenRosaResponse;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
-import java.io.IOException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.StringReader;
 
 public class OpenRosaResponseParser {
 
     public OpenRosaResponse parseResponse(String response)
             throws CaseParserException {
-        DOMParser parser = new DOMParser();
-
-        OpenRosaResponse openRosaResponse = new OpenRosaResponse();
-
-        InputSource inputSource = new InputSource();
-        inputSource.setCharacterStream(new StringReader(response));
+        boolean openRosaResponseFound = false;
+        String messageNature = null;
+        String messageText = null;
 
         try {
-            parser.parse(inputSource);
-        } catch (IOException ex) {
-            throw new CaseParserException(ex, "Could not parse: IOException");
-        } catch (SAXException ex) {
-            throw new CaseParserException(ex, "Could not parse: SAXException");
+            XMLStreamReader reader = XmlStreams.open(new StringReader(response));
+            try {
+                while (reader.hasNext() && !(openRosaResponseFound && messageText != null)) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = XmlStreams.qualifiedName(reader);
+
+                    if ("OpenRosaResponse".equals(name)) {
+                        openRosaResponseFound = true;
+                    } else if ("message".equals(name) && messageText == null) {
+                        messageNature = XmlStreams.attribute(reader, "nature");
+                        messageText = XmlStreams.elementText(reader);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new CaseParserException(ex, "Could not parse: XMLStreamException");
         }
 
-        Document document = parser.getDocument();
-
-        Element openRosaElement = (Element) document.getElementsByTagName(
-                "OpenRosaResponse").item(0);
-
-        if (openRosaElement == null) {
+        if (!openRosaResponseFound) {
             return null;
         }
 
-        Element messageElement = (Element) document.getElementsByTagName(
-                "message").item(0);
-
-        if (messageElement != null) {
-            String messageNature = messageElement.getAttribute("nature");
-            String messageText = messageElement.getTextContent();
+        OpenRosaResponse openRosaResponse = new OpenRosaResponse();
 
+        if (messageText != null) {
             openRosaResponse.setMessageNature(messageNature);
             openRosaResponse.setMessageText(messageText);
         }
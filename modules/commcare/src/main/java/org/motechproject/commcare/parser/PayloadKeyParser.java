@@ -0,0 +1,56 @@
+package org.motechproject.commcare.parser;
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+/**
+ * Skims a form or case forwarded by CommCareHQ for what identifies it, without building anything of it: the id and
+ * modification date of the first case it touches and, for forms, the instance id. Elements are matched by their local
+ * names, since forms carry their case and meta blocks under prefixes.
+ */
+public class PayloadKeyParser {
+    private static final String CASE = "case";
+    private static final String INSTANCE_ID = "instanceID";
+
+    private String xmlDoc;
+
+    public PayloadKeyParser(String xmlDoc) {
+        this.xmlDoc = xmlDoc;
+    }
+
+    /**
+     * @return The keys found, which are null where the payload has none; a payload that doesn't parse has no keys
+     */
+    public PayloadKeys parse() {
+        PayloadKeys keys = new PayloadKeys();
+
+        try {
+            XMLStreamReader reader = XmlStreams.open(new StringReader(xmlDoc));
+            try {
+                while (reader.hasNext() && (keys.getCaseId() == null || keys.getInstanceId() == null)) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+
+                    if (CASE.equals(name) && keys.getCaseId() == null) {
+                        keys.setCaseId(StringUtils.trimToNull(XmlStreams.attribute(reader, "case_id")));
+                        keys.setDateModified(StringUtils.trimToNull(XmlStreams.attribute(reader, "date_modified")));
+                    } else if (INSTANCE_ID.equals(name) && keys.getInstanceId() == null) {
+                        keys.setInstanceId(StringUtils.trimToNull(XmlStreams.elementText(reader)));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return new PayloadKeys();
+        }
+
+        return keys;
+    }
+}
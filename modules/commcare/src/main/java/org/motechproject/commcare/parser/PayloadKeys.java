@@ -0,0 +1,34 @@
+package org.motechproject.commcare.parser;
+
+/**
+ * What identifies a form or case forwarded by CommCareHQ, as skimmed by the {@link PayloadKeyParser}.
+ */
+public class PayloadKeys {
+    private String caseId;
+    private String dateModified;
+    private String instanceId;
+
+    public String getCaseId() {
+        return caseId;
+    }
+
+    public void setCaseId(String caseId) {
+        this.caseId = caseId;
+    }
+
+    public String getDateModified() {
+        return dateModified;
+    }
+
+    public void setDateModified(String dateModified) {
+        this.dateModified = dateModified;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+}
@@ -0,0 +1,125 @@
+package org.motechproject.commcare.parser;
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Helpers for the parsers which read the XML coming from CommCareHQ in a single pass, as a stream of events, instead
+ * of building a DOM of it first. Elements and attributes are matched by their qualified names, the way the DOM
+ * lookups they replace did.
+ */
+final class XmlStreams {
+    private static final String XMLNS = "xmlns";
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private XmlStreams() {
+    }
+
+    static XMLStreamReader open(Reader xml) throws XMLStreamException {
+        return FACTORY.createXMLStreamReader(xml);
+    }
+
+    /**
+     * The qualified name of the element the reader is at, prefix:localName or localName
+     */
+    static String qualifiedName(XMLStreamReader reader) {
+        return qualify(reader.getPrefix(), reader.getLocalName());
+    }
+
+    /**
+     * The value of the attribute of the element the reader is at with the given qualified name, or an empty string if
+     * it has none
+     */
+    static String attribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            if (name.equals(qualify(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        String declaration = namespaceDeclarations(reader).get(name);
+        return declaration == null ? "" : declaration;
+    }
+
+    /**
+     * The attributes of the element the reader is at, namespace declarations included, by qualified name and in the
+     * order of their names
+     */
+    static Map<String, String> attributes(XMLStreamReader reader) {
+        if (reader.getAttributeCount() == 0 && reader.getNamespaceCount() == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> attributes = namespaceDeclarations(reader);
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            attributes.put(qualify(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        return attributes;
+    }
+
+    /**
+     * All the text within the element the reader is at, leaving the reader at its end
+     */
+    static String elementText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (isText(event)) {
+                text.append(reader.getText());
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Moves the reader from the start of an element to its end
+     */
+    static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    static boolean isText(int event) {
+        return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                || event == XMLStreamConstants.SPACE;
+    }
+
+    private static Map<String, String> namespaceDeclarations(XMLStreamReader reader) {
+        Map<String, String> declarations = new TreeMap<>();
+        for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+            String prefix = reader.getNamespacePrefix(i);
+            declarations.put(StringUtils.isEmpty(prefix) ? XMLNS : XMLNS + ":" + prefix,
+                    StringUtils.defaultString(reader.getNamespaceURI(i)));
+        }
+        return declarations;
+    }
+
+    private static String qualify(String prefix, String localName) {
+        return StringUtils.isEmpty(prefix) ? localName : prefix + ":" + localName;
+    }
+}
@@ -11,6 +11,7 @@ public class CaseRequest {
     private String type;
     private int limit;
     private int offset;
+    private String serverDateModifiedStart;
 
     public void setUserId(String userId) {
         this.userId = userId;
@@ -32,6 +33,13 @@ public class CaseRequest {
         this.offset = offset;
     }
 
+    /**
+     * Only the cases modified on CommCareHQ at or after the given time, formatted as yyyy-MM-ddTHH:mm:ss
+     */
+    public void setServerDateModifiedStart(String serverDateModifiedStart) {
+        this.serverDateModifiedStart = serverDateModifiedStart;
+    }
+
     public String toQueryString() {
         List<String> queryParams = new ArrayList<>();
         if (userId != null) {
@@ -43,6 +51,9 @@ public class CaseRequest {
         if (type != null) {
             queryParams.add(concat("type", type));
         }
+        if (serverDateModifiedStart != null) {
+            queryParams.add(concat("server_date_modified_start", serverDateModifiedStart));
+        }
         queryParams.add(concat("limit", limit));
         queryParams.add(concat("offset", offset));
 
@@ -4,6 +4,7 @@ import org.motechproject.commcare.domain.CaseInfo;
 import org.motechproject.commcare.domain.CaseTask;
 import org.motechproject.commcare.response.OpenRosaResponse;
 
+import java.util.Iterator;
 import java.util.List;
 /**
  * This service provides two main features: Interacting with CommCareHQ's programmatic case APIs and uploading case XML wrapped in a form instance to CommCareHQ.
@@ -20,7 +21,7 @@ public interface CommcareCaseService {
     CaseInfo getCaseByCaseIdAndUserId(String caseId, String userId);
 
     /**
-     * Query CommCareHQ for a case by its case id.
+     * Query CommCareHQ for a case by its case id. Served off the local case mirror when it is on and fresh.
      * @param caseId The id of the case on CommCareHQ
      * @return A CaseInfo object representing the state of the case or null if that case does not exist.
      */
@@ -33,7 +34,7 @@ public interface CommcareCaseService {
     List<CaseInfo> getAllCases();
 
     /**
-     * Query CommCareHQ for all cases of a given case type.
+     * Query CommCareHQ for all cases of a given case type. Served off the local case mirror when it is on and fresh.
      * @param type The type of case on CommCareHQ
      * @return A list of CaseInfo objects representing all cases of the given type found on the configured domain of CommCareHQ
      */
@@ -54,6 +55,22 @@ public interface CommcareCaseService {
      */
     List<CaseInfo> getAllCasesByUserIdAndType(String userId, String type);
 
+    /**
+     * Go through all the cases on CommCareHQ without holding them all at once. The cases are read a page at a time as
+     * the iterator is advanced, the next page being fetched while the current one is gone through.
+     * @return An iterator over CaseInfo objects representing all cases found on the configured domain of CommCareHQ. It
+     * throws a CaseFetchException when a page of cases can not be fetched or read.
+     */
+    Iterator<CaseInfo> iterateAllCases();
+
+    /**
+     * Go through all the cases of a given case type on CommCareHQ without holding them all at once, see
+     * {@link #iterateAllCases()}.
+     * @param type The type of case on CommCareHQ
+     * @return An iterator over CaseInfo objects representing all cases of the given type found on the configured domain of CommCareHQ
+     */
+    Iterator<CaseInfo> iterateAllCasesByType(String type);
+
     /**
      * Upload case xml wrapped in a minimal xform instance to CommCareHQ.
      * @param caseTask An object representing the case information and case actions to be submitted as case xml
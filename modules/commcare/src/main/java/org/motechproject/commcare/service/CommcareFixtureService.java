@@ -5,7 +5,9 @@ import org.motechproject.commcare.domain.CommcareFixture;
 import java.util.List;
 
 /**
- * A service to perform queries against CommCareHQ's fixture APIs.
+ * A service to perform queries against CommCareHQ's fixture APIs. The list of
+ * all fixtures is read and held, indexed by id and fixture type, and read again
+ * in the background once it is older than directoryCacheTtl seconds.
  */
 public interface CommcareFixtureService {
 
@@ -16,7 +18,14 @@ public interface CommcareFixtureService {
     List<CommcareFixture> getAllFixtures();
 
     /**
-     * Queries CommCareHQ for a specific fixture
+     * Looks up the fixtures of a given type in the list of all fixtures on the configured domain.
+     * @param fixtureType The type of the fixtures to retrieve.
+     * @return A list of CommcareFixture that represent the information about each fixture of that type from CommCareHQ
+     */
+    List<CommcareFixture> getFixturesByType(String fixtureType);
+
+    /**
+     * Looks up a specific fixture in the list of all fixtures, or queries CommCareHQ for it if it isn't there
      * @param id The id of the fixture to retrieve.
      * @return A CommcareFixture object representing the information about the fixture from CommCareHQ, or null if that fixture did not exist on that domain.
      */
@@ -6,8 +6,9 @@ import java.util.List;
 
 /**
  * A service to perform queries against CommCareHQ's user APIs. CommCareHQ
- * exposes one user API, therefore getting a user by Id simply filters the list
- * of all users returned by CommCareHQ.
+ * exposes one user API, therefore the list of all users is read and held,
+ * indexed by id and username, and read again in the background once it is
+ * older than directoryCacheTtl seconds.
  */
 public interface CommcareUserService {
 
@@ -18,9 +19,16 @@ public interface CommcareUserService {
     List<CommcareUser> getAllUsers();
 
     /**
-     * Queries CommCareHQ for a list of all users on the configured domain and filters the list to return the user that matches the provided id.
+     * Looks up the user that matches the provided id in the list of all users on the configured domain.
      * @param id The id of the user to retrieve.
      * @return A CommcareUser object representing the information about the user from CommCareHQ, or null if that user did not exist on that domain.
      */
     CommcareUser getCommcareUserById(String id);
+
+    /**
+     * Looks up the user that matches the provided username in the list of all users on the configured domain.
+     * @param username The username of the user to retrieve.
+     * @return A CommcareUser object representing the information about the user from CommCareHQ, or null if that user did not exist on that domain.
+     */
+    CommcareUser getCommcareUserByUsername(String username);
 }
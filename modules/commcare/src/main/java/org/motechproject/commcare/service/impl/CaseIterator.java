@@ -0,0 +1,152 @@
+package org.motechproject.commcare.service.impl;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.commcare.client.ResponseReader;
+import org.motechproject.commcare.domain.CaseInfo;
+import org.motechproject.commcare.domain.CaseJson;
+import org.motechproject.commcare.domain.CommcareMetadataJson;
+import org.motechproject.commcare.exception.CaseFetchException;
+import org.motechproject.commcare.request.json.CaseRequest;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Goes through the cases matching a request a page at a time. Each page is read off the response as it comes in,
+ * case by case, and the next page is fetched in the background while the cases of the current one are gone through,
+ * so that at most two pages are held at any time.
+ */
+class CaseIterator implements Iterator<CaseInfo> {
+
+    private final CommCareAPIHttpClient commcareHttpClient;
+    private final CaseRequest caseRequest;
+    private final ExecutorService executor;
+    private final Gson gson = new Gson();
+
+    private Iterator<CaseInfo> current = Collections.<CaseInfo>emptyList().iterator();
+    private Future<CasePage> next;
+
+    CaseIterator(CommCareAPIHttpClient commcareHttpClient, CaseRequest caseRequest, ExecutorService executor) {
+        this.commcareHttpClient = commcareHttpClient;
+        this.caseRequest = caseRequest;
+        this.executor = executor;
+        caseRequest.setLimit(0);
+        next = fetch(0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            CasePage page = await(next);
+            next = page.hasNext() ? fetch(page.nextOffset()) : null;
+            current = page.cases.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public CaseInfo next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Cases can not be removed from CommCareHQ");
+    }
+
+    private Future<CasePage> fetch(final int offset) {
+        return executor.submit(new Callable<CasePage>() {
+            @Override
+            public CasePage call() throws IOException {
+                caseRequest.setOffset(offset);
+                return commcareHttpClient.casesRequest(caseRequest, new CasePageReader(offset));
+            }
+        });
+    }
+
+    private CasePage await(Future<CasePage> page) {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            throw new CaseFetchException("Could not read a page of cases from CommCareHQ", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CaseFetchException("Interrupted while waiting for a page of cases from CommCareHQ", e);
+        }
+    }
+
+    private static class CasePage {
+        private final int offset;
+        private final List<CaseInfo> cases = new ArrayList<>();
+        private CommcareMetadataJson metadata;
+
+        CasePage(int offset) {
+            this.offset = offset;
+        }
+
+        boolean hasNext() {
+            return metadata != null && metadata.getLimit() > 0 && !cases.isEmpty()
+                    && StringUtils.isNotBlank(metadata.getNextPageQueryString());
+        }
+
+        int nextOffset() {
+            return offset + metadata.getLimit();
+        }
+    }
+
+    /**
+     * Reads the cases of a page one at a time, turning each into a CaseInfo as soon as it's read, so neither the
+     * body nor the case JSON of the whole page is ever held.
+     */
+    private class CasePageReader implements ResponseReader<CasePage> {
+        private final int offset;
+
+        CasePageReader(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public CasePage read(Reader body) throws IOException {
+            CasePage page = new CasePage(offset);
+            JsonReader reader = new JsonReader(body);
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("meta".equals(name)) {
+                    page.metadata = gson.fromJson(reader, CommcareMetadataJson.class);
+                } else if ("objects".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        CaseJson caseJson = gson.fromJson(reader, CaseJson.class);
+                        page.cases.add(CommcareCaseServiceImpl.populateCaseInfo(caseJson));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return page;
+        }
+    }
+}
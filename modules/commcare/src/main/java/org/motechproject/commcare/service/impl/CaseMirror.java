@@ -0,0 +1,369 @@
+package org.motechproject.commcare.service.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.commcare.domain.CaseInfo;
+import org.motechproject.commcare.domain.CaseJson;
+import org.motechproject.commcare.events.constants.EventDataKeys;
+import org.motechproject.commcare.events.constants.EventSubjects;
+import org.motechproject.commcare.request.json.CaseRequest;
+import org.motechproject.commons.api.json.MotechJsonReader;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.annotations.MotechListener;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local copy of the cases on CommCareHQ, so that looking cases up doesn't take a call to CommCareHQ. It is filled by
+ * reading all the cases once, then kept up to date by reading, every caseMirrorSyncInterval seconds, the cases
+ * modified on CommCareHQ since the newest one it holds. Cases coming in through the case feed are read again from
+ * CommCareHQ in the background, by a thread of their own so that a burst of them doesn't hold up the sync, at most one
+ * queued read per case; until they are, they and the cases of their type are looked up on CommCareHQ. Cases are handed
+ * out as copies, so that callers can't change what the mirror holds.
+ * <p/>
+ * Off unless mirrorCases is set in the commcare settings. Lookups are only served off the mirror while its last
+ * successful sync started less than caseMirrorMaxStaleness seconds ago.
+ */
+@Component
+public class CaseMirror {
+    static final String MIRROR_CASES_KEY = "mirrorCases";
+    static final String SYNC_INTERVAL_KEY = "caseMirrorSyncInterval";
+    static final String MAX_STALENESS_KEY = "caseMirrorMaxStaleness";
+
+    private static final long DEFAULT_SYNC_INTERVAL = 60;
+    private static final long DEFAULT_MAX_STALENESS = 300;
+    private static final DateTimeFormatter SERVER_DATE_PARSER = ISODateTimeFormat.dateTimeParser().withZoneUTC();
+    private static final String SERVER_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+    private static final int MAX_QUEUED_REFRESHES = 1000;
+    private static final long REFRESHER_KEEP_ALIVE_SECONDS = 60;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ConcurrentMap<String, CaseInfo> cases = new ConcurrentHashMap<>();
+    // ids of the cases changed on CommCareHQ and not read again yet, each with the number of its change
+    private final ConcurrentMap<String, Long> changed = new ConcurrentHashMap<>();
+    private final AtomicLong changes = new AtomicLong();
+    // ids of the cases with a refresh queued and not started yet
+    private final Set<String> queued = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final MotechJsonReader motechJsonReader = new MotechJsonReader();
+
+    private CommCareAPIHttpClient commcareHttpClient;
+    private SettingsFacade settingsFacade;
+    private volatile ScheduledExecutorService executor;
+    private volatile ExecutorService refresher;
+
+    private final long maxStaleness;
+    private volatile DateTime newestModification;
+    private volatile long lastSyncStartedAt;
+    private volatile long lastSyncDuration;
+    private volatile int lastSyncUpdates;
+
+    @Autowired
+    public CaseMirror(CommCareAPIHttpClient commcareHttpClient,
+                      @Qualifier("commcareAPISettings") SettingsFacade settingsFacade) {
+        this(commcareHttpClient, settingsFacade, null);
+    }
+
+    CaseMirror(CommCareAPIHttpClient commcareHttpClient, SettingsFacade settingsFacade,
+               ScheduledExecutorService executor) {
+        this.commcareHttpClient = commcareHttpClient;
+        this.settingsFacade = settingsFacade;
+        this.executor = executor;
+        this.refresher = executor == null ? null : newRefresher();
+        this.maxStaleness = TimeUnit.SECONDS.toMillis(getSeconds(MAX_STALENESS_KEY, DEFAULT_MAX_STALENESS));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!Boolean.parseBoolean(settingsFacade.getProperty(MIRROR_CASES_KEY))) {
+            return;
+        }
+
+        // one thread syncs, the other fetches the next page of cases while the sync goes through the current one
+        executor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "commcare-case-mirror");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refresher = newRefresher();
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        }, 0, getSeconds(SYNC_INTERVAL_KEY, DEFAULT_SYNC_INTERVAL), TimeUnit.SECONDS);
+    }
+
+    private static ExecutorService newRefresher() {
+        ThreadPoolExecutor refresher = new ThreadPoolExecutor(1, 1, REFRESHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REFRESHES), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "commcare-case-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        refresher.allowCoreThreadTimeOut(true);
+        return refresher;
+    }
+
+    @PreDestroy
+    public void stop() {
+        ScheduledExecutorService current = executor;
+        if (current != null) {
+            current.shutdownNow();
+        }
+        ExecutorService currentRefresher = refresher;
+        if (currentRefresher != null) {
+            currentRefresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether lookups can be served off the mirror: it's on and its last sync started recently enough
+     */
+    public boolean isFresh() {
+        return executor != null && lastSyncStartedAt > 0 && getSyncLag() <= maxStaleness;
+    }
+
+    /**
+     * @return A copy of the case, null if it isn't mirrored or has changed since it was read
+     */
+    public CaseInfo getCase(String caseId) {
+        CaseInfo caseInfo = cases.get(caseId);
+        return caseInfo == null || changed.containsKey(caseId) ? null : copyOf(caseInfo);
+    }
+
+    /**
+     * @return Copies of the cases of the given type, null if one of them, or a case not mirrored yet, has changed since
+     * it was read
+     */
+    public List<CaseInfo> getCasesByType(String type) {
+        for (String caseId : changed.keySet()) {
+            CaseInfo caseInfo = cases.get(caseId);
+            if (caseInfo == null || StringUtils.equals(type, caseInfo.getCaseType())) {
+                return null;
+            }
+        }
+
+        List<CaseInfo> casesOfType = new ArrayList<>();
+        for (CaseInfo caseInfo : cases.values()) {
+            if (StringUtils.equals(type, caseInfo.getCaseType())) {
+                casesOfType.add(copyOf(caseInfo));
+            }
+        }
+        return casesOfType;
+    }
+
+    /**
+     * Keeps a case read from CommCareHQ outside of a sync
+     */
+    public void put(CaseInfo caseInfo) {
+        if (executor != null && caseInfo != null && caseInfo.getCaseId() != null) {
+            cases.put(caseInfo.getCaseId(), caseInfo);
+        }
+    }
+
+    @MotechListener(subjects = EventSubjects.CASE_EVENT)
+    public void caseChanged(MotechEvent event) {
+        final String caseId = (String) event.getParameters().get(EventDataKeys.CASE_ID);
+        ExecutorService current = refresher;
+        if (caseId == null || current == null) {
+            return;
+        }
+
+        changed.put(caseId, changes.incrementAndGet());
+        if (!queued.add(caseId)) {
+            // the queued refresh reads the case as it is by then
+            return;
+        }
+        try {
+            current.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // a change coming in from now on queues another refresh
+                    queued.remove(caseId);
+                    Long change = changed.get(caseId);
+                    if (change != null) {
+                        refresh(caseId, change);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(caseId);
+            logger.debug(String.format("Case mirror stopped or too many cases queued, case %s is left to the next sync",
+                    caseId));
+        }
+    }
+
+    /**
+     * Reads again a case which changed on CommCareHQ. If it can't be read, it is left to the next sync.
+     */
+    void refresh(String caseId, Long change) {
+        CaseInfo caseInfo;
+        try {
+            String response = commcareHttpClient.singleCaseRequest(caseId);
+            caseInfo = CommcareCaseServiceImpl.populateCaseInfo((CaseJson) motechJsonReader.readFromString(response,
+                    CaseJson.class));
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Could not read case %s again, leaving it to the next sync: %s", caseId,
+                    e.getMessage()));
+            return;
+        }
+        if (caseInfo == null) {
+            logger.warn(String.format("Could not read case %s again, leaving it to the next sync", caseId));
+            return;
+        }
+
+        cases.put(caseId, caseInfo);
+        // unless it changed again meanwhile
+        changed.remove(caseId, change);
+    }
+
+    /**
+     * Reads the cases modified since the newest one mirrored, or all of them on the first sync. A failed sync is
+     * logged and leaves the mirror as it was, to go stale if the following ones fail too.
+     */
+    void sync() {
+        long startedAt = System.currentTimeMillis();
+        long changesBefore = changes.get();
+        DateTime newest = newestModification;
+
+        CaseRequest request = new CaseRequest();
+        if (newest != null) {
+            request.setServerDateModifiedStart(newest.toString(SERVER_DATE_FORMAT));
+        }
+
+        try {
+            int updates = 0;
+            Iterator<CaseInfo> iterator = new CaseIterator(commcareHttpClient, request, executor);
+            while (iterator.hasNext()) {
+                CaseInfo caseInfo = iterator.next();
+                if (caseInfo == null || caseInfo.getCaseId() == null) {
+                    continue;
+                }
+                cases.put(caseInfo.getCaseId(), caseInfo);
+                newest = newer(newest, caseInfo.getServerDateModified());
+                updates++;
+            }
+
+            // cases which changed before the sync started were read by it
+            for (Map.Entry<String, Long> change : changed.entrySet()) {
+                if (change.getValue() <= changesBefore) {
+                    changed.remove(change.getKey(), change.getValue());
+                }
+            }
+
+            newestModification = newest;
+            lastSyncStartedAt = startedAt;
+            lastSyncDuration = System.currentTimeMillis() - startedAt;
+            lastSyncUpdates = updates;
+            logger.debug(String.format("Synced %d cases into the case mirror in %d ms", updates, lastSyncDuration));
+        } catch (RuntimeException e) {
+            logger.error(String.format("Could not sync the case mirror, it is %d ms behind CommCareHQ", getSyncLag()), e);
+        }
+    }
+
+    private static CaseInfo copyOf(CaseInfo caseInfo) {
+        CaseInfo copy = new CaseInfo();
+        copy.setCaseId(caseInfo.getCaseId());
+        copy.setUserId(caseInfo.getUserId());
+        copy.setDateClosed(caseInfo.getDateClosed());
+        copy.setDomain(caseInfo.getDomain());
+        copy.setXformIds(caseInfo.getXformIds() == null ? null : new ArrayList<>(caseInfo.getXformIds()));
+        copy.setVersion(caseInfo.getVersion());
+        copy.setServerDateOpened(caseInfo.getServerDateOpened());
+        copy.setCaseType(caseInfo.getCaseType());
+        copy.setDateOpened(caseInfo.getDateOpened());
+        copy.setOwnerId(caseInfo.getOwnerId());
+        copy.setCaseName(caseInfo.getCaseName());
+        copy.setFieldValues(caseInfo.getFieldValues() == null ? null : new HashMap<>(caseInfo.getFieldValues()));
+        copy.setServerDateModified(caseInfo.getServerDateModified());
+        copy.setClosed(caseInfo.isClosed());
+        if (caseInfo.getIndices() != null) {
+            Map<String, Map<String, String>> indices = new HashMap<>();
+            for (Map.Entry<String, Map<String, String>> index : caseInfo.getIndices().entrySet()) {
+                indices.put(index.getKey(), index.getValue() == null ? null : new HashMap<>(index.getValue()));
+            }
+            copy.setIndices(indices);
+        }
+        return copy;
+    }
+
+    private DateTime newer(DateTime newest, String serverDateModified) {
+        if (StringUtils.isBlank(serverDateModified)) {
+            return newest;
+        }
+        try {
+            DateTime modified = SERVER_DATE_PARSER.parseDateTime(serverDateModified);
+            return newest == null || modified.isAfter(newest) ? modified.toDateTime(DateTimeZone.UTC) : newest;
+        } catch (IllegalArgumentException e) {
+            logger.warn(String.format("Unreadable server_date_modified %s", serverDateModified));
+            return newest;
+        }
+    }
+
+    private long getSeconds(String key, long defaultValue) {
+        String value = settingsFacade.getProperty(key);
+        return StringUtils.isNumeric(value) && StringUtils.isNotEmpty(value) ? Long.parseLong(value) : defaultValue;
+    }
+
+    /**
+     * How far behind CommCareHQ the mirror may be: the time since the last successful sync started, in milliseconds,
+     * or -1 if there hasn't been one yet
+     */
+    public long getSyncLag() {
+        return lastSyncStartedAt == 0 ? -1 : System.currentTimeMillis() - lastSyncStartedAt;
+    }
+
+    /**
+     * How long the last successful sync took, in milliseconds
+     */
+    public long getLastSyncDuration() {
+        return lastSyncDuration;
+    }
+
+    /**
+     * How many cases the last successful sync read
+     */
+    public int getLastSyncUpdates() {
+        return lastSyncUpdates;
+    }
+
+    public int getSize() {
+        return cases.size();
+    }
+}
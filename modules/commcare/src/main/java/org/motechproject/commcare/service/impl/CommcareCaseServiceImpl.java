@@ -1,11 +1,9 @@
 package org.motechproject.commcare.service.impl;
 
-import com.google.gson.reflect.TypeToken;
-import org.apache.commons.lang.StringUtils;
 import org.motechproject.commcare.domain.CaseInfo;
 import org.motechproject.commcare.domain.CaseJson;
-import org.motechproject.commcare.domain.CaseResponseJson;
 import org.motechproject.commcare.domain.CaseTask;
+import org.motechproject.commcare.exception.CaseFetchException;
 import org.motechproject.commcare.exception.CaseParserException;
 import org.motechproject.commcare.gateway.CaseTaskXmlConverter;
 import org.motechproject.commcare.request.json.CaseRequest;
@@ -18,11 +16,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.lang.reflect.Type;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 @Service
 public class CommcareCaseServiceImpl implements CommcareCaseService {
@@ -34,11 +35,23 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
 
     private CommCareAPIHttpClient commcareHttpClient;
 
+    private CaseMirror caseMirror;
+
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "commcare-case-pages");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     @Autowired
-    public CommcareCaseServiceImpl(CommCareAPIHttpClient commcareHttpClient) {
+    public CommcareCaseServiceImpl(CommCareAPIHttpClient commcareHttpClient, CaseMirror caseMirror) {
         this.commcareHttpClient = commcareHttpClient;
+        this.caseMirror = caseMirror;
         this.motechJsonReader = new MotechJsonReader();
     }
 
@@ -47,8 +60,7 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
         CaseRequest request = new CaseRequest();
         request.setCaseId(caseId);
         request.setUserId(userId);
-        List<CaseJson> caseResponses = getCases(request);
-        List<CaseInfo> cases = generateCasesFromCaseResponse(caseResponses);
+        List<CaseInfo> cases = getCases(request);
         if (cases.size() == 0) {
             return null;
         }
@@ -57,33 +69,46 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
 
     @Override
     public CaseInfo getCaseByCaseId(String caseId) {
+        if (caseMirror.isFresh()) {
+            CaseInfo mirrored = caseMirror.getCase(caseId);
+            if (mirrored != null) {
+                return mirrored;
+            }
+        }
+
         String response = commcareHttpClient.singleCaseRequest(caseId);
 
         CaseJson caseResponses = parseSingleCaseFromResponse(response);
 
-        return generateCaseFromCaseResponse(caseResponses);
+        CaseInfo caseInfo = generateCaseFromCaseResponse(caseResponses);
+        caseMirror.put(caseInfo);
+        return caseInfo;
     }
 
     @Override
     public List<CaseInfo> getAllCases() {
-        List<CaseJson> cases = getCases(new CaseRequest());
-        return generateCasesFromCaseResponse(cases);
+        return getCases(new CaseRequest());
     }
 
     @Override
     public List<CaseInfo> getAllCasesByType(String type) {
+        if (caseMirror.isFresh()) {
+            List<CaseInfo> mirrored = caseMirror.getCasesByType(type);
+            if (mirrored != null) {
+                return mirrored;
+            }
+        }
+
         CaseRequest request = new CaseRequest();
         request.setType(type);
-        List<CaseJson> caseResponses = getCases(request);
-        return generateCasesFromCaseResponse(caseResponses);
+        return getCases(request);
     }
 
     @Override
     public List<CaseInfo> getAllCasesByUserId(String userId) {
         CaseRequest request = new CaseRequest();
         request.setUserId(userId);
-        List<CaseJson> caseResponses = getCases(request);
-        return generateCasesFromCaseResponse(caseResponses);
+        return getCases(request);
     }
 
     @Override
@@ -92,38 +117,37 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
         request.setUserId(userId);
         request.setType(type);
 
-        List<CaseJson> caseResponses = getCases(request);
-        return generateCasesFromCaseResponse(caseResponses);
+        return getCases(request);
     }
 
-    private List<CaseJson> getCases(CaseRequest caseRequest) {
-        int offset = 0;
-        caseRequest.setLimit(0);
-        String nextPageQueryString;
-        List<CaseJson> caseJsons = new ArrayList<>();
-
-        do {
-            caseRequest.setOffset(offset);
-            CaseResponseJson caseResponseJson;
-            try {
-                String response = commcareHttpClient.casesRequest(caseRequest);
-                caseResponseJson = parseCasesFromResponse(response);
-                caseJsons.addAll(caseResponseJson.getCases());
-            } catch (Exception e) {
-                logger.error(String.format("Exception while trying to read in case JSON: %s", e.getMessage()), e);
-                return new ArrayList<>();
-            }
-
-            nextPageQueryString = caseResponseJson.getMetadata().getNextPageQueryString();
-            offset += caseResponseJson.getMetadata().getLimit();
-        } while (!StringUtils.isBlank(nextPageQueryString));
+    @Override
+    public Iterator<CaseInfo> iterateAllCases() {
+        return new CaseIterator(commcareHttpClient, new CaseRequest(), executor);
+    }
 
-        return caseJsons;
+    @Override
+    public Iterator<CaseInfo> iterateAllCasesByType(String type) {
+        CaseRequest request = new CaseRequest();
+        request.setType(type);
+        return new CaseIterator(commcareHttpClient, request, executor);
     }
 
-    private CaseResponseJson parseCasesFromResponse(String response) {
-        Type caseResponseType = new TypeToken<CaseResponseJson>() { } .getType();
-        return (CaseResponseJson) motechJsonReader.readFromString(response, caseResponseType);
+    /**
+     * Reads all the cases at once, for the callers which want them in a list. A page which can't be fetched or read
+     * fails the whole read and no cases are returned.
+     */
+    private List<CaseInfo> getCases(CaseRequest caseRequest) {
+        List<CaseInfo> cases = new ArrayList<>();
+        try {
+            Iterator<CaseInfo> iterator = new CaseIterator(commcareHttpClient, caseRequest, executor);
+            while (iterator.hasNext()) {
+                cases.add(iterator.next());
+            }
+        } catch (CaseFetchException e) {
+            logger.error(String.format("Exception while trying to read in case JSON: %s", e.getMessage()), e);
+            return new ArrayList<>();
+        }
+        return cases;
     }
 
     private CaseJson parseSingleCaseFromResponse(String response) {
@@ -139,26 +163,11 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
         return caseReturned;
     }
 
-    private List<CaseInfo> generateCasesFromCaseResponse(
-            List<CaseJson> caseResponses) {
-        List<CaseInfo> caseList = new ArrayList<CaseInfo>();
-
-        if (caseResponses == null) {
-            return Collections.emptyList();
-        }
-
-        for (CaseJson caseResponse : caseResponses) {
-            caseList.add(populateCaseInfo(caseResponse));
-        }
-
-        return caseList;
-    }
-
     private CaseInfo generateCaseFromCaseResponse(CaseJson caseResponse) {
         return populateCaseInfo(caseResponse);
     }
 
-    private CaseInfo populateCaseInfo(CaseJson caseResponse) {
+    static CaseInfo populateCaseInfo(CaseJson caseResponse) {
         if (caseResponse == null) {
             return null;
         }
@@ -197,6 +206,11 @@ public class CommcareCaseServiceImpl implements CommcareCaseService {
         return caseInfo;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
     @Override
     public OpenRosaResponse uploadCase(CaseTask caseTask) {
 
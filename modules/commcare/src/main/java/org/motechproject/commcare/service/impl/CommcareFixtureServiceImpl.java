@@ -2,47 +2,91 @@ package org.motechproject.commcare.service.impl;
 
 import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
+import org.motechproject.commcare.client.ConditionalResponse;
 import org.motechproject.commcare.domain.CommcareFixture;
 import org.motechproject.commcare.domain.CommcareFixturesJson;
 import org.motechproject.commcare.service.CommcareFixtureService;
 import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commons.api.json.MotechJsonReader;
+import org.motechproject.server.config.SettingsFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 @Service
 public class CommcareFixtureServiceImpl implements CommcareFixtureService {
+    private static final String BY_ID = "id";
+    private static final String BY_TYPE = "type";
+
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private MotechJsonReader motechJsonReader;
 
     private CommCareAPIHttpClient commcareHttpClient;
 
+    private ExecutorService refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "commcare-fixtures");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private DirectoryCache<CommcareFixture> fixtures;
+
     @Autowired
-    public CommcareFixtureServiceImpl(CommCareAPIHttpClient commcareHttpClient) {
+    public CommcareFixtureServiceImpl(CommCareAPIHttpClient commcareHttpClient,
+                                      @Qualifier("commcareAPISettings") SettingsFacade settingsFacade) {
         this.commcareHttpClient = commcareHttpClient;
         this.motechJsonReader = new MotechJsonReader();
+        this.fixtures = new DirectoryCache<CommcareFixture>(
+                CommcareUserServiceImpl.directoryTimeToLive(settingsFacade), refresher) {
+            @Override
+            protected ConditionalResponse request(String etag) throws IOException {
+                return CommcareFixtureServiceImpl.this.commcareHttpClient.fixturesRequest(etag);
+            }
+
+            @Override
+            protected List<CommcareFixture> parse(String body) {
+                return parseFixtures(body);
+            }
+
+            @Override
+            protected void index(CommcareFixture fixture, Directory<CommcareFixture> directory) {
+                directory.add(BY_ID, fixture.getId(), fixture);
+                directory.add(BY_TYPE, fixture.getFixtureType(), fixture);
+            }
+        };
     }
 
     @Override
     public List<CommcareFixture> getAllFixtures() {
+        return fixtures.getAll();
+    }
 
-        String response = commcareHttpClient.fixturesRequest();
-
-        Type commcareFixtureType = new TypeToken<CommcareFixturesJson>() { } .getType();
-        CommcareFixturesJson allFixtures = (CommcareFixturesJson) motechJsonReader.readFromString(response, commcareFixtureType);
-
-        return allFixtures.getObjects();
-
+    @Override
+    public List<CommcareFixture> getFixturesByType(String fixtureType) {
+        return fixtures.get(BY_TYPE, fixtureType);
     }
 
     @Override
     public CommcareFixture getCommcareFixtureById(String id) {
+        CommcareFixture cached = fixtures.getOne(BY_ID, id);
+        if (cached != null) {
+            return cached;
+        }
+
         String returnJson = commcareHttpClient.fixtureRequest(id);
 
         Type commcareFixtureType = new TypeToken<CommcareFixture>() { } .getType();
@@ -56,4 +100,16 @@ public class CommcareFixtureServiceImpl implements CommcareFixtureService {
 
         return fixture;
     }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private List<CommcareFixture> parseFixtures(String response) {
+        Type commcareFixtureType = new TypeToken<CommcareFixturesJson>() { } .getType();
+        CommcareFixturesJson allFixtures = (CommcareFixturesJson) motechJsonReader.readFromString(response, commcareFixtureType);
+
+        return allFixtures.getObjects();
+    }
 }
@@ -1,35 +1,95 @@
 package org.motechproject.commcare.service.impl;
 
 import com.google.gson.reflect.TypeToken;
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.commcare.client.ConditionalResponse;
 import org.motechproject.commcare.domain.CommcareUser;
 import org.motechproject.commcare.domain.CommcareUsersJson;
 import org.motechproject.commcare.service.CommcareUserService;
 import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.motechproject.commons.api.json.MotechJsonReader;
+import org.motechproject.server.config.SettingsFacade;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class CommcareUserServiceImpl implements CommcareUserService {
+    static final String DIRECTORY_TTL_KEY = "directoryCacheTtl";
+    static final long DEFAULT_DIRECTORY_TTL = 300;
+
+    private static final String BY_ID = "id";
+    private static final String BY_USERNAME = "username";
 
     private MotechJsonReader motechJsonReader;
 
     private CommCareAPIHttpClient commcareHttpClient;
 
+    private ExecutorService refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "commcare-users");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private DirectoryCache<CommcareUser> users;
+
     @Autowired
-    public CommcareUserServiceImpl(CommCareAPIHttpClient commcareHttpClient) {
+    public CommcareUserServiceImpl(CommCareAPIHttpClient commcareHttpClient,
+                                   @Qualifier("commcareAPISettings") SettingsFacade settingsFacade) {
         this.commcareHttpClient = commcareHttpClient;
         this.motechJsonReader = new MotechJsonReader();
+        this.users = new DirectoryCache<CommcareUser>(directoryTimeToLive(settingsFacade), refresher) {
+            @Override
+            protected ConditionalResponse request(String etag) throws IOException {
+                return CommcareUserServiceImpl.this.commcareHttpClient.usersRequest(etag);
+            }
+
+            @Override
+            protected List<CommcareUser> parse(String body) {
+                return parseUsers(body);
+            }
+
+            @Override
+            protected void index(CommcareUser user, Directory<CommcareUser> directory) {
+                directory.add(BY_ID, user.getId(), user);
+                directory.add(BY_USERNAME, user.getUsername(), user);
+            }
+        };
     }
 
     @Override
     public List<CommcareUser> getAllUsers() {
+        return users.getAll();
+    }
 
-        String response = commcareHttpClient.usersRequest();
+    @Override
+    public CommcareUser getCommcareUserById(String id) {
+        return users.findOne(BY_ID, id);
+    }
+
+    @Override
+    public CommcareUser getCommcareUserByUsername(String username) {
+        return users.findOne(BY_USERNAME, username);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
 
+    private List<CommcareUser> parseUsers(String response) {
         Type commcareUserType = new TypeToken<CommcareUsersJson>() {
         } .getType();
 
@@ -37,17 +97,15 @@ public class CommcareUserServiceImpl implements CommcareUserService {
                 .readFromString(response, commcareUserType);
 
         return allUsers.getObjects();
-
     }
 
-    @Override
-    public CommcareUser getCommcareUserById(String id) {
-        List<CommcareUser> userList = getAllUsers();
-        for (CommcareUser user : userList) {
-            if (user.getId().equals(id)) {
-                return user;
-            }
-        }
-        return null;
+    /**
+     * How long the users and fixtures read from CommCareHQ stay current, set in seconds as directoryCacheTtl in the
+     * commcare settings
+     */
+    static long directoryTimeToLive(SettingsFacade settingsFacade) {
+        String timeToLive = settingsFacade.getProperty(DIRECTORY_TTL_KEY);
+        return TimeUnit.SECONDS.toMillis(StringUtils.isNumeric(timeToLive) && StringUtils.isNotEmpty(timeToLive)
+                ? Long.parseLong(timeToLive) : DEFAULT_DIRECTORY_TTL);
     }
 }
@@ -0,0 +1,187 @@
+package org.motechproject.commcare.service.impl;
+
+import org.motechproject.commcare.client.ConditionalResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A directory CommCareHQ only serves whole, such as its users or fixtures, held in memory and indexed so that entries
+ * can be looked up by key. It is read once when first needed; after that, a lookup made once it is older than its time
+ * to live starts a refresh in the background and is served what is held meanwhile, so that a burst of lookups makes at
+ * most one request. Refreshes send the ETag of what is held, which CommCareHQ can answer with a bare Not Modified.
+ * Once a read fails, the directory isn't read again before FAILURE_BACKOFF_MILLIS went by.
+ * @param <T> The type of the entries
+ */
+abstract class DirectoryCache<T> {
+    private static final long MISS_REFRESH_MILLIS = 10000;
+    private static final long FAILURE_BACKOFF_MILLIS = 30000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final long timeToLive;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Directory<T> directory;
+    private volatile long retryAfter;
+
+    /**
+     * @param timeToLive How long what is read stays current, in milliseconds
+     * @param refresher Where refreshes run
+     */
+    DirectoryCache(long timeToLive, Executor refresher) {
+        this.timeToLive = timeToLive;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Requests the directory from CommCareHQ, unless the one read along with the given ETag is still current
+     */
+    protected abstract ConditionalResponse request(String etag) throws IOException;
+
+    protected abstract List<T> parse(String body);
+
+    /**
+     * Adds the given entry to the indexes it should be found by
+     */
+    protected abstract void index(T entry, Directory<T> directory);
+
+    List<T> getAll() {
+        Directory<T> current = current();
+        return current == null ? new ArrayList<T>() : new ArrayList<>(current.entries);
+    }
+
+    List<T> get(String index, String key) {
+        Directory<T> current = current();
+        return current == null ? Collections.<T>emptyList() : current.get(index, key);
+    }
+
+    T getOne(String index, String key) {
+        List<T> entries = get(index, key);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /**
+     * Like getOne, except that a miss reads the directory again right away in case the entry was added since, unless
+     * it was read less than MISS_REFRESH_MILLIS, or its time to live if shorter, ago
+     */
+    T findOne(String index, String key) {
+        T entry = getOne(index, key);
+        Directory<T> current = directory;
+        if (entry != null || current == null || !refreshOnMiss(current)) {
+            return entry;
+        }
+        return getOne(index, key);
+    }
+
+    /**
+     * @return Whether the directory may have changed since the given one was read
+     */
+    private synchronized boolean refreshOnMiss(Directory<T> missed) {
+        Directory<T> current = directory;
+        if (current != missed) {
+            // another miss refreshed it meanwhile
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now - current.readAt < Math.min(timeToLive, MISS_REFRESH_MILLIS) || now < retryAfter) {
+            return false;
+        }
+        refresh(current);
+        return true;
+    }
+
+    private Directory<T> current() {
+        final Directory<T> current = directory;
+        if (current == null) {
+            return load();
+        }
+        long now = System.currentTimeMillis();
+        if (now - current.readAt > timeToLive && now >= retryAfter && refreshing.compareAndSet(false, true)) {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh(current);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+        }
+        return current;
+    }
+
+    /**
+     * Reads the directory the first time it is needed; the lookups made meanwhile wait for it rather than read it too
+     */
+    private synchronized Directory<T> load() {
+        if (directory == null && System.currentTimeMillis() >= retryAfter) {
+            refresh(null);
+        }
+        return directory;
+    }
+
+    private void refresh(Directory<T> current) {
+        try {
+            ConditionalResponse response = request(current == null ? null : current.etag);
+            if (response.isNotModified() && current != null) {
+                current.readAt = System.currentTimeMillis();
+                return;
+            }
+
+            Directory<T> refreshed = new Directory<>(response.getEtag());
+            for (T entry : parse(response.getBody())) {
+                refreshed.entries.add(entry);
+                index(entry, refreshed);
+            }
+            directory = refreshed;
+        } catch (IOException | RuntimeException e) {
+            retryAfter = System.currentTimeMillis() + FAILURE_BACKOFF_MILLIS;
+            logger.error("Could not read the directory from CommCareHQ: " + e.getMessage(), e);
+        }
+    }
+
+    static class Directory<T> {
+        private final String etag;
+        private final List<T> entries = new ArrayList<>();
+        private final Map<String, Map<String, List<T>>> indexes = new HashMap<>();
+        private volatile long readAt = System.currentTimeMillis();
+
+        Directory(String etag) {
+            this.etag = etag;
+        }
+
+        void add(String index, String key, T entry) {
+            if (key == null) {
+                return;
+            }
+            Map<String, List<T>> byKey = indexes.get(index);
+            if (byKey == null) {
+                byKey = new HashMap<>();
+                indexes.put(index, byKey);
+            }
+            List<T> withKey = byKey.get(key);
+            if (withKey == null) {
+                withKey = new ArrayList<>();
+                byKey.put(key, withKey);
+            }
+            withKey.add(entry);
+        }
+
+        List<T> get(String index, String key) {
+            Map<String, List<T>> byKey = indexes.get(index);
+            List<T> withKey = byKey == null ? null : byKey.get(key);
+            return withKey == null ? Collections.<T>emptyList() : Collections.unmodifiableList(withKey);
+        }
+    }
+}
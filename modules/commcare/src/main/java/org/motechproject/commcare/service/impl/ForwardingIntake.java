@@ -0,0 +1,439 @@
+package org.motechproject.commcare.service.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.motechproject.commcare.parser.PayloadKeyParser;
+import org.motechproject.commcare.parser.PayloadKeys;
+import org.motechproject.server.config.SettingsFacade;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes in the forms and cases CommCareHQ forwards so that they can be acknowledged before they are processed. Each
+ * payload is appended to a log on disk, under forwardingLogDir, and handed to a pool of forwardingWorkers workers
+ * which process it and then drop it from the log. Payloads touching the same case are processed one after another,
+ * in the order they came in, and payloads already taken in recently - forms with the same instance id, cases with the
+ * same id and modification date - are dropped, so that CommCareHQ forwarding something again does no harm. Payloads
+ * left in the log when the module stops are processed once it starts again, before any taken in then, and payloads of
+ * a type nothing processes yet are held until something does. Payloads which fail to be processed are moved to the
+ * failed directory of the log, and are no longer taken to have been taken in. Only the keys of a payload and its file
+ * are kept in memory, its body is read back from the log when it is processed.
+ * <p/>
+ * Off unless asyncForwarding is set in the commcare settings, in which case payloads are processed as they come in.
+ */
+@Component
+public class ForwardingIntake {
+    static final String ASYNC_FORWARDING_KEY = "asyncForwarding";
+    static final String WORKERS_KEY = "forwardingWorkers";
+    static final String LOG_DIR_KEY = "forwardingLogDir";
+
+    private static final int DEFAULT_WORKERS = 4;
+    private static final int DEDUP_WINDOW = 10000;
+    private static final String ENCODING = "UTF-8";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String FAILED_DIR = "failed";
+
+    /**
+     * The kinds of payloads CommCareHQ forwards
+     */
+    public enum Type {
+        FORM, CASE;
+
+        private String suffix() {
+            return "." + name().toLowerCase();
+        }
+    }
+
+    /**
+     * Processes a payload, the way it would have been processed as it came in
+     */
+    public interface Handler {
+        void handle(String body, String header);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Map<Type, Handler> handlers = new ConcurrentHashMap<>();
+    private final BlockingQueue<Payload> intake = new LinkedBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // payloads of the types nothing processes yet, in the order they came in; guarded by the dispatch lock
+    private final Map<Type, List<Payload>> held = new EnumMap<>(Type.class);
+    private final Object dispatchLock = new Object();
+
+    // added to by the dispatcher, removed from by the workers when a payload fails
+    private final Set<String> taken = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > DEDUP_WINDOW;
+                }
+            }));
+
+    private SettingsFacade settingsFacade;
+    private File logDir;
+    private volatile ExecutorService dispatcher;
+    private ExecutorService[] workers;
+
+    private volatile long lastLag;
+
+    @Autowired
+    public ForwardingIntake(@Qualifier("commcareAPISettings") SettingsFacade settingsFacade) {
+        this.settingsFacade = settingsFacade;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!Boolean.parseBoolean(settingsFacade.getProperty(ASYNC_FORWARDING_KEY))) {
+            return;
+        }
+
+        String dir = settingsFacade.getProperty(LOG_DIR_KEY);
+        logDir = StringUtils.isBlank(dir) ? new File(System.getProperty("user.home"), ".motech/commcare-forwarding")
+                : new File(dir);
+        if (!logDir.isDirectory() && !logDir.mkdirs()) {
+            logger.error(String.format("Could not create the forwarding log in %s, forwarded data will be processed as it comes in",
+                    logDir));
+            return;
+        }
+        sequence.set(nextSequence());
+        // queued up ahead of anything taken in from now on
+        replay();
+
+        String workerCount = settingsFacade.getProperty(WORKERS_KEY);
+        workers = new ExecutorService[StringUtils.isNumeric(workerCount) && StringUtils.isNotEmpty(workerCount)
+                ? Math.max(1, Integer.parseInt(workerCount)) : DEFAULT_WORKERS];
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i] = Executors.newSingleThreadExecutor(daemonThreads("commcare-forwarding-" + i));
+        }
+
+        dispatcher = Executors.newSingleThreadExecutor(daemonThreads("commcare-forwarding"));
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        Payload payload = intake.take();
+                        synchronized (dispatchLock) {
+                            dispatch(payload);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (dispatcher != null) {
+            dispatcher.shutdownNow();
+            for (ExecutorService worker : workers) {
+                worker.shutdownNow();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return dispatcher != null;
+    }
+
+    /**
+     * Sets how payloads of the given type are processed, then processes those of them held until now
+     */
+    public void register(Type type, Handler handler) {
+        // those held came in before any payload the dispatcher hasn't taken yet, so they go first
+        synchronized (dispatchLock) {
+            handlers.put(type, handler);
+            List<Payload> payloads = held.remove(type);
+            if (payloads != null) {
+                logger.info(String.format("Processing %d forwarded %ss held until now", payloads.size(),
+                        type.name().toLowerCase()));
+                for (Payload payload : payloads) {
+                    dispatch(payload);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the given payload to the log, to be processed in the background
+     * @return Whether it was taken in; if not, it is up to the caller to process it
+     */
+    public boolean accept(Type type, String body, String header) {
+        if (!isEnabled()) {
+            return false;
+        }
+
+        try {
+            File file = append(type, body, header);
+            enqueue(new Payload(type, new PayloadKeyParser(body).parse(), file, System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            logger.error(String.format("Could not append a forwarded %s to the log, processing it as it comes in",
+                    type.name().toLowerCase()), e);
+            return false;
+        }
+    }
+
+    private File append(Type type, String body, String header) throws IOException {
+        File file = new File(logDir, String.format("%019d%s", sequence.getAndIncrement(), type.suffix()));
+        File partial = new File(logDir, file.getName() + PARTIAL_SUFFIX);
+
+        try (FileOutputStream out = new FileOutputStream(partial)) {
+            Writer writer = new OutputStreamWriter(out, ENCODING);
+            writer.write(StringUtils.defaultString(header));
+            writer.write('\n');
+            writer.write(body);
+            writer.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        return file;
+    }
+
+    private void replay() {
+        File[] files = logDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return typeOf(name) != null;
+            }
+        });
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        // the names start with the sequence, so the payloads are processed in the order they came in
+        Arrays.sort(files);
+        logger.info(String.format("Processing %d forwarded payloads left in the log", files.length));
+        for (File file : files) {
+            try {
+                String content = FileUtils.readFileToString(file, ENCODING);
+                enqueue(new Payload(typeOf(file.getName()), new PayloadKeyParser(bodyOf(content)).parse(), file,
+                        file.lastModified()));
+            } catch (IOException e) {
+                logger.error("Could not read " + file + " from the forwarding log", e);
+            }
+        }
+    }
+
+    private static String bodyOf(String content) {
+        return content.substring(content.indexOf('\n') + 1);
+    }
+
+    private static String headerOf(String content) {
+        return StringUtils.trimToNull(content.substring(0, Math.max(content.indexOf('\n'), 0)));
+    }
+
+    private static Type typeOf(String fileName) {
+        for (Type type : Type.values()) {
+            if (fileName.endsWith(type.suffix())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private void enqueue(Payload payload) {
+        queueDepth.incrementAndGet();
+        intake.add(payload);
+    }
+
+    // called holding the dispatch lock
+    private void dispatch(final Payload payload) {
+        final Handler handler = handlers.get(payload.type);
+        if (handler == null) {
+            logger.warn(String.format("Nothing processes forwarded %ss yet, holding %s until something does",
+                    payload.type.name().toLowerCase(), payload.file));
+            if (!held.containsKey(payload.type)) {
+                held.put(payload.type, new ArrayList<Payload>());
+            }
+            held.get(payload.type).add(payload);
+            return;
+        }
+
+        final String key = dedupKey(payload.type, payload.keys);
+        if (key != null && !taken.add(key)) {
+            logger.debug(String.format("Dropping %s, it was already taken in", key));
+            duplicates.incrementAndGet();
+            done(payload);
+            return;
+        }
+
+        workerFor(payload.keys.getCaseId()).execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String content = FileUtils.readFileToString(payload.file, ENCODING);
+                    handler.handle(bodyOf(content), headerOf(content));
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Could not process " + payload.file, e);
+                    // so that CommCareHQ forwarding it again isn't dropped
+                    if (key != null) {
+                        taken.remove(key);
+                    }
+                    failed(payload);
+                    return;
+                }
+                processed.incrementAndGet();
+                done(payload);
+            }
+        });
+    }
+
+    private String dedupKey(Type type, PayloadKeys keys) {
+        if (type == Type.FORM) {
+            return keys.getInstanceId() == null ? null : "form " + keys.getInstanceId();
+        }
+        return keys.getCaseId() == null || keys.getDateModified() == null ? null
+                : String.format("case %s modified on %s", keys.getCaseId(), keys.getDateModified());
+    }
+
+    private ExecutorService workerFor(String caseId) {
+        int hash = caseId == null ? nextWorker.getAndIncrement() : caseId.hashCode();
+        return workers[(hash & Integer.MAX_VALUE) % workers.length];
+    }
+
+    private void done(Payload payload) {
+        if (!payload.file.delete()) {
+            logger.warn("Could not drop " + payload.file + " from the forwarding log");
+        }
+        lastLag = System.currentTimeMillis() - payload.receivedAt;
+        queueDepth.decrementAndGet();
+    }
+
+    private void failed(Payload payload) {
+        File failedDir = new File(logDir, FAILED_DIR);
+        try {
+            if (!failedDir.isDirectory() && !failedDir.mkdirs()) {
+                throw new IOException("Could not create " + failedDir);
+            }
+            Files.move(payload.file.toPath(), new File(failedDir, payload.file.getName()).toPath());
+        } catch (IOException e) {
+            // left in the log, to be processed again once the module starts again
+            logger.error("Could not move " + payload.file + " to " + failedDir, e);
+        }
+        failed.incrementAndGet();
+        queueDepth.decrementAndGet();
+    }
+
+    private long nextSequence() {
+        long next = 0;
+        for (String name : logDir.list()) {
+            if (name.endsWith(PARTIAL_SUFFIX)) {
+                // never fully appended, so never acknowledged either
+                FileUtils.deleteQuietly(new File(logDir, name));
+            } else {
+                next = Math.max(next, sequenceOf(name) + 1);
+            }
+        }
+        // failed payloads keep their names, which aren't to be taken again
+        String[] failedNames = new File(logDir, FAILED_DIR).list();
+        if (failedNames != null) {
+            for (String name : failedNames) {
+                next = Math.max(next, sequenceOf(name) + 1);
+            }
+        }
+        return next;
+    }
+
+    private static long sequenceOf(String fileName) {
+        int end = fileName.indexOf('.');
+        return end > 0 && StringUtils.isNumeric(fileName.substring(0, end)) ? Long.parseLong(fileName.substring(0, end))
+                : -1;
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * How many payloads have been taken in but not processed yet
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * How long the last payload processed took from being taken in to being processed, in milliseconds
+     */
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * How many payloads were dropped because they had been taken in already
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * How many payloads could not be processed and were moved to the failed directory of the log
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    private static class Payload {
+        private final Type type;
+        private final PayloadKeys keys;
+        private final File file;
+        private final long receivedAt;
+
+        Payload(Type type, PayloadKeys keys, File file, long receivedAt) {
+            this.type = type;
+            this.keys = keys;
+            this.file = file;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
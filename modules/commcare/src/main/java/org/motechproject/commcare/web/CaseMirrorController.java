@@ -0,0 +1,37 @@
+package org.motechproject.commcare.web;
+
+import org.motechproject.commcare.service.impl.CaseMirror;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports how the local case mirror is keeping up with CommCareHQ. Maps to /commcare/case-mirror.
+ */
+@Controller
+public class CaseMirrorController {
+
+    private CaseMirror caseMirror;
+
+    @Autowired
+    public CaseMirrorController(CaseMirror caseMirror) {
+        this.caseMirror = caseMirror;
+    }
+
+    @RequestMapping(value = "/case-mirror", method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("fresh", caseMirror.isFresh());
+        status.put("cases", caseMirror.getSize());
+        status.put("syncLag", caseMirror.getSyncLag());
+        status.put("lastSyncDuration", caseMirror.getLastSyncDuration());
+        status.put("lastSyncUpdates", caseMirror.getLastSyncUpdates());
+        return status;
+    }
+}
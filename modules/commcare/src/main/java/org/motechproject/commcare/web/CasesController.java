@@ -1,11 +1,13 @@
 package org.motechproject.commcare.web;
 
+import org.apache.commons.io.IOUtils;
 import org.motechproject.commcare.domain.CaseXml;
 import org.motechproject.commcare.events.CaseEvent;
 import org.motechproject.commcare.events.constants.EventDataKeys;
 import org.motechproject.commcare.events.constants.EventSubjects;
 import org.motechproject.commcare.exception.CaseParserException;
 import org.motechproject.commcare.parser.CaseParser;
+import org.motechproject.commcare.service.impl.ForwardingIntake;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.server.config.SettingsFacade;
@@ -19,12 +21,14 @@ import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 
 /**
  * Controller that handles the incoming case feed from CommCareHQ. Maps to
- * /commcare/cases.
+ * /commcare/cases. With asyncForwarding set, cases are acknowledged as soon as
+ * the {@link ForwardingIntake} has taken them in, and processed after.
  */
 @Controller
 public class CasesController {
@@ -36,55 +40,57 @@ public class CasesController {
 
     private EventRelay eventRelay;
     private SettingsFacade settingsFacade;
+    private ForwardingIntake forwardingIntake;
 
     @Autowired
-    public CasesController(final EventRelay eventRelay, @Qualifier("commcareAPISettings") final SettingsFacade settingsFacade) {
+    public CasesController(final EventRelay eventRelay, @Qualifier("commcareAPISettings") final SettingsFacade settingsFacade,
+                           final ForwardingIntake forwardingIntake) {
         this.eventRelay = eventRelay;
         this.settingsFacade = settingsFacade;
-    }
+        this.forwardingIntake = forwardingIntake;
 
-    private String getRequestBodyAsString(HttpServletRequest request) throws IOException {
-        BufferedReader reader = request.getReader();
-        boolean end = false;
-        StringBuilder forwardedRequest = new StringBuilder();
-        while (!end) {
-            String line = reader.readLine();
-            if (line == null) {
-                end = true;
-            } else {
-                forwardedRequest.append(line);
+        forwardingIntake.register(ForwardingIntake.Type.CASE, new ForwardingIntake.Handler() {
+            @Override
+            public void handle(String body, String header) {
+                processCase(new StringReader(body), header);
             }
-        }
-
-        return forwardedRequest.toString();
+        });
     }
 
     @RequestMapping({ "/cases" })
     public ModelAndView receiveCase(HttpServletRequest request, HttpServletResponse response) {
-
-        String caseXml = "";
+        String serverModifiedOn = request.getHeader("server-modified-on");
 
         try {
-            caseXml = getRequestBodyAsString(request);
-        } catch (IOException e1) {
-            LOG.error(e1.getMessage(), e1);
+            if (forwardingIntake.isEnabled()) {
+                String caseXml = IOUtils.toString(request.getReader());
+                if (!forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml, serverModifiedOn)) {
+                    processCase(new StringReader(caseXml), serverModifiedOn);
+                }
+            } else {
+                processCase(request.getReader(), serverModifiedOn);
+            }
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            publishMalformedCaseMessage();
         }
-        CaseParser<CaseXml> parser = new CaseParser<>(CaseXml.class, caseXml);
 
+        return null;
+    }
+
+    private void processCase(Reader caseXml, String serverModifiedOn) {
         CaseXml caseInstance = null;
         try {
+            CaseParser<CaseXml> parser = new CaseParser<>(CaseXml.class, caseXml);
             caseInstance = parser.parseCase();
         } catch (CaseParserException e) {
-            MotechEvent motechEvent = new MotechEvent(
-                    EventSubjects.MALFORMED_CASE_EXCEPTION);
-            motechEvent.getParameters().put(EventDataKeys.MESSAGE,
-                    "Incoming case xml did not parse correctly");
-            eventRelay.sendEventMessage(motechEvent);
+            LOG.error(e.getMessage(), e);
+            publishMalformedCaseMessage();
         }
 
         if (caseInstance != null) {
 
-            caseInstance.setServerModifiedOn(request.getHeader("server-modified-on"));
+            caseInstance.setServerModifiedOn(serverModifiedOn);
             CaseEvent caseEvent = new CaseEvent(caseInstance.getCaseId());
 
             MotechEvent motechCaseEvent;
@@ -103,8 +109,14 @@ public class CasesController {
 
             eventRelay.sendEventMessage(motechCaseEvent);
         }
+    }
 
-        return null;
+    private void publishMalformedCaseMessage() {
+        MotechEvent motechEvent = new MotechEvent(
+                EventSubjects.MALFORMED_CASE_EXCEPTION);
+        motechEvent.getParameters().put(EventDataKeys.MESSAGE,
+                "Incoming case xml did not parse correctly");
+        eventRelay.sendEventMessage(motechEvent);
     }
 
     public void setEventRelay(EventRelay eventRelay) {
@@ -0,0 +1,38 @@
+package org.motechproject.commcare.web;
+
+import org.motechproject.commcare.service.impl.ForwardingIntake;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports how processing forwarded forms and cases is keeping up with CommCareHQ. Maps to
+ * /commcare/forwarding-intake.
+ */
+@Controller
+public class ForwardingIntakeController {
+
+    private ForwardingIntake forwardingIntake;
+
+    @Autowired
+    public ForwardingIntakeController(ForwardingIntake forwardingIntake) {
+        this.forwardingIntake = forwardingIntake;
+    }
+
+    @RequestMapping(value = "/forwarding-intake", method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", forwardingIntake.isEnabled());
+        status.put("queueDepth", forwardingIntake.getQueueDepth());
+        status.put("lastLag", forwardingIntake.getLastLag());
+        status.put("processed", forwardingIntake.getProcessed());
+        status.put("duplicates", forwardingIntake.getDuplicates());
+        return status;
+    }
+}
@@ -5,6 +5,7 @@ import com.google.common.collect.Multimap;
 import org.motechproject.commcare.domain.FormValueElement;
 import org.motechproject.commcare.exception.FullFormParserException;
 import org.motechproject.commcare.parser.FullFormParser;
+import org.motechproject.commcare.service.impl.ForwardingIntake;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,20 +29,38 @@ import static org.motechproject.commcare.events.constants.EventDataKeys.FAILED_F
 import static org.motechproject.commcare.parser.FullFormParser.FORM;
 
 /**
- * Controller that handles the incoming full form feed from CommCareHQ.
+ * Controller that handles the incoming full form feed from CommCareHQ. With asyncForwarding set, forms are
+ * acknowledged as soon as the {@link ForwardingIntake} has taken them in, and processed after.
  */
 @Controller
 public class FullFormController {
     private EventRelay eventRelay;
+    private ForwardingIntake forwardingIntake;
 
     @Autowired
-    public FullFormController(EventRelay eventRelay) {
+    public FullFormController(EventRelay eventRelay, ForwardingIntake forwardingIntake) {
         this.eventRelay = eventRelay;
+        this.forwardingIntake = forwardingIntake;
+
+        forwardingIntake.register(ForwardingIntake.Type.FORM, new ForwardingIntake.Handler() {
+            @Override
+            public void handle(String body, String header) {
+                processForm(body, header);
+            }
+        });
     }
 
     @RequestMapping(value = "/forms")
     @ResponseStatus(HttpStatus.OK)
     public void receiveForm(@RequestBody String body, HttpServletRequest request) {
+        String receivedOn = request.getHeader("received-on");
+
+        if (!forwardingIntake.accept(ForwardingIntake.Type.FORM, body, receivedOn)) {
+            processForm(body, receivedOn);
+        }
+    }
+
+    private void processForm(String body, String receivedOn) {
         FullFormParser parser = new FullFormParser(body);
         FormValueElement formValueElement = null;
         Map<String, Object> parameters = new HashMap<>();
@@ -49,7 +68,7 @@ public class FullFormController {
         try {
             formValueElement = parser.parse();
 
-            parameters.put(RECEIVED_ON, request.getHeader("received-on"));
+            parameters.put(RECEIVED_ON, receivedOn);
             parameters.put(VALUE, formValueElement.getValue());
             parameters.put(ELEMENT_NAME, formValueElement.getElementName());
             parameters.put(ATTRIBUTES, formValueElement.getAttributes());
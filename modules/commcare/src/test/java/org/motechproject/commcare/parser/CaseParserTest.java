@@ -7,6 +7,7 @@ import org.motechproject.commcare.domain.CaseXml;
 import org.motechproject.commcare.exception.CaseParserException;
 
 import java.io.FileNotFoundException;
+import java.io.StringReader;
 
 public class CaseParserTest extends TestCase {
 
@@ -100,6 +101,74 @@ public class CaseParserTest extends TestCase {
         Assert.assertEquals("http://myDomain.com/test/ns", aCase.getCaseDataXmlns());
     }
 
+    @Test
+    public void testShouldParseCaseFromReader() throws CaseParserException {
+        CaseParser<CaseXml> parser = new CaseParser<CaseXml>(CaseXml.class,
+                new StringReader(caseXmlForUpdate()));
+        CaseXml aCase = parser.parseCase();
+
+        Assert.assertEquals("UPDATE", parser.getCaseAction());
+        Assert.assertEquals("3F2504E04F8911D39A0C0305E82C3301", aCase.getCaseId());
+        Assert.assertEquals(2, aCase.getFieldValues().size());
+        Assert.assertEquals("2", aCase.getFieldValues().get("visit_number"));
+        Assert.assertEquals("Tom Smith", aCase.getFieldValues().get("primary_contact_name"));
+    }
+
+    @Test
+    public void testShouldParseCreateWithoutUpdate() throws CaseParserException {
+        CaseParser<CaseXml> parser = new CaseParser<CaseXml>(CaseXml.class,
+                caseXmlForCreateOnly());
+        CaseXml aCase = parser.parseCase();
+
+        Assert.assertEquals("CREATE", parser.getCaseAction());
+        Assert.assertEquals("houshold_rollout_ONICAF", aCase.getCaseType());
+        Assert.assertTrue(aCase.getFieldValues().isEmpty());
+    }
+
+    @Test
+    public void testShouldFailWithoutCaseElement() {
+        CaseParser<CaseXml> parser = new CaseParser<CaseXml>(CaseXml.class,
+                "<data xmlns=\"http://myDomain.com/test/ns\"><meta/></data>");
+        try {
+            parser.parseCase();
+            fail("Expected a CaseParserException");
+        } catch (CaseParserException e) {
+            Assert.assertNull(parser.getCaseAction());
+        }
+    }
+
+    @Test
+    public void testShouldFailOnMalformedXml() {
+        CaseParser<CaseXml> parser = new CaseParser<CaseXml>(CaseXml.class,
+                "<case case_id=\"3F2504E04F8911D39A0C0305E82C3301\"><update></case>");
+        try {
+            parser.parseCase();
+            fail("Expected a CaseParserException");
+        } catch (CaseParserException e) {
+            Assert.assertNull(parser.getCaseAction());
+        }
+    }
+
+    private String caseXmlForUpdate() {
+        return "<?xml version=\"1.0\"?>\n"
+                + "<case xmlns=\"http://commcarehq.org/case/transaction/v2\" case_id=\"3F2504E04F8911D39A0C0305E82C3301\" date_modified=\"2012-04-03\" user_id=\"F0183EDA012765103CB106821BBA51A0\">\n"
+                + "    <update>\n"
+                + "        <primary_contact_name>Tom Smith</primary_contact_name>\n"
+                + "        <visit_number>2</visit_number>\n"
+                + "    </update>\n"
+                + "</case>";
+    }
+
+    private String caseXmlForCreateOnly() {
+        return "<case xmlns=\"http://commcarehq.org/case/transaction/v2\" case_id=\"3F2504E04F8911D39A0C0305E82C3301\" date_modified=\"2012-04-03\" user_id=\"F0183EDA012765103CB106821BBA51A0\">"
+                + "<create>"
+                + "<case_type>houshold_rollout_ONICAF</case_type>"
+                + "<case_name>Smith</case_name>"
+                + "<owner_id>2Z2504E04F8911D39A0C0305E82C3000</owner_id>"
+                + "</create>"
+                + "</case>";
+    }
+
     private String caseXml() {
         String caseXml = "<case xmlns=\"http://commcarehq.org/case/transaction/v2\" case_id=\"3F2504E04F8911D39A0C0305E82C3301\" user_id=\"F0183EDA012765103CB106821BBA51A0\" date_modified=\"2011-12-08T13:34:30\" api_key=\"API_KEY\" >\n"
                 + "<create>"
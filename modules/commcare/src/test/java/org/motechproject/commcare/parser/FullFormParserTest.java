@@ -0,0 +1,92 @@
+package org.motechproject.commcare.parser;
+
+import org.junit.Test;
+import org.motechproject.commcare.domain.FormValueElement;
+import org.motechproject.commcare.exception.FullFormParserException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FullFormParserTest {
+
+    @Test
+    public void shouldParseForm() throws FullFormParserException {
+        FormValueElement form = new FullFormParser(formXml()).parse();
+
+        assertEquals("form", form.getElementName());
+        assertEquals("data", form.getValue());
+        assertEquals(3, form.getAttributes().size());
+        assertEquals("http://openrosa.org/formdesigner/84FA", form.getAttributes().get("xmlns"));
+        assertEquals("New Form", form.getAttributes().get("name"));
+
+        List<FormValueElement> numbers = new ArrayList<>(form.getSubElements().get("number"));
+        assertEquals(2, numbers.size());
+        assertEquals("8", numbers.get(0).getValue());
+        assertEquals("9", numbers.get(1).getValue());
+        assertTrue(numbers.get(0).getAttributes().isEmpty());
+    }
+
+    @Test
+    public void shouldParseGroupsAndPrefixedElements() throws FullFormParserException {
+        FormValueElement form = new FullFormParser(formXml()).parse();
+
+        FormValueElement caseElement = form.getSubElements().get("case").iterator().next();
+        assertNull(caseElement.getValue());
+        assertEquals("e098a110", caseElement.getAttributes().get("case_id"));
+        assertEquals("http://commcarehq.org/case/transaction/v2", caseElement.getAttributes().get("xmlns"));
+
+        FormValueElement update = caseElement.getSubElements().get("update").iterator().next();
+        assertEquals("8", update.getSubElements().get("number").iterator().next().getValue());
+
+        FormValueElement question = form.getSubElements().get("question").iterator().next();
+        assertNull(question.getValue());
+        assertEquals("unanswered", question.getAttributes().get("state"));
+    }
+
+    @Test
+    public void shouldParseDeviceReport() throws FullFormParserException {
+        FormValueElement deviceLog = new FullFormParser("<?xml version='1.0' encoding='UTF-8'?>"
+                + "<device_report xmlns=\"http://code.javarosa.org/devicereport\">"
+                + "<device_id>DEVICEIDJ0j09s0u</device_id>"
+                + "<log_subreport><log date=\"2012-10-23\"><type>login</type></log></log_subreport>"
+                + "</device_report>").parse();
+
+        assertEquals("deviceLog", deviceLog.getElementName());
+        assertEquals("device_report", deviceLog.getValue());
+        assertEquals("DEVICEIDJ0j09s0u", deviceLog.getSubElements().get("device_id").iterator().next().getValue());
+
+        FormValueElement log = deviceLog.getSubElements().get("log_subreport").iterator().next()
+                .getSubElements().get("log").iterator().next();
+        assertEquals("2012-10-23", log.getAttributes().get("date"));
+        assertEquals("login", log.getSubElements().get("type").iterator().next().getValue());
+    }
+
+    @Test(expected = FullFormParserException.class)
+    public void shouldFailWithoutFormOrDeviceReport() throws FullFormParserException {
+        new FullFormParser("<other><number>8</number></other>").parse();
+    }
+
+    @Test(expected = FullFormParserException.class)
+    public void shouldFailOnMalformedForm() throws FullFormParserException {
+        new FullFormParser("<data><number>8</data>").parse();
+    }
+
+    private String formXml() {
+        return "<data uiVersion=\"1\" name=\"New Form\"\n"
+                + "      xmlns:jrm=\"http://dev.commcarehq.org/jr/xforms\"\n"
+                + "      xmlns=\"http://openrosa.org/formdesigner/84FA\">\n"
+                + "  <number>8</number>\n"
+                + "  <number>9</number>\n"
+                + "  <n0:case case_id=\"e098a110\" xmlns:n0=\"http://commcarehq.org/case/transaction/v2\">\n"
+                + "    <n0:update>\n"
+                + "      <n0:number>8</n0:number>\n"
+                + "    </n0:update>\n"
+                + "  </n0:case>\n"
+                + "  <question state=\"unanswered\"/>\n"
+                + "</data>";
+    }
+}
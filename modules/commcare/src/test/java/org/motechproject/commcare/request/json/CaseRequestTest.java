@@ -26,6 +26,15 @@ public class CaseRequestTest {
         assertThat(caseRequest.toQueryString(), IsEqual.equalTo("limit=100&offset=200"));
     }
 
+    @Test
+    public void shouldAskForCasesModifiedSince() {
+        CaseRequest caseRequest = new CaseRequest();
+        caseRequest.setType("sometype");
+        caseRequest.setServerDateModifiedStart("2012-04-12T18:59:04");
+        assertThat(caseRequest.toQueryString(),
+                IsEqual.equalTo("type=sometype&server_date_modified_start=2012-04-12T18:59:04&limit=0&offset=0"));
+    }
+
     private CaseRequest getCaseRequest() {
         CaseRequest caseRequest = new CaseRequest();
         caseRequest.setUserId("U100");
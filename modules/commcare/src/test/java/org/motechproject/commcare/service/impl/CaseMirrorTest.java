@@ -0,0 +1,185 @@
+package org.motechproject.commcare.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.commcare.client.ResponseReader;
+import org.motechproject.commcare.events.CaseEvent;
+import org.motechproject.commcare.request.json.CaseRequest;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CaseMirrorTest {
+
+    @Mock
+    private CommCareAPIHttpClient commcareHttpClient;
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private ScheduledExecutorService executor;
+
+    private CaseMirror caseMirror;
+
+    private List<String> requests = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        executor = Executors.newScheduledThreadPool(2);
+        caseMirror = new CaseMirror(commcareHttpClient, settingsFacade, executor);
+    }
+
+    @After
+    public void tearDown() {
+        caseMirror.stop();
+    }
+
+    @Test
+    public void shouldReadAllCasesThenTheOnesModifiedSinceTheNewest() throws IOException {
+        respondWith("{\"meta\": {\"limit\": 20, \"next\": null}, \"objects\": ["
+                + caseJson("case1", "mother", "2012-04-09T19:48:07Z") + ", "
+                + caseJson("case2", "child", "2012-04-12T18:49:15.123456Z") + "]}",
+                "{\"meta\": {\"limit\": 20, \"next\": null}, \"objects\": ["
+                + caseJson("case1", "child", "2012-04-13T08:00:00Z") + "]}");
+
+        assertFalse(caseMirror.isFresh());
+
+        caseMirror.sync();
+        caseMirror.sync();
+
+        assertTrue(caseMirror.isFresh());
+        assertEquals(asList("limit=0&offset=0", "server_date_modified_start=2012-04-12T18:49:15&limit=0&offset=0"),
+                requests);
+        assertEquals(2, caseMirror.getCasesByType("child").size());
+        assertEquals(1, caseMirror.getLastSyncUpdates());
+        assertEquals(2, caseMirror.getSize());
+    }
+
+    @Test
+    public void shouldGoStaleWhenSyncFails() throws IOException {
+        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class), Matchers.any(ResponseReader.class)))
+                .thenThrow(new IOException("Connection refused"));
+
+        caseMirror.sync();
+
+        assertFalse(caseMirror.isFresh());
+        assertEquals(-1, caseMirror.getSyncLag());
+    }
+
+    @Test
+    public void shouldReadCasesComingInThroughTheCaseFeedAgain() throws IOException, InterruptedException {
+        respondWith("{\"meta\": {\"limit\": 20, \"next\": null}, \"objects\": ["
+                + caseJson("case1", "mother", "2012-04-09T19:48:07Z") + "]}");
+        caseMirror.sync();
+        final CountDownLatch read = new CountDownLatch(1);
+        when(commcareHttpClient.singleCaseRequest("case1")).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                read.await();
+                return caseJson("case1", "mother", "2012-04-10T08:00:00Z");
+            }
+        });
+
+        caseMirror.caseChanged(new CaseEvent("case1").toMotechEventWithoutData());
+
+        assertNull(caseMirror.getCase("case1"));
+        assertNull(caseMirror.getCasesByType("mother"));
+        assertEquals(0, caseMirror.getCasesByType("child").size());
+
+        read.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (caseMirror.getCase("case1") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("2012-04-10T08:00:00Z", caseMirror.getCase("case1").getServerDateModified());
+        assertEquals(1, caseMirror.getCasesByType("mother").size());
+    }
+
+    @Test
+    public void shouldQueueOneRefreshPerCase() throws IOException, InterruptedException {
+        respondWith("{\"meta\": {\"limit\": 20, \"next\": null}, \"objects\": ["
+                + caseJson("case1", "mother", "2012-04-09T19:48:07Z") + "]}");
+        caseMirror.sync();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch read = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        when(commcareHttpClient.singleCaseRequest("case1")).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                reads.incrementAndGet();
+                started.countDown();
+                read.await();
+                return caseJson("case1", "mother", "2012-04-10T08:00:00Z");
+            }
+        });
+
+        caseMirror.caseChanged(new CaseEvent("case1").toMotechEventWithoutData());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            caseMirror.caseChanged(new CaseEvent("case1").toMotechEventWithoutData());
+        }
+        read.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (caseMirror.getCase("case1") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("2012-04-10T08:00:00Z", caseMirror.getCase("case1").getServerDateModified());
+        // the one under way, then one for all the changes coming in meanwhile
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    public void shouldHandOutCopiesOfTheCases() throws IOException {
+        respondWith("{\"meta\": {\"limit\": 20, \"next\": null}, \"objects\": ["
+                + caseJson("case1", "mother", "2012-04-09T19:48:07Z") + "]}");
+        caseMirror.sync();
+
+        caseMirror.getCasesByType("mother").get(0).setCaseType("child");
+        caseMirror.getCase("case1").getFieldValues().put("case_type", "child");
+
+        assertEquals("mother", caseMirror.getCase("case1").getCaseType());
+        assertEquals(1, caseMirror.getCasesByType("mother").size());
+        assertNull(caseMirror.getCase("case1").getFieldValues().get("case_type"));
+    }
+
+    private void respondWith(final String... pages) throws IOException {
+        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class), Matchers.any(ResponseReader.class)))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        requests.add(((CaseRequest) invocation.getArguments()[0]).toQueryString());
+                        ResponseReader<?> responseReader = (ResponseReader<?>) invocation.getArguments()[1];
+                        return responseReader.read(new StringReader(pages[requests.size() - 1]));
+                    }
+                });
+    }
+
+    private String caseJson(String caseId, String type, String serverDateModified) {
+        return String.format("{\"case_id\": \"%s\", \"server_date_modified\": \"%s\", \"properties\": {\"case_type\": \"%s\"}}",
+                caseId, serverDateModified, type);
+    }
+}
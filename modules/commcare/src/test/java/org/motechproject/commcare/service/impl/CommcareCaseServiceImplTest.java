@@ -1,11 +1,16 @@
 package org.motechproject.commcare.service.impl;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.commcare.client.ResponseReader;
 import org.motechproject.commcare.domain.CaseInfo;
+import org.motechproject.commcare.exception.CaseFetchException;
 import org.motechproject.commcare.request.json.CaseRequest;
 import org.motechproject.commcare.client.CommCareAPIHttpClient;
 import org.slf4j.Logger;
@@ -13,7 +18,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import static ch.lambdaj.Lambda.extract;
@@ -21,6 +29,12 @@ import static ch.lambdaj.Lambda.on;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -32,15 +46,18 @@ public class CommcareCaseServiceImplTest {
     @Mock
     private CommCareAPIHttpClient commcareHttpClient;
 
+    @Mock
+    private CaseMirror caseMirror;
+
     @Before
     public void setUp() {
         initMocks(this);
-        caseService = new CommcareCaseServiceImpl(commcareHttpClient);
+        caseService = new CommcareCaseServiceImpl(commcareHttpClient, caseMirror);
     }
 
     @Test
-    public void testAllCases() {
-        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class))).thenReturn(casesResponse());
+    public void testAllCases() throws IOException {
+        respondWith(Matchers.any(CaseRequest.class), casesResponse());
 
         List<CaseInfo> cases = caseService.getAllCases();
 
@@ -60,13 +77,47 @@ public class CommcareCaseServiceImplTest {
     }
 
     @Test
-    public void testAllCasesByUserId() {
+    public void shouldServeCasesOffTheMirrorWhenItIsFresh() {
+        CaseInfo mirrored = new CaseInfo();
+        when(caseMirror.isFresh()).thenReturn(true);
+        when(caseMirror.getCase("testCase")).thenReturn(mirrored);
+        when(caseMirror.getCasesByType("mother")).thenReturn(asList(mirrored));
+
+        assertSame(mirrored, caseService.getCaseByCaseId("testCase"));
+        assertEquals(asList(mirrored), caseService.getAllCasesByType("mother"));
+        verifyZeroInteractions(commcareHttpClient);
+    }
+
+    @Test
+    public void shouldReadCasesOfATypeFromCommcareWhileMirroredOnesOfItChanged() throws IOException {
+        CaseRequest request = new CaseRequest();
+        request.setType("mother");
+        when(caseMirror.isFresh()).thenReturn(true);
+        when(caseMirror.getCasesByType("mother")).thenReturn(null);
+        respondWith(eq(request), casesResponse());
+
+        List<CaseInfo> cases = caseService.getAllCasesByType("mother");
+
+        assertEquals(4, cases.size());
+    }
+
+    @Test
+    public void shouldMirrorCasesReadFromCommcare() {
+        when(commcareHttpClient.singleCaseRequest("testCase")).thenReturn(individualCase());
+
+        CaseInfo caseInstance = caseService.getCaseByCaseId("testCase");
+
+        verify(caseMirror).put(caseInstance);
+    }
+
+    @Test
+    public void testAllCasesByUserId() throws IOException {
         String userId = "testId";
 
         CaseRequest request = new CaseRequest();
         request.setUserId(userId);
 
-        when(commcareHttpClient.casesRequest(request)).thenReturn(casesResponse());
+        respondWith(eq(request), casesResponse());
 
         List<CaseInfo> cases = caseService.getAllCasesByUserId(userId);
 
@@ -75,7 +126,7 @@ public class CommcareCaseServiceImplTest {
     }
 
     @Test
-    public void testCaseByCaseIdAndUserId() {
+    public void testCaseByCaseIdAndUserId() throws IOException {
         String caseId = "testCase";
         String userId = "testId";
 
@@ -83,7 +134,7 @@ public class CommcareCaseServiceImplTest {
         request.setUserId(userId);
         request.setCaseId(caseId);
 
-        when(commcareHttpClient.casesRequest(request)).thenReturn(casesResponse());
+        respondWith(eq(request), casesResponse());
 
         CaseInfo caseInstance = caseService.getCaseByCaseIdAndUserId(caseId, userId);
 
@@ -91,9 +142,8 @@ public class CommcareCaseServiceImplTest {
     }
 
     @Test
-    public void testAllCaseServerDateModified()
-    {
-        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class))).thenReturn(casesResponse());
+    public void testAllCaseServerDateModified() throws IOException {
+        respondWith(Matchers.any(CaseRequest.class), casesResponse());
 
         List<CaseInfo> cases = caseService.getAllCases();
 
@@ -101,6 +151,82 @@ public class CommcareCaseServiceImplTest {
                 "2012-04-10T14:31:44Z"), extract(cases, on(CaseInfo.class).getServerDateModified()));
     }
 
+    @Test
+    public void shouldGoThroughCasesPageByPage() throws IOException {
+        final List<String> requests = new ArrayList<>();
+        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class), Matchers.any(ResponseReader.class)))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        CaseRequest request = (CaseRequest) invocation.getArguments()[0];
+                        requests.add(request.toQueryString());
+                        int page = requests.size();
+                        return read(invocation, casesPage(page == 1 ? "?limit=2&offset=2" : null, "case" + page + "a",
+                                "case" + page + "b"));
+                    }
+                });
+
+        List<String> caseIds = new ArrayList<>();
+        for (Iterator<CaseInfo> cases = caseService.iterateAllCasesByType("mother"); cases.hasNext(); ) {
+            caseIds.add(cases.next().getCaseId());
+        }
+
+        assertEquals(asList("case1a", "case1b", "case2a", "case2b"), caseIds);
+        assertEquals(asList("type=mother&limit=0&offset=0", "type=mother&limit=0&offset=2"), requests);
+    }
+
+    @Test
+    public void shouldReturnNoCasesWhenAPageCanNotBeRead() throws IOException {
+        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class), Matchers.any(ResponseReader.class)))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        return read(invocation, casesPage("?limit=2&offset=2", "case1a", "case1b"));
+                    }
+                })
+                .thenThrow(new IOException("Connection reset"));
+
+        assertTrue(caseService.getAllCases().isEmpty());
+    }
+
+    @Test
+    public void shouldFailIteratingWhenAPageCanNotBeRead() throws IOException {
+        when(commcareHttpClient.casesRequest(Matchers.any(CaseRequest.class), Matchers.any(ResponseReader.class)))
+                .thenThrow(new IOException("Connection reset"));
+
+        Iterator<CaseInfo> cases = caseService.iterateAllCases();
+
+        try {
+            cases.hasNext();
+            fail("Expected the failed page to be reported");
+        } catch (CaseFetchException e) {
+            assertEquals("Connection reset", e.getCause().getMessage());
+        }
+    }
+
+    private void respondWith(CaseRequest request, final String response) throws IOException {
+        when(commcareHttpClient.casesRequest(request, Matchers.any(ResponseReader.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return read(invocation, response);
+            }
+        });
+    }
+
+    private Object read(InvocationOnMock invocation, String response) throws IOException {
+        ResponseReader<?> responseReader = (ResponseReader<?>) invocation.getArguments()[1];
+        return responseReader.read(new StringReader(response));
+    }
+
+    private String casesPage(String next, String... caseIds) {
+        List<String> cases = new ArrayList<>();
+        for (String caseId : caseIds) {
+            cases.add(String.format("{\"case_id\": \"%s\", \"closed\": false, \"properties\": {\"case_type\": \"mother\"}}", caseId));
+        }
+        return String.format("{\"meta\": {\"limit\": 2, \"next\": %s, \"total_count\": 4}, \"objects\": [%s]}",
+                next == null ? "null" : "\"" + next + "\"", StringUtils.join(cases, ", "));
+    }
+
     private String casesResponse() {
         try {
             URL url = this.getClass().getClassLoader().getResource("json/service/cases.json");
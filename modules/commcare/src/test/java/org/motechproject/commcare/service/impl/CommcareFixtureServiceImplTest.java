@@ -3,14 +3,20 @@ package org.motechproject.commcare.service.impl;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.motechproject.commcare.client.ConditionalResponse;
 import org.motechproject.commcare.domain.CommcareFixture;
 import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.server.config.SettingsFacade;
 
+import java.io.IOException;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -21,21 +27,34 @@ public class CommcareFixtureServiceImplTest {
     @Mock
     private CommCareAPIHttpClient commcareHttpClient;
 
+    @Mock
+    private SettingsFacade settingsFacade;
+
     @Before
     public void setUp() {
         initMocks(this);
-        fixtureService = new CommcareFixtureServiceImpl(commcareHttpClient);
+        fixtureService = new CommcareFixtureServiceImpl(commcareHttpClient, settingsFacade);
     }
 
     @Test
-    public void testAllFixtures() {
-        when(commcareHttpClient.fixturesRequest()).thenReturn(fixturesResponse());
+    public void testAllFixtures() throws IOException {
+        when(commcareHttpClient.fixturesRequest(null)).thenReturn(new ConditionalResponse(fixturesResponse(), null));
 
         List<CommcareFixture> fixtures = fixtureService.getAllFixtures();
 
         assertEquals(fixtures.size(), 30);
     }
 
+    @Test
+    public void testFixturesByType() throws IOException {
+        when(commcareHttpClient.fixturesRequest(null)).thenReturn(new ConditionalResponse(fixturesResponse(), null));
+
+        assertEquals(4, fixtureService.getFixturesByType("adp").size());
+        assertEquals(26, fixtureService.getFixturesByType("phu").size());
+        assertEquals(0, fixtureService.getFixturesByType("district").size());
+        verify(commcareHttpClient, times(1)).fixturesRequest(null);
+    }
+
     @Test
     public void testGetFixtureWhenFixtureExists() {
         String fixtureId = "753e8f42bf7d88965be84d3ace555d77";
@@ -49,6 +68,18 @@ public class CommcareFixtureServiceImplTest {
         assertEquals(fixture.getFields().get("phu_id"), "komende");
     }
 
+    @Test
+    public void testGetFixtureFromAllFixtures() throws IOException {
+        String fixtureId = "753e8f42bf7d88965be84d3ace555d77";
+
+        when(commcareHttpClient.fixturesRequest(null)).thenReturn(new ConditionalResponse(fixturesResponse(), null));
+
+        CommcareFixture fixture = fixtureService.getCommcareFixtureById(fixtureId);
+
+        assertEquals(fixture.getFields().get("phu_id"), "komende");
+        verify(commcareHttpClient, never()).fixtureRequest(fixtureId);
+    }
+
     @Test
     public void testGetUserWhenUserDoesNotExist() {
         String fixtureId = "badId";
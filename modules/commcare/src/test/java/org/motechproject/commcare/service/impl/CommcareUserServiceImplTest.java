@@ -3,10 +3,17 @@ package org.motechproject.commcare.service.impl;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.commcare.client.ConditionalResponse;
 import org.motechproject.commcare.domain.CommcareUser;
 import org.motechproject.commcare.client.CommCareAPIHttpClient;
+import org.motechproject.server.config.SettingsFacade;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static ch.lambdaj.Lambda.extract;
 import static ch.lambdaj.Lambda.on;
@@ -14,6 +21,10 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -24,15 +35,18 @@ public class CommcareUserServiceImplTest {
     @Mock
     private CommCareAPIHttpClient commcareHttpClient;
 
+    @Mock
+    private SettingsFacade settingsFacade;
+
     @Before
     public void setUp() {
         initMocks(this);
-        userService = new CommcareUserServiceImpl(commcareHttpClient);
+        userService = new CommcareUserServiceImpl(commcareHttpClient, settingsFacade);
     }
 
     @Test
-    public void testAllUsers() {
-        when(commcareHttpClient.usersRequest()).thenReturn(usersResponse());
+    public void testAllUsers() throws IOException {
+        when(commcareHttpClient.usersRequest(null)).thenReturn(new ConditionalResponse(usersResponse(), null));
 
         List<CommcareUser> users = userService.getAllUsers();
 
@@ -42,10 +56,10 @@ public class CommcareUserServiceImplTest {
     }
 
     @Test
-    public void testGetUserWhenUserExists() {
+    public void testGetUserWhenUserExists() throws IOException {
         String userId = "5d622c4336d118a9020d1c758e71de51";
 
-        when(commcareHttpClient.usersRequest()).thenReturn(usersResponse());
+        when(commcareHttpClient.usersRequest(null)).thenReturn(new ConditionalResponse(usersResponse(), null));
 
         CommcareUser user = userService.getCommcareUserById(userId);
 
@@ -53,16 +67,77 @@ public class CommcareUserServiceImplTest {
     }
 
     @Test
-    public void testGetUserWhenUserDoesNotExist() {
+    public void testGetUserWhenUserDoesNotExist() throws IOException {
         String userId = "badId";
 
-        when(commcareHttpClient.usersRequest()).thenReturn(usersResponse());
+        when(commcareHttpClient.usersRequest(null)).thenReturn(new ConditionalResponse(usersResponse(), null));
 
         CommcareUser user = userService.getCommcareUserById(userId);
 
         assertNull(user);
     }
 
+    @Test
+    public void shouldReadUsersOnceAndLookThemUpByIdAndUsername() throws IOException {
+        when(commcareHttpClient.usersRequest(null)).thenReturn(new ConditionalResponse(usersResponse(), null));
+
+        CommcareUser user = userService.getCommcareUserByUsername("russell@usm-motech.commcarehq.org");
+
+        assertEquals("5d622c4336d118a9020d1c758e71f368", user.getId());
+        assertSame(user, userService.getCommcareUserById("5d622c4336d118a9020d1c758e71f368"));
+        assertNull(userService.getCommcareUserByUsername("nobody@usm-motech.commcarehq.org"));
+        verify(commcareHttpClient, times(1)).usersRequest(null);
+    }
+
+    @Test
+    public void shouldRefreshUsersInTheBackgroundWithTheirETagOnceExpired() throws Exception {
+        when(settingsFacade.getProperty(CommcareUserServiceImpl.DIRECTORY_TTL_KEY)).thenReturn("0");
+        userService = new CommcareUserServiceImpl(commcareHttpClient, settingsFacade);
+
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        when(commcareHttpClient.usersRequest(null)).thenReturn(new ConditionalResponse(usersResponse(), "\"v1\""));
+        when(commcareHttpClient.usersRequest("\"v1\"")).thenAnswer(new Answer<ConditionalResponse>() {
+            @Override
+            public ConditionalResponse answer(InvocationOnMock invocation) {
+                refreshed.countDown();
+                return ConditionalResponse.notModified("\"v1\"");
+            }
+        });
+
+        assertNotNull(userService.getCommcareUserById("5d622c4336d118a9020d1c758e71de51"));
+        Thread.sleep(5);
+        assertNotNull(userService.getCommcareUserById("5d622c4336d118a9020d1c758e71de51"));
+
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        verify(commcareHttpClient, times(1)).usersRequest(null);
+    }
+
+    @Test
+    public void shouldReadUsersAgainWhenAUserIsMissing() throws IOException {
+        when(settingsFacade.getProperty(CommcareUserServiceImpl.DIRECTORY_TTL_KEY)).thenReturn("0");
+        userService = new CommcareUserServiceImpl(commcareHttpClient, settingsFacade);
+        when(commcareHttpClient.usersRequest(null)).thenReturn(new ConditionalResponse(usersResponse(), "\"v1\""));
+        when(commcareHttpClient.usersRequest("\"v1\"")).thenReturn(new ConditionalResponse(
+                "{\"objects\": [{\"id\": \"new\", \"username\": \"new@usm-motech.commcarehq.org\"}]}", "\"v2\""));
+        when(commcareHttpClient.usersRequest("\"v2\"")).thenReturn(ConditionalResponse.notModified("\"v2\""));
+
+        assertNotNull(userService.getCommcareUserById("5d622c4336d118a9020d1c758e71de51"));
+        CommcareUser user = userService.getCommcareUserByUsername("new@usm-motech.commcarehq.org");
+
+        assertEquals("new", user.getId());
+    }
+
+    @Test
+    public void shouldNotReadUsersAgainRightAfterFailingTo() throws IOException {
+        when(commcareHttpClient.usersRequest(null)).thenThrow(new IOException("CommCareHQ is down"));
+
+        assertNull(userService.getCommcareUserById("5d622c4336d118a9020d1c758e71de51"));
+        assertNull(userService.getCommcareUserById("5d622c4336d118a9020d1c758e71de51"));
+        assertTrue(userService.getAllUsers().isEmpty());
+
+        verify(commcareHttpClient, times(1)).usersRequest(null);
+    }
+
     private String usersResponse() {
         return "{\"meta\": {\"limit\": 20, \"next\": null, \"offset\": 0, \"previous\": null, \"total_count\": 4}, \"objects\": [{\"default_phone_number\": \"2074503879\", \"email\": \"\", \"first_name\": \"\", \"groups\": [], \"id\": \"3F2504E04F8911D39A0C0305E82C3301\", \"last_name\": \"\", \"phone_numbers\": [\"2074503879\"], \"resource_uri\": \"\", \"user_data\": {\"chw_id\": \"13/43/DFA\"}, \"username\": \"ctsims@usm-motech.commcarehq.org\"}, {\"default_phone_number\": null, \"email\": \"\", \"first_name\": \"\", \"groups\": [], \"id\": \"5d622c4336d118a9020d1c758e71de51\", \"last_name\": \"\", \"phone_numbers\": [], \"resource_uri\": \"\", \"user_data\": {}, \"username\": \"demo_user@usm-motech.commcarehq.org\"}, {\"default_phone_number\": null, \"email\": \"\", \"first_name\": \"\", \"groups\": [], \"id\": \"5d622c4336d118a9020d1c758e71f368\", \"last_name\": \"\", \"phone_numbers\": [], \"resource_uri\": \"\", \"user_data\": {}, \"username\": \"russell@usm-motech.commcarehq.org\"}, {\"default_phone_number\": null, \"email\": \"\", \"first_name\": \"\", \"groups\": [], \"id\": \"5d622c4336d118a9020d1c758e71ea2f\", \"last_name\": \"\", \"phone_numbers\": [], \"resource_uri\": \"\", \"user_data\": {}, \"username\": \"russell2@usm-motech.commcarehq.org\"}]}";
     }
@@ -0,0 +1,216 @@
+package org.motechproject.commcare.service.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.server.config.SettingsFacade;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ForwardingIntakeTest {
+
+    @Mock
+    private SettingsFacade settingsFacade;
+
+    private ForwardingIntake forwardingIntake;
+
+    private File logDir;
+
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+
+    private final ForwardingIntake.Handler handler = new ForwardingIntake.Handler() {
+        @Override
+        public void handle(String body, String header) {
+            handled.add(header);
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        initMocks(this);
+        logDir = Files.createTempDirectory("commcare-forwarding").toFile();
+
+        when(settingsFacade.getProperty(ForwardingIntake.ASYNC_FORWARDING_KEY)).thenReturn("true");
+        when(settingsFacade.getProperty(ForwardingIntake.WORKERS_KEY)).thenReturn("4");
+        when(settingsFacade.getProperty(ForwardingIntake.LOG_DIR_KEY)).thenReturn(logDir.getAbsolutePath());
+
+        forwardingIntake = new ForwardingIntake(settingsFacade);
+    }
+
+    @After
+    public void tearDown() {
+        forwardingIntake.stop();
+        FileUtils.deleteQuietly(logDir);
+    }
+
+    @Test
+    public void shouldProcessPayloadsTakenIn() throws InterruptedException {
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.FORM, handler);
+        forwardingIntake.register(ForwardingIntake.Type.CASE, handler);
+
+        assertTrue(forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "received"));
+        assertTrue(forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml("case1", "2012-04-03T10:00:00"), "modified"));
+        waitUntilProcessed();
+
+        assertEquals(2, handled.size());
+        assertTrue(handled.containsAll(asList("received", "modified")));
+        assertEquals(2, forwardingIntake.getProcessed());
+        assertEquals(0, logDir.list().length);
+    }
+
+    @Test
+    public void shouldDropPayloadsTakenInAlready() throws InterruptedException {
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.FORM, handler);
+        forwardingIntake.register(ForwardingIntake.Type.CASE, handler);
+
+        forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "first");
+        forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "again");
+        forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml("case1", "2012-04-03T10:00:00"), "update");
+        forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml("case1", "2012-04-04T10:00:00"), "next update");
+        waitUntilProcessed();
+
+        assertEquals(3, handled.size());
+        assertFalse(handled.contains("again"));
+        assertEquals(1, forwardingIntake.getDuplicates());
+    }
+
+    @Test
+    public void shouldProcessUpdatesToACaseInOrder() throws InterruptedException {
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.CASE, handler);
+
+        List<String> updates = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            updates.add(String.valueOf(i));
+            forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml("case1", "2012-04-03T10:00:" + i), String.valueOf(i));
+        }
+        waitUntilProcessed();
+
+        assertEquals(updates, handled);
+    }
+
+    @Test
+    public void shouldProcessPayloadsLeftInTheLog() throws IOException, InterruptedException {
+        FileUtils.writeStringToFile(new File(logDir, "0000000000000000007.case"),
+                "modified\n" + caseXml("case1", "2012-04-03T10:00:00"), "UTF-8");
+        FileUtils.writeStringToFile(new File(logDir, "0000000000000000008.case.partial"), "modified\n<case", "UTF-8");
+
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.CASE, handler);
+        waitUntilProcessed();
+
+        assertEquals(asList("modified"), handled);
+        assertEquals(0, logDir.list().length);
+    }
+
+    @Test
+    public void shouldProcessPayloadsLeftInTheLogBeforeThoseTakenInSince() throws IOException, InterruptedException {
+        FileUtils.writeStringToFile(new File(logDir, "0000000000000000007.case"),
+                "logged\n" + caseXml("case1", "2012-04-03T10:00:00"), "UTF-8");
+
+        forwardingIntake.start();
+        forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml("case1", "2012-04-04T10:00:00"), "taken in");
+        forwardingIntake.register(ForwardingIntake.Type.CASE, handler);
+        waitUntilProcessed();
+
+        assertEquals(asList("logged", "taken in"), handled);
+    }
+
+    @Test
+    public void shouldHoldPayloadsUntilSomethingProcessesThem() throws InterruptedException {
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.CASE, handler);
+
+        forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "received");
+        forwardingIntake.accept(ForwardingIntake.Type.CASE, caseXml("case1", "2012-04-03T10:00:00"), "modified");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (forwardingIntake.getQueueDepth() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(asList("modified"), handled);
+        assertEquals(1, forwardingIntake.getQueueDepth());
+
+        forwardingIntake.register(ForwardingIntake.Type.FORM, handler);
+        waitUntilProcessed();
+
+        assertEquals(asList("modified", "received"), handled);
+        assertEquals(0, logDir.list().length);
+    }
+
+    @Test
+    public void shouldKeepPayloadsWhichFailAndTakeThemInAgain() throws InterruptedException {
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.FORM, new ForwardingIntake.Handler() {
+            private boolean failed;
+
+            @Override
+            public void handle(String body, String header) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("database down");
+                }
+                handled.add(header);
+            }
+        });
+
+        forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "first");
+        waitUntilProcessed();
+
+        assertEquals(1, forwardingIntake.getFailed());
+        assertEquals(asList("failed"), asList(logDir.list()));
+        assertEquals(1, new File(logDir, "failed").list().length);
+
+        forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "again");
+        waitUntilProcessed();
+
+        assertEquals(asList("again"), handled);
+        assertEquals(0, forwardingIntake.getDuplicates());
+    }
+
+    @Test
+    public void shouldNotTakeInPayloadsUnlessOn() {
+        when(settingsFacade.getProperty(ForwardingIntake.ASYNC_FORWARDING_KEY)).thenReturn("false");
+        forwardingIntake.start();
+        forwardingIntake.register(ForwardingIntake.Type.FORM, handler);
+
+        assertFalse(forwardingIntake.isEnabled());
+        assertFalse(forwardingIntake.accept(ForwardingIntake.Type.FORM, form("form1"), "received"));
+        assertEquals(0, logDir.list().length);
+    }
+
+    private void waitUntilProcessed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (forwardingIntake.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, forwardingIntake.getQueueDepth());
+    }
+
+    private String form(String instanceId) {
+        return "<data xmlns=\"http://openrosa.org/formdesigner/84FA\"><number>8</number>"
+                + "<n0:meta xmlns:n0=\"http://openrosa.org/jr/xforms\"><n0:instanceID>" + instanceId
+                + "</n0:instanceID></n0:meta></data>";
+    }
+
+    private String caseXml(String caseId, String dateModified) {
+        return "<case xmlns=\"http://commcarehq.org/case/transaction/v2\" case_id=\"" + caseId + "\" date_modified=\""
+                + dateModified + "\"><update><visit_number>1</visit_number></update></case>";
+    }
+}
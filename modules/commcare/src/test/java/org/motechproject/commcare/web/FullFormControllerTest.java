@@ -6,6 +6,7 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.motechproject.commcare.events.constants.EventDataKeys;
+import org.motechproject.commcare.service.impl.ForwardingIntake;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -14,7 +15,10 @@ import java.util.List;
 import java.util.Map;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
 import static org.motechproject.commcare.events.constants.EventDataKeys.RECEIVED_ON;
@@ -30,6 +34,9 @@ public class FullFormControllerTest {
     @Mock
     private EventRelay eventRelay;
 
+    @Mock
+    private ForwardingIntake forwardingIntake;
+
     private FullFormController controller;
     private MockHttpServletRequest request;
 
@@ -37,7 +44,7 @@ public class FullFormControllerTest {
     public void setUp() throws Exception {
         initMocks(this);
 
-        controller = new FullFormController(eventRelay);
+        controller = new FullFormController(eventRelay, forwardingIntake);
 
         request = new MockHttpServletRequest();
         request.addHeader("received-on", "2012-07-21T15:22:34");
@@ -120,6 +127,17 @@ public class FullFormControllerTest {
         assertEquals("9", ((Map<String, Object>) numberElementsList.get(1)).get(EventDataKeys.VALUE));
     }
 
+    @Test
+    public void shouldLeaveFormsTakenInByTheIntakeForLater() {
+        when(forwardingIntake.accept(ForwardingIntake.Type.FORM, getBody(), "2012-07-21T15:22:34")).thenReturn(true);
+
+        controller.receiveForm(getBody(), request);
+
+        verify(forwardingIntake).register(any(ForwardingIntake.Type.class), any(ForwardingIntake.Handler.class));
+        verify(forwardingIntake).accept(ForwardingIntake.Type.FORM, getBody(), "2012-07-21T15:22:34");
+        verifyZeroInteractions(eventRelay);
+    }
+
     private void assertHasKeys(Multimap<String, Object> map, String... keys) {
         for(String key: keys) {
             assertTrue(map.containsKey(key));
@@ -0,0 +1,201 @@
+package org.motechproject.decisiontree;
+
+import org.motechproject.decisiontree.model.FlowSession;
+import org.motechproject.decisiontree.model.ITransition;
+import org.motechproject.decisiontree.model.Node;
+import org.motechproject.decisiontree.model.Transition;
+import org.motechproject.decisiontree.model.Tree;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A decision tree ready to be walked: every node reachable through plain <code>Transition</code>s gets an integer
+ * id, and the destination of each of its transitions is looked up in a flat table instead of being resolved and
+ * autowired again on every call. Transitions and nodes are autowired once, when the tree is compiled.
+ * Ids are given in a fixed order, so a same revision of a tree always gets the same ids.
+ * <p/>
+ * Nodes are shared by every call going through the tree, they must not be changed. Custom <code>ITransition</code>s
+ * are shared too, they're still asked for their destination every time since it may depend on the input and session.
+ */
+public final class CompiledTree {
+    public static final int NO_NODE = -1;
+
+    private final String id;
+    private final String name;
+    private final String revision;
+    private final AutowireCapableBeanFactory beanFactory;
+    private final ITransition rootTransition;
+    private final int rootNodeId;
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<Node, Integer> nodeIds = new IdentityHashMap<>();
+    // for each node id: transition key => destination node id, or NO_NODE when the transition decides at runtime
+    private final List<Map<String, Integer>> destinations = new ArrayList<>();
+
+    private CompiledTree(Tree tree, AutowireCapableBeanFactory beanFactory) {
+        this.id = tree.getId();
+        this.name = tree.getName();
+        this.revision = tree.getRevision();
+        this.beanFactory = beanFactory;
+        this.rootTransition = tree.getRootTransition();
+        autowire(rootTransition);
+        this.rootNodeId = add(staticDestination(rootTransition));
+    }
+
+    /**
+     * Compiles the given tree, autowiring its transitions and nodes with the given bean factory
+     */
+    public static CompiledTree compile(Tree tree, AutowireCapableBeanFactory beanFactory) {
+        if (tree == null || tree.getRootTransition() == null) {
+            throw new IllegalArgumentException(String.format("tree: %s", tree));
+        }
+        return new CompiledTree(tree, beanFactory);
+    }
+
+    private static Node staticDestination(ITransition transition) {
+        return transition instanceof Transition ? ((Transition) transition).getDestinationNode() : null;
+    }
+
+    private int add(Node node) {
+        if (node == null) {
+            return NO_NODE;
+        }
+        Integer existing = nodeIds.get(node);
+        if (existing != null) {
+            return existing;
+        }
+        autowire(node);
+        int id = nodes.size();
+        nodes.add(node);
+        nodeIds.put(node, id);
+        destinations.add(null);
+
+        Map<String, ITransition> transitions = node.getTransitions();
+        Map<String, Integer> nodeDestinations = new HashMap<>(transitions.size() * 2);
+        for (String key : new TreeSet<>(transitions.keySet())) {
+            ITransition transition = transitions.get(key);
+            autowire(transition);
+            nodeDestinations.put(key, add(staticDestination(transition)));
+        }
+        destinations.set(id, Collections.unmodifiableMap(nodeDestinations));
+        return id;
+    }
+
+    private void autowire(Object bean) {
+        if (bean != null && beanFactory != null) {
+            beanFactory.autowireBean(bean);
+        }
+    }
+
+    /**
+     * The id of the tree's document
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public Node getRootNode(FlowSession session) {
+        if (rootNodeId != NO_NODE) {
+            return nodes.get(rootNodeId);
+        }
+        Node node = rootTransition.getDestinationNode(null, session);
+        autowire(node);
+        return node;
+    }
+
+    /**
+     * The node with the given id, null if there's none
+     */
+    public Node getNode(int nodeId) {
+        return (nodeId < 0 || nodeId >= nodes.size()) ? null : nodes.get(nodeId);
+    }
+
+    /**
+     * The id of the given node, NO_NODE if it isn't part of this tree or was built by a custom transition
+     */
+    public int getNodeId(Node node) {
+        Integer id = nodeIds.get(node);
+        return id == null ? NO_NODE : id;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Follows the given transition path from the root node, like TreeNodeLocator.findNode
+     */
+    public Node getNode(String path, FlowSession session) {
+        if (path == null) {
+            throw new IllegalArgumentException(String.format("tree: %s path: null", name));
+        }
+        Node node = getRootNode(session);
+        if (node != null) {
+            for (String key : path.split(TreeNodeLocator.PATH_DELIMITER)) {
+                if (key.isEmpty()) {
+                    continue;
+                }
+                node = getDestinationNode(node, key, session);
+                if (node == null) {
+                    return null;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Where the given input leads from the given node: the transition for that input, or the any key transition.
+     * Null if the node has neither.
+     */
+    public Node getDestinationNode(Node node, String input, FlowSession session) {
+        int nodeId = getNodeId(node);
+        String key = input;
+        Integer destination = null;
+        if (nodeId != NO_NODE) {
+            Map<String, Integer> nodeDestinations = destinations.get(nodeId);
+            destination = nodeDestinations.get(key);
+            if (destination == null) {
+                key = TreeNodeLocator.ANY_KEY;
+                destination = nodeDestinations.get(key);
+            }
+            if (destination == null) {
+                return null;
+            }
+            if (destination != NO_NODE) {
+                return nodes.get(destination);
+            }
+        }
+
+        // a custom transition, or a node which isn't ours
+        ITransition transition = node.getTransitions().get(key);
+        if (transition == null) {
+            transition = node.getTransitions().get(TreeNodeLocator.ANY_KEY);
+        }
+        if (transition == null) {
+            return null;
+        }
+        if (nodeId == NO_NODE) {
+            autowire(transition);
+        }
+        Node destinationNode = transition.getDestinationNode(input, session);
+        if (getNodeId(destinationNode) == NO_NODE) {
+            autowire(destinationNode);
+        }
+        return destinationNode;
+    }
+}
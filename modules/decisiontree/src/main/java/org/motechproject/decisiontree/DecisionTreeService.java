@@ -27,6 +27,14 @@ public interface DecisionTreeService {
     Node getNode(String treeName, String transitionPath, FlowSession session);
     Node getRootNode(String treeName, FlowSession session);
 
+    /**
+     * Fetches the compiled form of a decision tree, compiling it the first time it's asked for
+     *
+     * @param treeName Name of the decision tree
+     * @return the compiled tree, see {@link CompiledTree}
+     */
+    CompiledTree getCompiledTree(String treeName);
+
     List<Tree> getDecisionTrees();
     Tree getDecisionTree(final String treeId);
     void saveDecisionTree(final Tree tree);
@@ -1,5 +1,7 @@
 package org.motechproject.decisiontree;
 
+import org.ektorp.changes.ChangesFeed;
+import org.ektorp.changes.DocumentChange;
 import org.motechproject.decisiontree.model.FlowSession;
 import org.motechproject.decisiontree.model.Node;
 import org.motechproject.decisiontree.model.Tree;
@@ -9,16 +11,32 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.String.format;
 
+/**
+ * Trees are compiled the first time they're walked, and the compiled form is kept until the tree changes: it is
+ * dropped when the tree is saved or deleted through this service, or when the trees database reports a new revision
+ * of it, wherever that came from.
+ */
 @Component
 public class DecisionTreeServiceImpl implements DecisionTreeService {
+    private static final long RECONNECT_DELAY_MILLIS = 10000;
+
     private Logger logger = LoggerFactory.getLogger((this.getClass()));
 
     private AllTrees allTrees;
     private TreeNodeLocator treeNodeLocator;
+    private final ConcurrentMap<String, CompiledTree> compiledTrees = new ConcurrentHashMap<>();
+    // bumped by every save & delete, so that a tree read before one of those doesn't get cached after it
+    private final AtomicLong generation = new AtomicLong();
+    private Thread changesWatcher;
 
     @Autowired
     public DecisionTreeServiceImpl(AllTrees allTrees, TreeNodeLocator treeNodeLocator) {
@@ -26,9 +44,67 @@ public class DecisionTreeServiceImpl implements DecisionTreeService {
         this.treeNodeLocator = treeNodeLocator;
     }
 
+    @PostConstruct
+    public void watchChanges() {
+        changesWatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                followChanges();
+            }
+        }, "decisiontree-changes");
+        changesWatcher.setDaemon(true);
+        changesWatcher.start();
+    }
+
+    @PreDestroy
+    public void stopWatchingChanges() {
+        if (changesWatcher != null) {
+            changesWatcher.interrupt();
+        }
+    }
+
+    private void followChanges() {
+        while (!Thread.currentThread().isInterrupted()) {
+            ChangesFeed feed = null;
+            try {
+                feed = allTrees.changesFeed();
+                // whatever changed while we weren't following isn't in the feed
+                generation.incrementAndGet();
+                compiledTrees.clear();
+                while (feed.isAlive()) {
+                    DocumentChange change = feed.next();
+                    treeChanged(change.getId(), change.getRevision());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.warn(format("Lost the changes feed of the trees database, reconnecting: %s", e.getMessage()));
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } finally {
+                if (feed != null) {
+                    feed.cancel();
+                }
+            }
+        }
+    }
+
+    private void treeChanged(String treeId, String revision) {
+        generation.incrementAndGet();
+        for (CompiledTree compiledTree : compiledTrees.values()) {
+            if (treeId.equals(compiledTree.getId()) && !revision.equals(compiledTree.getRevision())) {
+                logger.info(format("Tree %s changed, it will be compiled again", compiledTree.getName()));
+                compiledTrees.remove(compiledTree.getName(), compiledTree);
+            }
+        }
+    }
+
     @Override
     public Node getNode(String treeName, String path, FlowSession session) {
-        Node node = treeNodeLocator.findNode(findTreeByName(treeName), path, session);
+        Node node = getCompiledTree(treeName).getNode(path, session);
         logger.info(format("Looking for node by path: %s, found: %s", path, node.getPrompts()));
 
         return node;
@@ -36,12 +112,25 @@ public class DecisionTreeServiceImpl implements DecisionTreeService {
 
     @Override
     public Node getRootNode(String treeName, FlowSession session) {
-        Node node = treeNodeLocator.findRootNode(findTreeByName(treeName), session);
+        Node node = getCompiledTree(treeName).getRootNode(session);
         logger.info(format("Looking for node by path: , found: %s", node.getPrompts()));
 
         return node;
     }
 
+    @Override
+    public CompiledTree getCompiledTree(String treeName) {
+        CompiledTree compiledTree = compiledTrees.get(treeName);
+        if (compiledTree == null) {
+            long current = generation.get();
+            compiledTree = treeNodeLocator.compile(findTreeByName(treeName));
+            if (generation.get() == current) {
+                compiledTrees.put(treeName, compiledTree);
+            }
+        }
+        return compiledTree;
+    }
+
     @Override
     public List<Tree> getDecisionTrees() {
         return allTrees.getAll();
@@ -55,6 +144,7 @@ public class DecisionTreeServiceImpl implements DecisionTreeService {
     @Override
     public void saveDecisionTree(final Tree tree) {
         allTrees.addOrReplace(tree);
+        evict(tree.getName());
     }
 
     @Override
@@ -62,6 +152,12 @@ public class DecisionTreeServiceImpl implements DecisionTreeService {
         Tree tree = allTrees.get(treeId);
         logger.info(format("Removing tree with name: %s and id: %s", tree.getName(), tree.getId()));
         allTrees.remove(tree);
+        evict(tree.getName());
+    }
+
+    private void evict(String treeName) {
+        generation.incrementAndGet();
+        compiledTrees.remove(treeName);
     }
 
     private Tree findTreeByName(String treeName) {
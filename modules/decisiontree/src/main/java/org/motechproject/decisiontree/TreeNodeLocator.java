@@ -53,6 +53,13 @@ public class TreeNodeLocator {
         return node;
     }
 
+    /**
+     * Compiles the given tree, see {@link CompiledTree}
+     */
+    public CompiledTree compile(Tree tree) {
+        return CompiledTree.compile(tree, applicationContext.getAutowireCapableBeanFactory());
+    }
+
     public Node findRootNode(Tree tree, FlowSession session) {
         if (tree == null) {
             throw new IllegalArgumentException(String.format("tree: null"));
@@ -1,6 +1,8 @@
 package org.motechproject.decisiontree.repository;
 
 import org.ektorp.CouchDbConnector;
+import org.ektorp.changes.ChangesCommand;
+import org.ektorp.changes.ChangesFeed;
 import org.ektorp.support.GenerateView;
 import org.motechproject.commons.couchdb.dao.MotechBaseRepository;
 import org.motechproject.decisiontree.model.Tree;
@@ -8,6 +10,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 public class AllTrees extends MotechBaseRepository<Tree> {
+    private static final long HEARTBEAT_MILLIS = 30000;
+
     @Autowired
     public AllTrees(@Qualifier("treesDatabase") CouchDbConnector db) {
         super(Tree.class, db);
@@ -21,4 +25,12 @@ public class AllTrees extends MotechBaseRepository<Tree> {
     public void addOrReplace(Tree entity) {
         super.addOrReplace(entity, "name", entity.getName());
     }
+
+    /**
+     * Follows the changes made to the trees from now on, wherever they're made from
+     */
+    public ChangesFeed changesFeed() {
+        return db.changesFeed(new ChangesCommand.Builder().since(db.getDbInfo().getUpdateSeq())
+                .heartbeat(HEARTBEAT_MILLIS).build());
+    }
 }
@@ -1,5 +1,6 @@
 package org.motechproject.ivr.domain;
 
+import org.apache.commons.lang.ObjectUtils;
 import org.ektorp.support.TypeDiscriminator;
 import org.joda.time.DateTime;
 import org.joda.time.Period;
@@ -31,6 +32,7 @@ public class CallDetailRecord extends MotechBaseDataObject implements CallDetail
     private String callId;
     private Integer duration;
     private CallDirection callDirection;
+    private String provider;
 
     private List<CallEventLog> callEventLogs = new ArrayList<CallEventLog>();
 
@@ -171,6 +173,18 @@ public class CallDetailRecord extends MotechBaseDataObject implements CallDetail
         return this;
     }
 
+    /**
+     * Name of the IVR provider the call went through
+     */
+    public String getProvider() {
+        return provider;
+    }
+
+    public CallDetailRecord setProvider(String provider) {
+        this.provider = provider;
+        return this;
+    }
+
     public Map<String, Object> getCustomProperties() {
         return customProperties;
     }
@@ -210,6 +224,38 @@ public class CallDetailRecord extends MotechBaseDataObject implements CallDetail
         return this;
     }
 
+    /**
+     * A copy of this record, without its call events
+     */
+    public CallDetailRecord summary() {
+        CallDetailRecord summary = new CallDetailRecord();
+        summary.startDate = startDate;
+        summary.endDate = endDate;
+        summary.answerDate = answerDate;
+        summary.disposition = disposition;
+        summary.errorMessage = errorMessage;
+        summary.phoneNumber = phoneNumber;
+        summary.callId = callId;
+        summary.duration = duration;
+        summary.callDirection = callDirection;
+        summary.provider = provider;
+        summary.customProperties = new HashMap<>(customProperties);
+        return summary;
+    }
+
+    /**
+     * Whether this record and the given one are the same, their call events aside
+     */
+    public boolean hasSameSummaryAs(CallDetailRecord other) {
+        return other != null && ObjectUtils.equals(startDate, other.startDate)
+                && ObjectUtils.equals(endDate, other.endDate) && ObjectUtils.equals(answerDate, other.answerDate)
+                && disposition == other.disposition && ObjectUtils.equals(errorMessage, other.errorMessage)
+                && ObjectUtils.equals(phoneNumber, other.phoneNumber) && ObjectUtils.equals(callId, other.callId)
+                && ObjectUtils.equals(duration, other.duration) && callDirection == other.callDirection
+                && ObjectUtils.equals(provider, other.provider)
+                && ObjectUtils.equals(customProperties, other.customProperties);
+    }
+
     /**
      * Get last call event for current call.
      *
@@ -0,0 +1,24 @@
+package org.motechproject.ivr.domain;
+
+import java.util.List;
+
+/**
+ * A page of the call records found by a search, along with how many records the search found in all
+ */
+public class CallDetailRecordsPage {
+    private final List<CallDetailRecord> records;
+    private final long totalRecords;
+
+    public CallDetailRecordsPage(List<CallDetailRecord> records, long totalRecords) {
+        this.records = records;
+        this.totalRecords = totalRecords;
+    }
+
+    public List<CallDetailRecord> getRecords() {
+        return records;
+    }
+
+    public long getTotalRecords() {
+        return totalRecords;
+    }
+}
@@ -0,0 +1,73 @@
+package org.motechproject.ivr.domain;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.ektorp.support.TypeDiscriminator;
+import org.joda.time.DateTime;
+import org.motechproject.commons.couchdb.model.MotechBaseDataObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One entry of a call's event log: a call event, along with the id of the call and its position among the call's
+ * events. The document id is made of the call id and of what the event is - when it happened, its name, and how many
+ * events of that name happened at that same time before it - rather than of its position, so that logging the same
+ * event twice fails instead of duplicating it, while two events logged at the same position from different copies of
+ * a call's record don't clash.
+ */
+@TypeDiscriminator("doc.type === 'CallEventRecord'")
+public class CallEventRecord extends MotechBaseDataObject {
+
+    @JsonProperty
+    private String callId;
+    @JsonProperty
+    private int sequence;
+    @JsonProperty
+    private CallEventLog callEvent;
+
+    private CallEventRecord() {
+    }
+
+    private CallEventRecord(String callId, int sequence, int occurrence, CallEventLog callEvent) {
+        DateTime timeStamp = callEvent.getTimeStamp();
+        setId(String.format("%s:%d:%s:%d", callId, timeStamp == null ? 0 : timeStamp.getMillis(), callEvent.getName(),
+                occurrence));
+        this.callId = callId;
+        this.sequence = sequence;
+        this.callEvent = callEvent;
+    }
+
+    /**
+     * The entries of the given events of the given call, in the same order
+     */
+    public static List<CallEventRecord> recordsOf(String callId, List<CallEventLog> callEvents) {
+        List<CallEventRecord> records = new ArrayList<>(callEvents.size());
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (int i = 0; i < callEvents.size(); i++) {
+            CallEventLog callEvent = callEvents.get(i);
+            String key = callEvent.getTimeStamp() + " " + callEvent.getName();
+            Integer occurrence = occurrences.get(key);
+            occurrence = occurrence == null ? 0 : occurrence + 1;
+            occurrences.put(key, occurrence);
+            records.add(new CallEventRecord(callId, i, occurrence, callEvent));
+        }
+        return records;
+    }
+
+    public String getCallId() {
+        return callId;
+    }
+
+    /**
+     * Position of the event among the events of the call's record it was logged from
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public CallEventLog getCallEvent() {
+        return callEvent;
+    }
+}
@@ -0,0 +1,156 @@
+package org.motechproject.ivr.domain;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.ektorp.support.TypeDiscriminator;
+import org.joda.time.DateTime;
+import org.motechproject.commons.couchdb.model.MotechBaseDataObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of the calls made in one period (an hour or a day), in one direction, through one provider: how many there
+ * were by disposition, how long they lasted and how those durations are spread. Kept up to date as calls end, so that
+ * statistics over a period don't have to go through all of its call detail records.
+ */
+@TypeDiscriminator("doc.type === 'CallRollup'")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CallRollup extends MotechBaseDataObject {
+
+    /**
+     * Lower bounds, in seconds, of the buckets of the duration histogram
+     */
+    public static final int[] DURATION_BUCKETS = {0, 10, 30, 60, 120, 300, 600, 1800};
+
+    private static final String UNKNOWN = "unknown";
+
+    @JsonProperty
+    private RollupPeriod period;
+    @JsonProperty
+    private String periodKey;
+    @JsonProperty
+    private DateTime periodStart;
+    @JsonProperty
+    private CallDirection direction;
+    @JsonProperty
+    private String provider;
+    @JsonProperty
+    private long calls;
+    @JsonProperty
+    private Map<CallDisposition, Long> dispositions = new HashMap<>();
+    @JsonProperty
+    private long totalDuration;
+    @JsonProperty
+    private long[] durationHistogram = new long[DURATION_BUCKETS.length];
+
+    private CallRollup() {
+    }
+
+    public CallRollup(RollupPeriod period, DateTime time, CallDirection direction, String provider) {
+        setId(idFor(period, time, direction, provider));
+        this.period = period;
+        this.periodKey = period.keyOf(time);
+        this.periodStart = period.startOf(time);
+        this.direction = direction;
+        this.provider = provider;
+    }
+
+    public static String idFor(RollupPeriod period, DateTime time, CallDirection direction, String provider) {
+        return String.format("%s:%s:%s:%s", period, period.keyOf(time),
+                direction == null ? UNKNOWN : direction, provider == null ? UNKNOWN : provider);
+    }
+
+    /**
+     * Counts the given call in
+     */
+    public CallRollup include(CallDetailRecord callDetailRecord) {
+        return count(callDetailRecord, 1);
+    }
+
+    /**
+     * Counts the given call, as it was counted in, out again
+     */
+    public CallRollup exclude(CallDetailRecord callDetailRecord) {
+        return count(callDetailRecord, -1);
+    }
+
+    private CallRollup count(CallDetailRecord callDetailRecord, int delta) {
+        calls += delta;
+        CallDisposition disposition = callDetailRecord.getDisposition() == null ? CallDisposition.UNKNOWN
+                : callDetailRecord.getDisposition();
+        Long count = dispositions.get(disposition);
+        dispositions.put(disposition, (count == null ? 0 : count) + delta);
+
+        Integer duration = callDetailRecord.getDuration();
+        if (duration != null) {
+            totalDuration += delta * duration;
+            durationHistogram[bucketOf(duration)] += delta;
+        }
+        return this;
+    }
+
+    private static int bucketOf(int duration) {
+        int bucket = 0;
+        while (bucket + 1 < DURATION_BUCKETS.length && duration >= DURATION_BUCKETS[bucket + 1]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    public RollupPeriod getPeriod() {
+        return period;
+    }
+
+    public String getPeriodKey() {
+        return periodKey;
+    }
+
+    public DateTime getPeriodStart() {
+        return periodStart;
+    }
+
+    public CallDirection getDirection() {
+        return direction;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public Map<CallDisposition, Long> getDispositions() {
+        return dispositions;
+    }
+
+    public long getCalls(CallDisposition disposition) {
+        Long count = dispositions.get(disposition);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Sum of the durations of the calls, in seconds
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * How many calls lasted how long, bucket i counts those which lasted at least DURATION_BUCKETS[i] seconds and
+     * less than DURATION_BUCKETS[i + 1]
+     */
+    public long[] getDurationHistogram() {
+        return durationHistogram;
+    }
+
+    /**
+     * The share of the calls which were answered, between 0 and 1. Written along with the counts, for the UI, and
+     * worked out again from them when read.
+     */
+    public double getAnswerRate() {
+        return calls == 0 ? 0 : (double) getCalls(CallDisposition.ANSWERED) / calls;
+    }
+}
@@ -0,0 +1,31 @@
+package org.motechproject.ivr.domain;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * The periods calls are rolled up over, see CallRollup. Periods are in UTC.
+ */
+public enum RollupPeriod {
+    HOUR("yyyy-MM-dd'T'HH"), DAY("yyyy-MM-dd");
+
+    private final DateTimeFormatter formatter;
+
+    private RollupPeriod(String pattern) {
+        this.formatter = DateTimeFormat.forPattern(pattern).withZoneUTC();
+    }
+
+    /**
+     * Identifies the period the given time falls in. Keys of later periods sort after those of earlier ones.
+     */
+    public String keyOf(DateTime time) {
+        return formatter.print(time);
+    }
+
+    public DateTime startOf(DateTime time) {
+        DateTime utc = time.withZone(DateTimeZone.UTC);
+        return this == HOUR ? utc.hourOfDay().roundFloorCopy() : utc.dayOfMonth().roundFloorCopy();
+    }
+}
@@ -15,6 +15,7 @@ import org.ektorp.impl.StdCouchDbInstance;
 import org.ektorp.support.View;
 import org.joda.time.DateTime;
 import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordsPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
@@ -36,6 +37,12 @@ import static org.motechproject.commons.date.util.DateUtil.setTimeZoneUTC;
 @Repository
 public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<CallDetailRecord> {
 
+    private static final long MAX_CALL_DURATION_TTL_MILLIS = 60 * 1000;
+
+    // the maxCallDuration reduce goes over every record, its result is kept for a while
+    private volatile long maxCallDuration;
+    private volatile long maxCallDurationReadAt;
+
     @Autowired
     protected AllCallDetailRecords(@Qualifier("callLogDbConnector") CouchDbConnector db)
             throws IOException {
@@ -48,19 +55,44 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
         if (existing == null) {
             add(callDetailRecord);
         } else {
-            existing.setCallDirection(callDetailRecord.getCallDirection());
-            existing.setDisposition(callDetailRecord.getDisposition());
-            existing.setAnswerDate(callDetailRecord.getAnswerDate());
-            existing.setDuration(callDetailRecord.getDuration());
-            existing.setCustomProperties(callDetailRecord.getCustomProperties());
             existing.setCallEvents(callDetailRecord.getCallEvents());
-            existing.setStartDate(callDetailRecord.getStartDate());
-            existing.setEndDate(callDetailRecord.getEndDate());
-            existing.setErrorMessage(callDetailRecord.getErrorMessage());
-            existing.setPhoneNumber(callDetailRecord.getPhoneNumber());
+            copySummary(callDetailRecord, existing);
+            update(existing);
+        }
+        recordCallDuration(callDetailRecord);
+    }
 
+    /**
+     * Writes the given record without its events, those are kept in the call's event log, see AllCallEventRecords.
+     * Events written along with the record before that are left as they are.
+     *
+     * @return the record as it was written before, without its events; null if it wasn't
+     */
+    public CallDetailRecord addOrUpdateSummary(CallDetailRecord callDetailRecord) {
+        CallDetailRecord existing = findByCallId(callDetailRecord.getCallId());
+        CallDetailRecord previous = null;
+        if (existing == null) {
+            add(callDetailRecord.summary());
+        } else {
+            previous = existing.summary();
+            copySummary(callDetailRecord, existing);
             update(existing);
         }
+        recordCallDuration(callDetailRecord);
+        return previous;
+    }
+
+    private void copySummary(CallDetailRecord from, CallDetailRecord to) {
+        to.setCallDirection(from.getCallDirection());
+        to.setProvider(from.getProvider());
+        to.setDisposition(from.getDisposition());
+        to.setAnswerDate(from.getAnswerDate());
+        to.setDuration(from.getDuration());
+        to.setCustomProperties(from.getCustomProperties());
+        to.setStartDate(from.getStartDate());
+        to.setEndDate(from.getEndDate());
+        to.setErrorMessage(from.getErrorMessage());
+        to.setPhoneNumber(from.getPhoneNumber());
     }
 
     /**
@@ -85,9 +117,12 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
                              DateTime endToTime, Integer minDurationInSeconds,
                              Integer maxDurationInSeconds, List<String> dispositions,
                              List<String> directions) {
-        StringBuilder queryString = generateQueryString(phoneNumber, startFromTime, startToTime, answerFromTime,
-                answerToTime, endFromTime, endToTime, minDurationInSeconds, maxDurationInSeconds, dispositions, directions);
-        return runQuery(queryString, null, false).size();
+        StringBuilder queryString = generateQueryString(phoneNumber, setTimeZoneUTC(startFromTime),
+                setTimeZoneUTC(startToTime), setTimeZoneUTC(answerFromTime),
+                setTimeZoneUTC(answerToTime), setTimeZoneUTC(endFromTime),
+                setTimeZoneUTC(endToTime), minDurationInSeconds, maxDurationInSeconds, dispositions, directions);
+        // only the total is needed, not the documents
+        return runQuery(queryString, null, false, 0, 1, false).getTotalRows();
     }
 
     @View(name = "maxCallDuration", map = "function(doc){ emit(null, doc.duration);}",
@@ -99,11 +134,26 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
                     "    return max;" +
                     "}")
     public long findMaxCallDuration() {
+        long now = System.currentTimeMillis();
+        if (now - maxCallDurationReadAt < MAX_CALL_DURATION_TTL_MILLIS) {
+            return maxCallDuration;
+        }
+        long max = 0;
         ViewResult result = db.queryView(createQuery("maxCallDuration").reduce(true));
         if (!result.isEmpty() && result.iterator().hasNext()) {
-            return Integer.valueOf(result.iterator().next().getValue());
+            max = Integer.valueOf(result.iterator().next().getValue());
+        }
+        maxCallDuration = max;
+        maxCallDurationReadAt = now;
+        return max;
+    }
+
+    // longer calls written here show up right away, those written elsewhere once the cached max is read again
+    private void recordCallDuration(CallDetailRecord callDetailRecord) {
+        Integer duration = callDetailRecord.getDuration();
+        if (duration != null && duration > maxCallDuration) {
+            maxCallDuration = duration;
         }
-        return 0;
     }
 
 
@@ -156,6 +206,24 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
                                          Integer maxDurationInSeconds,
                                          List<String> dispositions, List<String> directions,
                                          String sortBy, boolean reverse) {
+        return search(phoneNumber, startFromTime, startToTime, answerFromTime, answerToTime, endFromTime, endToTime,
+                minDurationInSeconds, maxDurationInSeconds, dispositions, directions, sortBy, reverse, 0, null)
+                .getRecords();
+    }
+
+    /**
+     * Same as the other search, only returns a page of the records found, along with how many were found in all
+     *
+     * @param skip  how many of the records found to skip
+     * @param limit how many records to return at most, all of them if null
+     */
+    public CallDetailRecordsPage search(String phoneNumber, DateTime startFromTime, //NO CHECKSTYLE ParameterNumber
+                                         DateTime startToTime, DateTime answerFromTime,
+                                         DateTime answerToTime, DateTime endFromTime,
+                                         DateTime endToTime, Integer minDurationInSeconds,
+                                         Integer maxDurationInSeconds,
+                                         List<String> dispositions, List<String> directions,
+                                         String sortBy, boolean reverse, int skip, Integer limit) {
 
         StringBuilder queryString = generateQueryString(phoneNumber, setTimeZoneUTC(startFromTime),
                 setTimeZoneUTC(startToTime), setTimeZoneUTC(answerFromTime),
@@ -170,7 +238,8 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
             }
         }
 
-        return runQuery(queryString, sortColumn, reverse);
+        CustomLuceneResult<CallDetailRecord> result = runQuery(queryString, sortColumn, reverse, skip, limit, true);
+        return new CallDetailRecordsPage(convert2Calllogs(result.getRows()), result.getTotalRows());
     }
 
 
@@ -202,7 +271,8 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
             minDuration = 0;
         }
         if (maxDurationInSeconds == null) {
-            maxDuration = (int) findMaxCallDuration();
+            // no upper bound, rather than the longest call so far
+            maxDuration = Integer.MAX_VALUE;
         }
         queryString.append(String.format("duration<int>:[%d TO %d]", minDuration, maxDuration));
         if (StringUtils.isNotBlank(phoneNumber)) {
@@ -249,12 +319,19 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
         }
     }
 
-    private List<CallDetailRecord> runQuery(StringBuilder queryString,
-                                            String sortBy, boolean reverse) {
+    private CustomLuceneResult<CallDetailRecord> runQuery(StringBuilder queryString, //NO CHECKSTYLE ParameterNumber
+                                                          String sortBy, boolean reverse, int skip, Integer limit,
+                                                          boolean includeDocs) {
         LuceneQuery query = new LuceneQuery("CallDetailRecord", "search");
         query.setQuery(queryString.toString());
         query.setStaleOk(false);
-        query.setIncludeDocs(true);
+        query.setIncludeDocs(includeDocs);
+        if (skip > 0) {
+            query.setSkip(skip);
+        }
+        if (limit != null) {
+            query.setLimit(limit);
+        }
         if (!isBlank(sortBy)) {
             String sortString = reverse ? "\\" + sortBy : sortBy;
             query.setSort(sortString);
@@ -262,8 +339,7 @@ public class AllCallDetailRecords extends CouchDbRepositorySupportWithLucene<Cal
         TypeReference<CustomLuceneResult<CallDetailRecord>> typeRef
                 = new TypeReference<CustomLuceneResult<CallDetailRecord>>() {
         };
-        CustomLuceneResult<CallDetailRecord> result = db.queryLucene(query, typeRef);
-        return convert2Calllogs(result.getRows());
+        return db.queryLucene(query, typeRef);
     }
 
     private List<CallDetailRecord> convert2Calllogs(List<CustomLuceneResult.Row<CallDetailRecord>> logRows) {
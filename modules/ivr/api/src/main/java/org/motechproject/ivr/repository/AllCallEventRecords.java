@@ -0,0 +1,94 @@
+package org.motechproject.ivr.repository;
+
+import org.ektorp.CouchDbConnector;
+import org.ektorp.DbAccessException;
+import org.ektorp.DocumentOperationResult;
+import org.ektorp.ViewQuery;
+import org.ektorp.support.View;
+import org.joda.time.DateTime;
+import org.motechproject.commons.couchdb.dao.MotechBaseRepository;
+import org.motechproject.ivr.domain.CallEventLog;
+import org.motechproject.ivr.domain.CallEventRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The event logs of calls: events are only ever appended, one document each, instead of rewriting the whole call
+ * detail record every time one happens.
+ */
+@Repository
+public class AllCallEventRecords extends MotechBaseRepository<CallEventRecord> {
+
+    private static final String CONFLICT = "conflict";
+
+    @Autowired
+    protected AllCallEventRecords(@Qualifier("callEventDbConnector") CouchDbConnector db) {
+        super(CallEventRecord.class, db);
+    }
+
+    /**
+     * Appends the given entries to the logs of their calls, in one request. Entries which are logged already are
+     * left as they are.
+     */
+    public void append(List<CallEventRecord> records) {
+        for (DocumentOperationResult result : db.executeBulk(records)) {
+            // a conflict means the event is logged already, by an earlier attempt or from another copy of the record
+            if (!CONFLICT.equals(result.getError())) {
+                throw new DbAccessException(String.format("Unable to log call event %s: %s %s", result.getId(),
+                        result.getError(), result.getReason()));
+            }
+        }
+    }
+
+    @View(name = "by_call_id", map = "function(doc) { if (doc.type === 'CallEventRecord') { emit(doc.callId, doc.sequence); } }")
+    public List<CallEventLog> findByCallId(String callId) {
+        List<CallEventLog> callEvents = findByCallIds(Collections.singletonList(callId)).get(callId);
+        return callEvents == null ? new ArrayList<CallEventLog>() : callEvents;
+    }
+
+    /**
+     * The logged events of the given calls, in the order they happened, by call id. Calls which have none logged are
+     * left out.
+     */
+    public Map<String, List<CallEventLog>> findByCallIds(Collection<String> callIds) {
+        Map<String, List<CallEventLog>> callEvents = new HashMap<>();
+        if (callIds.isEmpty()) {
+            return callEvents;
+        }
+        ViewQuery query = createQuery("by_call_id").keys(callIds).includeDocs(true);
+        List<CallEventRecord> records = db.queryView(query, CallEventRecord.class);
+        Collections.sort(records, new Comparator<CallEventRecord>() {
+            @Override
+            public int compare(CallEventRecord record1, CallEventRecord record2) {
+                DateTime time1 = record1.getCallEvent().getTimeStamp();
+                DateTime time2 = record2.getCallEvent().getTimeStamp();
+                int byTime;
+                if (time1 == null || time2 == null) {
+                    // events without a time go first, so that the order stays consistent
+                    byTime = time1 == null ? (time2 == null ? 0 : -1) : 1;
+                } else {
+                    byTime = time1.compareTo(time2);
+                }
+                return byTime != 0 ? byTime : Integer.compare(record1.getSequence(), record2.getSequence());
+            }
+        });
+        for (CallEventRecord record : records) {
+            List<CallEventLog> events = callEvents.get(record.getCallId());
+            if (events == null) {
+                events = new ArrayList<>();
+                callEvents.put(record.getCallId(), events);
+            }
+            events.add(record.getCallEvent());
+        }
+        return callEvents;
+    }
+}
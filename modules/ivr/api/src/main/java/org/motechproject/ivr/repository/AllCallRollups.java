@@ -0,0 +1,111 @@
+package org.motechproject.ivr.repository;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.ektorp.ComplexKey;
+import org.ektorp.CouchDbConnector;
+import org.ektorp.UpdateConflictException;
+import org.ektorp.ViewQuery;
+import org.ektorp.support.View;
+import org.joda.time.DateTime;
+import org.motechproject.commons.couchdb.dao.MotechBaseRepository;
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallRollup;
+import org.motechproject.ivr.domain.RollupPeriod;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Hourly and daily rollups of the calls made, see CallRollup. Each call is counted into the rollups of its period,
+ * direction and provider once it has ended; reading the statistics of a period takes one rollup per direction and
+ * provider, however many calls were made.
+ */
+@Repository
+public class AllCallRollups extends MotechBaseRepository<CallRollup> {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    @Autowired
+    protected AllCallRollups(@Qualifier("callRollupDbConnector") CouchDbConnector db) {
+        super(CallRollup.class, db);
+    }
+
+    /**
+     * Counts the given call, which has ended, into the hourly and daily rollups it belongs to. Calls are placed in the
+     * period they started in.
+     */
+    public void include(CallDetailRecord callDetailRecord) {
+        for (RollupPeriod period : RollupPeriod.values()) {
+            count(period, callDetailRecord, true);
+        }
+    }
+
+    /**
+     * Counts the given call, which has ended, into its rollups in place of what was counted of it before
+     *
+     * @param previous the call as it was last written, only counted out if it had ended too; null if it wasn't written
+     */
+    public void recount(CallDetailRecord previous, CallDetailRecord current) {
+        if (previous == null || previous.getEndDate() == null) {
+            include(current);
+        } else if (!countedAlike(previous, current)) {
+            for (RollupPeriod period : RollupPeriod.values()) {
+                count(period, previous, false);
+                count(period, current, true);
+            }
+        }
+    }
+
+    private static boolean countedAlike(CallDetailRecord record1, CallDetailRecord record2) {
+        return timeOf(record1).isEqual(timeOf(record2)) && record1.getCallDirection() == record2.getCallDirection()
+                && ObjectUtils.equals(record1.getProvider(), record2.getProvider())
+                && record1.getDisposition() == record2.getDisposition()
+                && ObjectUtils.equals(record1.getDuration(), record2.getDuration());
+    }
+
+    private static DateTime timeOf(CallDetailRecord callDetailRecord) {
+        return callDetailRecord.getStartDate() != null ? callDetailRecord.getStartDate()
+                : callDetailRecord.getEndDate();
+    }
+
+    private void count(RollupPeriod period, CallDetailRecord callDetailRecord, boolean in) {
+        DateTime time = timeOf(callDetailRecord);
+        String id = CallRollup.idFor(period, time, callDetailRecord.getCallDirection(), callDetailRecord.getProvider());
+        for (int attempt = 1;; attempt++) {
+            CallRollup rollup = db.find(CallRollup.class, id);
+            try {
+                if (rollup == null) {
+                    if (!in) {
+                        // never counted in
+                        return;
+                    }
+                    rollup = new CallRollup(period, time, callDetailRecord.getCallDirection(),
+                            callDetailRecord.getProvider());
+                    db.create(rollup.include(callDetailRecord));
+                } else {
+                    db.update(in ? rollup.include(callDetailRecord) : rollup.exclude(callDetailRecord));
+                }
+                return;
+            } catch (UpdateConflictException e) {
+                // another call of the same period got counted meanwhile, count this one into the new revision
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * The rollups of the given kind of the periods between the ones the given times fall in, both included
+     */
+    @View(name = "by_period", map = "function(doc) { if (doc.type === 'CallRollup') { emit([doc.period, doc.periodKey], null); } }")
+    public List<CallRollup> findByPeriod(RollupPeriod period, DateTime from, DateTime to) {
+        ViewQuery query = createQuery("by_period")
+                .startKey(ComplexKey.of(period.name(), period.keyOf(from)))
+                .endKey(ComplexKey.of(period.name(), period.keyOf(to)))
+                .includeDocs(true);
+        return db.queryView(query, CallRollup.class);
+    }
+}
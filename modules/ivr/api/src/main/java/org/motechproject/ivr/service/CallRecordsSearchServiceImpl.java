@@ -1,35 +1,63 @@
 package org.motechproject.ivr.service;
 
+import org.joda.time.DateTime;
 import org.motechproject.commons.couchdb.query.QueryParam;
 import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordsPage;
 import org.motechproject.ivr.domain.CallDirection;
 import org.motechproject.ivr.domain.CallDisposition;
+import org.motechproject.ivr.domain.CallEventLog;
 import org.motechproject.ivr.domain.CallRecordSearchParameters;
+import org.motechproject.ivr.domain.CallRollup;
+import org.motechproject.ivr.domain.RollupPeriod;
 import org.motechproject.ivr.repository.AllCallDetailRecords;
+import org.motechproject.ivr.repository.AllCallEventRecords;
+import org.motechproject.ivr.repository.AllCallRollups;
 import org.motechproject.ivr.service.contract.CallRecordsSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Provides convenient methods for searching call records.
+ * Provides convenient methods for searching call records. The records found come with their events, read from the
+ * calls' event logs.
  */
 
 @Service
 public class CallRecordsSearchServiceImpl implements CallRecordsSearchService {
     private AllCallDetailRecords allCallDetailRecords;
+    private AllCallEventRecords allCallEventRecords;
+    private AllCallRollups allCallRollups;
 
     @Autowired
-    public CallRecordsSearchServiceImpl(AllCallDetailRecords allCallDetailRecords) {
+    public CallRecordsSearchServiceImpl(AllCallDetailRecords allCallDetailRecords, AllCallEventRecords allCallEventRecords,
+                                        AllCallRollups allCallRollups) {
         this.allCallDetailRecords = allCallDetailRecords;
+        this.allCallEventRecords = allCallEventRecords;
+        this.allCallRollups = allCallRollups;
     }
 
     @Override
     public List<CallDetailRecord> search(CallRecordSearchParameters callLogSearchParameters) {
+        return searchPage(callLogSearchParameters).getRecords();
+    }
+
+    /**
+     * Only the page of records asked for by the query param of the given parameters is read, all of them if it
+     * doesn't ask for a number of records per page. Pages are numbered from 1.
+     */
+    @Override
+    public CallDetailRecordsPage searchPage(CallRecordSearchParameters callLogSearchParameters) {
         QueryParam queryParam = callLogSearchParameters.getQueryParam();
-        return allCallDetailRecords.search(callLogSearchParameters.getPhoneNumber(),
+        int recordsPerPage = queryParam.getRecordsPerPage();
+        Integer limit = recordsPerPage > 0 ? recordsPerPage : null;
+        int skip = limit == null ? 0 : (Math.max(queryParam.getPageNumber(), 1) - 1) * recordsPerPage;
+        CallDetailRecordsPage page = allCallDetailRecords.search(callLogSearchParameters.getPhoneNumber(),
                 callLogSearchParameters.getStartFromDateAsDateTime(),
                 callLogSearchParameters.getStartToDateAsDateTime(),
                 callLogSearchParameters.getAnswerFromDateAsDateTime(),
@@ -39,7 +67,27 @@ public class CallRecordsSearchServiceImpl implements CallRecordsSearchService {
                 callLogSearchParameters.getMinDuration(),
                 callLogSearchParameters.getMaxDuration(),
                 mapToDispositions(callLogSearchParameters), mapToDirections(callLogSearchParameters),
-                queryParam.getSortBy(), queryParam.isReverse());
+                queryParam.getSortBy(), queryParam.isReverse(), skip, limit);
+        withCallEvents(page.getRecords());
+        return page;
+    }
+
+    // records written before calls had an event log carry their events themselves
+    private List<CallDetailRecord> withCallEvents(List<CallDetailRecord> callDetailRecords) {
+        Set<String> callIds = new HashSet<>();
+        for (CallDetailRecord callDetailRecord : callDetailRecords) {
+            if (callDetailRecord.getCallId() != null) {
+                callIds.add(callDetailRecord.getCallId());
+            }
+        }
+        Map<String, List<CallEventLog>> callEvents = allCallEventRecords.findByCallIds(callIds);
+        for (CallDetailRecord callDetailRecord : callDetailRecords) {
+            List<CallEventLog> loggedEvents = callEvents.get(callDetailRecord.getCallId());
+            if (loggedEvents != null) {
+                callDetailRecord.setCallEvents(loggedEvents);
+            }
+        }
+        return callDetailRecords;
     }
 
     /**
@@ -49,7 +97,14 @@ public class CallRecordsSearchServiceImpl implements CallRecordsSearchService {
      */
     @Override
     public long count(CallRecordSearchParameters callLogSearchParameters) {
-        double numOfPages = allCallDetailRecords.countRecords(callLogSearchParameters.getPhoneNumber(),
+        double numOfPages = countRecords(callLogSearchParameters) /
+                (callLogSearchParameters.getQueryParam().getRecordsPerPage() * 1.0);
+        return Math.round(Math.ceil(numOfPages));
+    }
+
+    @Override
+    public long countRecords(CallRecordSearchParameters callLogSearchParameters) {
+        return allCallDetailRecords.countRecords(callLogSearchParameters.getPhoneNumber(),
                 callLogSearchParameters.getStartFromDateAsDateTime(),
                 callLogSearchParameters.getStartToDateAsDateTime(),
                 callLogSearchParameters.getAnswerFromDateAsDateTime(),
@@ -58,9 +113,7 @@ public class CallRecordsSearchServiceImpl implements CallRecordsSearchService {
                 callLogSearchParameters.getEndToDateAsDateTime(),
                 callLogSearchParameters.getMinDuration(),
                 callLogSearchParameters.getMaxDuration(), mapToDispositions(callLogSearchParameters),
-                mapToDirections(callLogSearchParameters)) /
-                (callLogSearchParameters.getQueryParam().getRecordsPerPage() * 1.0);
-        return Math.round(Math.ceil(numOfPages));
+                mapToDirections(callLogSearchParameters));
     }
 
     @Override
@@ -73,6 +126,11 @@ public class CallRecordsSearchServiceImpl implements CallRecordsSearchService {
         return allCallDetailRecords.findMaxCallDuration();
     }
 
+    @Override
+    public List<CallRollup> findRollups(RollupPeriod period, DateTime from, DateTime to) {
+        return allCallRollups.findByPeriod(period, from, to);
+    }
+
     //Takes the given Call Record Search Parameters and returns a list of all dispositions
     //in the parameters
     private List<String> mapToDispositions(CallRecordSearchParameters callLogSearchParameters) {
@@ -1,26 +1,117 @@
 package org.motechproject.ivr.service;
 
 import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallEventRecord;
 import org.motechproject.ivr.repository.AllCallDetailRecords;
+import org.motechproject.ivr.repository.AllCallEventRecords;
+import org.motechproject.ivr.repository.AllCallRollups;
 import org.motechproject.ivr.service.contract.CallRecordsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
- * Service used for persisting call detail records.
+ * Service used for persisting call detail records. The events of a call are appended to its event log as they come,
+ * the record itself is written, without its events, whenever it changed. What was written of the calls seen lately
+ * is remembered here, so that handing the same record over again costs nothing; for other calls the event log skips
+ * the events it has already. Once written after the call ended, the call is counted into the call rollups, in place
+ * of what was counted of it before, see AllCallRollups.
  */
 @Service("callRecordsService")
 public class CallRecordsServiceImpl implements CallRecordsService {
 
+    private static final int REMEMBERED_CALLS = 10000;
+
     private AllCallDetailRecords allCallDetailRecords;
+    private AllCallEventRecords allCallEventRecords;
+    private AllCallRollups allCallRollups;
+
+    private final Map<String, CallLog> callLogs = Collections.synchronizedMap(new LinkedHashMap<String, CallLog>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CallLog> eldest) {
+            return size() > REMEMBERED_CALLS;
+        }
+    });
+
+    private Logger logger = LoggerFactory.getLogger(CallRecordsServiceImpl.class);
 
     @Autowired
-    public CallRecordsServiceImpl(AllCallDetailRecords allCallDetailRecords) {
+    public CallRecordsServiceImpl(AllCallDetailRecords allCallDetailRecords, AllCallEventRecords allCallEventRecords,
+                                  AllCallRollups allCallRollups) {
         this.allCallDetailRecords = allCallDetailRecords;
+        this.allCallEventRecords = allCallEventRecords;
+        this.allCallRollups = allCallRollups;
     }
 
     public void add(CallDetailRecord callDetailRecord) {
-        allCallDetailRecords.addOrUpdate(callDetailRecord);
+        if (callDetailRecord.getCallId() == null) {
+            // nothing to key its event log on
+            allCallDetailRecords.addOrUpdate(callDetailRecord);
+            return;
+        }
+
+        CallLog callLog = callLogFor(callDetailRecord.getCallId());
+        synchronized (callLog) {
+            List<CallEventRecord> newEvents = new ArrayList<>();
+            for (CallEventRecord record : CallEventRecord.recordsOf(callDetailRecord.getCallId(),
+                    callDetailRecord.getCallEvents())) {
+                if (!callLog.loggedEvents.contains(record.getId())) {
+                    newEvents.add(record);
+                }
+            }
+            if (!newEvents.isEmpty()) {
+                allCallEventRecords.append(newEvents);
+                for (CallEventRecord record : newEvents) {
+                    callLog.loggedEvents.add(record.getId());
+                }
+            }
+
+            if (!callDetailRecord.hasSameSummaryAs(callLog.summary)) {
+                CallDetailRecord summary = callDetailRecord.summary();
+                CallDetailRecord previous = allCallDetailRecords.addOrUpdateSummary(callDetailRecord);
+                callLog.summary = summary;
+                if (summary.getEndDate() != null) {
+                    rollUp(previous, summary);
+                }
+            }
+        }
     }
 
+    private CallLog callLogFor(String callId) {
+        synchronized (callLogs) {
+            CallLog callLog = callLogs.get(callId);
+            if (callLog == null) {
+                callLog = new CallLog();
+                callLogs.put(callId, callLog);
+            }
+            return callLog;
+        }
+    }
+
+    private void rollUp(CallDetailRecord previous, CallDetailRecord summary) {
+        try {
+            allCallRollups.recount(previous, summary);
+        } catch (RuntimeException e) {
+            // the record is written, failing here would only get it written, and maybe counted, again
+            logger.error(String.format("Unable to count call %s into the call rollups", summary.getCallId()), e);
+        }
+    }
+
+    /**
+     * What was written of a call: the ids of its logged events, and the record as last written
+     */
+    private static class CallLog {
+        private final Set<String> loggedEvents = new HashSet<>();
+        private CallDetailRecord summary;
+    }
 }
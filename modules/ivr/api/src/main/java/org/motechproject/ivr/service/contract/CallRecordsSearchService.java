@@ -1,16 +1,33 @@
 package org.motechproject.ivr.service.contract;
 
+import org.joda.time.DateTime;
 import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordsPage;
 import org.motechproject.ivr.domain.CallRecordSearchParameters;
+import org.motechproject.ivr.domain.CallRollup;
+import org.motechproject.ivr.domain.RollupPeriod;
 
 import java.util.List;
 
 public interface CallRecordsSearchService {
     List<CallDetailRecord> search(CallRecordSearchParameters callLogSearchParameters);
 
+    /**
+     * Same as search, along with how many records fit the given parameters in all, read by the same query
+     */
+    CallDetailRecordsPage searchPage(CallRecordSearchParameters callLogSearchParameters);
+
     long count(CallRecordSearchParameters callLogSearchParameters);
 
+    long countRecords(CallRecordSearchParameters callLogSearchParameters);
+
     List<String> getAllPhoneNumbers();
 
     long findMaxCallDuration();
+
+    /**
+     * The hourly or daily call rollups of the periods from the one the first given time falls in up to the one the
+     * second falls in, one per period, direction and provider
+     */
+    List<CallRollup> findRollups(RollupPeriod period, DateTime from, DateTime to);
 }
@@ -4,5 +4,14 @@ import org.motechproject.ivr.domain.CallDetailRecord;
 
 public interface CallRecordsService {
 
+    /**
+     * Writes the given call detail record, as often as it changes during the call. Its events are appended to the
+     * call's event log, skipping those logged already, from this record or from any other copy of it: the record may
+     * be the one kept for the whole call, one read back from the database, or one built afresh with just the latest
+     * events. The record itself is written, without its events, whenever anything else in it changed since it was
+     * last written, and counted into the call rollups once the call has ended.
+     *
+     * @param callDetailRecord the record of a call, with at least the events not handed over yet
+     */
     void add(CallDetailRecord callDetailRecord);
 }
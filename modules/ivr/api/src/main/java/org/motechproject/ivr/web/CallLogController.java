@@ -1,14 +1,18 @@
 package org.motechproject.ivr.web;
 
 import org.codehaus.jackson.map.ObjectMapper;
-import org.motechproject.ivr.domain.CallDetailRecord;
+import org.joda.time.DateTime;
+import org.motechproject.ivr.domain.CallDetailRecordsPage;
 import org.motechproject.ivr.domain.CallRecordSearchParameters;
+import org.motechproject.ivr.domain.CallRollup;
+import org.motechproject.ivr.domain.RollupPeriod;
 import org.motechproject.ivr.service.contract.CallRecordsSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.io.IOException;
@@ -19,7 +23,7 @@ import java.util.List;
 /**
  *  Service methods for angular ui. Includes searching call logs, finding
  *  count of number of pages of call logs, finding the maximum call duration in
- *  the logs, and finding a list of all phone numbers in the logs.
+ *  the logs, finding a list of all phone numbers in the logs, and reading the hourly or daily call rollups.
  */
 @Controller
 @RequestMapping(value = "/calllog", method = RequestMethod.GET)
@@ -31,9 +35,15 @@ public class CallLogController {
     @RequestMapping(value = "/search", method = RequestMethod.GET)
     @ResponseBody
     public CallLogRecords search(@ModelAttribute GridSettings settings) throws IOException {
-        CallRecordSearchParameters params = settings.toCallRecordSearchParameters();
-        List<CallDetailRecord> records = calllogSearchService.search(params);
-        return new CallLogRecords(settings.getPage(), settings.getRows(), records);
+        CallDetailRecordsPage page = calllogSearchService.searchPage(settings.toCallRecordSearchParameters());
+        int total = CallLogRecords.pageCount(page.getTotalRecords(), settings.getRows());
+        if (settings.getPage() > total) {
+            // past the last page, show the last one; only then is the index queried again
+            settings.setPage(total);
+            page = calllogSearchService.searchPage(settings.toCallRecordSearchParameters());
+            total = CallLogRecords.pageCount(page.getTotalRecords(), settings.getRows());
+        }
+        return new CallLogRecords(settings.getPage(), total, (int) page.getTotalRecords(), page.getRecords());
     }
 
     @RequestMapping(value = "/count",  method = RequestMethod.GET)
@@ -58,4 +68,12 @@ public class CallLogController {
     public List<String> allPhoneNumbers() throws IOException {
         return calllogSearchService.getAllPhoneNumbers();
     }
+
+    @RequestMapping(value = "/rollups",  method = RequestMethod.GET)
+    @ResponseBody
+    public List<CallRollup> rollups(@RequestParam("period") String period, @RequestParam("from") String from,
+                                    @RequestParam("to") String to) {
+        return calllogSearchService.findRollups(RollupPeriod.valueOf(period.toUpperCase()), new DateTime(from),
+                new DateTime(to));
+    }
 }
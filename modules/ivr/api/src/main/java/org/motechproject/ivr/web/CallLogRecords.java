@@ -22,28 +22,29 @@ public class CallLogRecords implements Serializable {
     /**
      * Constructs a calllog record
      * @param page current page of the record to display
-     * @param rows number of rows to display per page
-     * @param callDetailRecords list of all records
+     * @param total total number of pages
+     * @param records total number of records
+     * @param rows records of the current page
      */
-    public CallLogRecords(Integer page, Integer rows, List<CallDetailRecord> callDetailRecords) {
+    public CallLogRecords(Integer page, Integer total, Integer records, List<CallDetailRecord> rows) {
         this.page = page;
-        records = callDetailRecords.size();
-        int subtotal = 1;
-        if (records > rows) {
-            subtotal = records / rows;
-            //if the number of records is not an exact multiple
-            //of the number of rows, need to add 1 to number of rows
-            if (records % rows != 0) {
-                subtotal++;
-            }
-        }
-        total = subtotal;
+        this.total = total;
+        this.records = records;
+        this.rows = rows;
+    }
 
-        //start is the first index of the list of records that will be displayed
-        Integer start = rows * (page > total ? total : page) - rows;
-        Integer count = start + rows;
-        Integer end = count > records ? records : count;
-        this.rows = callDetailRecords.subList(start, end);
+    /**
+     * The number of pages needed to display the given number of records, at least one
+     * @param records total number of records
+     * @param rows number of rows to display per page
+     */
+    public static int pageCount(long records, int rows) {
+        if (records <= rows) {
+            return 1;
+        }
+        //if the number of records is not an exact multiple
+        //of the number of rows, need to add 1 to number of pages
+        return (int) ((records + rows - 1) / rows);
     }
 
     public Integer getPage() {
@@ -0,0 +1,61 @@
+package org.motechproject.ivr.domain;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CallRollupTest {
+
+    private static final DateTime TIME = new DateTime(2013, 5, 14, 10, 42, 7, DateTimeZone.UTC);
+
+    @Test
+    public void shouldCountCallsByDispositionAndDuration() {
+        CallRollup rollup = new CallRollup(RollupPeriod.HOUR, TIME, CallDirection.Outbound, "kookoo");
+
+        rollup.include(call(CallDisposition.ANSWERED, 5))
+                .include(call(CallDisposition.ANSWERED, 45))
+                .include(call(CallDisposition.ANSWERED, 3600))
+                .include(call(CallDisposition.BUSY, null));
+
+        assertEquals(4, rollup.getCalls());
+        assertEquals(3, rollup.getCalls(CallDisposition.ANSWERED));
+        assertEquals(1, rollup.getCalls(CallDisposition.BUSY));
+        assertEquals(0, rollup.getCalls(CallDisposition.FAILED));
+        assertEquals(0.75, rollup.getAnswerRate(), 0);
+        assertEquals(3650, rollup.getTotalDuration());
+        assertArrayEquals(new long[]{1, 0, 1, 0, 0, 0, 0, 1}, rollup.getDurationHistogram());
+    }
+
+    @Test
+    public void shouldCountCallsOutAgain() {
+        CallRollup rollup = new CallRollup(RollupPeriod.HOUR, TIME, CallDirection.Outbound, "kookoo");
+
+        rollup.include(call(CallDisposition.ANSWERED, 45))
+                .include(call(CallDisposition.BUSY, null))
+                .exclude(call(CallDisposition.BUSY, null))
+                .include(call(CallDisposition.ANSWERED, 5));
+
+        assertEquals(2, rollup.getCalls());
+        assertEquals(0, rollup.getCalls(CallDisposition.BUSY));
+        assertEquals(50, rollup.getTotalDuration());
+        assertArrayEquals(new long[]{1, 0, 1, 0, 0, 0, 0, 0}, rollup.getDurationHistogram());
+    }
+
+    @Test
+    public void shouldBeIdentifiedByPeriodDirectionAndProvider() {
+        assertEquals("HOUR:2013-05-14T10:Outbound:kookoo",
+                new CallRollup(RollupPeriod.HOUR, TIME, CallDirection.Outbound, "kookoo").getId());
+        assertEquals("DAY:2013-05-14:unknown:unknown", new CallRollup(RollupPeriod.DAY, TIME, null, null).getId());
+        assertEquals(new DateTime(2013, 5, 14, 10, 0, DateTimeZone.UTC),
+                new CallRollup(RollupPeriod.HOUR, TIME, null, null).getPeriodStart());
+    }
+
+    private CallDetailRecord call(CallDisposition disposition, Integer duration) {
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890").setDisposition(disposition);
+        callDetailRecord.setDuration(duration);
+        return callDetailRecord;
+    }
+}
@@ -0,0 +1,122 @@
+package org.motechproject.ivr.service;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.commons.couchdb.query.QueryParam;
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDetailRecordsPage;
+import org.motechproject.ivr.domain.CallEventLog;
+import org.motechproject.ivr.domain.CallRecordSearchParameters;
+import org.motechproject.ivr.repository.AllCallDetailRecords;
+import org.motechproject.ivr.repository.AllCallEventRecords;
+import org.motechproject.ivr.repository.AllCallRollups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CallRecordsSearchServiceImplTest {
+
+    private static final List<String> NONE = new ArrayList<>();
+
+    @Mock
+    private AllCallDetailRecords allCallDetailRecords;
+    @Mock
+    private AllCallEventRecords allCallEventRecords;
+    @Mock
+    private AllCallRollups allCallRollups;
+
+    private CallRecordsSearchServiceImpl callRecordsSearchService;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        callRecordsSearchService = new CallRecordsSearchServiceImpl(allCallDetailRecords, allCallEventRecords,
+                allCallRollups);
+        when(allCallDetailRecords.search(anyString(), any(DateTime.class), any(DateTime.class), any(DateTime.class),
+                any(DateTime.class), any(DateTime.class), any(DateTime.class), anyInt(), anyInt(), anyList(), anyList(),
+                anyString(), anyBoolean(), anyInt(), anyInt()))
+                .thenReturn(new CallDetailRecordsPage(new ArrayList<CallDetailRecord>(), 0));
+    }
+
+    @Test
+    public void shouldReadOnlyThePageAskedFor() {
+        CallRecordSearchParameters params = new CallRecordSearchParameters();
+        params.setPhoneNumber("1234");
+        params.setQueryParam(new QueryParam(3, 10, "duration", true));
+
+        callRecordsSearchService.search(params);
+
+        verify(allCallDetailRecords).search("1234", null, null, null, null, null, null, null, null, NONE, NONE,
+                "duration", true, 20, 10);
+    }
+
+    @Test
+    public void shouldReadEverythingWhenNotAskedForAPage() {
+        CallRecordSearchParameters params = new CallRecordSearchParameters();
+        params.setQueryParam(new QueryParam(0, 0, null, false));
+
+        callRecordsSearchService.search(params);
+
+        verify(allCallDetailRecords).search(null, null, null, null, null, null, null, null, null, NONE, NONE,
+                null, false, 0, null);
+    }
+
+    @Test
+    public void shouldCountPagesFromTheNumberOfRecords() {
+        CallRecordSearchParameters params = new CallRecordSearchParameters();
+        params.setQueryParam(new QueryParam(1, 10, null, false));
+        when(allCallDetailRecords.countRecords(null, null, null, null, null, null, null, null, null, NONE, NONE))
+                .thenReturn(21L);
+
+        assertEquals(21, callRecordsSearchService.countRecords(params));
+        assertEquals(3, callRecordsSearchService.count(params));
+    }
+
+    @Test
+    public void shouldReturnRecordsWithTheirLoggedEvents() {
+        CallRecordSearchParameters params = new CallRecordSearchParameters();
+        params.setQueryParam(new QueryParam(1, 10, null, false));
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234");
+        when(allCallDetailRecords.search(null, null, null, null, null, null, null, null, null, NONE, NONE,
+                null, false, 0, 10)).thenReturn(new CallDetailRecordsPage(Arrays.asList(callDetailRecord), 1));
+        when(allCallEventRecords.findByCallIds(Collections.singleton("callId")))
+                .thenReturn(Collections.singletonMap("callId", Arrays.asList(new CallEventLog("DTMF"))));
+
+        List<CallDetailRecord> found = callRecordsSearchService.search(params);
+
+        assertEquals(1, found.get(0).getCallEvents().size());
+        assertEquals("DTMF", found.get(0).getCallEvents().get(0).getName());
+    }
+
+    @Test
+    public void shouldReturnThePageWithTheTotalFoundByTheSameQuery() {
+        CallRecordSearchParameters params = new CallRecordSearchParameters();
+        params.setQueryParam(new QueryParam(2, 10, null, false));
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234");
+        when(allCallDetailRecords.search(null, null, null, null, null, null, null, null, null, NONE, NONE,
+                null, false, 10, 10)).thenReturn(new CallDetailRecordsPage(Arrays.asList(callDetailRecord), 11));
+
+        CallDetailRecordsPage page = callRecordsSearchService.searchPage(params);
+
+        assertEquals(Arrays.asList(callDetailRecord), page.getRecords());
+        assertEquals(11, page.getTotalRecords());
+        verify(allCallDetailRecords, never()).countRecords(anyString(), any(DateTime.class), any(DateTime.class),
+                any(DateTime.class), any(DateTime.class), any(DateTime.class), any(DateTime.class), anyInt(), anyInt(),
+                anyList(), anyList());
+    }
+}
@@ -0,0 +1,183 @@
+package org.motechproject.ivr.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.ivr.domain.CallDetailRecord;
+import org.motechproject.ivr.domain.CallDisposition;
+import org.motechproject.ivr.domain.CallEventLog;
+import org.motechproject.ivr.domain.CallEventRecord;
+import org.motechproject.ivr.repository.AllCallDetailRecords;
+import org.motechproject.ivr.repository.AllCallEventRecords;
+import org.motechproject.ivr.repository.AllCallRollups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CallRecordsServiceImplTest {
+
+    @Mock
+    private AllCallDetailRecords allCallDetailRecords;
+    @Mock
+    private AllCallEventRecords allCallEventRecords;
+    @Mock
+    private AllCallRollups allCallRollups;
+
+    private CallRecordsServiceImpl callRecordsService;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        callRecordsService = new CallRecordsServiceImpl(allCallDetailRecords, allCallEventRecords, allCallRollups);
+    }
+
+    private List<List<CallEventLog>> appendedEvents(int appends) {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(allCallEventRecords, times(appends)).append(captor.capture());
+        List<List<CallEventLog>> appended = new ArrayList<>();
+        for (List<CallEventRecord> records : (List<List<CallEventRecord>>) (List) captor.getAllValues()) {
+            List<CallEventLog> events = new ArrayList<>();
+            for (CallEventRecord record : records) {
+                events.add(record.getCallEvent());
+            }
+            appended.add(events);
+        }
+        return appended;
+    }
+
+    @Test
+    public void shouldAppendOnlyEventsNotLoggedYet() {
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890");
+        CallEventLog dial = new CallEventLog("Dial");
+        CallEventLog dtmf = new CallEventLog("DTMF");
+        CallEventLog hangup = new CallEventLog("Hangup");
+
+        callDetailRecord.addCallEvent(dial).addCallEvent(dtmf);
+        callRecordsService.add(callDetailRecord);
+        callDetailRecord.addCallEvent(hangup);
+        callRecordsService.add(callDetailRecord);
+        callRecordsService.add(callDetailRecord);
+
+        List<List<CallEventLog>> appended = appendedEvents(2);
+        assertEquals(Arrays.asList(dial, dtmf), appended.get(0));
+        assertEquals(Arrays.asList(hangup), appended.get(1));
+    }
+
+    @Test
+    public void shouldAppendEventsOfOtherCopiesOfTheRecord() {
+        CallEventLog dial = new CallEventLog("Dial");
+        CallEventLog hangup = new CallEventLog("Hangup");
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890").addCallEvent(dial);
+        callRecordsService.add(callDetailRecord);
+
+        // built afresh, with just the latest event
+        callRecordsService.add(new CallDetailRecord("callId", "1234567890").addCallEvent(hangup));
+        // read back, with the events known when it was written
+        callRecordsService.add(new CallDetailRecord("callId", "1234567890").addCallEvent(dial));
+
+        List<List<CallEventLog>> appended = appendedEvents(2);
+        assertEquals(Arrays.asList(dial), appended.get(0));
+        assertEquals(Arrays.asList(hangup), appended.get(1));
+    }
+
+    @Test
+    public void shouldGiveTheSameEventsTheSameIds() {
+        CallEventLog dtmf = new CallEventLog("DTMF");
+        CallEventLog sameTime = new CallEventLog("DTMF");
+        sameTime.setTimeStamp(dtmf.getTimeStamp());
+
+        List<CallEventRecord> records = CallEventRecord.recordsOf("callId", Arrays.asList(dtmf, sameTime));
+        List<CallEventRecord> again = CallEventRecord.recordsOf("callId", Arrays.asList(dtmf));
+
+        assertEquals(records.get(0).getId(), again.get(0).getId());
+        assertEquals(false, records.get(0).getId().equals(records.get(1).getId()));
+    }
+
+    @Test
+    public void shouldWriteRecordWheneverItChanges() {
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890");
+
+        callRecordsService.add(callDetailRecord);
+        callDetailRecord.addCallEvent(new CallEventLog("DTMF"));
+        callRecordsService.add(callDetailRecord);
+        verify(allCallDetailRecords, times(1)).addOrUpdateSummary(callDetailRecord);
+
+        callDetailRecord.setEndDate(DateUtil.now());
+        callRecordsService.add(callDetailRecord);
+        callRecordsService.add(callDetailRecord);
+        verify(allCallDetailRecords, times(2)).addOrUpdateSummary(callDetailRecord);
+
+        // another end event, with what the provider made of the call
+        callDetailRecord.setDisposition(CallDisposition.BUSY).setErrorMessage("busy");
+        callRecordsService.add(callDetailRecord);
+        verify(allCallDetailRecords, times(3)).addOrUpdateSummary(callDetailRecord);
+        verify(allCallDetailRecords, never()).addOrUpdate(any(CallDetailRecord.class));
+    }
+
+    @Test
+    public void shouldCountCallIntoRollupsInPlaceOfWhatWasCountedBefore() {
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890");
+
+        callRecordsService.add(callDetailRecord);
+        verify(allCallRollups, never()).recount(any(CallDetailRecord.class), any(CallDetailRecord.class));
+
+        callDetailRecord.setEndDate(DateUtil.now());
+        CallDetailRecord written = callDetailRecord.summary();
+        when(allCallDetailRecords.addOrUpdateSummary(callDetailRecord)).thenReturn(null).thenReturn(written);
+        callRecordsService.add(callDetailRecord);
+        callRecordsService.add(callDetailRecord);
+        verify(allCallRollups, times(1)).recount((CallDetailRecord) isNull(), any(CallDetailRecord.class));
+
+        callDetailRecord.setDisposition(CallDisposition.ANSWERED);
+        callRecordsService.add(callDetailRecord);
+        verify(allCallRollups).recount(eq(written), any(CallDetailRecord.class));
+    }
+
+    @Test
+    public void shouldNotFailWritingRecordWhenCountingItIntoRollupsFails() {
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890");
+        callDetailRecord.setEndDate(DateUtil.now());
+        doThrow(new RuntimeException()).when(allCallRollups).recount(any(CallDetailRecord.class),
+                any(CallDetailRecord.class));
+
+        callRecordsService.add(callDetailRecord);
+        callRecordsService.add(callDetailRecord);
+
+        verify(allCallDetailRecords, times(1)).addOrUpdateSummary(callDetailRecord);
+    }
+
+    @Test
+    public void shouldAppendEventsAgainIfLoggingThemFailed() {
+        CallDetailRecord callDetailRecord = new CallDetailRecord("callId", "1234567890");
+        CallEventLog dtmf = new CallEventLog("DTMF");
+        callDetailRecord.addCallEvent(dtmf);
+        doThrow(new RuntimeException()).doNothing().when(allCallEventRecords).append(anyList());
+
+        try {
+            callRecordsService.add(callDetailRecord);
+        } catch (RuntimeException e) {
+            verify(allCallDetailRecords, never()).addOrUpdateSummary(callDetailRecord);
+        }
+        callRecordsService.add(callDetailRecord);
+        callRecordsService.add(callDetailRecord);
+
+        List<List<CallEventLog>> appended = appendedEvents(2);
+        assertEquals(Arrays.asList(dtmf), appended.get(0));
+        assertEquals(Arrays.asList(dtmf), appended.get(1));
+    }
+}
@@ -50,14 +50,17 @@ public class VerboiceIVRService implements IVRService {
     @Override
     public void initiateCall(CallRequest callRequest) {
         initSession(callRequest);
+        GetMethod getMethod = new GetMethod(outgoingCallUri(callRequest));
         try {
-            GetMethod getMethod = new GetMethod(outgoingCallUri(callRequest));
             getMethod.addRequestHeader("Authorization", "Basic " + basicAuthValue());
             int status = commonsHttpClient.executeMethod(getMethod);
 
             log.info(String.format("[%d]\n%s", status, getMethod.getResponseBodyAsString()));
         } catch (IOException e) {
             log.error("Exception when initiating call: ", e);
+        } finally {
+            // hand the connection back to the pool so that the next call can reuse it
+            getMethod.releaseConnection();
         }
     }
 
@@ -78,8 +78,9 @@ public class VoxeoIVRService implements IVRService {
         String tokenId = voxeoConfig.getTokenId(callRequest.getPayload().get(APPLICATION_NAME));
         String externalId = phoneCall.getId();
 
+        HttpMethod httpMethod = null;
         try {
-            HttpMethod httpMethod = generateRequestFor(voxeoURL, tokenId, externalId, callRequest);
+            httpMethod = generateRequestFor(voxeoURL, tokenId, externalId, callRequest);
             int status = commonsHttpClient.executeMethod(httpMethod);
             String response = httpMethod.getResponseBodyAsString();
             log.info("HTTP Status:" + status + "|Response:" + response);
@@ -92,6 +93,10 @@ public class VoxeoIVRService implements IVRService {
             log.error("MalformedURLException: ", e);
         } catch (Exception e) {
             log.error("Exception: ", e);
+        } finally {
+            if (httpMethod != null) {
+                httpMethod.releaseConnection();
+            }
         }
     }
 
@@ -24,6 +24,7 @@ public class OutboundVoiceMessage extends MotechBaseDataObject {
     private Map<String, Object> parameters;
     private Date creationTime;
     private Date expirationDate;
+    private Date playedTime;
     private long sequenceNumber;
 
     public OutboundVoiceMessage() {
@@ -123,6 +124,23 @@ public class OutboundVoiceMessage extends MotechBaseDataObject {
         this.expirationDate = expirationDate;
     }
 
+    /**
+     * Gets the time when the message was last played
+     *
+     * @return a Date when the message was played, null if it hasn't been
+     */
+    public Date getPlayedTime() {
+        return playedTime;
+    }
+
+    /**
+     * Sets the time when the message was played, played messages are removed some days after it
+     *
+     * @param playedTime a Date when the message was played
+     */
+    public void setPlayedTime(Date playedTime) {
+        this.playedTime = playedTime;
+    }
 
     /**
      * Gets the additional meta data of the message.
@@ -171,6 +189,7 @@ public class OutboundVoiceMessage extends MotechBaseDataObject {
                 ", parameters=" + parameters +
                 ", creationTime=" + creationTime +
                 ", expirationDate=" + expirationDate +
+                ", playedTime=" + playedTime +
                 ", sequenceNumber=" + sequenceNumber +
                 '}';
     }
@@ -182,6 +201,7 @@ public class OutboundVoiceMessage extends MotechBaseDataObject {
                 .append(this.sequenceNumber)
                 .append(this.creationTime)
                 .append(this.expirationDate)
+                .append(this.playedTime)
                 .append(this.status)
                 .append(this.parameters)
                 .append(this.voiceMessageType)
@@ -205,6 +225,7 @@ public class OutboundVoiceMessage extends MotechBaseDataObject {
                 .append(this.sequenceNumber, that.sequenceNumber)
                 .append(this.creationTime, that.creationTime)
                 .append(this.expirationDate, that.expirationDate)
+                .append(this.playedTime, that.playedTime)
                 .append(this.status, that.status)
                 .append(this.parameters, that.parameters)
                 .append(this.voiceMessageType, that.voiceMessageType)
@@ -1,18 +1,27 @@
 package org.motechproject.outbox.api.repository;
 
+import org.codehaus.jackson.map.util.StdDateFormat;
+import org.ektorp.BulkDeleteDocument;
 import org.ektorp.ComplexKey;
 import org.ektorp.CouchDbConnector;
+import org.ektorp.DbAccessException;
+import org.ektorp.DocumentOperationResult;
 import org.ektorp.ViewQuery;
+import org.ektorp.ViewResult;
 import org.ektorp.support.View;
 import org.ektorp.support.Views;
 import org.motechproject.commons.couchdb.dao.MotechBaseRepository;
 import org.motechproject.outbox.api.contract.SortKey;
 import org.motechproject.outbox.api.domain.OutboundVoiceMessage;
 import org.motechproject.outbox.api.domain.OutboundVoiceMessageStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -22,11 +31,19 @@ import java.util.Map;
 
 @Repository
 @Views({
-        @View(name = "getMessagesWithTypeName", map = "function(doc) { if (doc.externalId && doc.voiceMessageType) { emit([doc.externalId, doc.status, doc.voiceMessageType.voiceMessageTypeName, doc.expirationDate], doc._id); } }"),
-        @View(name = "getMessages", map = "function(doc) { if (doc.externalId) { emit([doc.externalId, doc.status, doc.expirationDate], doc._id); } }")
+        @View(name = "getMessagesWithTypeName", map = "function(doc) { if (doc.externalId && doc.voiceMessageType) { emit([doc.externalId, doc.status, doc.voiceMessageType.voiceMessageTypeName, doc.expirationDate], doc._id); } }", reduce = "_count"),
+        @View(name = "getMessages", map = "function(doc) { if (doc.externalId) { emit([doc.externalId, doc.status, doc.expirationDate], doc._id); } }", reduce = "_count"),
+        @View(name = "getMessagesByCreationTime", map = "function(doc) { if (doc.externalId) { emit([doc.externalId, doc.status, doc.creationTime], doc.expirationDate); } }"),
+        @View(name = "getMessagesBySequenceNumber", map = "function(doc) { if (doc.externalId) { emit([doc.externalId, doc.status, doc.sequenceNumber], doc.expirationDate); } }"),
+        @View(name = "getExpiredMessages", map = "function(doc) { if (doc.externalId && doc.expirationDate) { emit(doc.expirationDate, doc._rev); } }"),
+        @View(name = "getPlayedMessagesByPlayedTime", map = "function(doc) { if (doc.externalId && doc.status === 'PLAYED') { emit(doc.playedTime || doc.creationTime, doc._rev); } }")
 })
 public class AllOutboundVoiceMessages extends MotechBaseRepository<OutboundVoiceMessage> {
 
+    private static final int NEXT_MESSAGE_PAGE_SIZE = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(AllOutboundVoiceMessages.class);
+
     private Map<SortKey, Comparator<OutboundVoiceMessage>> comparators = new java.util.HashMap<org.motechproject.outbox.api.contract.SortKey, java.util.Comparator<org.motechproject.outbox.api.domain.OutboundVoiceMessage>>() {
         {
             put(SortKey.CreationTime, new TimeBasedOutboundVoiceMessageComparator());
@@ -40,10 +57,62 @@ public class AllOutboundVoiceMessages extends MotechBaseRepository<OutboundVoice
         super(OutboundVoiceMessage.class, db);
     }
 
+    /**
+     * Adds the given messages in one request
+     */
+    public void addAll(List<OutboundVoiceMessage> messages) {
+        List<DocumentOperationResult> failures = db.executeBulk(messages);
+        if (!failures.isEmpty()) {
+            DocumentOperationResult failure = failures.get(0);
+            throw new DbAccessException(String.format("Unable to add %d of %d outbox messages, e.g. %s: %s %s",
+                    failures.size(), messages.size(), failure.getId(), failure.getError(), failure.getReason()));
+        }
+    }
+
+    /**
+     * Removes the messages which expired before the given time, whatever their status, batchSize at a time
+     *
+     * @return how many were removed
+     */
+    public int removeExpired(Date now, int batchSize) {
+        return removeAll(createQuery("getExpiredMessages").endKey(now).inclusiveEnd(false), batchSize);
+    }
+
+    /**
+     * Removes the messages played before the given time, batchSize at a time. Messages played before their played
+     * time was kept go by their creation time.
+     *
+     * @return how many were removed
+     */
+    public int removePlayed(Date playedBefore, int batchSize) {
+        return removeAll(createQuery("getPlayedMessagesByPlayedTime").endKey(playedBefore).inclusiveEnd(false), batchSize);
+    }
+
+    // rows carry the revision of their message, messages are deleted without being loaded
+    private int removeAll(ViewQuery query, int batchSize) {
+        int removed = 0;
+        while (true) {
+            List<ViewResult.Row> rows = db.queryView(query.limit(batchSize)).getRows();
+            if (rows.isEmpty()) {
+                return removed;
+            }
+            List<BulkDeleteDocument> deletes = new ArrayList<>(rows.size());
+            for (ViewResult.Row row : rows) {
+                deletes.add(new BulkDeleteDocument(row.getId(), row.getValue()));
+            }
+            // those which changed meanwhile are left for the next time
+            int failed = db.executeBulk(deletes).size();
+            removed += rows.size() - failed;
+            if (rows.size() < batchSize || failed == rows.size()) {
+                return removed;
+            }
+        }
+    }
+
     public List<OutboundVoiceMessage> getMessages(String externalId, OutboundVoiceMessageStatus status, SortKey sortKey) {
         ComplexKey startKey = ComplexKey.of(externalId, status, new Date());
         ComplexKey endKey = ComplexKey.of(externalId, status, ComplexKey.emptyObject());
-        ViewQuery q = createQuery("getMessages").startKey(startKey).endKey(endKey).includeDocs(true);
+        ViewQuery q = createQuery("getMessages").startKey(startKey).endKey(endKey).reduce(false).includeDocs(true);
         List<OutboundVoiceMessage> messages = db.queryView(q, OutboundVoiceMessage.class);
         if (messages.size() > 0) {
             Collections.sort(messages, comparators.get(sortKey));
@@ -51,17 +120,73 @@ public class AllOutboundVoiceMessages extends MotechBaseRepository<OutboundVoice
         return messages;
     }
 
+    /**
+     * The message getMessages would return first, read off the view ordering the party's messages by the given sort
+     * key. Rows carry the expiration date, so only the message returned is loaded; expired ones are skipped over a
+     * page of rows at a time.
+     */
+    public OutboundVoiceMessage getNextMessage(String externalId, OutboundVoiceMessageStatus status, SortKey sortKey) {
+        Date now = new Date();
+        ViewQuery query = nextMessageQuery(externalId, status, sortKey);
+        while (true) {
+            List<ViewResult.Row> rows = db.queryView(query.limit(NEXT_MESSAGE_PAGE_SIZE)).getRows();
+            for (ViewResult.Row row : rows) {
+                if (isExpired(row.getValue(), now)) {
+                    continue;
+                }
+                // gone or changed since the view was read, the next one will do
+                OutboundVoiceMessage message = db.find(OutboundVoiceMessage.class, row.getId());
+                if (message != null && message.getStatus() == status) {
+                    return message;
+                }
+            }
+            if (rows.size() < NEXT_MESSAGE_PAGE_SIZE) {
+                return null;
+            }
+            ViewResult.Row last = rows.get(rows.size() - 1);
+            query = nextMessageQuery(externalId, status, sortKey)
+                    .startKey(last.getKeyAsNode()).startDocId(last.getId()).skip(1);
+        }
+    }
+
+    private ViewQuery nextMessageQuery(String externalId, OutboundVoiceMessageStatus status, SortKey sortKey) {
+        ComplexKey first = ComplexKey.of(externalId, status);
+        ComplexKey last = ComplexKey.of(externalId, status, ComplexKey.emptyObject());
+        if (sortKey == SortKey.SequenceNumber) {
+            return createQuery("getMessagesBySequenceNumber").startKey(first).endKey(last);
+        }
+        // latest first
+        return createQuery("getMessagesByCreationTime").descending(true).startKey(last).endKey(first);
+    }
+
+    private boolean isExpired(String expirationDate, Date now) {
+        // like the getMessages range, messages without an expiration date are left out
+        if (expirationDate == null) {
+            return true;
+        }
+        try {
+            return !new StdDateFormat().parse(expirationDate).after(now);
+        } catch (ParseException e) {
+            logger.warn("Unreadable outbox message expiration date " + expirationDate, e);
+            return true;
+        }
+    }
+
     public int getMessagesCount(String externalId, OutboundVoiceMessageStatus messageStatus) {
         ComplexKey startKey = ComplexKey.of(externalId, messageStatus, new Date());
         ComplexKey endKey = ComplexKey.of(externalId, messageStatus, ComplexKey.emptyObject());
-        ViewQuery q = createQuery("getMessages").startKey(startKey).endKey(endKey);
-        return db.queryView(q).getSize();
+        return count(createQuery("getMessages").startKey(startKey).endKey(endKey));
     }
 
     public int getMessagesCount(String externalId, OutboundVoiceMessageStatus messageStatus, String voiceMessageTypeName) {
         ComplexKey startKey = ComplexKey.of(externalId, messageStatus, voiceMessageTypeName, new Date());
         ComplexKey endKey = ComplexKey.of(externalId, messageStatus, voiceMessageTypeName, ComplexKey.emptyObject());
-        ViewQuery q = createQuery("getMessagesWithTypeName").startKey(startKey).endKey(endKey);
-        return db.queryView(q).getSize();
+        return count(createQuery("getMessagesWithTypeName").startKey(startKey).endKey(endKey));
+    }
+
+    // the counts are reduced by CouchDB from its index, instead of all the rows being sent over to be counted here
+    private int count(ViewQuery query) {
+        List<ViewResult.Row> rows = db.queryView(query.reduce(true)).getRows();
+        return rows.isEmpty() ? 0 : rows.get(0).getValueAsInt();
     }
 }
@@ -30,6 +30,14 @@ public interface VoiceOutboxService {
      */
     void addMessage(OutboundVoiceMessage outboundVoiceMessage);
 
+    /**
+     * Adds the given outbound voice messages to their parties' voice outboxes, like {@link #addMessage(OutboundVoiceMessage)}
+     * does, writing them in bulk. Meant for campaigns reaching many parties at once.
+     *
+     * @param outboundVoiceMessages - outbound voice messages to be added to the outboxes
+     */
+    void addMessages(List<OutboundVoiceMessage> outboundVoiceMessages);
+
     /**
      * Retrieves the next message from the outbox of the party identified by the given ExternalID. Returns null if there
      * are no more pending messages in the outbox.
@@ -76,6 +84,15 @@ public interface VoiceOutboxService {
      */
     void saveMessage(String outboundVoiceMessageId);
 
+    /**
+     * Removes from the outboxes the messages which have expired, whatever their status, and the messages played longer
+     * ago than the number of days played messages are kept for. Expired messages are already left out when reading the
+     * outboxes, removing them keeps the outbox indexes from growing.
+     *
+     * @return - number of messages removed
+     */
+    int removeExpiredMessages();
+
     /**
      * Returns number of messages in the outbox of the party with the given ExternalId and {@link org.motechproject.outbox.api.domain.OutboundVoiceMessageStatus OutboundVoiceMessageStatus}
      *
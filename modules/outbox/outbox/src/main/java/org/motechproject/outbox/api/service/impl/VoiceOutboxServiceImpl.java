@@ -19,13 +19,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 
 import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class VoiceOutboxServiceImpl extends MotechObject implements VoiceOutboxService {
     private final Logger log = LoggerFactory.getLogger(VoiceOutboxServiceImpl.class);
     private static final String OUTBOUND_VOICE_MESSAGE_ID = "OutboundVoiceMessageId";
 
+    private static final int BULK_SIZE = 1000;
+    private static final int SWEEP_BATCH_SIZE = 1000;
+
     private int numDaysKeepSavedMessages;
+    private int numDaysKeepPlayedMessages = 1;
     private int maxNumberOfPendingMessages = Integer.MAX_VALUE;
 
     @Autowired
@@ -47,13 +54,55 @@ public class VoiceOutboxServiceImpl extends MotechObject implements VoiceOutboxS
         //sends max-pending-messages event if needed
         String externalId = outboundVoiceMessage.getExternalId();
         Assert.hasText(externalId, "VoiceMessage must have a valid externalId");
+        if (maxNumberOfPendingMessages == Integer.MAX_VALUE) {
+            // no limit set, nothing to count
+            return;
+        }
         int msgNum = allOutboundVoiceMessages.getMessagesCount(externalId, OutboundVoiceMessageStatus.PENDING);
         if (maxNumberOfPendingMessages == msgNum) {
-            log.warn(String.format("Max number (%d) of pending messages reached!", msgNum));
-            eventRelay.sendEventMessage(new MotechEvent(EventKeys.OUTBOX_MAX_PENDING_MESSAGES_EVENT_SUBJECT, ArrayUtils.toMap(new Object[][]{{EventKeys.EXTERNAL_ID_KEY, externalId}})));
+            sendMaxPendingMessagesEvent(externalId, msgNum);
         }
     }
 
+    @Override
+    public void addMessages(List<OutboundVoiceMessage> outboundVoiceMessages) {
+        assertArgumentNotNull("OutboundVoiceMessages", outboundVoiceMessages);
+        logInfo("Add %d messages", outboundVoiceMessages.size());
+
+        Date now = DateUtil.now().toDate();
+        Map<String, Integer> addedByExternalId = new LinkedHashMap<>();
+        for (OutboundVoiceMessage outboundVoiceMessage : outboundVoiceMessages) {
+            assertArgumentNotNull("OutboundVoiceMessage", outboundVoiceMessage);
+            String externalId = outboundVoiceMessage.getExternalId();
+            Assert.hasText(externalId, "VoiceMessage must have a valid externalId");
+            outboundVoiceMessage.setStatus(OutboundVoiceMessageStatus.PENDING);
+            outboundVoiceMessage.setCreationTime(now);
+            Integer added = addedByExternalId.get(externalId);
+            addedByExternalId.put(externalId, added == null ? 1 : added + 1);
+        }
+
+        for (int from = 0; from < outboundVoiceMessages.size(); from += BULK_SIZE) {
+            int to = Math.min(from + BULK_SIZE, outboundVoiceMessages.size());
+            allOutboundVoiceMessages.addAll(outboundVoiceMessages.subList(from, to));
+        }
+
+        if (maxNumberOfPendingMessages == Integer.MAX_VALUE) {
+            return;
+        }
+        //sends max-pending-messages event to the parties whose outbox went past the limit
+        for (Map.Entry<String, Integer> added : addedByExternalId.entrySet()) {
+            int msgNum = allOutboundVoiceMessages.getMessagesCount(added.getKey(), OutboundVoiceMessageStatus.PENDING);
+            if (msgNum >= maxNumberOfPendingMessages && msgNum - added.getValue() < maxNumberOfPendingMessages) {
+                sendMaxPendingMessagesEvent(added.getKey(), msgNum);
+            }
+        }
+    }
+
+    private void sendMaxPendingMessagesEvent(String externalId, int msgNum) {
+        log.warn(String.format("Max number (%d) of pending messages reached!", msgNum));
+        eventRelay.sendEventMessage(new MotechEvent(EventKeys.OUTBOX_MAX_PENDING_MESSAGES_EVENT_SUBJECT, ArrayUtils.toMap(new Object[][]{{EventKeys.EXTERNAL_ID_KEY, externalId}})));
+    }
+
     @Override
     public OutboundVoiceMessage getNextMessage(String externalId, OutboundVoiceMessageStatus messageStatus) {
         return getNextMessage(externalId, messageStatus, SortKey.CreationTime);
@@ -65,8 +114,7 @@ public class VoiceOutboxServiceImpl extends MotechObject implements VoiceOutboxS
         assertArgumentNotNull("SortKey", sortKey);
         logInfo("Get next message for the external ID: %s with status %s", externalId, messageStatus);
 
-        List<OutboundVoiceMessage> voiceMessages = allOutboundVoiceMessages.getMessages(externalId, messageStatus, sortKey);
-        return voiceMessages.size() > 0 ? voiceMessages.get(0) : null;
+        return allOutboundVoiceMessages.getNextMessage(externalId, messageStatus, sortKey);
     }
 
     @Override
@@ -90,6 +138,9 @@ public class VoiceOutboxServiceImpl extends MotechObject implements VoiceOutboxS
         logInfo("Set status: %s to the message ID: %s", status, outboundVoiceMessageId);
         OutboundVoiceMessage outboundVoiceMessage = allOutboundVoiceMessages.get(outboundVoiceMessageId);
         outboundVoiceMessage.setStatus(status);
+        if (status == OutboundVoiceMessageStatus.PLAYED) {
+            outboundVoiceMessage.setPlayedTime(DateUtil.now().toDate());
+        }
         allOutboundVoiceMessages.update(outboundVoiceMessage);
     }
 
@@ -107,6 +158,18 @@ public class VoiceOutboxServiceImpl extends MotechObject implements VoiceOutboxS
         allOutboundVoiceMessages.update(outboundVoiceMessage);
     }
 
+    @Override
+    public int removeExpiredMessages() {
+        Calendar calendar = Calendar.getInstance();
+        Date now = calendar.getTime();
+        calendar.add(Calendar.DATE, -numDaysKeepPlayedMessages);
+
+        int expired = allOutboundVoiceMessages.removeExpired(now, SWEEP_BATCH_SIZE);
+        int played = allOutboundVoiceMessages.removePlayed(calendar.getTime(), SWEEP_BATCH_SIZE);
+        logInfo("Removed %d expired and %d played messages", expired, played);
+        return expired + played;
+    }
+
     @Override
     public int getNumberOfMessages(String externalId, OutboundVoiceMessageStatus messageStatus) {
         logInfo("Get number of messages for the external ID: %s", externalId);
@@ -138,6 +201,18 @@ public class VoiceOutboxServiceImpl extends MotechObject implements VoiceOutboxS
         this.numDaysKeepSavedMessages = numDaysKeepSavedMessages;
     }
 
+    public int getNumDaysKeepPlayedMessages() {
+        return numDaysKeepPlayedMessages;
+    }
+
+    /**
+     * Sets the number of days from being played for which played messages are kept, they can still be saved
+     * meanwhile. See {@link #removeExpiredMessages()}.
+     */
+    public void setNumDaysKeepPlayedMessages(int numDaysKeepPlayedMessages) {
+        this.numDaysKeepPlayedMessages = numDaysKeepPlayedMessages;
+    }
+
     @Override
     public void setMaxNumberOfPendingMessages(int maxNumberOfPendingMessages) {
         this.maxNumberOfPendingMessages = maxNumberOfPendingMessages;
@@ -0,0 +1,56 @@
+package org.motechproject.outbox.server;
+
+import org.motechproject.event.MotechEvent;
+import org.motechproject.event.listener.annotations.MotechListener;
+import org.motechproject.outbox.api.EventKeys;
+import org.motechproject.outbox.api.service.VoiceOutboxService;
+import org.motechproject.scheduler.contract.CronSchedulableJob;
+import org.motechproject.scheduler.service.MotechSchedulerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Periodically removes the expired and played messages from the outboxes, see
+ * {@link VoiceOutboxService#removeExpiredMessages()}. Runs on the cron expression set as outbox.sweep.cron in the outbox
+ * properties, every night by default.
+ */
+@Service
+public class OutboxSweeper {
+    public static final String SWEEP_CRON = "outbox.sweep.cron";
+    private static final String DEFAULT_SWEEP_CRON = "0 0 3 * * ?";
+    private static final String JOB_ID = "outbox-sweeper";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private MotechSchedulerService motechSchedulerService;
+
+    @Autowired
+    private VoiceOutboxService voiceOutboxService;
+
+    @Autowired
+    private Properties outboxProperties;
+
+    @PostConstruct
+    public void scheduleJob() {
+        Map<String, Object> params = new HashMap<>();
+        params.put(EventKeys.SCHEDULE_JOB_ID_KEY, JOB_ID);
+        MotechEvent sweepEvent = new MotechEvent(EventKeys.SWEEP_OUTBOX_SUBJECT, params);
+
+        motechSchedulerService.scheduleJob(new CronSchedulableJob(sweepEvent,
+                outboxProperties.getProperty(SWEEP_CRON, DEFAULT_SWEEP_CRON)));
+    }
+
+    @MotechListener(subjects = {EventKeys.SWEEP_OUTBOX_SUBJECT })
+    public void sweep(MotechEvent event) {
+        int removed = voiceOutboxService.removeExpiredMessages();
+        logger.info(String.format("Removed %d messages from the outboxes", removed));
+    }
+}
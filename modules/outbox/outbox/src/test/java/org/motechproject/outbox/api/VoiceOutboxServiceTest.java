@@ -11,6 +11,7 @@ import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.motechproject.commons.date.util.DateUtil;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.outbox.api.contract.SortKey;
@@ -20,8 +21,8 @@ import org.motechproject.outbox.api.repository.AllOutboundVoiceMessages;
 import org.motechproject.outbox.api.service.impl.VoiceOutboxServiceImpl;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
@@ -82,18 +83,14 @@ public class VoiceOutboxServiceTest {
         String externalId = "pid";
 
         OutboundVoiceMessage outboundVoiceMessage1 = new OutboundVoiceMessage();
-        OutboundVoiceMessage outboundVoiceMessage2 = new OutboundVoiceMessage();
 
-        List<OutboundVoiceMessage> pendingVoiceMessages = new ArrayList<OutboundVoiceMessage>();
-        pendingVoiceMessages.add(outboundVoiceMessage1);
-        pendingVoiceMessages.add(outboundVoiceMessage2);
-        when(allOutboundVoiceMessages.getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(pendingVoiceMessages);
+        when(allOutboundVoiceMessages.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(outboundVoiceMessage1);
 
         //when
         OutboundVoiceMessage nextMessage = voiceOutboxService.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING);
 
         //then
-        verify(allOutboundVoiceMessages, times(1)).getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, times(1)).getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
         assertEquals(outboundVoiceMessage1, nextMessage);
 
     }
@@ -104,18 +101,14 @@ public class VoiceOutboxServiceTest {
         String externalId = "pid";
 
         OutboundVoiceMessage outboundVoiceMessage1 = new OutboundVoiceMessage();
-        OutboundVoiceMessage outboundVoiceMessage2 = new OutboundVoiceMessage();
 
-        List<OutboundVoiceMessage> pendingVoiceMessages = new ArrayList<OutboundVoiceMessage>();
-        pendingVoiceMessages.add(outboundVoiceMessage1);
-        pendingVoiceMessages.add(outboundVoiceMessage2);
-        when(allOutboundVoiceMessages.getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.SequenceNumber)).thenReturn(pendingVoiceMessages);
+        when(allOutboundVoiceMessages.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.SequenceNumber)).thenReturn(outboundVoiceMessage1);
 
         //when
         OutboundVoiceMessage nextMessage = voiceOutboxService.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.SequenceNumber);
 
         //then
-        verify(allOutboundVoiceMessages, times(1)).getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.SequenceNumber);
+        verify(allOutboundVoiceMessages, times(1)).getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.SequenceNumber);
         assertEquals(outboundVoiceMessage1, nextMessage);
 
     }
@@ -125,7 +118,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.getNextMessage(null, OutboundVoiceMessageStatus.PENDING);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(null, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(null, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -133,7 +126,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.getNextMessage("extid", null);
 
-        verify(allOutboundVoiceMessages, never()).getMessages("extid", null, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage("extid", null, SortKey.CreationTime);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -141,7 +134,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.getNextMessage("extid", OutboundVoiceMessageStatus.PENDING, null);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(anyString(), Matchers.<OutboundVoiceMessageStatus>any(), Matchers.<SortKey>any());
+        verify(allOutboundVoiceMessages, never()).getNextMessage(anyString(), Matchers.<OutboundVoiceMessageStatus>any(), Matchers.<SortKey>any());
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -149,7 +142,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.getNextMessage("", OutboundVoiceMessageStatus.PENDING);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
 
     }
 
@@ -158,7 +151,7 @@ public class VoiceOutboxServiceTest {
 
         String externalId = "pid";
 
-        when(allOutboundVoiceMessages.getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(new ArrayList<OutboundVoiceMessage>());
+        when(allOutboundVoiceMessages.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(null);
 
         assertNull(voiceOutboxService.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING));
     }
@@ -212,7 +205,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.removeMessage(null);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -220,7 +213,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.removeMessage("");
 
-        verify(allOutboundVoiceMessages, never()).getMessages(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
     }
 
     @Test
@@ -269,7 +262,7 @@ public class VoiceOutboxServiceTest {
 
         String externalId = "pid";
 
-        when(allOutboundVoiceMessages.getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(new ArrayList<OutboundVoiceMessage>());
+        when(allOutboundVoiceMessages.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(null);
 
         assertEquals(0, voiceOutboxService.getNumberOfMessages(externalId, OutboundVoiceMessageStatus.PENDING));
     }
@@ -279,7 +272,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.getNumberOfMessages(null, OutboundVoiceMessageStatus.PENDING);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(null, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(null, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
 
     }
 
@@ -289,7 +282,7 @@ public class VoiceOutboxServiceTest {
         String externalId = "external id";
         voiceOutboxService.getNumberOfMessages(externalId, null);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(anyString(), Matchers.<OutboundVoiceMessageStatus>any(), SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(anyString(), Matchers.<OutboundVoiceMessageStatus>any(), SortKey.CreationTime);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -297,7 +290,7 @@ public class VoiceOutboxServiceTest {
 
         voiceOutboxService.getNumberOfMessages("", OutboundVoiceMessageStatus.PENDING);
 
-        verify(allOutboundVoiceMessages, never()).getMessages(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        verify(allOutboundVoiceMessages, never()).getNextMessage(anyString(), OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
 
     }
 
@@ -386,7 +379,7 @@ public class VoiceOutboxServiceTest {
     public void getTheFirstMessage() {
         OutboundVoiceMessage outboundVoiceMessage = new OutboundVoiceMessage();
         String externalId = "123";
-        when(allOutboundVoiceMessages.getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(Arrays.asList(outboundVoiceMessage));
+        when(allOutboundVoiceMessages.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(outboundVoiceMessage);
         OutboundVoiceMessage nextMessage = voiceOutboxService.nextMessage(null, externalId);
         assertEquals(outboundVoiceMessage, nextMessage);
     }
@@ -401,7 +394,7 @@ public class VoiceOutboxServiceTest {
         outboundVoiceMessage.setId("2");
 
         when(allOutboundVoiceMessages.get(currentMessageId)).thenReturn(currentMessage);
-        when(allOutboundVoiceMessages.getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(Arrays.asList(outboundVoiceMessage));
+        when(allOutboundVoiceMessages.getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime)).thenReturn(outboundVoiceMessage);
 
         OutboundVoiceMessage nextMessage = voiceOutboxService.nextMessage(currentMessageId, externalId);
 
@@ -409,7 +402,7 @@ public class VoiceOutboxServiceTest {
         assertEquals(outboundVoiceMessage, nextMessage);
         inOrder.verify(currentMessage).setStatus(OutboundVoiceMessageStatus.PLAYED);
         inOrder.verify(allOutboundVoiceMessages).update(currentMessage);
-        inOrder.verify(allOutboundVoiceMessages).getMessages(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
+        inOrder.verify(allOutboundVoiceMessages).getNextMessage(externalId, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime);
     }
 
     @Test
@@ -427,4 +420,71 @@ public class VoiceOutboxServiceTest {
         verify(allOutboundVoiceMessages, times(1)).getMessages(externalID, status, sequenceNumber);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldAddMessagesInBulk() {
+        List<OutboundVoiceMessage> messages = new ArrayList<OutboundVoiceMessage>();
+        for (int i = 0; i < 2500; i++) {
+            OutboundVoiceMessage message = new OutboundVoiceMessage();
+            message.setExternalId("pid" + i);
+            messages.add(message);
+        }
+
+        voiceOutboxService.addMessages(messages);
+
+        verify(allOutboundVoiceMessages).addAll(messages.subList(0, 1000));
+        verify(allOutboundVoiceMessages).addAll(messages.subList(1000, 2000));
+        verify(allOutboundVoiceMessages).addAll(messages.subList(2000, 2500));
+        assertEquals(OutboundVoiceMessageStatus.PENDING, messages.get(2499).getStatus());
+        assertTrue(messages.get(2499).getCreationTime() != null);
+    }
+
+    @Test
+    public void shouldSendMaxPendingMessagesEventToPartiesWhoseOutboxWentPastTheLimit() {
+        List<OutboundVoiceMessage> messages = new ArrayList<OutboundVoiceMessage>();
+        for (String externalId : new String[]{"full", "full", "reached", "below", "wasFull"}) {
+            OutboundVoiceMessage message = new OutboundVoiceMessage();
+            message.setExternalId(externalId);
+            messages.add(message);
+        }
+        when(allOutboundVoiceMessages.getMessagesCount("full", OutboundVoiceMessageStatus.PENDING)).thenReturn(MAX_MESSAGES_PENDING + 1);
+        when(allOutboundVoiceMessages.getMessagesCount("reached", OutboundVoiceMessageStatus.PENDING)).thenReturn(MAX_MESSAGES_PENDING);
+        when(allOutboundVoiceMessages.getMessagesCount("below", OutboundVoiceMessageStatus.PENDING)).thenReturn(MAX_MESSAGES_PENDING - 1);
+        when(allOutboundVoiceMessages.getMessagesCount("wasFull", OutboundVoiceMessageStatus.PENDING)).thenReturn(MAX_MESSAGES_PENDING + 1);
+
+        voiceOutboxService.addMessages(messages);
+
+        ArgumentCaptor<MotechEvent> events = ArgumentCaptor.forClass(MotechEvent.class);
+        verify(eventRelay, times(2)).sendEventMessage(events.capture());
+        assertEquals("full", events.getAllValues().get(0).getParameters().get(EventKeys.EXTERNAL_ID_KEY));
+        assertEquals("reached", events.getAllValues().get(1).getParameters().get(EventKeys.EXTERNAL_ID_KEY));
+    }
+
+    @Test
+    public void shouldRemoveExpiredAndOldPlayedMessages() {
+        voiceOutboxService.setNumDaysKeepPlayedMessages(2);
+        when(allOutboundVoiceMessages.removeExpired(any(Date.class), Matchers.anyInt())).thenReturn(3);
+        when(allOutboundVoiceMessages.removePlayed(any(Date.class), Matchers.anyInt())).thenReturn(4);
+
+        assertEquals(7, voiceOutboxService.removeExpiredMessages());
+
+        ArgumentCaptor<Date> playedBefore = ArgumentCaptor.forClass(Date.class);
+        verify(allOutboundVoiceMessages).removePlayed(playedBefore.capture(), Matchers.anyInt());
+        Calendar twoDaysAgo = Calendar.getInstance();
+        twoDaysAgo.add(Calendar.DATE, -2);
+        assertTrue(Math.abs(twoDaysAgo.getTimeInMillis() - playedBefore.getValue().getTime()) < 1000);
+    }
+
+    @Test
+    public void shouldKeepWhenMessagesArePlayed() {
+        OutboundVoiceMessage message = new OutboundVoiceMessage();
+        message.setCreationTime(DateUtil.now().minusDays(10).toDate());
+        when(allOutboundVoiceMessages.get("msgId")).thenReturn(message);
+
+        voiceOutboxService.nextMessage("msgId", "123");
+
+        assertEquals(OutboundVoiceMessageStatus.PLAYED, message.getStatus());
+        assertTrue(Math.abs(new Date().getTime() - message.getPlayedTime().getTime()) < 1000);
+        verify(allOutboundVoiceMessages).update(message);
+    }
+}
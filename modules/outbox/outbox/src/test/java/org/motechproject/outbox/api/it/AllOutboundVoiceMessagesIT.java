@@ -22,6 +22,7 @@ import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -117,6 +118,24 @@ public class AllOutboundVoiceMessagesIT {
         }
     }
 
+    @Test
+    public void shouldRemoveMessagesPlayedBeforeTheGivenTime() {
+        DateTime now = DateUtil.now();
+        OutboundVoiceMessage justPlayed = createMessage(externalId1, now.minusDays(10).toDate(), now.plusDays(2).toDate(),
+                OutboundVoiceMessageStatus.PLAYED, type1);
+        justPlayed.setPlayedTime(now.minusMinutes(1).toDate());
+        outboundVoiceMessageDao.update(justPlayed);
+        OutboundVoiceMessage playedLongAgo = createMessage(externalId1, now.minusDays(10).toDate(), now.plusDays(2).toDate(),
+                OutboundVoiceMessageStatus.PLAYED, type1);
+        playedLongAgo.setPlayedTime(now.minusDays(3).toDate());
+        outboundVoiceMessageDao.update(playedLongAgo);
+
+        assertEquals(1, outboundVoiceMessageDao.removePlayed(now.minusDays(1).toDate(), 10));
+
+        assertNotNull(outboundVoiceMessageDao.get(justPlayed.getId()));
+        assertFalse(outboundVoiceMessageDao.contains(playedLongAgo.getId()));
+    }
+
     @Test
     public void getAllMessagesForGivenExternalIdStatusAndMessageType() {
         int pendingMessagesCount = outboundVoiceMessageDao.getMessagesCount(externalId1, OutboundVoiceMessageStatus.PENDING, type1.getVoiceMessageTypeName());
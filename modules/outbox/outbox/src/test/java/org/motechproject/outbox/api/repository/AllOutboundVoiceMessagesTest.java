@@ -3,6 +3,7 @@ package org.motechproject.outbox.api.repository;
 
 import org.ektorp.CouchDbConnector;
 import org.ektorp.ViewQuery;
+import org.ektorp.ViewResult;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -17,12 +18,18 @@ import org.motechproject.outbox.api.domain.OutboundVoiceMessage;
 import org.motechproject.outbox.api.domain.OutboundVoiceMessageStatus;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -84,6 +91,65 @@ public class AllOutboundVoiceMessagesTest {
 
     }
 
+    @Test
+    public void shouldLoadOnlyTheFirstMessageWhichHasNotExpired() {
+        AllOutboundVoiceMessages dao = new AllOutboundVoiceMessages(db);
+        OutboundVoiceMessage message = buildMessage(DateUtil.now().toDate(), 0);
+        ViewResult result = viewResult(row("expired", "2000-01-01T00:00:00.000+0000"),
+                row("next", "2100-01-01T00:00:00.000+0000"), row("later", "2100-01-01T00:00:00.000+0000"));
+        when(db.queryView(any(ViewQuery.class))).thenReturn(result);
+        when(db.find(OutboundVoiceMessage.class, "next")).thenReturn(message);
+
+        assertThat(dao.getNextMessage(EXTERNAL_ID, OutboundVoiceMessageStatus.PENDING, SortKey.CreationTime), is(message));
+        verify(db, never()).find(OutboundVoiceMessage.class, "expired");
+        verify(db, never()).find(OutboundVoiceMessage.class, "later");
+    }
+
+    @Test
+    public void shouldSkipMessageWhichChangedSinceTheViewWasRead() {
+        AllOutboundVoiceMessages dao = new AllOutboundVoiceMessages(db);
+        OutboundVoiceMessage played = buildMessage(DateUtil.now().toDate(), 0);
+        played.setStatus(OutboundVoiceMessageStatus.PLAYED);
+        ViewResult result = viewResult(row("played", "2100-01-01T00:00:00.000+0000"), row("removed", "2100-01-01T00:00:00.000+0000"));
+        when(db.queryView(any(ViewQuery.class))).thenReturn(result);
+        when(db.find(OutboundVoiceMessage.class, "played")).thenReturn(played);
+
+        assertNull(dao.getNextMessage(EXTERNAL_ID, OutboundVoiceMessageStatus.PENDING, SortKey.SequenceNumber));
+    }
+
+    @Test
+    public void shouldCountMessagesWithTheReduce() {
+        AllOutboundVoiceMessages dao = new AllOutboundVoiceMessages(db);
+        ViewResult.Row row = row(null, null);
+        when(row.getValueAsInt()).thenReturn(42);
+        ViewResult result = viewResult(row);
+        when(db.queryView(any(ViewQuery.class))).thenReturn(result);
+
+        assertEquals(42, dao.getMessagesCount(EXTERNAL_ID, OutboundVoiceMessageStatus.PENDING));
+    }
+
+    @Test
+    public void shouldCountNoMessagesWhenThereAreNone() {
+        AllOutboundVoiceMessages dao = new AllOutboundVoiceMessages(db);
+        ViewResult result = viewResult();
+        when(db.queryView(any(ViewQuery.class))).thenReturn(result);
+
+        assertEquals(0, dao.getMessagesCount(EXTERNAL_ID, OutboundVoiceMessageStatus.PENDING, "type"));
+    }
+
+    private ViewResult viewResult(ViewResult.Row... rows) {
+        ViewResult result = mock(ViewResult.class);
+        when(result.getRows()).thenReturn(Arrays.asList(rows));
+        return result;
+    }
+
+    private ViewResult.Row row(String id, String expirationDate) {
+        ViewResult.Row row = mock(ViewResult.Row.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getValue()).thenReturn(expirationDate);
+        return row;
+    }
+
     private OutboundVoiceMessage buildMessage(Date creationTime, long sequenceNumber) {
         return new OutboundVoiceMessageBuilder().withDefaults().withCreationTime(creationTime).withExternalId(EXTERNAL_ID)
                 .withSequenceNumber(sequenceNumber).build();
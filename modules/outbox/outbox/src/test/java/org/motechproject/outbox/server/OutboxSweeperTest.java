@@ -0,0 +1,59 @@
+package org.motechproject.outbox.server;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.motechproject.event.MotechEvent;
+import org.motechproject.outbox.api.EventKeys;
+import org.motechproject.outbox.api.service.VoiceOutboxService;
+import org.motechproject.scheduler.contract.CronSchedulableJob;
+import org.motechproject.scheduler.service.MotechSchedulerService;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class OutboxSweeperTest {
+    @InjectMocks
+    private OutboxSweeper outboxSweeper = new OutboxSweeper();
+
+    @Mock
+    private MotechSchedulerService motechSchedulerService;
+
+    @Mock
+    private VoiceOutboxService voiceOutboxService;
+
+    @Mock
+    private Properties outboxProperties;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    public void shouldScheduleSweepOnConfiguredCronExpression() {
+        when(outboxProperties.getProperty(eq(OutboxSweeper.SWEEP_CRON), anyString())).thenReturn("0 30 1 * * ?");
+
+        outboxSweeper.scheduleJob();
+
+        ArgumentCaptor<CronSchedulableJob> job = ArgumentCaptor.forClass(CronSchedulableJob.class);
+        verify(motechSchedulerService).scheduleJob(job.capture());
+        assertEquals("0 30 1 * * ?", job.getValue().getCronExpression());
+        assertEquals(EventKeys.SWEEP_OUTBOX_SUBJECT, job.getValue().getMotechEvent().getSubject());
+    }
+
+    @Test
+    public void shouldRemoveExpiredMessagesOnSweep() {
+        outboxSweeper.sweep(new MotechEvent(EventKeys.SWEEP_OUTBOX_SUBJECT));
+
+        verify(voiceOutboxService).removeExpiredMessages();
+    }
+}
@@ -16,4 +16,6 @@ public final class SmsEventSubjects {
     public static final String FAILURE_CONFIRMED = "outbound_sms_failure_confirmed";
     public static final String SEND_SMS = "send_sms";
     public static final String INBOUND_SMS = "inbound_sms";
+    // internal, fired by the scheduler when a held back message is due to be sent again
+    public static final String RETRY_DUE = "outbound_sms_retry_due";
 }
@@ -2,8 +2,6 @@ package org.motechproject.sms.audit;
 
 import org.joda.time.DateTime;
 import org.motechproject.commons.api.Range;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -18,17 +16,20 @@ import static org.motechproject.commons.api.MotechEnumUtils.toEnumSet;
 @Service
 public class SmsAuditServiceImpl implements SmsAuditService {
     private SmsRecordsDataService smsRecordsDataService;
-    private Logger logger = LoggerFactory.getLogger(SmsAuditServiceImpl.class);
+    private SmsAuditWriter smsAuditWriter;
 
     @Autowired
-    public SmsAuditServiceImpl(SmsRecordsDataService smsRecordsDataService) {
+    public SmsAuditServiceImpl(SmsRecordsDataService smsRecordsDataService, SmsAuditWriter smsAuditWriter) {
         this.smsRecordsDataService = smsRecordsDataService;
+        this.smsAuditWriter = smsAuditWriter;
     }
 
+    /**
+     * Queues the record, it is written to the database shortly after by the SmsAuditWriter
+     */
     @Override
     public void log(SmsRecord smsRecord) {
-        logger.info(smsRecord.toString());
-        smsRecordsDataService.create(smsRecord);
+        smsAuditWriter.write(smsRecord);
     }
 
     public List<SmsRecord> findAllSmsRecords() {
@@ -0,0 +1,214 @@
+package org.motechproject.sms.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writes audit records to the database in batches, on its own thread, so that senders don't wait on one insert per
+ * recipient per message part. A batch is flushed, in a single transaction, once it holds MAX_BATCH_SIZE records or when
+ * its oldest record has waited FLUSH_INTERVAL_MILLIS. When the queue is full callers wait a little, then write their
+ * record themselves. Whatever is queued at shutdown gets written before the module stops.
+ */
+@Component
+public class SmsAuditWriter {
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 200;
+    private static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+    private Logger logger = LoggerFactory.getLogger(SmsAuditWriter.class);
+    private SmsRecordsDataService smsRecordsDataService;
+    private final BlockingQueue<SmsRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final AtomicLong flushedBatches = new AtomicLong();
+    private final AtomicLong totalFlushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile boolean running;
+    // writers hold it shared while they queue a record, stop() exclusively while it stops taking them in
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private Thread flusher;
+
+    @Autowired
+    public SmsAuditWriter(SmsRecordsDataService smsRecordsDataService) {
+        this.smsRecordsDataService = smsRecordsDataService;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        runningLock.writeLock().lock();
+        try {
+            running = true;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "sms-audit-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        runningLock.writeLock().lock();
+        try {
+            // from here on writers write their records themselves, nothing gets queued after the drain below
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        // whatever the flusher didn't get to
+        List<SmsRecord> batch = new ArrayList<>();
+        while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    public void write(SmsRecord smsRecord) {
+        runningLock.readLock().lock();
+        try {
+            if (running && queue.offer(smsRecord, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        // the queue is full or we're shutting down, the caller pays for the insert
+        logger.debug("Audit queue full, writing record on the caller's thread");
+        List<SmsRecord> batch = new ArrayList<>(1);
+        batch.add(smsRecord);
+        flush(batch);
+    }
+
+    private void flushLoop() {
+        List<SmsRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                // stop() interrupts us, write what we have and let it drain the rest
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+    }
+
+    private void fillBatch(List<SmsRecord> batch) throws InterruptedException {
+        SmsRecord first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MILLIS;
+        while (batch.size() < MAX_BATCH_SIZE) {
+            queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= MAX_BATCH_SIZE || remaining <= 0) {
+                break;
+            }
+            SmsRecord next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(final List<SmsRecord> batch) {
+        long start = System.currentTimeMillis();
+        int written;
+        try {
+            smsRecordsDataService.doInTransaction(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (SmsRecord smsRecord : batch) {
+                        smsRecordsDataService.create(smsRecord);
+                    }
+                }
+            });
+            written = batch.size();
+        } catch (RuntimeException e) {
+            // one bad record shouldn't cost the others theirs, write them one by one
+            logger.warn("Unable to write {} audit records at once, writing them one by one: {}", batch.size(),
+                    e.toString());
+            written = flushOneByOne(batch);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        lastFlushMillis = elapsed;
+        totalFlushMillis.addAndGet(elapsed);
+        flushedBatches.incrementAndGet();
+        writtenRecords.addAndGet(written);
+        logger.debug("Wrote {} audit records in {}ms", written, elapsed);
+    }
+
+    private int flushOneByOne(List<SmsRecord> batch) {
+        int written = 0;
+        for (SmsRecord smsRecord : batch) {
+            try {
+                smsRecordsDataService.create(smsRecord);
+                written++;
+                logger.debug("Audited {}", smsRecord);
+            } catch (RuntimeException e) {
+                logger.error("Unable to write audit record {}: {}", smsRecord, e.toString());
+            }
+        }
+        return written;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    public long getAverageFlushMillis() {
+        long batches = flushedBatches.get();
+        return batches == 0 ? 0 : totalFlushMillis.get() / batches;
+    }
+}
@@ -0,0 +1,138 @@
+package org.motechproject.sms.audit;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.DateTime;
+import org.motechproject.commons.date.util.DateUtil;
+import org.motechproject.mds.annotations.Entity;
+
+/**
+ * Progress of a bulk SMS campaign, one record per campaign instead of one per recipient
+ */
+@Entity
+public class SmsCampaignRecord {
+    private String campaignId;
+    private String config;
+    private SmsCampaignStatus status;
+    private DateTime startTime;
+    private DateTime endTime;
+    private Long recipients;
+    private Long providerRequests;
+    private Long failedRequests;
+    private Double recipientsPerSecond;
+    private String errorMessage;
+
+    public SmsCampaignRecord() {
+        this(null, null, null, null);
+    }
+
+    public SmsCampaignRecord(String campaignId, String config, SmsCampaignStatus status, DateTime startTime) {
+        this.campaignId = campaignId;
+        this.config = config;
+        this.status = status;
+        this.startTime = startTime;
+        this.recipients = 0L;
+        this.providerRequests = 0L;
+        this.failedRequests = 0L;
+        this.recipientsPerSecond = 0.0;
+    }
+
+    public String getCampaignId() {
+        return campaignId;
+    }
+
+    public void setCampaignId(String campaignId) {
+        this.campaignId = campaignId;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public SmsCampaignStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(SmsCampaignStatus status) {
+        this.status = status;
+    }
+
+    public DateTime getStartTime() {
+        return DateUtil.setTimeZoneUTC(startTime);
+    }
+
+    public void setStartTime(DateTime startTime) {
+        this.startTime = startTime;
+    }
+
+    public DateTime getEndTime() {
+        return DateUtil.setTimeZoneUTC(endTime);
+    }
+
+    public void setEndTime(DateTime endTime) {
+        this.endTime = endTime;
+    }
+
+    public Long getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(Long recipients) {
+        this.recipients = recipients;
+    }
+
+    public Long getProviderRequests() {
+        return providerRequests;
+    }
+
+    public void setProviderRequests(Long providerRequests) {
+        this.providerRequests = providerRequests;
+    }
+
+    /**
+     * The requests the provider turned down, which were left to the retries
+     */
+    public Long getFailedRequests() {
+        return failedRequests;
+    }
+
+    public void setFailedRequests(Long failedRequests) {
+        this.failedRequests = failedRequests;
+    }
+
+    public Double getRecipientsPerSecond() {
+        return recipientsPerSecond;
+    }
+
+    public void setRecipientsPerSecond(Double recipientsPerSecond) {
+        this.recipientsPerSecond = recipientsPerSecond;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return EqualsBuilder.reflectionEquals(this, obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,19 @@
+package org.motechproject.sms.audit;
+
+import org.motechproject.mds.annotations.Lookup;
+import org.motechproject.mds.annotations.LookupField;
+import org.motechproject.mds.service.MotechDataService;
+
+import java.util.List;
+
+/**
+ * Used to query the bulk SMS campaign records in the database
+ */
+public interface SmsCampaignRecordsDataService extends MotechDataService<SmsCampaignRecord> {
+
+    @Lookup
+    SmsCampaignRecord findByCampaignId(@LookupField(name = "campaignId") String campaignId);
+
+    @Lookup
+    List<SmsCampaignRecord> findByStatus(@LookupField(name = "status") SmsCampaignStatus status);
+}
@@ -0,0 +1,24 @@
+package org.motechproject.sms.audit;
+
+/**
+ * Where a bulk SMS campaign is at
+ */
+public enum SmsCampaignStatus {
+    /**
+     * Recipients are being read and messages handed over to the providers
+     */
+    RUNNING,
+    /**
+     * Paused on request, no more messages are handed over, not even those already queued, until the campaign is
+     * resumed
+     */
+    PAUSED,
+    /**
+     * Every recipient's messages went through the provider, which took them or turned them down
+     */
+    COMPLETED,
+    /**
+     * The campaign stopped before reaching the last recipient, or was cut short by a restart
+     */
+    FAILED
+}
@@ -0,0 +1,111 @@
+package org.motechproject.sms.audit;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.joda.time.DateTime;
+import org.motechproject.mds.annotations.Entity;
+
+/**
+ * The message the provider acknowledged under a given id, one record per recipient, kept apart from the audit log so
+ * that delivery status callbacks are matched with an exact lookup
+ */
+@Entity
+public class SmsCorrelation {
+    private String config;
+    private String providerId;
+    private String motechId;
+    private String phoneNumber;
+    private String messageContent;
+    private DateTime timestamp;
+
+    public SmsCorrelation() {
+        this(null, null, null, null, null, null);
+    }
+
+    public SmsCorrelation(String config, String providerId, String motechId, String phoneNumber,
+                          String messageContent, DateTime timestamp) {
+        this.config = config;
+        this.providerId = providerId;
+        this.motechId = motechId;
+        this.phoneNumber = phoneNumber;
+        this.messageContent = messageContent;
+        this.timestamp = timestamp;
+    }
+
+    public SmsCorrelation(SmsRecord smsRecord) {
+        this(smsRecord.getConfig(), smsRecord.getProviderId(), smsRecord.getMotechId(), smsRecord.getPhoneNumber(),
+                smsRecord.getMessageContent(), smsRecord.getTimestamp());
+    }
+
+    /**
+     * @return The outbound record the provider acknowledged
+     */
+    public SmsRecord toSmsRecord() {
+        return new SmsRecord(config, SmsDirection.OUTBOUND, phoneNumber, messageContent, timestamp,
+                DeliveryStatus.DISPATCHED, null, motechId, providerId, null);
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public String getProviderId() {
+        return providerId;
+    }
+
+    public void setProviderId(String providerId) {
+        this.providerId = providerId;
+    }
+
+    public String getMotechId() {
+        return motechId;
+    }
+
+    public void setMotechId(String motechId) {
+        this.motechId = motechId;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public void setPhoneNumber(String phoneNumber) {
+        this.phoneNumber = phoneNumber;
+    }
+
+    public String getMessageContent() {
+        return messageContent;
+    }
+
+    public void setMessageContent(String messageContent) {
+        this.messageContent = messageContent;
+    }
+
+    public DateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(DateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return EqualsBuilder.reflectionEquals(this, obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
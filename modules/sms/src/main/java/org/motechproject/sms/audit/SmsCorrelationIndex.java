@@ -0,0 +1,134 @@
+package org.motechproject.sms.audit;
+
+import org.motechproject.commons.couchdb.query.QueryParam;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds the outbound record a provider's delivery status callback refers to. Records are added here as soon as the
+ * provider acknowledges a message, kept in memory for the callbacks arriving right away and saved as an SmsCorrelation
+ * for the ones arriving after they fell out of memory or after a restart. Callbacks carrying our own id, which
+ * providers echo back for all the recipients of a message alike, and those for messages sent before correlations
+ * were saved, are looked up in the audit log.
+ */
+@Component
+public class SmsCorrelationIndex {
+    private static final int MAX_ENTRIES = 100000;
+
+    private Logger logger = LoggerFactory.getLogger(SmsCorrelationIndex.class);
+    private SmsAuditService smsAuditService;
+    private SmsCorrelationsDataService smsCorrelationsDataService;
+    private final Map<String, SmsRecord> byProviderId = new BoundedMap(MAX_ENTRIES);
+
+    @Autowired
+    public SmsCorrelationIndex(SmsAuditService smsAuditService, SmsCorrelationsDataService smsCorrelationsDataService) {
+        this.smsAuditService = smsAuditService;
+        this.smsCorrelationsDataService = smsCorrelationsDataService;
+    }
+
+    private static String key(String config, String id) {
+        return config + ':' + id;
+    }
+
+    /**
+     * Remembers a message the provider acknowledged, must be called before the provider can call us back
+     */
+    public void add(SmsRecord smsRecord) {
+        if (smsRecord.getProviderId() == null) {
+            return;
+        }
+        synchronized (this) {
+            byProviderId.put(key(smsRecord.getConfig(), smsRecord.getProviderId()), smsRecord);
+        }
+        try {
+            smsCorrelationsDataService.create(new SmsCorrelation(smsRecord));
+        } catch (RuntimeException e) {
+            // the message went out all the same, a late callback will be looked up in the audit log
+            logger.error("Unable to save the correlation of providerId {} through config {}: {}",
+                    smsRecord.getProviderId(), smsRecord.getConfig(), e.toString());
+        }
+    }
+
+    /**
+     * Finds the outbound record matching the given provider message id, or the given motech id as some providers
+     * echo our id back. Returns null if there's no such record.
+     */
+    public SmsRecord find(String config, String messageId) {
+        SmsRecord smsRecord;
+        synchronized (this) {
+            smsRecord = byProviderId.get(key(config, messageId));
+        }
+        if (smsRecord == null) {
+            smsRecord = findCorrelation(config, messageId);
+        }
+        if (smsRecord == null) {
+            smsRecord = findInAuditLog(config, messageId);
+        }
+        return smsRecord;
+    }
+
+    private SmsRecord findCorrelation(String config, String providerId) {
+        SmsCorrelation latest = null;
+        for (SmsCorrelation correlation : smsCorrelationsDataService.findByProviderId(config, providerId)) {
+            // providers may reuse their ids after a while
+            if (latest == null || (correlation.getTimestamp() != null &&
+                    (latest.getTimestamp() == null || correlation.getTimestamp().isAfter(latest.getTimestamp())))) {
+                latest = correlation;
+            }
+        }
+        if (latest == null) {
+            return null;
+        }
+        logger.debug("Found correlation with matching providerId {}", providerId);
+        return latest.toSmsRecord();
+    }
+
+    private SmsRecord findInAuditLog(String config, String messageId) {
+        QueryParam queryParam = new QueryParam();
+        queryParam.setSortBy("timestamp");
+        queryParam.setReverse(true);
+
+        SmsRecords smsRecords = smsAuditService.findAllSmsRecords(new SmsRecordSearchCriteria()
+                .withConfig(config)
+                .withProviderId(messageId)
+                .withQueryParam(queryParam));
+        for (SmsRecord smsRecord : smsRecords.getRecords()) {
+            // the lookup isn't guaranteed to be an exact match
+            if (messageId.equals(smsRecord.getProviderId())) {
+                logger.debug("Found log record with matching providerId {}", messageId);
+                return smsRecord;
+            }
+        }
+
+        smsRecords = smsAuditService.findAllSmsRecords(new SmsRecordSearchCriteria()
+                .withConfig(config)
+                .withMotechId(messageId)
+                .withQueryParam(queryParam));
+        if (!CollectionUtils.isEmpty(smsRecords.getRecords())) {
+            logger.debug("Found log record with matching motechId {}", messageId);
+            return smsRecords.getRecords().get(0);
+        }
+        return null;
+    }
+
+    private static class BoundedMap extends LinkedHashMap<String, SmsRecord> {
+        private static final long serialVersionUID = 6218425379416832914L;
+        private final int maxEntries;
+
+        BoundedMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SmsRecord> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
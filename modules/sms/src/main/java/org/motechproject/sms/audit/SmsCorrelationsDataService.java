@@ -0,0 +1,17 @@
+package org.motechproject.sms.audit;
+
+import org.motechproject.mds.annotations.Lookup;
+import org.motechproject.mds.annotations.LookupField;
+import org.motechproject.mds.service.MotechDataService;
+
+import java.util.List;
+
+/**
+ * Used to find the message a provider's delivery status callback refers to
+ */
+public interface SmsCorrelationsDataService extends MotechDataService<SmsCorrelation> {
+
+    @Lookup
+    List<SmsCorrelation> findByProviderId(@LookupField(name = "config") String config,
+                                          @LookupField(name = "providerId") String providerId);
+}
@@ -26,18 +26,23 @@ public class ConfigReader {
     }
 
     public Configs getConfigs() {
-        Configs configs = null;
+        return parseConfigs(getConfigsJson());
+    }
+
+    /**
+     * Reads the raw sms-configs.json content, lets the ConfigsCache find out whether it changed without parsing it
+     */
+    public String getConfigsJson() {
+        String jsonText = null;
         InputStream is = settingsFacade.getRawConfig(SMS_CONFIGS_FILE_NAME);
         String errorMessage = null;
         if (is == null) {
             throw new JsonIOException(SMS_CONFIGS_FILE_NAME + " missing");
         }
         try {
-            String jsonText = IOUtils.toString(is);
-            Gson gson = new Gson();
-            configs = gson.fromJson(jsonText, Configs.class);
+            jsonText = IOUtils.toString(is);
         } catch (Exception e) {
-            errorMessage = "Might you have a malformed " + SMS_CONFIGS_FILE_NAME + " file? " + e.toString();
+            errorMessage = "Unable to read " + SMS_CONFIGS_FILE_NAME + " file: " + e.toString();
         } finally {
             try {
                 is.close();
@@ -49,7 +54,17 @@ public class ConfigReader {
         if (errorMessage != null) {
             throw new JsonIOException(errorMessage);
         }
-        return configs;
+        return jsonText;
+    }
+
+    public Configs parseConfigs(String jsonText) {
+        try {
+            Gson gson = new Gson();
+            return gson.fromJson(jsonText, Configs.class);
+        } catch (Exception e) {
+            throw new JsonIOException("Might you have a malformed " + SMS_CONFIGS_FILE_NAME + " file? " +
+                    e.toString());
+        }
     }
 
     public void setConfigs(Configs configs) {
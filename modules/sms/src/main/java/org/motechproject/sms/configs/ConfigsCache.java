@@ -0,0 +1,82 @@
+package org.motechproject.sms.configs;
+
+import com.google.gson.JsonIOException;
+import org.motechproject.server.config.SettingsFacade;
+import org.motechproject.sms.templates.TemplateReader;
+import org.motechproject.sms.templates.Templates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current ConfigsSnapshot so that we don't have to read & parse sms-configs.json for every message. The
+ * snapshot is replaced when configs are saved through setConfigs, or when the sms-configs.json content changes, which
+ * we check for at most every CHANGE_CHECK_INTERVAL_MILLIS. Readers never block.
+ */
+@Component
+public class ConfigsCache {
+    private static final long CHANGE_CHECK_INTERVAL_MILLIS = 5000;
+
+    private Logger logger = LoggerFactory.getLogger(ConfigsCache.class);
+    private ConfigReader configReader;
+    private Templates templates;
+    private final AtomicReference<ConfigsSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong nextChangeCheck = new AtomicLong();
+    private String configsJson;
+
+    @Autowired
+    public ConfigsCache(@Qualifier("smsSettings") SettingsFacade settingsFacade, TemplateReader templateReader) {
+        configReader = new ConfigReader(settingsFacade);
+        templates = templateReader.getTemplates();
+        reload();
+    }
+
+    public ConfigsSnapshot getSnapshot() {
+        long now = System.currentTimeMillis();
+        long next = nextChangeCheck.get();
+        // only one caller gets to check the file, the others carry on with what we have
+        if (now >= next && nextChangeCheck.compareAndSet(next, now + CHANGE_CHECK_INTERVAL_MILLIS)) {
+            refreshIfChanged();
+        }
+        return snapshot.get();
+    }
+
+    public Templates getTemplates() {
+        return templates;
+    }
+
+    public ConfigsSnapshot setConfigs(Configs configs) {
+        configReader.setConfigs(configs);
+        return reload();
+    }
+
+    /**
+     * Unconditionally re-reads sms-configs.json
+     */
+    public synchronized ConfigsSnapshot reload() {
+        String json = configReader.getConfigsJson();
+        ConfigsSnapshot newSnapshot = new ConfigsSnapshot(configReader.parseConfigs(json), templates);
+        configsJson = json;
+        snapshot.set(newSnapshot);
+        nextChangeCheck.set(System.currentTimeMillis() + CHANGE_CHECK_INTERVAL_MILLIS);
+        return newSnapshot;
+    }
+
+    private synchronized void refreshIfChanged() {
+        try {
+            String json = configReader.getConfigsJson();
+            if (!json.equals(configsJson)) {
+                logger.info("sms-configs.json changed, reloading configs");
+                snapshot.set(new ConfigsSnapshot(configReader.parseConfigs(json), templates));
+                configsJson = json;
+            }
+        } catch (JsonIOException e) {
+            logger.error("Unable to reload configs, keeping the previous ones: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.motechproject.sms.configs;
+
+import org.motechproject.sms.templates.Template;
+import org.motechproject.sms.templates.Templates;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+/**
+ * A point in time view of all the configs, with each config's template already looked up. Never modified once built,
+ * the ConfigsCache swaps in a new one when the configs change.
+ */
+public final class ConfigsSnapshot {
+    private final Configs configs;
+    private final Map<String, Config> configsByName;
+    private final Map<String, Template> templatesByConfigName;
+
+    public ConfigsSnapshot(Configs configs, Templates templates) {
+        Map<String, Config> byName = new HashMap<>();
+        Map<String, Template> templatesByName = new HashMap<>();
+        for (Config config : configs.getConfigs()) {
+            byName.put(config.getName(), config);
+            Template template = templates.getTemplate(config.getTemplateName());
+            if (template != null) {
+                templatesByName.put(config.getName(), template);
+            }
+        }
+        this.configs = configs;
+        this.configsByName = Collections.unmodifiableMap(byName);
+        this.templatesByConfigName = Collections.unmodifiableMap(templatesByName);
+    }
+
+    /**
+     * The configs as they were read from sms-configs.json, only meant to be sent to the settings UI
+     */
+    public Configs getConfigs() {
+        return configs;
+    }
+
+    public boolean hasConfig(String name) {
+        return configsByName.containsKey(name);
+    }
+
+    public Config getConfig(String name) {
+        Config config = configsByName.get(name);
+        if (config == null) {
+            throw new IllegalStateException("'" + name + "': no such config");
+        }
+        return config;
+    }
+
+    public Config getDefaultConfig() {
+        if (isNotBlank(configs.getDefaultConfigName())) {
+            return getConfig(configs.getDefaultConfigName());
+        }
+        throw new IllegalStateException("Trying to get default config, but no default config has been set.");
+    }
+
+    public Config getConfigOrDefault(String name) {
+        if (isBlank(name)) {
+            return getDefaultConfig();
+        }
+        return getConfig(name);
+    }
+
+    /**
+     * The template used by the given config, null if the config refers to an unknown template
+     */
+    public Template getTemplate(Config config) {
+        return templatesByConfigName.get(config.getName());
+    }
+}
@@ -2,8 +2,11 @@ package org.motechproject.sms.event;
 
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.annotations.MotechListener;
+import org.motechproject.scheduler.service.MotechSchedulerService;
 import org.motechproject.sms.SmsEventSubjects;
-import org.motechproject.sms.http.SmsHttpService;
+import org.motechproject.sms.http.DispatchListener;
+import org.motechproject.sms.http.SmsDispatcher;
+import org.motechproject.sms.http.SmsRetryScheduler;
 import org.motechproject.sms.service.OutgoingSms;
 import org.motechproject.sms.service.SmsService;
 import org.slf4j.Logger;
@@ -13,18 +16,22 @@ import org.springframework.stereotype.Service;
 
 /**
  * When another module sends an SMS, it calls SmsService.send, which in turn sends one or more SEND_SMS events which
- * are handled here and passed straight through to to SmsHttpService.send
+ * are handled here and passed straight through to the SmsDispatcher, which queues them for SmsHttpService.send.
+ * Failed messages go to the SmsRetryScheduler, which sends them back here as RETRY_DUE events when it's time.
  */
 @Service
 public class SendSmsEventHandler {
 
-    private SmsHttpService smsHttpService;
+    private SmsDispatcher smsDispatcher;
+    private SmsRetryScheduler smsRetryScheduler;
     private Logger logger = LoggerFactory.getLogger(SendSmsEventHandler.class);
     private SmsService smsService;
 
     @Autowired
-    public SendSmsEventHandler(SmsHttpService smsHttpService, SmsService smsService) {
-        this.smsHttpService = smsHttpService;
+    public SendSmsEventHandler(SmsDispatcher smsDispatcher, SmsRetryScheduler smsRetryScheduler,
+                               SmsService smsService) {
+        this.smsDispatcher = smsDispatcher;
+        this.smsRetryScheduler = smsRetryScheduler;
         this.smsService = smsService;
     }
 
@@ -35,11 +42,28 @@ public class SendSmsEventHandler {
         smsService.send(new OutgoingSms(event));
     }
 
-    @MotechListener (subjects = { SmsEventSubjects.PENDING, SmsEventSubjects.SCHEDULED, SmsEventSubjects.RETRYING })
+    @MotechListener (subjects = { SmsEventSubjects.PENDING, SmsEventSubjects.SCHEDULED })
     public void handleInternal(MotechEvent event) {
         logger.info("Handling internal event {}: {}", event.getSubject(),
                 event.getParameters().get("message").toString().replace("\n", "\\n"));
-        smsHttpService.send(new OutgoingSms(event));
+        smsDispatcher.dispatch(new OutgoingSms(event));
+    }
+
+    @MotechListener (subjects = { SmsEventSubjects.RETRYING })
+    public void handleRetrying(MotechEvent event) {
+        logger.info("Handling internal event {}: {}", event.getSubject(),
+                event.getParameters().get("message").toString().replace("\n", "\\n"));
+        smsRetryScheduler.scheduleRetry(new OutgoingSms(event));
+    }
+
+    @MotechListener (subjects = { SmsEventSubjects.RETRY_DUE })
+    public void handleRetryDue(MotechEvent event) {
+        logger.info("Handling internal event {}: {}", event.getSubject(),
+                event.getParameters().get("message").toString().replace("\n", "\\n"));
+        OutgoingSms sms = new OutgoingSms(event);
+        DispatchListener listener = smsRetryScheduler.retryDue(sms,
+                (String) event.getParameters().get(MotechSchedulerService.JOB_ID_KEY));
+        smsDispatcher.dispatch(sms, listener);
     }
 }
 
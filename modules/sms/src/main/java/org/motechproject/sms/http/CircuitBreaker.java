@@ -0,0 +1,43 @@
+package org.motechproject.sms.http;
+
+/**
+ * Tracks consecutive request failures for one config. After FAILURES_BEFORE_OPENING of them the circuit opens: we
+ * stop talking to the provider for a while, and the while doubles each time the first requests after it fail too.
+ * Any successful request closes the circuit.
+ */
+class CircuitBreaker {
+    static final int FAILURES_BEFORE_OPENING = 5;
+    static final long MIN_OPEN_MILLIS = 60 * 1000;
+    static final long MAX_OPEN_MILLIS = 30 * 60 * 1000;
+
+    private int consecutiveFailures;
+    private long openMillis = MIN_OPEN_MILLIS;
+    private long openUntil;
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        openMillis = MIN_OPEN_MILLIS;
+        openUntil = 0;
+    }
+
+    /**
+     * Returns true if this failure opened the circuit
+     */
+    synchronized boolean recordFailure(long now) {
+        consecutiveFailures++;
+        if (consecutiveFailures >= FAILURES_BEFORE_OPENING && now >= openUntil) {
+            openUntil = now + openMillis;
+            openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+            return true;
+        }
+        return false;
+    }
+
+    synchronized boolean isOpen(long now) {
+        return now < openUntil;
+    }
+
+    synchronized long getOpenUntil() {
+        return openUntil;
+    }
+}
@@ -0,0 +1,246 @@
+package org.motechproject.sms.http;
+
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Outgoing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The workers and rate limiter used to send messages through one config. Each config gets its own, so a slow or
+ * throttled provider never holds up messages going to another one. Each worker has a queue of its own, and all the
+ * messages to the same recipients go through the same worker, so that the parts of a multipart message are sent in
+ * the order they were queued. A queue replacing a retired one shares its rate limiter, and holds a message back until
+ * the retired worker its recipients went through is done.
+ */
+class ConfigDispatchQueue {
+    private static final int QUEUED_MESSAGES_PER_WORKER = 250;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final String configName;
+    private final TokenBucket tokenBucket;
+    private final ThreadPoolExecutor[] workers;
+    // the queue this one replaced, until it is done sending what it had queued
+    private volatile ConfigDispatchQueue retired;
+    private Logger logger = LoggerFactory.getLogger(ConfigDispatchQueue.class);
+
+    ConfigDispatchQueue(String configName, Outgoing outgoing) {
+        // one token at a time: requests are spaced out by millisecondsBetweenMessages, each carrying at most
+        // maxRecipient recipients, no matter how many workers are waiting to send
+        this(configName, outgoing, new TokenBucket(outgoing.getMillisecondsBetweenMessages(), 1), null);
+    }
+
+    /**
+     * Creates the queue replacing the given one, which has to be retired once this one is in place
+     */
+    ConfigDispatchQueue(ConfigDispatchQueue retired, Outgoing outgoing) {
+        this(retired.configName, outgoing, retired.tokenBucket, retired);
+        tokenBucket.setMillisecondsBetweenTokens(outgoing.getMillisecondsBetweenMessages());
+    }
+
+    private ConfigDispatchQueue(String configName, Outgoing outgoing, TokenBucket tokenBucket,
+                                ConfigDispatchQueue retired) {
+        this.configName = configName;
+        this.tokenBucket = tokenBucket;
+        this.retired = retired;
+
+        DispatchThreadFactory threadFactory = new DispatchThreadFactory(configName);
+        workers = new ThreadPoolExecutor[workerCount(outgoing)];
+        for (int i = 0; i < workers.length; ++i) {
+            // when a worker's queue is full the caller waits for room, which slows down whoever is producing
+            // messages without letting a message overtake the ones queued before it
+            workers[i] = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUED_MESSAGES_PER_WORKER), threadFactory,
+                    new WaitForRoomPolicy());
+            workers[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static int workerCount(Outgoing outgoing) {
+        Integer workers = outgoing.getMaxConcurrentRequests();
+        return (workers == null || workers < 1) ? 1 : workers;
+    }
+
+    /**
+     * @param listener Told what becomes of the message, may be null
+     * @return false if the queue was retired, in which case the message has to go through the one replacing it
+     */
+    boolean submit(final OutgoingSms sms, final SmsSender sender, final DispatchListener listener) {
+        ThreadPoolExecutor worker = workerFor(sms);
+        try {
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!awaitRetiredWorker(sms)) {
+                        if (listener != null) {
+                            listener.sent(sms, false);
+                        }
+                    } else if (listener == null) {
+                        send(sms, sender);
+                    } else if (listener.beforeSend(sms)) {
+                        listener.sent(sms, send(sms, sender));
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (!worker.isShutdown()) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    private ThreadPoolExecutor workerFor(OutgoingSms sms) {
+        int hash = sms.getRecipients() == null ? 0 : sms.getRecipients().hashCode();
+        return workers[(hash & Integer.MAX_VALUE) % workers.length];
+    }
+
+    /**
+     * Waits until the worker of the retired queue which the message's recipients went through sent what it had
+     * queued, so that the message doesn't overtake an earlier part
+     * @return false if interrupted meanwhile
+     */
+    private boolean awaitRetiredWorker(OutgoingSms sms) {
+        ConfigDispatchQueue previous = retired;
+        if (previous == null) {
+            return true;
+        }
+        try {
+            // the retired queue's own workers wait for the one it replaced in turn
+            while (!previous.workerFor(sms).awaitTermination(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS)) {
+                logger.debug("Config {}: message {} still waiting for the retired queue", configName,
+                        sms.getMotechId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting to send message {} through config {}", sms.getMotechId(),
+                    configName);
+            return false;
+        }
+        if (previous.isTerminated()) {
+            retired = null;
+        }
+        return true;
+    }
+
+    private boolean isTerminated() {
+        for (ThreadPoolExecutor worker : workers) {
+            if (!worker.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean send(OutgoingSms sms, SmsSender sender) {
+        try {
+            tokenBucket.acquire();
+            return sender.send(sms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting to send message {} through config {}", sms.getMotechId(),
+                    configName);
+        } catch (RuntimeException e) {
+            logger.error("Unable to send message {} through config {}: {}", sms.getMotechId(), configName,
+                    e.toString());
+        }
+        return false;
+    }
+
+    /**
+     * Picks up changes made to the template since this queue was created
+     * @return false if the template now asks for a different number of workers, in which case this queue has to be
+     * replaced
+     */
+    boolean update(Outgoing outgoing) {
+        tokenBucket.setMillisecondsBetweenTokens(outgoing.getMillisecondsBetweenMessages());
+        return workerCount(outgoing) == workers.length;
+    }
+
+    int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor worker : workers) {
+            depth += worker.getQueue().size();
+        }
+        return depth;
+    }
+
+    int getActiveCount() {
+        int active = 0;
+        for (ThreadPoolExecutor worker : workers) {
+            active += worker.getActiveCount();
+        }
+        return active;
+    }
+
+    /**
+     * Stops taking messages in, leaving the ones queued to be sent
+     */
+    void retire() {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    void shutdown(long timeoutMillis) {
+        retire();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int dropped = 0;
+        try {
+            for (ThreadPoolExecutor worker : workers) {
+                if (!worker.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    dropped += worker.shutdownNow().size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ThreadPoolExecutor worker : workers) {
+                dropped += worker.shutdownNow().size();
+            }
+        }
+        if (dropped > 0) {
+            logger.warn("Config {}: {} messages were still queued at shutdown", configName, dropped);
+        }
+    }
+
+    private static class WaitForRoomPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The queue was shut down");
+            }
+            try {
+                executor.getQueue().put(runnable);
+                // in case the worker's thread timed out meanwhile
+                executor.prestartCoreThread();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the queue", e);
+            }
+        }
+    }
+
+    private static class DispatchThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        DispatchThreadFactory(String configName) {
+            prefix = "sms-" + configName + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.motechproject.sms.http;
+
+import org.motechproject.sms.service.OutgoingSms;
+
+/**
+ * Follows a message handed to the SmsDispatcher until the provider took it or turned it down. Called from the
+ * config's worker pool, so implementations must be thread-safe and must not dispatch messages themselves.
+ */
+public interface DispatchListener {
+
+    /**
+     * Called by the worker about to send the message
+     * @return false to leave the message unsent, in which case it is up to the listener to dispatch it again
+     */
+    boolean beforeSend(OutgoingSms sms);
+
+    /**
+     * Called once the message went through the sender
+     * @param accepted Whether the provider took the message; if not, it is retried or failed like any other message
+     */
+    void sent(OutgoingSms sms, boolean accepted);
+
+    /**
+     * Called when the message was held back because its provider is failing. It is dispatched again, with this
+     * listener, once the provider's circuit closes, unless the module restarts meanwhile.
+     */
+    void deferred(OutgoingSms sms);
+}
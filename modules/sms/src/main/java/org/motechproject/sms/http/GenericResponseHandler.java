@@ -9,6 +9,9 @@ import org.motechproject.sms.configs.Config;
 import org.motechproject.sms.service.OutgoingSms;
 import org.motechproject.sms.templates.Template;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+
 import static org.motechproject.commons.date.util.DateUtil.now;
 import static org.motechproject.sms.SmsEvents.outboundEvent;
 import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
@@ -45,7 +48,8 @@ public class GenericResponseHandler extends ResponseHandler {
     }
 
     @Override
-    public void handle(OutgoingSms sms, String response, Header[] headers) {
+    public void handle(OutgoingSms sms, BufferedReader responseReader, Header[] headers) throws IOException {
+        String response = readResponse(responseReader);
 
         if (!getTemplateOutgoingResponse().hasSuccessResponse() ||
                 getTemplateOutgoingResponse().checkSuccessResponse(response)) {
@@ -7,10 +7,14 @@ import org.motechproject.sms.audit.DeliveryStatus;
 import org.motechproject.sms.audit.SmsRecord;
 import org.motechproject.sms.configs.Config;
 import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Response;
 import org.motechproject.sms.templates.Template;
 
-import java.util.Arrays;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.regex.Matcher;
 
 import static org.motechproject.commons.date.util.DateUtil.now;
 import static org.motechproject.sms.SmsEvents.outboundEvent;
@@ -26,58 +30,101 @@ public class MultilineResponseHandler extends ResponseHandler {
     }
 
     @Override
-    public void handle(OutgoingSms sms, String response, Header[] headers) {
+    public void handle(OutgoingSms sms, BufferedReader response, Header[] headers) throws IOException {
 
         //
         // as the class name suggest we're dealing with a provider which returns a status code for each individual
         // recipient phone number in the original request on a separate line, ie: if we send an SMS to 4 recipients
         // then we should receive four lines of provider_message_id & status information
         //
-        for (String responseLine : response.split("\\r?\\n")) {
-
-            String[] messageIdAndRecipient = getTemplateOutgoingResponse().extractSuccessMessageIdAndRecipient(
-                    responseLine);
-
-            if (messageIdAndRecipient == null) {
-                Integer failureCount = sms.getFailureCount() + 1;
-                String[] messageAndRecipient;
-
-                messageAndRecipient = getTemplateOutgoingResponse().extractFailureMessageAndRecipient(responseLine);
-                if (messageAndRecipient == null) {
-                    getEvents().add(outboundEvent(getConfig().retryOrAbortSubject(failureCount), getConfig().getName(),
-                            sms.getRecipients(), sms.getMessage(), sms.getMotechId(), null, failureCount, null, null));
-
-                    String errorMessage = String.format(
-                            "Failed to sent SMS. Template error. Can't parse response: %s", responseLine);
-                    getLogger().error(errorMessage);
-                    getMotechStatusMessage().alert(errorMessage);
-
-                    getAuditRecords().add(new SmsRecord(getConfig().getName(), OUTBOUND, sms.getRecipients().toString(),
-                            sms.getMessage(), now(), getConfig().retryOrAbortStatus(failureCount), null,
-                            sms.getMotechId(), null, null));
-                } else {
-                    String failureMessage = messageAndRecipient[0];
-                    String recipient = messageAndRecipient[1];
-                    List<String> recipients = Arrays.asList(new String[]{recipient});
-                    getEvents().add(outboundEvent(getConfig().retryOrAbortSubject(failureCount), getConfig().getName(),
-                            recipients, sms.getMessage(), sms.getMotechId(), null, failureCount, null, null));
-                    getLogger().info("Failed to sent SMS: {}", failureMessage);
-                    getAuditRecords().add(new SmsRecord(getConfig().getName(), OUTBOUND, recipient, sms.getMessage(),
-                            now(), getConfig().retryOrAbortStatus(failureCount), null, sms.getMotechId(), null,
-                            failureMessage));
-                }
+        // the response is read one line at a time, with the same two matchers, so a batch of a few hundred
+        // recipients costs no more memory than a batch of one
+        //
+        LineMatchers matchers = new LineMatchers(getTemplateOutgoingResponse());
+        boolean readAnything = false;
+        int pendingEmptyLines = 0;
+        String responseLine;
+
+        while ((responseLine = response.readLine()) != null) {
+            readAnything = true;
+            // empty lines at the very end of the response are ignored, others are unparseable lines like any other
+            if (responseLine.isEmpty()) {
+                pendingEmptyLines++;
+                continue;
+            }
+            for (; pendingEmptyLines > 0; pendingEmptyLines--) {
+                handleLine(sms, "", matchers);
+            }
+            handleLine(sms, responseLine, matchers);
+        }
+
+        if (!readAnything) {
+            handleLine(sms, "", matchers);
+        }
+    }
+
+    private void handleLine(OutgoingSms sms, String responseLine, LineMatchers matchers) {
+        Matcher successMatcher = matchers.success;
+        if (!successMatcher.reset(responseLine).find()) {
+            Integer failureCount = sms.getFailureCount() + 1;
+
+            Matcher failureMatcher = matchers.failure();
+            if (failureMatcher == null || !failureMatcher.reset(responseLine).find()) {
+                getEvents().add(outboundEvent(getConfig().retryOrAbortSubject(failureCount), getConfig().getName(),
+                        sms.getRecipients(), sms.getMessage(), sms.getMotechId(), null, failureCount, null, null));
+
+                String errorMessage = String.format(
+                        "Failed to sent SMS. Template error. Can't parse response: %s", responseLine);
+                getLogger().error(errorMessage);
+                getMotechStatusMessage().alert(errorMessage);
+
+                getAuditRecords().add(new SmsRecord(getConfig().getName(), OUTBOUND, sms.getRecipients().toString(),
+                        sms.getMessage(), now(), getConfig().retryOrAbortStatus(failureCount), null,
+                        sms.getMotechId(), null, null));
             } else {
-                String messageId = messageIdAndRecipient[0];
-                String recipient = messageIdAndRecipient[1];
-                List<String> recipients = Arrays.asList(new String[]{recipient});
-                //todo: HIPAA concerns?
-                getLogger().info(String.format("Sent messageId %s '%s' to %s", messageId, messageForLog(sms),
-                        recipient));
-                getAuditRecords().add(new SmsRecord(getConfig().getName(), OUTBOUND, recipient, sms.getMessage(), now(),
-                        DeliveryStatus.DISPATCHED, null, sms.getMotechId(), messageId, null));
-                getEvents().add(outboundEvent(SmsEventSubjects.DISPATCHED, getConfig().getName(), recipients,
-                        sms.getMessage(), sms.getMotechId(), messageId, null, null, null));
+                String failureMessage = failureMatcher.group(1);
+                String recipient = failureMatcher.group(2);
+                List<String> recipients = Collections.singletonList(recipient);
+                getEvents().add(outboundEvent(getConfig().retryOrAbortSubject(failureCount), getConfig().getName(),
+                        recipients, sms.getMessage(), sms.getMotechId(), null, failureCount, null, null));
+                getLogger().info("Failed to sent SMS: {}", failureMessage);
+                getAuditRecords().add(new SmsRecord(getConfig().getName(), OUTBOUND, recipient, sms.getMessage(),
+                        now(), getConfig().retryOrAbortStatus(failureCount), null, sms.getMotechId(), null,
+                        failureMessage));
+            }
+        } else {
+            String messageId = successMatcher.group(1);
+            String recipient = successMatcher.group(2);
+            List<String> recipients = Collections.singletonList(recipient);
+            //todo: HIPAA concerns?
+            getLogger().info(String.format("Sent messageId %s '%s' to %s", messageId, messageForLog(sms),
+                    recipient));
+            getAuditRecords().add(new SmsRecord(getConfig().getName(), OUTBOUND, recipient, sms.getMessage(), now(),
+                    DeliveryStatus.DISPATCHED, null, sms.getMotechId(), messageId, null));
+            getEvents().add(outboundEvent(SmsEventSubjects.DISPATCHED, getConfig().getName(), recipients,
+                    sms.getMessage(), sms.getMotechId(), messageId, null, null, null));
+        }
+    }
+
+    /**
+     * The matchers reused for each line of a response; the failure one is only made once a line isn't a success, as
+     * templates whose responses only ever list successes need not have a failure regex
+     */
+    private static class LineMatchers {
+        private final Response response;
+        private final Matcher success;
+        private Matcher failure;
+
+        LineMatchers(Response response) {
+            this.response = response;
+            this.success = response.successMessageIdAndRecipientMatcher();
+        }
+
+        Matcher failure() {
+            if (failure == null) {
+                failure = response.failureMessageAndRecipientMatcher();
             }
+            return failure;
         }
     }
 }
@@ -9,6 +9,9 @@ import org.motechproject.sms.configs.Config;
 import org.motechproject.sms.service.OutgoingSms;
 import org.motechproject.sms.templates.Template;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+
 import static org.motechproject.commons.date.util.DateUtil.now;
 import static org.motechproject.sms.SmsEvents.outboundEvent;
 import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
@@ -24,7 +27,8 @@ public class MultilineSingleResponseHandler extends ResponseHandler {
     }
 
     @Override
-    public void handle(OutgoingSms sms, String response, Header[] headers) {
+    public void handle(OutgoingSms sms, BufferedReader responseReader, Header[] headers) throws IOException {
+        String response = readResponse(responseReader);
 
         String messageId = getTemplateOutgoingResponse().extractSingleSuccessMessageId(response);
 
@@ -0,0 +1,132 @@
+package org.motechproject.sms.http;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.ConfigProp;
+import org.motechproject.sms.templates.Outgoing;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HTTP client used to talk to one config's provider. It has its own pool of keep-alive connections, sized after
+ * the template's maxConcurrentRequests, its own connect & read timeouts and, if the template uses authentication, its
+ * own credentials: configs never see each other's connections or credentials.
+ */
+public class ProviderHttpClient {
+    private final Config config;
+    private final CountingConnectionManager connectionManager;
+    private final HttpClient httpClient;
+    private final HttpState httpState = new HttpState();
+    private final AtomicLong requests = new AtomicLong();
+
+    ProviderHttpClient(Config config, Outgoing outgoing) {
+        this.config = config;
+
+        int maxConnections = maxConnections(outgoing);
+        HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnections);
+        params.setMaxTotalConnections(maxConnections);
+        params.setConnectionTimeout(outgoing.getConnectTimeoutMillis());
+        params.setSoTimeout(outgoing.getReadTimeoutMillis());
+        connectionManager = new CountingConnectionManager();
+        connectionManager.setParams(params);
+
+        httpClient = new HttpClient(connectionManager);
+        // the dispatch queue never runs more requests than we have connections, don't wait forever if it does
+        httpClient.getParams().setConnectionManagerTimeout(outgoing.getReadTimeoutMillis());
+
+        if (Boolean.TRUE.equals(outgoing.hasAuthentication())) {
+            authenticate(config);
+        }
+    }
+
+    private void authenticate(Config config) {
+        String username = null;
+        String password = null;
+        for (ConfigProp configProp : config.getProps()) {
+            if ("username".equals(configProp.getName())) {
+                username = configProp.getValue();
+            } else if ("password".equals(configProp.getName())) {
+                password = configProp.getValue();
+            }
+        }
+        if (username != null && password != null) {
+            httpClient.getParams().setAuthenticationPreemptive(true);
+            httpState.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+        }
+    }
+
+    private static int maxConnections(Outgoing outgoing) {
+        Integer max = outgoing.getMaxConcurrentRequests();
+        return (max == null || max < 1) ? 1 : max;
+    }
+
+    public int execute(HttpMethod httpMethod) throws IOException {
+        requests.incrementAndGet();
+        return httpClient.executeMethod(null, httpMethod, httpState);
+    }
+
+    /**
+     * Whether this client was built for this very config, a reloaded config gets a new client
+     */
+    boolean isFor(Config config) {
+        return this.config == config;
+    }
+
+    /**
+     * Closes the idle connections, the ones still in use are closed when they're released
+     */
+    void retire() {
+        connectionManager.closeIdleConnections(0);
+    }
+
+    void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * How many requests went out on a connection that was already open
+     */
+    public long getReusedConnections() {
+        return connectionManager.reused.get();
+    }
+
+    public long getOpenedConnections() {
+        return connectionManager.opened.get();
+    }
+
+    public int getPooledConnections() {
+        return connectionManager.getConnectionsInPool();
+    }
+
+    private static class CountingConnectionManager extends MultiThreadedHttpConnectionManager {
+        private final AtomicLong reused = new AtomicLong();
+        private final AtomicLong opened = new AtomicLong();
+
+        @Override
+        public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+                throws ConnectionPoolTimeoutException {
+            HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+            if (connection.isOpen()) {
+                reused.incrementAndGet();
+            } else {
+                opened.incrementAndGet();
+            }
+            return connection;
+        }
+    }
+}
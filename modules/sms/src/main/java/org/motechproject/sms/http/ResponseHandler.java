@@ -11,6 +11,8 @@ import org.motechproject.sms.templates.Template;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,6 +20,9 @@ import java.util.List;
  * figures out success or failure from an sms provider response
  */
 public abstract class ResponseHandler {
+    // single message responses are tiny, don't let a misbehaving provider make us buffer megabytes
+    private static final int MAX_RESPONSE_CHARS = 64 * 1024;
+
     private Template template;
     private Config config;
     private Response templateOutgoingResponse;
@@ -33,7 +38,25 @@ public abstract class ResponseHandler {
         templateOutgoingResponse = template.getOutgoing().getResponse();
     }
 
-    public abstract void handle(OutgoingSms sms, String response, Header[] headers);
+    /**
+     * Reads the provider's response, the caller takes care of closing it
+     */
+    public abstract void handle(OutgoingSms sms, BufferedReader response, Header[] headers) throws IOException;
+
+    /**
+     * The response as one string, for handlers which need to run their patterns over the whole of it. Stops after
+     * MAX_RESPONSE_CHARS.
+     */
+    protected static String readResponse(BufferedReader response) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[1024];
+        int read;
+        while (sb.length() < MAX_RESPONSE_CHARS && (read = response.read(buffer, 0,
+                Math.min(buffer.length, MAX_RESPONSE_CHARS - sb.length()))) != -1) {
+            sb.append(buffer, 0, read);
+        }
+        return sb.toString();
+    }
 
     public String messageForLog(OutgoingSms sms) {
         return sms.getMessage().replace("\n", "\\n");
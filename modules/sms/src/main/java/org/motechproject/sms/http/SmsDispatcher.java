@@ -0,0 +1,126 @@
+package org.motechproject.sms.http;
+
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.smpp.SmppSmsSender;
+import org.motechproject.sms.templates.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands outgoing messages over to the SmsHttpService, or to the SmppSmsSender for templates with an smpp section,
+ * using one worker pool & rate limiter per config: throughput grows with the number of configs instead of all
+ * providers sharing the same sending thread.
+ */
+@Service
+public class SmsDispatcher {
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private ConfigsCache configsCache;
+    private SmsHttpService smsHttpService;
+    private SmppSmsSender smppSmsSender;
+    private SmsRetryScheduler smsRetryScheduler;
+    private ConcurrentMap<String, ConfigDispatchQueue> queues = new ConcurrentHashMap<>();
+    private AtomicReference<ConfigsSnapshot> lastSnapshot = new AtomicReference<>();
+    private Logger logger = LoggerFactory.getLogger(SmsDispatcher.class);
+
+    @Autowired
+    public SmsDispatcher(ConfigsCache configsCache, SmsHttpService smsHttpService, SmppSmsSender smppSmsSender,
+                         SmsRetryScheduler smsRetryScheduler) {
+        this.configsCache = configsCache;
+        this.smsHttpService = smsHttpService;
+        this.smppSmsSender = smppSmsSender;
+        this.smsRetryScheduler = smsRetryScheduler;
+    }
+
+    public void dispatch(OutgoingSms sms) {
+        dispatch(sms, null);
+    }
+
+    /**
+     * Dispatches the given message, telling the listener what becomes of it
+     */
+    public void dispatch(OutgoingSms sms, DispatchListener listener) {
+        ConfigsSnapshot configs = configsCache.getSnapshot();
+        if (lastSnapshot.getAndSet(configs) != configs) {
+            dropRemovedConfigs(configs);
+        }
+        Config config = configs.getConfigOrDefault(sms.getConfig());
+        if (smsRetryScheduler.isOpen(config.getName())) {
+            // the provider is failing, no point in adding to its trouble
+            sms.setConfig(config.getName());
+            // told first, so that the retry can't come back before the listener knows about it
+            if (listener != null) {
+                listener.deferred(sms);
+            }
+            smsRetryScheduler.deferUntilClosed(sms, listener);
+            return;
+        }
+        Template template = configs.getTemplate(config);
+        SmsSender sender = template.getSmpp() == null ? smsHttpService : smppSmsSender;
+        while (!queueFor(config, template).submit(sms, sender, listener)) {
+            logger.debug("The queue of config {} was replaced while sending message {}", config.getName(),
+                    sms.getMotechId());
+        }
+    }
+
+    private ConfigDispatchQueue queueFor(Config config, Template template) {
+        ConfigDispatchQueue queue = queues.get(config.getName());
+        if (queue == null) {
+            ConfigDispatchQueue newQueue = new ConfigDispatchQueue(config.getName(), template.getOutgoing());
+            queue = queues.putIfAbsent(config.getName(), newQueue);
+            if (queue == null) {
+                return newQueue;
+            }
+            newQueue.shutdown(0);
+        }
+        if (!queue.update(template.getOutgoing())) {
+            // the number of workers changed: what is queued still goes out, new messages go through a new queue
+            // sharing the same rate limiter
+            ConfigDispatchQueue newQueue = new ConfigDispatchQueue(queue, template.getOutgoing());
+            if (queues.replace(config.getName(), queue, newQueue)) {
+                queue.retire();
+            } else {
+                newQueue.shutdown(0);
+            }
+            return queueFor(config, template);
+        }
+        return queue;
+    }
+
+    private void dropRemovedConfigs(ConfigsSnapshot configs) {
+        for (Map.Entry<String, ConfigDispatchQueue> entry : queues.entrySet()) {
+            if (!configs.hasConfig(entry.getKey()) && queues.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().retire();
+            }
+        }
+    }
+
+    public int getQueueDepth(String configName) {
+        ConfigDispatchQueue queue = queues.get(configName);
+        return queue == null ? 0 : queue.getQueueDepth();
+    }
+
+    public int getActiveCount(String configName) {
+        ConfigDispatchQueue queue = queues.get(configName);
+        return queue == null ? 0 : queue.getActiveCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ConfigDispatchQueue queue : queues.values()) {
+            queue.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        queues.clear();
+    }
+}
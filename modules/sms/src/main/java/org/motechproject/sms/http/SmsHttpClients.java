@@ -0,0 +1,56 @@
+package org.motechproject.sms.http;
+
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.templates.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one ProviderHttpClient per config. A config's client is replaced when the config is reloaded, so that changed
+ * credentials or limits take effect without restarting the module.
+ */
+@Component
+public class SmsHttpClients {
+    private Logger logger = LoggerFactory.getLogger(SmsHttpClients.class);
+    private ConcurrentMap<String, ProviderHttpClient> clients = new ConcurrentHashMap<>();
+
+    public ProviderHttpClient clientFor(Config config, Template template) {
+        ProviderHttpClient client = clients.get(config.getName());
+        while (client == null || !client.isFor(config)) {
+            ProviderHttpClient newClient = new ProviderHttpClient(config, template.getOutgoing());
+            boolean added = (client == null) ? clients.putIfAbsent(config.getName(), newClient) == null :
+                    clients.replace(config.getName(), client, newClient);
+            if (added) {
+                if (client != null) {
+                    logger.debug("Config {} changed, replacing its HTTP client", config.getName());
+                    client.retire();
+                }
+                return newClient;
+            }
+            // someone beat us to it
+            newClient.shutdown();
+            client = clients.get(config.getName());
+        }
+        return client;
+    }
+
+    /**
+     * The client currently used by the given config, null if it hasn't sent anything yet
+     */
+    public ProviderHttpClient getClient(String configName) {
+        return clients.get(configName);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ProviderHttpClient client : clients.values()) {
+            client.shutdown();
+        }
+        clients.clear();
+    }
+}
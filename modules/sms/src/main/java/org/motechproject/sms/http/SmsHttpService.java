@@ -1,10 +1,8 @@
 package org.motechproject.sms.http;
 
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.NameValuePair;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
@@ -12,27 +10,29 @@ import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.motechproject.config.service.ConfigurationService;
 import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
-import org.motechproject.server.config.SettingsFacade;
 import org.motechproject.sms.alert.MotechStatusMessage;
+import org.motechproject.sms.audit.DeliveryStatus;
 import org.motechproject.sms.audit.SmsAuditService;
+import org.motechproject.sms.audit.SmsCorrelationIndex;
 import org.motechproject.sms.audit.SmsRecord;
 import org.motechproject.sms.configs.Config;
 import org.motechproject.sms.configs.ConfigProp;
-import org.motechproject.sms.configs.ConfigReader;
-import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
 import org.motechproject.sms.service.OutgoingSms;
 import org.motechproject.sms.templates.Response;
 import org.motechproject.sms.templates.Template;
-import org.motechproject.sms.templates.TemplateReader;
-import org.motechproject.sms.templates.Templates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -46,29 +46,28 @@ import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
  * This is the main meat - here we talk to the providers using HTTP
  */
 @Service
-public class SmsHttpService {
+public class SmsHttpService implements SmsSender {
 
     private Logger logger = LoggerFactory.getLogger(SmsHttpService.class);
-    private ConfigReader configReader;
-    private Configs configs;
-    private Templates templates;
+    private ConfigsCache configsCache;
     @Autowired
     private EventRelay eventRelay;
     @Autowired
-    private HttpClient commonsHttpClient;
+    private SmsHttpClients smsHttpClients;
     @Autowired
     private SmsAuditService smsAuditService;
     @Autowired
+    private SmsCorrelationIndex smsCorrelationIndex;
+    @Autowired
+    private SmsRetryScheduler smsRetryScheduler;
+    @Autowired
     private ConfigurationService configurationService;
     @Autowired
     private MotechStatusMessage motechStatusMessage;
 
     @Autowired
-    public SmsHttpService(@Qualifier("smsSettings") SettingsFacade settingsFacade, TemplateReader templateReader) {
-
-        //todo: unified module-wide caching & refreshing strategy
-        configReader = new ConfigReader(settingsFacade);
-        templates = templateReader.getTemplates();
+    public SmsHttpService(ConfigsCache configsCache) {
+        this.configsCache = configsCache;
     }
 
     private static String printableMethodParams(HttpMethod method) {
@@ -97,13 +96,9 @@ public class SmsHttpService {
         throw new IllegalStateException(String.format("Unexpected HTTP method: %s", method.getClass()));
     }
 
-    private void authenticate(Map<String, String> props, Config config) {
-        if (props.containsKey("username") && props.containsKey("password")) {
-            String u = props.get("username");
-            String p = props.get("password");
-            commonsHttpClient.getParams().setAuthenticationPreemptive(true);
-            commonsHttpClient.getState().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(u, p));
-        } else {
+    // the credentials themselves live in the config's ProviderHttpClient
+    private void checkCredentials(Map<String, String> props, Config config) {
+        if (!props.containsKey("username") || !props.containsKey("password")) {
             String message;
             if (props.containsKey("username")) {
                 message = String.format("Config %s: missing password", config.getName());
@@ -117,18 +112,6 @@ public class SmsHttpService {
         }
     }
 
-    private void delayProviderAccess(Template template) {
-        //todo: serialize access to configs, ie: one provider may allow 100 sms/min and another may allow 10...
-        //This prevents us from sending more messages per second than the provider allows
-        Integer milliseconds = template.getOutgoing().getMillisecondsBetweenMessages();
-        logger.debug("Sleeping thread id {} for {}ms", Thread.currentThread().getId(), milliseconds);
-        try {
-            Thread.sleep(milliseconds);
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private Map<String, String> generateProps(OutgoingSms sms, Template template, Config config) {
         Map<String, String> props = new HashMap<String, String>();
         props.put("recipients", template.recipientsAsString(sms.getRecipients()));
@@ -197,14 +180,44 @@ public class SmsHttpService {
         return handler;
     }
 
-    public synchronized void send(OutgoingSms sms) {
+    private void readResponse(ResponseHandler handler, OutgoingSms sms, HttpMethod httpMethod, Config config) {
+        try {
+            handler.handle(sms, responseReader(httpMethod), httpMethod.getResponseHeaders());
+        } catch (IllegalStateException e) {
+            // exceptions generated above should only come from config/template issues, try to display something
+            // useful in the motech messages and tomcat log
+            logger.error(e.getMessage());
+            motechStatusMessage.alert(e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            // the provider did get the message, keep whatever we made of its response so far
+            String message = String.format("Unable to read the whole response to '%s' config's request: %s",
+                    config.getName(), e.toString());
+            logger.error(message);
+            motechStatusMessage.alert(message);
+        }
+    }
 
-        //todo: right now we reload the configs for every call, but when we switch to the new config system we should
-        //todo: be able to cache that and only reload when the config system detects a change.
-        configs = configReader.getConfigs();
+    private static BufferedReader responseReader(HttpMethod httpMethod) throws IOException {
+        InputStream response = httpMethod.getResponseBodyAsStream();
+        if (response == null) {
+            return new BufferedReader(new StringReader(""));
+        }
+        // the template always generates a GetMethod or a PostMethod
+        String charset = ((HttpMethodBase) httpMethod).getResponseCharSet();
+        return new BufferedReader(new InputStreamReader(response, charset));
+    }
+
+    /**
+     * Sends the given message to its provider. Might be called concurrently, the SmsDispatcher makes sure we don't
+     * talk to a provider faster than it allows.
+     */
+    @Override
+    public boolean send(OutgoingSms sms) {
 
+        ConfigsSnapshot configs = configsCache.getSnapshot();
         Config config = configs.getConfigOrDefault(sms.getConfig());
-        Template template = templates.getTemplate(config.getTemplateName());
+        Template template = configs.getTemplate(config);
         HttpMethod httpMethod = null;
         Integer failureCount = sms.getFailureCount();
         Integer httpStatus = null;
@@ -214,62 +227,68 @@ public class SmsHttpService {
         List<MotechEvent> events = new ArrayList<MotechEvent>();
         List<SmsRecord> auditRecords = new ArrayList<SmsRecord>();
 
-        //
-        // Generate the HTTP request
-        //
+        Response templateResponse = template.getOutgoing().getResponse();
+        boolean success = false;
+
         try {
-            httpMethod = template.generateRequestFor(props);
-            if (logger.isDebugEnabled()) {
-                logger.debug(printableMethodParams(httpMethod));
-            }
+            //
+            // Generate the HTTP request
+            //
+            try {
+                httpMethod = template.generateRequestFor(props);
+                if (logger.isDebugEnabled()) {
+                    logger.debug(printableMethodParams(httpMethod));
+                }
 
-            if (template.getOutgoing().hasAuthentication()) {
-                authenticate(props, config);
-            }
+                if (template.getOutgoing().hasAuthentication()) {
+                    checkCredentials(props, config);
+                }
 
-            httpStatus = commonsHttpClient.executeMethod(httpMethod);
-            httpResponse = httpMethod.getResponseBodyAsString();
-        } catch (IllegalArgumentException|IOException|IllegalStateException e) {
-            errorMessage = String.format("Problem with '%s' template? %s", template.getName(), e.toString());
-        } finally {
-            if (httpMethod != null) {
-                httpMethod.releaseConnection();
+                httpStatus = smsHttpClients.clientFor(config, template).execute(httpMethod);
+                success = templateResponse.isSuccessStatus(httpStatus);
+                if (!success) {
+                    httpResponse = httpMethod.getResponseBodyAsString();
+                }
+            } catch (IllegalArgumentException|IOException|IllegalStateException e) {
+                errorMessage = String.format("Problem with '%s' template? %s", template.getName(), e.toString());
             }
-        }
 
-        //
-        // make sure we don't talk to the SMS provider too fast (some only allow a max of n per minute calls)
-        //
-        delayProviderAccess(template);
-
-        //
-        // Analyze provider's response
-        //
-        Response templateResponse = template.getOutgoing().getResponse();
-        if (httpStatus == null || !templateResponse.isSuccessStatus(httpStatus)) {
             //
-            // HTTP Request Failure
+            // Analyze provider's response
             //
-            failureCount++;
-            handleFailure(httpStatus, errorMessage, failureCount, templateResponse, httpResponse, config, sms,
-                    auditRecords, events);
-        } else {
-            //
-            // HTTP Request Success, now look more closely at what the provider is telling us
-            //
-            ResponseHandler handler = createResponseHandler(template, templateResponse, config, sms);
-
-            try {
-                handler.handle(sms, httpResponse, httpMethod.getResponseHeaders());
-            } catch (IllegalStateException e) {
-                // exceptions generated above should only come from config/template issues, try to display something
-                // useful in the motech messages and tomcat log
-                logger.error(e.getMessage());
-                motechStatusMessage.alert(e.getMessage());
-                throw e;
+            if (!success) {
+                //
+                // HTTP Request Failure
+                //
+                smsRetryScheduler.recordFailure(config.getName());
+                failureCount++;
+                handleFailure(httpStatus, errorMessage, failureCount, templateResponse, httpResponse, config, sms,
+                        auditRecords, events);
+            } else {
+                //
+                // HTTP Request Success, now look more closely at what the provider is telling us, reading its
+                // response straight off the connection
+                //
+                smsRetryScheduler.recordSuccess(config.getName());
+                ResponseHandler handler = createResponseHandler(template, templateResponse, config, sms);
+                readResponse(handler, sms, httpMethod, config);
+                events = handler.getEvents();
+                auditRecords = handler.getAuditRecords();
+
+                //
+                // Remember what the provider acknowledged before it gets a chance to send us a status update
+                //
+                for (SmsRecord smsRecord : auditRecords) {
+                    if (smsRecord.getDeliveryStatus() == DeliveryStatus.DISPATCHED &&
+                            smsRecord.getProviderId() != null) {
+                        smsCorrelationIndex.add(smsRecord);
+                    }
+                }
+            }
+        } finally {
+            if (httpMethod != null) {
+                httpMethod.releaseConnection();
             }
-            events = handler.getEvents();
-            auditRecords = handler.getAuditRecords();
         }
 
         //
@@ -285,5 +304,7 @@ public class SmsHttpService {
         for (SmsRecord smsRecord : auditRecords) {
             smsAuditService.log(smsRecord);
         }
+
+        return success;
     }
 }
@@ -0,0 +1,193 @@
+package org.motechproject.sms.http;
+
+import org.motechproject.event.MotechEvent;
+import org.motechproject.scheduler.contract.RunOnceSchedulableJob;
+import org.motechproject.scheduler.service.MotechSchedulerService;
+import org.motechproject.sms.SmsEventSubjects;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.motechproject.sms.SmsEvents.outboundEvent;
+
+/**
+ * Decides when failed messages are sent again. Retries go through the MOTECH scheduler, so they survive a restart,
+ * and are spaced out with a jittered back off: exponential if the template asks for exponentialBackOffRetries,
+ * constant otherwise. Each config also has a CircuitBreaker: while it's open no message is sent through that config,
+ * they're all held back and released together, spread over a few seconds, when the circuit closes again.
+ */
+@Component
+public class SmsRetryScheduler {
+    static final long BASE_DELAY_MILLIS = 10 * 1000;
+    static final long MAX_DELAY_MILLIS = 15 * 60 * 1000;
+    static final long RELEASE_SPREAD_MILLIS = 5 * 1000;
+
+    private Logger logger = LoggerFactory.getLogger(SmsRetryScheduler.class);
+    private MotechSchedulerService schedulerService;
+    private ConfigsCache configsCache;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+    // the listeners of the messages held back, by the id of the job sending them again; they don't survive a restart
+    private final ConcurrentMap<String, DispatchListener> listeners = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    @Autowired
+    public SmsRetryScheduler(MotechSchedulerService schedulerService, ConfigsCache configsCache) {
+        this.schedulerService = schedulerService;
+        this.configsCache = configsCache;
+    }
+
+    /**
+     * How long to wait before retrying a message which failed failureCount times, jitter not included
+     */
+    static long retryDelay(int failureCount, boolean exponential) {
+        if (!exponential || failureCount <= 1) {
+            return BASE_DELAY_MILLIS;
+        }
+        // no need to shift further than it takes to reach the max
+        int shift = Math.min(failureCount - 1, Long.numberOfLeadingZeros(BASE_DELAY_MILLIS) - 1);
+        return Math.min(BASE_DELAY_MILLIS << shift, MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Schedules the given failed message to be sent again
+     */
+    public void scheduleRetry(OutgoingSms sms) {
+        long delay = retryDelay(sms.getFailureCount(), usesExponentialBackOff(sms.getConfig()));
+        // between half and all of the delay, so that messages failing together aren't all retried together
+        long sendAt = System.currentTimeMillis() + delay / 2 + nextLong(delay / 2 + 1);
+        long openUntil = circuitBreaker(sms.getConfig()).getOpenUntil();
+        if (sendAt < openUntil) {
+            sendAt = openUntil + nextLong(RELEASE_SPREAD_MILLIS);
+        }
+        schedule(sms, sendAt);
+    }
+
+    /**
+     * Holds the given message back until its config's circuit closes
+     * @param listener Handed back by retryDue when the message is due, may be null
+     */
+    public void deferUntilClosed(OutgoingSms sms, DispatchListener listener) {
+        long openUntil = circuitBreaker(sms.getConfig()).getOpenUntil();
+        String jobId = schedule(sms, Math.max(openUntil, System.currentTimeMillis()) + nextLong(RELEASE_SPREAD_MILLIS));
+        if (listener != null) {
+            listeners.put(jobId, listener);
+        }
+    }
+
+    /**
+     * Called when a scheduled retry fires, just before the message is dispatched again
+     * @param jobId The id of the job which fired
+     * @return The listener the message was held back with, to dispatch it with again, null if none
+     */
+    public DispatchListener retryDue(OutgoingSms sms, String jobId) {
+        DispatchListener listener = jobId == null ? null : listeners.remove(jobId);
+        AtomicInteger depth = queueDepths.get(sms.getConfig());
+        if (depth == null) {
+            return listener;
+        }
+        // retries scheduled before a restart weren't counted
+        int current;
+        do {
+            current = depth.get();
+        } while (current > 0 && !depth.compareAndSet(current, current - 1));
+        return listener;
+    }
+
+    public boolean isOpen(String configName) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(configName);
+        return circuitBreaker != null && circuitBreaker.isOpen(System.currentTimeMillis());
+    }
+
+    public void recordSuccess(String configName) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(configName);
+        if (circuitBreaker != null) {
+            circuitBreaker.recordSuccess();
+        }
+    }
+
+    public void recordFailure(String configName) {
+        CircuitBreaker circuitBreaker = circuitBreaker(configName);
+        if (circuitBreaker.recordFailure(System.currentTimeMillis())) {
+            logger.warn("Too many consecutive failures, not sending anything through config {} until {}",
+                    configName, new Date(circuitBreaker.getOpenUntil()));
+        }
+    }
+
+    /**
+     * How many messages are waiting to be sent again through the given config
+     */
+    public int getQueueDepth(String configName) {
+        AtomicInteger depth = queueDepths.get(configName);
+        return depth == null ? 0 : depth.get();
+    }
+
+    private String schedule(OutgoingSms sms, long sendAt) {
+        MotechEvent event = outboundEvent(SmsEventSubjects.RETRY_DUE, sms.getConfig(), sms.getRecipients(),
+                sms.getMessage(), sms.getMotechId(), null, sms.getFailureCount(), null, null);
+        // recipients of a same message may be retried separately, so the motechId isn't unique enough
+        String jobId = UUID.randomUUID().toString();
+        event.getParameters().put(MotechSchedulerService.JOB_ID_KEY, jobId);
+        schedulerService.safeScheduleRunOnceJob(new RunOnceSchedulableJob(event, new Date(sendAt)));
+        queueDepth(sms.getConfig()).incrementAndGet();
+        logger.debug("Sending message {} to {} through config {} again at {}", sms.getMotechId(), sms.getRecipients(),
+                sms.getConfig(), new Date(sendAt));
+        return jobId;
+    }
+
+    private boolean usesExponentialBackOff(String configName) {
+        try {
+            ConfigsSnapshot configs = configsCache.getSnapshot();
+            Config config = configs.getConfigOrDefault(configName);
+            Template template = configs.getTemplate(config);
+            return template != null && Boolean.TRUE.equals(template.getOutgoing().getExponentialBackOffRetries());
+        } catch (IllegalStateException e) {
+            // the config is gone, the retry will fail loudly enough when it fires
+            return false;
+        }
+    }
+
+    private CircuitBreaker circuitBreaker(String configName) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(configName);
+        if (circuitBreaker == null) {
+            CircuitBreaker newCircuitBreaker = new CircuitBreaker();
+            circuitBreaker = circuitBreakers.putIfAbsent(configName, newCircuitBreaker);
+            if (circuitBreaker == null) {
+                circuitBreaker = newCircuitBreaker;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    private AtomicInteger queueDepth(String configName) {
+        AtomicInteger depth = queueDepths.get(configName);
+        if (depth == null) {
+            AtomicInteger newDepth = new AtomicInteger();
+            depth = queueDepths.putIfAbsent(configName, newDepth);
+            if (depth == null) {
+                depth = newDepth;
+            }
+        }
+        return depth;
+    }
+
+    private long nextLong(long bound) {
+        if (bound <= 1) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * bound);
+    }
+}
@@ -0,0 +1,17 @@
+package org.motechproject.sms.http;
+
+import org.motechproject.sms.service.OutgoingSms;
+
+/**
+ * Sends messages to a provider, over whatever protocol that provider speaks. The SmsDispatcher picks the sender
+ * matching the config's template and calls it from the config's worker pool.
+ */
+public interface SmsSender {
+
+    /**
+     * Sends the given message, taking care of the resulting events, audit records and retries
+     * @return Whether the provider took the message; false when it turned it down and the message was left to the
+     * retries
+     */
+    boolean send(OutgoingSms sms);
+}
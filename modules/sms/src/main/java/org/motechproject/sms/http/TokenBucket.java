@@ -0,0 +1,80 @@
+package org.motechproject.sms.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter, paces the requests we make to one SMS provider. Callers reserve a token under the lock
+ * and do their waiting outside of it, so a thread waiting on a slow bucket never blocks another bucket.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final double capacity;
+    private double nanosPerToken;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param millisecondsBetweenTokens how often a token gets added to the bucket
+     * @param capacity how many tokens the bucket may hold, ie: how many requests can be sent in a burst
+     */
+    public TokenBucket(Integer millisecondsBetweenTokens, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Token bucket capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+        setMillisecondsBetweenTokens(millisecondsBetweenTokens);
+    }
+
+    public final synchronized void setMillisecondsBetweenTokens(Integer millisecondsBetweenTokens) {
+        int milliseconds = (millisecondsBetweenTokens == null || millisecondsBetweenTokens < 0) ? 0 :
+                millisecondsBetweenTokens;
+        refill(System.nanoTime());
+        nanosPerToken = milliseconds * (double) NANOS_PER_MILLI;
+    }
+
+    /**
+     * Takes one token out of the bucket, waiting for it to be refilled if need be
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes one token out of the bucket if one is available right now
+     */
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    // returns how long the caller must wait before using the token it just reserved, the bucket may go into debt
+    synchronized long reserve(long now) {
+        refill(now);
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens * nanosPerToken);
+    }
+
+    private void refill(long now) {
+        if (nanosPerToken <= 0) {
+            tokens = Math.max(tokens, capacity);
+        } else if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+        }
+        if (now > lastRefill) {
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.motechproject.sms.service;
+
+import java.util.Iterator;
+
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+/**
+ * Represents an SMS campaign sent to a large number of recipients. Recipients are read lazily, one provider request's
+ * worth at a time, so they may come from a cursor or a file rather than from memory.
+ */
+public class BulkSms {
+    /**
+     * The recipients, only iterated once
+     */
+    private Iterator<String> recipients;
+    /**
+     * The content of the message to send, or the message handed to the personalizer
+     */
+    private String message;
+    /**
+     * If specified, use this config to send the SMS, otherwise use the default config
+     */
+    private String config;
+    /**
+     * If specified, each recipient gets the message returned by the personalizer
+     */
+    private SmsPersonalizer personalizer;
+
+    public BulkSms() {
+    }
+
+    public BulkSms(String config, Iterator<String> recipients, String message) {
+        this.config = config;
+        this.recipients = recipients;
+        this.message = message;
+    }
+
+    public BulkSms(String config, Iterator<String> recipients, String message, SmsPersonalizer personalizer) {
+        this(config, recipients, message);
+        this.personalizer = personalizer;
+    }
+
+    public Iterator<String> getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(Iterator<String> recipients) {
+        this.recipients = recipients;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public Boolean hasConfig() {
+        return isNotBlank(config);
+    }
+
+    public void setConfig(String config) {
+        this.config = config;
+    }
+
+    public SmsPersonalizer getPersonalizer() {
+        return personalizer;
+    }
+
+    public Boolean hasPersonalizer() {
+        return personalizer != null;
+    }
+
+    public void setPersonalizer(SmsPersonalizer personalizer) {
+        this.personalizer = personalizer;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkSms{" +
+                "message='" + message + '\'' +
+                ", config='" + config + '\'' +
+                ", personalized=" + hasPersonalizer() +
+                '}';
+    }
+}
@@ -0,0 +1,187 @@
+package org.motechproject.sms.service;
+
+import org.joda.time.DateTime;
+import org.motechproject.sms.audit.SmsCampaignRecord;
+import org.motechproject.sms.audit.SmsCampaignStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.motechproject.commons.date.util.DateUtil.now;
+
+/**
+ * In-memory state of a running bulk SMS campaign, copied into its SmsCampaignRecord at each checkpoint. Requests are
+ * counted once the provider took them or turned them down; those held back while their provider is failing are still
+ * pending until they are sent. Requests the workers pick up while the campaign is paused, or while an earlier request
+ * is held back, are held here until the campaign runner dispatches them again in the order they were read, so that
+ * the parts of a message still go out in order.
+ */
+class SmsCampaign {
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    private final SmsCampaignRecord record;
+    private final long startMillis;
+    private final long checkpointRequests;
+    private final SortedMap<Long, SmsCampaignRequest> held = new TreeMap<>();
+    // dispatched again, but not picked up by a worker yet
+    private final SortedSet<Long> released = new TreeSet<>();
+    // held back by the dispatcher until their provider's circuit closes
+    private final SortedSet<Long> deferred = new TreeSet<>();
+    private SmsCampaignStatus status;
+    private long nextSequence;
+    private long pending;
+    private long recipients;
+    private long providerRequests;
+    private long failedRequests;
+    private long nextCheckpoint;
+    private String errorMessage;
+    private DateTime endTime;
+
+    SmsCampaign(SmsCampaignRecord record, long checkpointRequests) {
+        this.record = record;
+        this.status = record.getStatus();
+        this.startMillis = System.currentTimeMillis();
+        this.checkpointRequests = checkpointRequests;
+        this.nextCheckpoint = checkpointRequests;
+    }
+
+    String getCampaignId() {
+        return record.getCampaignId();
+    }
+
+    synchronized void pause() {
+        if (status == SmsCampaignStatus.RUNNING) {
+            status = SmsCampaignStatus.PAUSED;
+        }
+    }
+
+    synchronized void resume() {
+        if (status == SmsCampaignStatus.PAUSED) {
+            status = SmsCampaignStatus.RUNNING;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Creates the request sending the given message, counted as pending until the provider took it or turned it down
+     */
+    synchronized SmsCampaignRequest request(OutgoingSms sms, int requestRecipients, boolean lastPart) {
+        pending++;
+        return new SmsCampaignRequest(this, sms, nextSequence++, requestRecipients, lastPart);
+    }
+
+    /**
+     * Called by the worker about to send the request
+     * @return false if the request was held, or dropped because the campaign failed
+     */
+    synchronized boolean mayPass(SmsCampaignRequest request) {
+        released.remove(request.getSequence());
+        if (deferred.remove(request.getSequence())) {
+            // the requests held behind it may be free to go now
+            notifyAll();
+        }
+        if (status == SmsCampaignStatus.FAILED) {
+            pending--;
+            notifyAll();
+            return false;
+        }
+        if (status == SmsCampaignStatus.PAUSED || heldBefore(request.getSequence())) {
+            held.put(request.getSequence(), request);
+            notifyAll();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean heldBefore(long sequence) {
+        return (!held.isEmpty() && held.firstKey() < sequence) || (!released.isEmpty() && released.first() < sequence)
+                || deferredBefore(sequence);
+    }
+
+    private boolean deferredBefore(long sequence) {
+        return !deferred.isEmpty() && deferred.first() < sequence;
+    }
+
+    /**
+     * Called when the dispatcher held the request back, it stays pending until it is dispatched again
+     */
+    synchronized void deferred(SmsCampaignRequest request) {
+        released.remove(request.getSequence());
+        deferred.add(request.getSequence());
+    }
+
+    synchronized void done(SmsCampaignRequest request, boolean accepted) {
+        pending--;
+        if (accepted) {
+            providerRequests++;
+            if (request.isLastPart()) {
+                recipients += request.getRecipients();
+            }
+        } else {
+            failedRequests++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until the campaign is running, then hands back the requests held meanwhile, which have to be dispatched
+     * again before anything else
+     * @param untilDrained Whether to also wait until every request dispatched so far was sent
+     * @return The requests to dispatch again, none once the campaign is running and, if untilDrained, drained
+     */
+    synchronized List<SmsCampaignRequest> awaitRunning(boolean untilDrained) throws InterruptedException {
+        while (true) {
+            if (status == SmsCampaignStatus.RUNNING) {
+                // those held behind a deferred request would only be held again
+                if (!held.isEmpty() && !deferredBefore(held.firstKey())) {
+                    List<SmsCampaignRequest> requests = new ArrayList<>(held.values());
+                    released.addAll(held.keySet());
+                    held.clear();
+                    return requests;
+                }
+                if (!untilDrained || pending == 0) {
+                    return Collections.emptyList();
+                }
+            }
+            wait();
+        }
+    }
+
+    /**
+     * @return Whether enough requests were sent since the last checkpoint to save the campaign's progress again
+     */
+    synchronized boolean checkpointDue() {
+        if (providerRequests + failedRequests < nextCheckpoint) {
+            return false;
+        }
+        nextCheckpoint = providerRequests + failedRequests + checkpointRequests;
+        return true;
+    }
+
+    synchronized void finish(SmsCampaignStatus finalStatus, String error) {
+        status = finalStatus;
+        errorMessage = error;
+        endTime = now();
+        notifyAll();
+    }
+
+    /**
+     * Brings the record up to date and returns it
+     */
+    synchronized SmsCampaignRecord toRecord() {
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+        record.setStatus(status);
+        record.setRecipients(recipients);
+        record.setProviderRequests(providerRequests);
+        record.setFailedRequests(failedRequests);
+        record.setRecipientsPerSecond(elapsedMillis > 0 ? recipients * MILLIS_PER_SECOND / elapsedMillis : 0.0);
+        record.setErrorMessage(errorMessage);
+        record.setEndTime(endTime);
+        return record;
+    }
+}
@@ -0,0 +1,53 @@
+package org.motechproject.sms.service;
+
+import org.motechproject.sms.http.DispatchListener;
+
+/**
+ * One provider request of a bulk SMS campaign: one part of the message, sent to one chunk of recipients
+ */
+class SmsCampaignRequest implements DispatchListener {
+    private final SmsCampaign campaign;
+    private final OutgoingSms sms;
+    private final long sequence;
+    private final int recipients;
+    private final boolean lastPart;
+
+    SmsCampaignRequest(SmsCampaign campaign, OutgoingSms sms, long sequence, int recipients, boolean lastPart) {
+        this.campaign = campaign;
+        this.sms = sms;
+        this.sequence = sequence;
+        this.recipients = recipients;
+        this.lastPart = lastPart;
+    }
+
+    OutgoingSms getSms() {
+        return sms;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getRecipients() {
+        return recipients;
+    }
+
+    boolean isLastPart() {
+        return lastPart;
+    }
+
+    @Override
+    public boolean beforeSend(OutgoingSms outgoingSms) {
+        return campaign.mayPass(this);
+    }
+
+    @Override
+    public void sent(OutgoingSms outgoingSms, boolean accepted) {
+        campaign.done(this, accepted);
+    }
+
+    @Override
+    public void deferred(OutgoingSms outgoingSms) {
+        campaign.deferred(this);
+    }
+}
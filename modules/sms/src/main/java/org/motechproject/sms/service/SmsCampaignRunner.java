@@ -0,0 +1,213 @@
+package org.motechproject.sms.service;
+
+import org.motechproject.sms.audit.SmsCampaignRecord;
+import org.motechproject.sms.audit.SmsCampaignRecordsDataService;
+import org.motechproject.sms.audit.SmsCampaignStatus;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
+import org.motechproject.sms.http.SmsDispatcher;
+import org.motechproject.sms.templates.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static org.motechproject.commons.date.util.DateUtil.now;
+
+/**
+ * Runs bulk SMS campaigns: reads the recipients lazily, maxRecipient at a time, and hands each chunk straight to the
+ * SmsDispatcher. The dispatcher's bounded queues slow the campaign down to the provider's pace. A campaign completes
+ * once every request it queued went through the provider. Progress is kept in a single SmsCampaignRecord, saved every
+ * CHECKPOINT_REQUESTS provider requests and whenever the campaign changes state. Recipients aren't kept anywhere, so
+ * campaigns still running when the module stopped are marked as failed when it starts again.
+ */
+@Service
+public class SmsCampaignRunner {
+    private static final int CHECKPOINT_REQUESTS = 100;
+
+    private Logger logger = LoggerFactory.getLogger(SmsCampaignRunner.class);
+    private ConfigsCache configsCache;
+    private SmsDispatcher smsDispatcher;
+    private SmsCampaignRecordsDataService smsCampaignRecordsDataService;
+    private ConcurrentMap<String, SmsCampaign> campaigns = new ConcurrentHashMap<>();
+    private ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "sms-campaign");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @Autowired
+    public SmsCampaignRunner(ConfigsCache configsCache, SmsDispatcher smsDispatcher,
+                             SmsCampaignRecordsDataService smsCampaignRecordsDataService) {
+        this.configsCache = configsCache;
+        this.smsDispatcher = smsDispatcher;
+        this.smsCampaignRecordsDataService = smsCampaignRecordsDataService;
+    }
+
+    private static String generateId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    public String start(final BulkSms bulkSms) {
+        ConfigsSnapshot configs = configsCache.getSnapshot();
+        final Config config = configs.getConfigOrDefault(bulkSms.getConfig());
+        final Template template = configs.getTemplate(config);
+        // fail early, before creating a campaign, if the message can't be split with this config
+        final List<String> messageParts = bulkSms.hasPersonalizer() ? null :
+                SmsServiceImpl.messageParts(bulkSms.getMessage(), config, template);
+
+        String campaignId = generateId();
+        SmsCampaignRecord record = smsCampaignRecordsDataService.create(new SmsCampaignRecord(campaignId,
+                config.getName(), SmsCampaignStatus.RUNNING, now()));
+        final SmsCampaign campaign = new SmsCampaign(record, CHECKPOINT_REQUESTS);
+        campaigns.put(campaignId, campaign);
+
+        logger.info("Starting campaign {}: {}", campaignId, bulkSms);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runCampaign(campaign, bulkSms, config, template, messageParts);
+            }
+        });
+        return campaignId;
+    }
+
+    private void runCampaign(SmsCampaign campaign, BulkSms bulkSms, Config config, Template template,
+                             List<String> messageParts) {
+        try {
+            int maxRecipient = template.getOutgoing().getMaxRecipient();
+            Iterator<String> recipients = bulkSms.getRecipients();
+
+            while (recipients.hasNext()) {
+                dispatch(campaign, campaign.awaitRunning(false));
+                if (bulkSms.hasPersonalizer()) {
+                    // each recipient gets their own message, so it's one recipient per request
+                    String recipient = recipients.next();
+                    String message = bulkSms.getPersonalizer().messageFor(recipient, bulkSms.getMessage());
+                    send(campaign, config, Collections.singletonList(recipient),
+                            SmsServiceImpl.messageParts(message, config, template));
+                } else {
+                    List<String> chunk = new ArrayList<>(maxRecipient);
+                    while (chunk.size() < maxRecipient && recipients.hasNext()) {
+                        chunk.add(recipients.next());
+                    }
+                    send(campaign, config, chunk, messageParts);
+                }
+            }
+
+            // everything is queued, wait for it to go out
+            List<SmsCampaignRequest> held;
+            do {
+                held = campaign.awaitRunning(true);
+                dispatch(campaign, held);
+            } while (!held.isEmpty());
+
+            campaign.finish(SmsCampaignStatus.COMPLETED, null);
+            logger.info("Campaign {} completed", campaign.getCampaignId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            campaign.finish(SmsCampaignStatus.FAILED, "Interrupted");
+        } catch (RuntimeException e) {
+            logger.error("Campaign {} failed: {}", campaign.getCampaignId(), e.toString());
+            campaign.finish(SmsCampaignStatus.FAILED, e.toString());
+        } finally {
+            checkpoint(campaign);
+            campaigns.remove(campaign.getCampaignId());
+        }
+    }
+
+    private void send(SmsCampaign campaign, Config config, List<String> recipients, List<String> messageParts) {
+        List<SmsCampaignRequest> requests = new ArrayList<>(messageParts.size());
+        for (int i = 0; i < messageParts.size(); ++i) {
+            OutgoingSms sms = new OutgoingSms(config.getName(), recipients, messageParts.get(i));
+            sms.setMotechId(generateId());
+            requests.add(campaign.request(sms, recipients.size(), i == messageParts.size() - 1));
+        }
+        dispatch(campaign, requests);
+    }
+
+    private void dispatch(SmsCampaign campaign, List<SmsCampaignRequest> requests) {
+        for (SmsCampaignRequest request : requests) {
+            smsDispatcher.dispatch(request.getSms(), request);
+        }
+        if (campaign.checkpointDue()) {
+            checkpoint(campaign);
+        }
+    }
+
+    private void checkpoint(SmsCampaign campaign) {
+        try {
+            smsCampaignRecordsDataService.update(campaign.toRecord());
+        } catch (RuntimeException e) {
+            logger.error("Unable to save progress of campaign {}: {}", campaign.getCampaignId(), e.toString());
+        }
+    }
+
+    private SmsCampaign runningCampaign(String campaignId) {
+        SmsCampaign campaign = campaigns.get(campaignId);
+        if (campaign == null) {
+            throw new IllegalStateException("'" + campaignId + "': no such running campaign");
+        }
+        return campaign;
+    }
+
+    public void pause(String campaignId) {
+        SmsCampaign campaign = runningCampaign(campaignId);
+        campaign.pause();
+        checkpoint(campaign);
+    }
+
+    public void resume(String campaignId) {
+        SmsCampaign campaign = runningCampaign(campaignId);
+        campaign.resume();
+        checkpoint(campaign);
+    }
+
+    public SmsCampaignRecord getCampaign(String campaignId) {
+        SmsCampaign campaign = campaigns.get(campaignId);
+        if (campaign != null) {
+            return campaign.toRecord();
+        }
+        return smsCampaignRecordsDataService.findByCampaignId(campaignId);
+    }
+
+    @PostConstruct
+    public void failInterruptedCampaigns() {
+        try {
+            for (SmsCampaignStatus status : Arrays.asList(SmsCampaignStatus.RUNNING, SmsCampaignStatus.PAUSED)) {
+                for (SmsCampaignRecord record : smsCampaignRecordsDataService.findByStatus(status)) {
+                    logger.warn("Campaign {} was interrupted by a restart", record.getCampaignId());
+                    record.setStatus(SmsCampaignStatus.FAILED);
+                    record.setErrorMessage("Interrupted by a restart");
+                    record.setEndTime(now());
+                    smsCampaignRecordsDataService.update(record);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to look for campaigns interrupted by a restart: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
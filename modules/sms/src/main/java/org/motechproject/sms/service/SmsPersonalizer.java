@@ -0,0 +1,9 @@
+package org.motechproject.sms.service;
+
+/**
+ * Builds the message a given recipient of a bulk SMS gets
+ */
+public interface SmsPersonalizer {
+
+    String messageFor(String recipient, String message);
+}
@@ -1,8 +1,26 @@
 package org.motechproject.sms.service;
 
+import org.motechproject.sms.audit.SmsCampaignRecord;
+
 /**
  * Send an SMS
  */
 public interface SmsService {
     void send(final OutgoingSms message);
+
+    /**
+     * Starts sending the given message to all its recipients in the background
+     *
+     * @return the campaign id, used to follow, pause or resume the campaign
+     */
+    String sendBulk(final BulkSms bulkSms);
+
+    void pauseCampaign(String campaignId);
+
+    void resumeCampaign(String campaignId);
+
+    /**
+     * The campaign's progress, or null if there's no such campaign
+     */
+    SmsCampaignRecord getCampaign(String campaignId);
 }
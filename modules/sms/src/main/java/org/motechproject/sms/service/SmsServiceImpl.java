@@ -5,22 +5,19 @@ import org.motechproject.event.MotechEvent;
 import org.motechproject.event.listener.EventRelay;
 import org.motechproject.scheduler.service.MotechSchedulerService;
 import org.motechproject.scheduler.contract.RunOnceSchedulableJob;
-import org.motechproject.server.config.SettingsFacade;
 import org.motechproject.sms.SmsEventParams;
 import org.motechproject.sms.SmsEventSubjects;
 import org.motechproject.sms.audit.DeliveryStatus;
 import org.motechproject.sms.audit.SmsAuditService;
+import org.motechproject.sms.audit.SmsCampaignRecord;
 import org.motechproject.sms.audit.SmsRecord;
 import org.motechproject.sms.configs.Config;
-import org.motechproject.sms.configs.ConfigReader;
-import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
 import org.motechproject.sms.templates.Template;
-import org.motechproject.sms.templates.TemplateReader;
-import org.motechproject.sms.templates.Templates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -39,28 +36,24 @@ import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
 @Service("smsService")
 public class SmsServiceImpl implements SmsService {
 
-    private SettingsFacade settingsFacade;
+    private ConfigsCache configsCache;
     private Logger logger = LoggerFactory.getLogger(SmsServiceImpl.class);
     private EventRelay eventRelay;
     private MotechSchedulerService schedulerService;
-    private Templates templates;
     private SmsAuditService smsAuditService;
+    private SmsCampaignRunner smsCampaignRunner;
 
     @Autowired
-    public SmsServiceImpl(@Qualifier("smsSettings") SettingsFacade settingsFacade, EventRelay eventRelay,
-                          MotechSchedulerService schedulerService, TemplateReader templateReader,
-                          SmsAuditService smsAuditService) {
-        //todo: persist configs or reload them for each call?
-        //todo: right now I'm doing the latter...
-        //todo: ... but I'm not wed to it.
-        this.settingsFacade = settingsFacade;
+    public SmsServiceImpl(ConfigsCache configsCache, EventRelay eventRelay, MotechSchedulerService schedulerService,
+                          SmsAuditService smsAuditService, SmsCampaignRunner smsCampaignRunner) {
+        this.smsCampaignRunner = smsCampaignRunner;
+        this.configsCache = configsCache;
         this.eventRelay = eventRelay;
         this.schedulerService = schedulerService;
-        templates = templateReader.getTemplates();
         this.smsAuditService = smsAuditService;
     }
 
-    private static List<String> splitMessage(String message, int maxSize, String header, String footer,
+    static List<String> splitMessage(String message, int maxSize, String header, String footer,
                                              boolean excludeLastFooter) {
         List<String> parts = new ArrayList<String>();
         int messageLength = message.length();
@@ -94,6 +87,26 @@ public class SmsServiceImpl implements SmsService {
         return parts;
     }
 
+    /**
+     * Splits the message in as many parts as the config's template maximum sms size requires
+     */
+    static List<String> messageParts(String message, Config config, Template template) {
+        Integer maxSize = template.getOutgoing().getMaxSmsSize();
+        String header = config.getSplitHeader();
+        String footer = config.getSplitFooter();
+        Boolean excludeLastFooter = config.getExcludeLastFooter();
+
+        //todo - cr - move that to the Config object so calculated only once ?
+        //todo - cr - investigate if that might be a problem on windows
+        // -2 to account for the added \n after the header and before the footer
+        if ((maxSize - header.length() - footer.length() - 2) <= 0) {
+            throw new IllegalArgumentException(
+                    "The combined sizes of the header and footer templates are larger than the maximum SMS size!");
+        }
+
+        return splitMessage(message, maxSize, header, footer, excludeLastFooter);
+    }
+
     private List<List<String>> splitRecipientList(List<String> list, Integer maxSize) {
         List<List<String>> ret = new ArrayList<>();
         int i = 0;
@@ -122,8 +135,7 @@ public class SmsServiceImpl implements SmsService {
      */
     public void send(OutgoingSms sms) {
 
-        //todo: cache that?
-        Configs configs = new ConfigReader(settingsFacade).getConfigs();
+        ConfigsSnapshot configs = configsCache.getSnapshot();
         Config config;
         Template template;
 
@@ -133,26 +145,14 @@ public class SmsServiceImpl implements SmsService {
             logger.debug("No config specified, using default config.");
             config = configs.getDefaultConfig();
         }
-        template = templates.getTemplate(config.getTemplateName());
+        template = configs.getTemplate(config);
 
         //todo: die if things aren't right, right?
         //todo: SMS_SCHEDULE_FUTURE_SMS research if any sms provider provides that, for now assume not.
 
-        Integer maxSize = template.getOutgoing().getMaxSmsSize();
-        String header = config.getSplitHeader();
-        String footer = config.getSplitFooter();
-        Boolean excludeLastFooter = config.getExcludeLastFooter();
         //todo: maximum number of supported recipients : per template/provider and/or per http specs
 
-        //todo - cr - move that to the Config object so calculated only once ?
-        //todo - cr - investigate if that might be a problem on windows
-        // -2 to account for the added \n after the header and before the footer
-        if ((maxSize - header.length() - footer.length() - 2) <= 0) {
-            throw new IllegalArgumentException(
-                    "The combined sizes of the header and footer templates are larger than the maximum SMS size!");
-        }
-
-        List<String> messageParts = splitMessage(sms.getMessage(), maxSize, header, footer, excludeLastFooter);
+        List<String> messageParts = messageParts(sms.getMessage(), config, template);
         List<List<String>> recipientsList = splitRecipientList(sms.getRecipients(),
                 template.getOutgoing().getMaxRecipient());
 
@@ -192,4 +192,24 @@ public class SmsServiceImpl implements SmsService {
             }
         }
     }
+
+    @Override
+    public String sendBulk(BulkSms bulkSms) {
+        return smsCampaignRunner.start(bulkSms);
+    }
+
+    @Override
+    public void pauseCampaign(String campaignId) {
+        smsCampaignRunner.pause(campaignId);
+    }
+
+    @Override
+    public void resumeCampaign(String campaignId) {
+        smsCampaignRunner.resume(campaignId);
+    }
+
+    @Override
+    public SmsCampaignRecord getCampaign(String campaignId) {
+        return smsCampaignRunner.getCampaign(campaignId);
+    }
 }
@@ -0,0 +1,96 @@
+package org.motechproject.sms.smpp;
+
+import org.motechproject.sms.audit.DeliveryStatus;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A deliver_sm received from the SMSC: either an incoming message or a delivery receipt for one we sent, in which
+ * case the message text looks like "id:IIIIIIIIII sub:SSS dlvrd:DDD submit date:YYMMDDhhmm done date:YYMMDDhhmm
+ * stat:DDDDDDD err:E text:..."
+ */
+final class DeliverSm {
+    private static final int MESSAGE_TYPE_MASK = 0x3C;
+    private static final int MESSAGE_TYPE_DELIVERY_RECEIPT = 0x04;
+    private static final Pattern RECEIPT_ID_PATTERN = Pattern.compile("id:(\\S+)");
+    private static final Pattern RECEIPT_STAT_PATTERN = Pattern.compile("stat:(\\S+)");
+
+    private final SmppAddress source;
+    private final SmppAddress destination;
+    private final int esmClass;
+    private final String message;
+    private final String receiptedMessageId;
+
+    DeliverSm(SmppAddress source, SmppAddress destination, int esmClass, String message, String receiptedMessageId) {
+        this.source = source;
+        this.destination = destination;
+        this.esmClass = esmClass;
+        this.message = message;
+        this.receiptedMessageId = receiptedMessageId;
+    }
+
+    static boolean isDeliveryReceipt(int esmClass) {
+        return (esmClass & MESSAGE_TYPE_MASK) == MESSAGE_TYPE_DELIVERY_RECEIPT;
+    }
+
+    boolean isDeliveryReceipt() {
+        return isDeliveryReceipt(esmClass);
+    }
+
+    /**
+     * The message_id the SMSC gave the message this receipt is for
+     */
+    String getReceiptMessageId() {
+        if (receiptedMessageId != null && !receiptedMessageId.isEmpty()) {
+            return receiptedMessageId;
+        }
+        Matcher m = RECEIPT_ID_PATTERN.matcher(message);
+        return m.find() ? m.group(1) : null;
+    }
+
+    /**
+     * The receipt's stat field, ie: DELIVRD, UNDELIV...
+     */
+    String getReceiptStat() {
+        Matcher m = RECEIPT_STAT_PATTERN.matcher(message);
+        return m.find() ? m.group(1) : null;
+    }
+
+    /**
+     * Maps the receipt's stat to one of our delivery statuses, anything we're unsure about stays DISPATCHED
+     */
+    DeliveryStatus getReceiptDeliveryStatus() {
+        String stat = getReceiptStat();
+        if ("DELIVRD".equals(stat)) {
+            return DeliveryStatus.DELIVERY_CONFIRMED;
+        }
+        if ("UNDELIV".equals(stat) || "EXPIRED".equals(stat) || "DELETED".equals(stat) || "REJECTD".equals(stat)) {
+            return DeliveryStatus.FAILURE_CONFIRMED;
+        }
+        return DeliveryStatus.DISPATCHED;
+    }
+
+    SmppAddress getSource() {
+        return source;
+    }
+
+    SmppAddress getDestination() {
+        return destination;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "DeliverSm{" +
+                "source=" + source +
+                ", destination=" + destination +
+                ", esmClass=" + esmClass +
+                ", message='" + message + '\'' +
+                ", receiptedMessageId='" + receiptedMessageId + '\'' +
+                '}';
+    }
+}
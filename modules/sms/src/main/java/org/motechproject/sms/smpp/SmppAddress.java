@@ -0,0 +1,33 @@
+package org.motechproject.sms.smpp;
+
+/**
+ * An SMPP address: type of number, numbering plan indicator and the address itself
+ */
+final class SmppAddress {
+    private final int ton;
+    private final int npi;
+    private final String address;
+
+    SmppAddress(int ton, int npi, String address) {
+        this.ton = ton;
+        this.npi = npi;
+        this.address = address;
+    }
+
+    int getTon() {
+        return ton;
+    }
+
+    int getNpi() {
+        return npi;
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+}
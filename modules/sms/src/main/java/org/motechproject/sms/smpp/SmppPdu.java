@@ -0,0 +1,305 @@
+package org.motechproject.sms.smpp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * An SMPP 3.4 PDU: its header and its still encoded body. Only knows about the operations a transceiver sending
+ * messages and receiving delivery receipts needs.
+ */
+final class SmppPdu {
+    static final int HEADER_LENGTH = 16;
+    static final int MAX_LENGTH = 64 * 1024;
+
+    static final int GENERIC_NACK = 0x80000000;
+    static final int BIND_TRANSCEIVER = 0x00000009;
+    static final int BIND_TRANSCEIVER_RESP = 0x80000009;
+    static final int SUBMIT_SM = 0x00000004;
+    static final int SUBMIT_SM_RESP = 0x80000004;
+    static final int DELIVER_SM = 0x00000005;
+    static final int DELIVER_SM_RESP = 0x80000005;
+    static final int UNBIND = 0x00000006;
+    static final int UNBIND_RESP = 0x80000006;
+    static final int ENQUIRE_LINK = 0x00000015;
+    static final int ENQUIRE_LINK_RESP = 0x80000015;
+    static final int RESPONSE_MASK = 0x80000000;
+
+    static final int ESME_ROK = 0x00;
+    static final int ESME_RINVCMDID = 0x03;
+    static final int ESME_RSYSERR = 0x08;
+    static final int ESME_RMSGQFUL = 0x14;
+    static final int ESME_RTHROTTLED = 0x58;
+
+    static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+    static final Charset UCS2_CHARSET = Charset.forName("UTF-16BE");
+
+    private static final int INTERFACE_VERSION = 0x34;
+    private static final int DATA_CODING_DEFAULT = 0x00;
+    private static final int DATA_CODING_UCS2 = 0x08;
+    private static final int REGISTERED_DELIVERY_RECEIPT = 0x01;
+    private static final int MAX_SHORT_MESSAGE_LENGTH = 254;
+    private static final int TAG_RECEIPTED_MESSAGE_ID = 0x001E;
+    private static final int TAG_MESSAGE_PAYLOAD = 0x0424;
+    private static final int ASCII_MAX = 0x7F;
+
+    private final int commandId;
+    private final int commandStatus;
+    private final int sequenceNumber;
+    private final byte[] body;
+
+    private SmppPdu(int commandId, int commandStatus, int sequenceNumber, byte[] body) {
+        this.commandId = commandId;
+        this.commandStatus = commandStatus;
+        this.sequenceNumber = sequenceNumber;
+        this.body = body;
+    }
+
+    static SmppPdu read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_LENGTH || length > MAX_LENGTH) {
+            throw new IOException("Invalid PDU length: " + length);
+        }
+        int commandId = in.readInt();
+        int commandStatus = in.readInt();
+        int sequenceNumber = in.readInt();
+        byte[] body = new byte[length - HEADER_LENGTH];
+        in.readFully(body);
+        return new SmppPdu(commandId, commandStatus, sequenceNumber, body);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(HEADER_LENGTH + body.length);
+        out.writeInt(commandId);
+        out.writeInt(commandStatus);
+        out.writeInt(sequenceNumber);
+        out.write(body);
+    }
+
+    static SmppPdu bindTransceiver(int sequenceNumber, String systemId, String password, String systemType) {
+        Body body = new Body()
+                .cString(systemId)
+                .cString(password)
+                .cString(systemType)
+                .octet(INTERFACE_VERSION)
+                .octet(0)
+                .octet(0)
+                .cString("");
+        return new SmppPdu(BIND_TRANSCEIVER, ESME_ROK, sequenceNumber, body.toByteArray());
+    }
+
+    static SmppPdu submitSm(int sequenceNumber, SmppAddress source, SmppAddress destination, String serviceType,
+                            String message) {
+        boolean ascii = isAscii(message);
+        byte[] encoded = message.getBytes(ascii ? DEFAULT_CHARSET : UCS2_CHARSET);
+        Body body = new Body()
+                .cString(serviceType)
+                .octet(source.getTon())
+                .octet(source.getNpi())
+                .cString(source.getAddress())
+                .octet(destination.getTon())
+                .octet(destination.getNpi())
+                .cString(destination.getAddress())
+                // esm_class, protocol_id, priority_flag
+                .octet(0)
+                .octet(0)
+                .octet(0)
+                // schedule_delivery_time, validity_period
+                .cString("")
+                .cString("")
+                .octet(REGISTERED_DELIVERY_RECEIPT)
+                // replace_if_present_flag
+                .octet(0)
+                .octet(ascii ? DATA_CODING_DEFAULT : DATA_CODING_UCS2)
+                // sm_default_msg_id
+                .octet(0);
+        if (encoded.length <= MAX_SHORT_MESSAGE_LENGTH) {
+            body.octet(encoded.length).bytes(encoded);
+        } else {
+            body.octet(0).tlv(TAG_MESSAGE_PAYLOAD, encoded);
+        }
+        return new SmppPdu(SUBMIT_SM, ESME_ROK, sequenceNumber, body.toByteArray());
+    }
+
+    static SmppPdu enquireLink(int sequenceNumber) {
+        return new SmppPdu(ENQUIRE_LINK, ESME_ROK, sequenceNumber, new byte[0]);
+    }
+
+    static SmppPdu unbind(int sequenceNumber) {
+        return new SmppPdu(UNBIND, ESME_ROK, sequenceNumber, new byte[0]);
+    }
+
+    /**
+     * The response to the given request, deliver_sm_resp carries an empty message_id
+     */
+    static SmppPdu responseTo(SmppPdu request, int commandStatus) {
+        byte[] body = request.commandId == DELIVER_SM ? new Body().cString("").toByteArray() : new byte[0];
+        return new SmppPdu(request.commandId | RESPONSE_MASK, commandStatus, request.sequenceNumber, body);
+    }
+
+    static SmppPdu genericNack(int sequenceNumber, int commandStatus) {
+        return new SmppPdu(GENERIC_NACK, commandStatus, sequenceNumber, new byte[0]);
+    }
+
+    private static boolean isAscii(String message) {
+        for (int i = 0; i < message.length(); i++) {
+            if (message.charAt(i) > ASCII_MAX) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The message_id of a submit_sm_resp
+     */
+    String readMessageId() {
+        if (body.length == 0) {
+            return null;
+        }
+        return new BodyReader(body).cString();
+    }
+
+    DeliverSm readDeliverSm() {
+        BodyReader reader = new BodyReader(body);
+        // service_type
+        reader.cString();
+        SmppAddress source = new SmppAddress(reader.octet(), reader.octet(), reader.cString());
+        SmppAddress destination = new SmppAddress(reader.octet(), reader.octet(), reader.cString());
+        int esmClass = reader.octet();
+        // protocol_id, priority_flag, schedule_delivery_time, validity_period, registered_delivery,
+        // replace_if_present_flag
+        reader.octet();
+        reader.octet();
+        reader.cString();
+        reader.cString();
+        reader.octet();
+        reader.octet();
+        int dataCoding = reader.octet();
+        // sm_default_msg_id
+        reader.octet();
+        byte[] shortMessage = reader.bytes(reader.octet());
+
+        String receiptedMessageId = null;
+        while (reader.remaining() >= 4) {
+            int tag = reader.short16();
+            byte[] value = reader.bytes(reader.short16());
+            if (tag == TAG_MESSAGE_PAYLOAD) {
+                shortMessage = value;
+            } else if (tag == TAG_RECEIPTED_MESSAGE_ID) {
+                receiptedMessageId = new BodyReader(value).cString();
+            }
+        }
+        // receipt texts are always in the default alphabet, whatever data_coding the SMSC copied over
+        boolean ucs2 = dataCoding == DATA_CODING_UCS2 && !DeliverSm.isDeliveryReceipt(esmClass);
+        String message = new String(shortMessage, ucs2 ? UCS2_CHARSET : DEFAULT_CHARSET);
+        return new DeliverSm(source, destination, esmClass, message, receiptedMessageId);
+    }
+
+    int getCommandId() {
+        return commandId;
+    }
+
+    int getCommandStatus() {
+        return commandStatus;
+    }
+
+    int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    boolean isResponse() {
+        return (commandId & RESPONSE_MASK) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SmppPdu{commandId=0x%08x, commandStatus=0x%08x, sequenceNumber=%d, bodyLength=%d}",
+                commandId, commandStatus, sequenceNumber, body.length);
+    }
+
+    private static class Body {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Body octet(int value) {
+            out.write(value);
+            return this;
+        }
+
+        Body cString(String value) {
+            if (value != null) {
+                byte[] bytes = value.getBytes(DEFAULT_CHARSET);
+                out.write(bytes, 0, bytes.length);
+            }
+            out.write(0);
+            return this;
+        }
+
+        Body bytes(byte[] value) {
+            out.write(value, 0, value.length);
+            return this;
+        }
+
+        Body tlv(int tag, byte[] value) {
+            out.write(tag >> 8);
+            out.write(tag);
+            out.write(value.length >> 8);
+            out.write(value.length);
+            return bytes(value);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    private static class BodyReader {
+        private static final int OCTET_MASK = 0xFF;
+        private final byte[] body;
+        private int position;
+
+        BodyReader(byte[] body) {
+            this.body = body;
+        }
+
+        int remaining() {
+            return body.length - position;
+        }
+
+        int octet() {
+            if (position >= body.length) {
+                throw new IllegalStateException("Unexpected end of PDU");
+            }
+            return body[position++] & OCTET_MASK;
+        }
+
+        int short16() {
+            return (octet() << 8) | octet();
+        }
+
+        String cString() {
+            int start = position;
+            while (position < body.length && body[position] != 0) {
+                position++;
+            }
+            String value = new String(body, start, position - start, DEFAULT_CHARSET);
+            // skip the terminating NULL
+            if (position < body.length) {
+                position++;
+            }
+            return value;
+        }
+
+        byte[] bytes(int length) {
+            if (length > remaining()) {
+                throw new IllegalStateException("Unexpected end of PDU");
+            }
+            byte[] value = new byte[length];
+            System.arraycopy(body, position, value, 0, length);
+            position += length;
+            return value;
+        }
+    }
+}
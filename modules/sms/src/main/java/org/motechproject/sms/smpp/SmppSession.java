@@ -0,0 +1,383 @@
+package org.motechproject.sms.smpp;
+
+import org.motechproject.sms.templates.Smpp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent SMPP 3.4 transceiver bind to one provider. Messages are submitted asynchronously: up to windowSize
+ * submit_sm can be waiting for their submit_sm_resp, which a reader thread matches back to their SubmitCallback by
+ * sequence number. Delivery receipts and incoming messages arrive on the same bind and go to the Listener.
+ * An enquire_link is sent every enquireLinkMillis to keep the bind alive; if the connection drops anyway, whatever
+ * was waiting for a response fails and the session binds again in the background.
+ */
+class SmppSession {
+
+    /**
+     * Told about the deliver_sm the provider sends us, on the session's reader thread
+     */
+    interface Listener {
+        void delivered(DeliverSm deliverSm);
+    }
+
+    /**
+     * Told what became of a submit_sm, either on the session's reader thread, its timer thread or on the thread
+     * which submitted the message
+     */
+    interface SubmitCallback {
+        void submitted(String messageId);
+
+        void failed(int commandStatus, String reason);
+    }
+
+    private static final int MAX_SEQUENCE_NUMBER = 0x7FFFFFFF;
+
+    private final String name;
+    private final Smpp smpp;
+    private final String systemId;
+    private final String password;
+    private final Listener listener;
+    private final Semaphore window;
+    private final ConcurrentMap<Integer, PendingSubmit> pendingSubmits = new ConcurrentHashMap<>();
+    private final AtomicInteger sequenceNumber = new AtomicInteger();
+    private final ScheduledExecutorService timer;
+    private final Object bindLock = new Object();
+    private volatile Connection connection;
+    private volatile boolean closed;
+    private Logger logger = LoggerFactory.getLogger(SmppSession.class);
+
+    SmppSession(String name, Smpp smpp, String systemId, String password, Listener listener) {
+        this.name = name;
+        this.smpp = smpp;
+        this.systemId = systemId;
+        this.password = password;
+        this.listener = listener;
+        window = new Semaphore(smpp.getWindowSize());
+        timer = Executors.newSingleThreadScheduledExecutor(new SessionThreadFactory("smpp-" + name + "-timer"));
+        long period = smpp.getEnquireLinkMillis();
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                keepAlive();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Binds, unless we already are
+     */
+    void bind() throws IOException {
+        synchronized (bindLock) {
+            if (closed) {
+                throw new IOException(String.format("SMPP session %s is closed", name));
+            }
+            if (connection != null) {
+                return;
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(smpp.getHost(), smpp.getPort()),
+                        smpp.getResponseTimeoutMillis().intValue());
+                socket.setSoTimeout(smpp.getResponseTimeoutMillis().intValue());
+                Connection newConnection = new Connection(socket);
+                newConnection.write(SmppPdu.bindTransceiver(nextSequenceNumber(), systemId, password,
+                        smpp.getSystemType()));
+                SmppPdu response = newConnection.read();
+                if (response.getCommandId() != SmppPdu.BIND_TRANSCEIVER_RESP ||
+                        response.getCommandStatus() != SmppPdu.ESME_ROK) {
+                    throw new IOException(String.format("Unable to bind to %s:%d as %s: %s", smpp.getHost(),
+                            smpp.getPort(), systemId, response));
+                }
+                // from now on, only the enquire_link keeps an eye on the connection
+                socket.setSoTimeout(0);
+                connection = newConnection;
+                newConnection.startReading();
+                logger.info("SMPP session {} bound to {}:{} as {}", name, smpp.getHost(), smpp.getPort(), systemId);
+            } catch (IOException e) {
+                closeQuietly(socket);
+                throw e;
+            }
+        }
+    }
+
+    boolean isBound() {
+        return connection != null;
+    }
+
+    /**
+     * Sends a submit_sm for the given message, waiting for room in the window if need be. The callback is always
+     * called, exactly once.
+     */
+    void submit(SmppAddress source, SmppAddress destination, String message, SubmitCallback callback) {
+        try {
+            bind();
+        } catch (IOException e) {
+            callback.failed(SmppPdu.ESME_RSYSERR, e.toString());
+            return;
+        }
+        try {
+            if (!window.tryAcquire(smpp.getResponseTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                callback.failed(SmppPdu.ESME_RTHROTTLED, "Timed out waiting for room in the submit window");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.failed(SmppPdu.ESME_RSYSERR, "Interrupted waiting for room in the submit window");
+            return;
+        }
+
+        int sequence = nextSequenceNumber();
+        long deadline = System.currentTimeMillis() + smpp.getResponseTimeoutMillis();
+        pendingSubmits.put(sequence, new PendingSubmit(callback, deadline));
+        Connection current = connection;
+        if (current == null) {
+            fail(sequence, SmppPdu.ESME_RSYSERR, "Connection lost");
+            return;
+        }
+        try {
+            current.write(SmppPdu.submitSm(sequence, source, destination, smpp.getServiceType(), message));
+        } catch (IOException e) {
+            connectionLost(current, e);
+        }
+    }
+
+    /**
+     * Unbinds and stops the session for good, whatever is still waiting for a response fails
+     */
+    void close() {
+        closed = true;
+        timer.shutdownNow();
+        synchronized (bindLock) {
+            Connection current = connection;
+            if (current != null) {
+                try {
+                    current.write(SmppPdu.unbind(nextSequenceNumber()));
+                } catch (IOException e) {
+                    logger.debug("SMPP session {}: unable to unbind: {}", name, e.toString());
+                }
+                connectionLost(current, null);
+            }
+        }
+        failAll("Session closed");
+    }
+
+    int getPendingSubmits() {
+        return pendingSubmits.size();
+    }
+
+    private int nextSequenceNumber() {
+        int current;
+        int next;
+        do {
+            current = sequenceNumber.get();
+            next = current >= MAX_SEQUENCE_NUMBER ? 1 : current + 1;
+        } while (!sequenceNumber.compareAndSet(current, next));
+        return next;
+    }
+
+    private void keepAlive() {
+        expirePendingSubmits();
+        Connection current = connection;
+        if (current != null) {
+            try {
+                current.write(SmppPdu.enquireLink(nextSequenceNumber()));
+            } catch (IOException e) {
+                connectionLost(current, e);
+            }
+        } else if (!closed) {
+            // keep the bind up even when there's nothing to send, receipts arrive through it
+            try {
+                bind();
+            } catch (IOException e) {
+                logger.warn("SMPP session {}: unable to bind again: {}", name, e.toString());
+            }
+        }
+    }
+
+    private void expirePendingSubmits() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, PendingSubmit> entry : pendingSubmits.entrySet()) {
+            if (entry.getValue().deadline < now) {
+                fail(entry.getKey(), SmppPdu.ESME_RSYSERR, "Timed out waiting for submit_sm_resp");
+            }
+        }
+    }
+
+    private void fail(int sequence, int commandStatus, String reason) {
+        PendingSubmit pending = pendingSubmits.remove(sequence);
+        if (pending != null) {
+            window.release();
+            pending.callback.failed(commandStatus, reason);
+        }
+    }
+
+    private void failAll(String reason) {
+        Iterator<Integer> it = pendingSubmits.keySet().iterator();
+        while (it.hasNext()) {
+            fail(it.next(), SmppPdu.ESME_RSYSERR, reason);
+        }
+    }
+
+    private void connectionLost(Connection lost, IOException e) {
+        synchronized (bindLock) {
+            // the reader and a writer may both notice, only the first one counts
+            if (connection != lost) {
+                return;
+            }
+            connection = null;
+        }
+        closeQuietly(lost.socket);
+        if (e != null && !closed) {
+            logger.warn("SMPP session {}: connection lost: {}", name, e.toString());
+        }
+        // nothing sent on that connection is getting a response now
+        failAll("Connection lost");
+    }
+
+    private void handle(Connection from, SmppPdu pdu) throws IOException {
+        switch (pdu.getCommandId()) {
+            case SmppPdu.SUBMIT_SM_RESP:
+                PendingSubmit pending = pendingSubmits.remove(pdu.getSequenceNumber());
+                if (pending == null) {
+                    logger.warn("SMPP session {}: unexpected {}", name, pdu);
+                    return;
+                }
+                window.release();
+                if (pdu.getCommandStatus() == SmppPdu.ESME_ROK) {
+                    pending.callback.submitted(pdu.readMessageId());
+                } else {
+                    pending.callback.failed(pdu.getCommandStatus(),
+                            String.format("submit_sm rejected with status 0x%08x", pdu.getCommandStatus()));
+                }
+                break;
+            case SmppPdu.DELIVER_SM:
+                DeliverSm deliverSm;
+                try {
+                    deliverSm = pdu.readDeliverSm();
+                } catch (IllegalStateException e) {
+                    logger.error("SMPP session {}: invalid deliver_sm: {}", name, e.getMessage());
+                    from.write(SmppPdu.responseTo(pdu, SmppPdu.ESME_RSYSERR));
+                    return;
+                }
+                // acknowledge first, the provider resends whatever we don't acknowledge in time
+                from.write(SmppPdu.responseTo(pdu, SmppPdu.ESME_ROK));
+                try {
+                    listener.delivered(deliverSm);
+                } catch (RuntimeException e) {
+                    logger.error("SMPP session {}: unable to handle {}: {}", name, deliverSm, e.toString());
+                }
+                break;
+            case SmppPdu.ENQUIRE_LINK:
+                from.write(SmppPdu.responseTo(pdu, SmppPdu.ESME_ROK));
+                break;
+            case SmppPdu.UNBIND:
+                from.write(SmppPdu.responseTo(pdu, SmppPdu.ESME_ROK));
+                throw new IOException("Unbound by the provider");
+            case SmppPdu.GENERIC_NACK:
+                fail(pdu.getSequenceNumber(), pdu.getCommandStatus(),
+                        String.format("generic_nack with status 0x%08x", pdu.getCommandStatus()));
+                break;
+            case SmppPdu.ENQUIRE_LINK_RESP:
+            case SmppPdu.UNBIND_RESP:
+                break;
+            default:
+                if (!pdu.isResponse()) {
+                    from.write(SmppPdu.genericNack(pdu.getSequenceNumber(), SmppPdu.ESME_RINVCMDID));
+                }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing more we can do
+            return;
+        }
+    }
+
+    private static class PendingSubmit {
+        private final SubmitCallback callback;
+        private final long deadline;
+
+        PendingSubmit(SubmitCallback callback, long deadline) {
+            this.callback = callback;
+            this.deadline = deadline;
+        }
+    }
+
+    private class Connection implements Runnable {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        SmppPdu read() throws IOException {
+            return SmppPdu.read(in);
+        }
+
+        void write(SmppPdu pdu) throws IOException {
+            synchronized (out) {
+                pdu.write(out);
+                out.flush();
+            }
+        }
+
+        void startReading() {
+            Thread reader = new SessionThreadFactory("smpp-" + name + "-reader").newThread(this);
+            reader.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    handle(this, read());
+                }
+            } catch (IOException e) {
+                connectionLost(this, e);
+            } catch (RuntimeException e) {
+                // we can't tell where the next PDU starts anymore
+                connectionLost(this, new IOException(e));
+            }
+        }
+    }
+
+    private static class SessionThreadFactory implements ThreadFactory {
+        private final String threadName;
+
+        SessionThreadFactory(String threadName) {
+            this.threadName = threadName;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.motechproject.sms.smpp;
+
+import org.motechproject.event.listener.EventRelay;
+import org.motechproject.sms.SmsEventSubjects;
+import org.motechproject.sms.alert.MotechStatusMessage;
+import org.motechproject.sms.audit.DeliveryStatus;
+import org.motechproject.sms.audit.SmsAuditService;
+import org.motechproject.sms.audit.SmsCorrelationIndex;
+import org.motechproject.sms.audit.SmsRecord;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.ConfigProp;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
+import org.motechproject.sms.http.SmsRetryScheduler;
+import org.motechproject.sms.http.SmsSender;
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Smpp;
+import org.motechproject.sms.templates.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.motechproject.commons.date.util.DateUtil.now;
+import static org.motechproject.sms.SmsEvents.inboundEvent;
+import static org.motechproject.sms.SmsEvents.outboundEvent;
+import static org.motechproject.sms.audit.SmsDirection.INBOUND;
+import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
+
+/**
+ * Talks to providers over SMPP: one persistent SmppSession per config, one submit_sm per recipient. Messages are
+ * submitted asynchronously, their outcome is audited and published as the submit_sm_resp come back, delivery receipts
+ * and incoming messages are handled the same way the StatusController & IncomingController handle them for HTTP
+ * providers. The config's username, password & from props are used as system_id, password & source address.
+ */
+@Service
+public class SmppSmsSender implements SmsSender {
+
+    private Logger logger = LoggerFactory.getLogger(SmppSmsSender.class);
+    private ConfigsCache configsCache;
+    private EventRelay eventRelay;
+    private SmsAuditService smsAuditService;
+    private SmsCorrelationIndex smsCorrelationIndex;
+    private SmsRetryScheduler smsRetryScheduler;
+    private MotechStatusMessage motechStatusMessage;
+    private final ConcurrentMap<String, ConfigSession> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SmppSmsSender(ConfigsCache configsCache, EventRelay eventRelay, //NO CHECKSTYLE ParameterNumber
+                         SmsAuditService smsAuditService, SmsCorrelationIndex smsCorrelationIndex,
+                         SmsRetryScheduler smsRetryScheduler, MotechStatusMessage motechStatusMessage) {
+        this.configsCache = configsCache;
+        this.eventRelay = eventRelay;
+        this.smsAuditService = smsAuditService;
+        this.smsCorrelationIndex = smsCorrelationIndex;
+        this.smsRetryScheduler = smsRetryScheduler;
+        this.motechStatusMessage = motechStatusMessage;
+    }
+
+    @Override
+    public boolean send(OutgoingSms sms) {
+        ConfigsSnapshot configs = configsCache.getSnapshot();
+        Config config = configs.getConfigOrDefault(sms.getConfig());
+        Template template = configs.getTemplate(config);
+        Map<String, String> props = props(config);
+        if (!props.containsKey("username") || !props.containsKey("password")) {
+            String message = String.format("Config %s: SMPP needs both a username and a password", config.getName());
+            motechStatusMessage.alert(message);
+            throw new IllegalStateException(message);
+        }
+
+        Smpp smpp = template.getSmpp();
+        SmppSession session = sessionFor(config, smpp, props);
+        SmppAddress source = new SmppAddress(smpp.getSourceTon(), smpp.getSourceNpi(), props.get("from"));
+        for (String recipient : sms.getRecipients()) {
+            SmppAddress destination = new SmppAddress(smpp.getDestTon(), smpp.getDestNpi(), recipient);
+            session.submit(source, destination, sms.getMessage(), new RecipientCallback(config, sms, recipient));
+        }
+        // what the SMSC makes of each submit_sm comes later, through the RecipientCallback
+        return true;
+    }
+
+    private static Map<String, String> props(Config config) {
+        Map<String, String> props = new HashMap<String, String>();
+        for (ConfigProp configProp : config.getProps()) {
+            props.put(configProp.getName(), configProp.getValue());
+        }
+        return props;
+    }
+
+    private SmppSession sessionFor(Config config, Smpp smpp, Map<String, String> props) {
+        while (true) {
+            ConfigSession current = sessions.get(config.getName());
+            if (current != null && current.config == config) {
+                return current.session;
+            }
+            // first message through this config, or the config changed since we bound
+            ConfigSession created = new ConfigSession(config, new SmppSession(config.getName(), smpp,
+                    props.get("username"), props.get("password"), new Receiver(config.getName())));
+            boolean installed = current == null ? sessions.putIfAbsent(config.getName(), created) == null :
+                    sessions.replace(config.getName(), current, created);
+            if (installed) {
+                if (current != null) {
+                    current.session.close();
+                }
+                return created.session;
+            }
+            created.session.close();
+        }
+    }
+
+    /**
+     * How many submit_sm are waiting for their response on the given config's session
+     */
+    public int getPendingSubmits(String configName) {
+        ConfigSession current = sessions.get(configName);
+        return current == null ? 0 : current.session.getPendingSubmits();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ConfigSession configSession : sessions.values()) {
+            configSession.session.close();
+        }
+        sessions.clear();
+    }
+
+    private static boolean isProviderTrouble(int commandStatus) {
+        return commandStatus == SmppPdu.ESME_RSYSERR || commandStatus == SmppPdu.ESME_RTHROTTLED ||
+                commandStatus == SmppPdu.ESME_RMSGQFUL;
+    }
+
+    private void receiptReceived(String configName, DeliverSm deliverSm) {
+        String providerMessageId = deliverSm.getReceiptMessageId();
+        String statusString = deliverSm.getReceiptStat();
+        SmsRecord existingSmsRecord = smsCorrelationIndex.find(configName, providerMessageId);
+        SmsRecord smsRecord;
+        if (existingSmsRecord != null) {
+            smsRecord = new SmsRecord(configName, OUTBOUND, existingSmsRecord.getPhoneNumber(),
+                    existingSmsRecord.getMessageContent(), now(), null, statusString,
+                    existingSmsRecord.getMotechId(), providerMessageId, null);
+        } else {
+            String msg = String.format("Received delivery receipt but couldn't find a log record with matching " +
+                    "ProviderMessageId: %s", providerMessageId);
+            logger.error(msg);
+            motechStatusMessage.alert(msg);
+            smsRecord = new SmsRecord(configName, OUTBOUND, deliverSm.getDestination().getAddress(), null, now(),
+                    null, statusString, null, providerMessageId, null);
+        }
+
+        DeliveryStatus deliveryStatus = deliverSm.getReceiptDeliveryStatus();
+        String eventSubject;
+        if (deliveryStatus == DeliveryStatus.DELIVERY_CONFIRMED) {
+            eventSubject = SmsEventSubjects.DELIVERY_CONFIRMED;
+        } else if (deliveryStatus == DeliveryStatus.FAILURE_CONFIRMED) {
+            eventSubject = SmsEventSubjects.FAILURE_CONFIRMED;
+        } else {
+            eventSubject = SmsEventSubjects.DISPATCHED;
+        }
+        smsRecord.setDeliveryStatus(deliveryStatus);
+        List<String> recipients = Arrays.asList(smsRecord.getPhoneNumber());
+        eventRelay.sendEventMessage(outboundEvent(eventSubject, configName, recipients, smsRecord.getMessageContent(),
+                smsRecord.getMotechId(), providerMessageId, null, statusString, now()));
+        smsAuditService.log(smsRecord);
+    }
+
+    private void messageReceived(String configName, DeliverSm deliverSm) {
+        String sender = deliverSm.getSource().getAddress();
+        String recipient = deliverSm.getDestination().getAddress();
+        logger.info("Incoming SMPP message - configName = {}, sender = {}", configName, sender);
+        eventRelay.sendEventMessage(inboundEvent(configName, sender, recipient, deliverSm.getMessage(), null, now()));
+        smsAuditService.log(new SmsRecord(configName, INBOUND, sender, deliverSm.getMessage(), now(),
+                DeliveryStatus.RECEIVED, null, null, null, null));
+    }
+
+    private static class ConfigSession {
+        private final Config config;
+        private final SmppSession session;
+
+        ConfigSession(Config config, SmppSession session) {
+            this.config = config;
+            this.session = session;
+        }
+    }
+
+    private class Receiver implements SmppSession.Listener {
+        private final String configName;
+
+        Receiver(String configName) {
+            this.configName = configName;
+        }
+
+        @Override
+        public void delivered(DeliverSm deliverSm) {
+            if (deliverSm.isDeliveryReceipt()) {
+                receiptReceived(configName, deliverSm);
+            } else {
+                messageReceived(configName, deliverSm);
+            }
+        }
+    }
+
+    private class RecipientCallback implements SmppSession.SubmitCallback {
+        private final Config config;
+        private final OutgoingSms sms;
+        private final String recipient;
+
+        RecipientCallback(Config config, OutgoingSms sms, String recipient) {
+            this.config = config;
+            this.sms = sms;
+            this.recipient = recipient;
+        }
+
+        @Override
+        public void submitted(String messageId) {
+            smsRetryScheduler.recordSuccess(config.getName());
+            logger.info("Sent messageId {} to {} through config {}", messageId, recipient, config.getName());
+            SmsRecord smsRecord = new SmsRecord(config.getName(), OUTBOUND, recipient, sms.getMessage(), now(),
+                    DeliveryStatus.DISPATCHED, null, sms.getMotechId(), messageId, null);
+            if (messageId != null) {
+                // the receipt may well arrive before we're done here
+                smsCorrelationIndex.add(smsRecord);
+            }
+            eventRelay.sendEventMessage(outboundEvent(SmsEventSubjects.DISPATCHED, config.getName(),
+                    Arrays.asList(recipient), sms.getMessage(), sms.getMotechId(), messageId, null, null, null));
+            smsAuditService.log(smsRecord);
+        }
+
+        @Override
+        public void failed(int commandStatus, String reason) {
+            if (isProviderTrouble(commandStatus)) {
+                smsRetryScheduler.recordFailure(config.getName());
+            }
+            Integer failureCount = sms.getFailureCount() + 1;
+            logger.error("Delivery of message {} to {} through config {} failed: {}", sms.getMotechId(), recipient,
+                    config.getName(), reason);
+            eventRelay.sendEventMessage(outboundEvent(config.retryOrAbortSubject(failureCount), config.getName(),
+                    Arrays.asList(recipient), sms.getMessage(), sms.getMotechId(), null, failureCount, null, null));
+            smsAuditService.log(new SmsRecord(config.getName(), OUTBOUND, recipient, sms.getMessage(), now(),
+                    config.retryOrAbortStatus(failureCount), null, sms.getMotechId(), null, reason));
+        }
+    }
+}
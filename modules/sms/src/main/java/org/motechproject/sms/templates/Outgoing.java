@@ -2,6 +2,8 @@ package org.motechproject.sms.templates;
 
 import org.motechproject.server.config.SettingsFacade;
 
+import static org.apache.commons.lang.StringUtils.isBlank;
+
 /**
  * How providers deal with outgoing messages
  */
@@ -10,6 +12,12 @@ public class Outgoing {
     private static final String SMS_DEFAULT_MAX_SMS_SIZE = "sms.default.max_sms_size";
     private static final String SMS_DEFAULT_MAX_RECIPIENT = "sms.default.max_recipient";
     private static final String SMS_DEFAULT_RECIPIENT_SEPARATOR = "sms.default.recipient_separator";
+    private static final String SMS_DEFAULT_MAX_CONCURRENT_REQUESTS = "sms.default.max_concurrent_requests";
+    private static final String SMS_DEFAULT_CONNECT_TIMEOUT_MILLIS = "sms.default.connect_timeout_millis";
+    private static final String SMS_DEFAULT_READ_TIMEOUT_MILLIS = "sms.default.read_timeout_millis";
+    private static final int MAX_CONCURRENT_REQUESTS_FALLBACK = 1;
+    private static final int CONNECT_TIMEOUT_MILLIS_FALLBACK = 10000;
+    private static final int READ_TIMEOUT_MILLIS_FALLBACK = 30000;
 
     private Request request;
     private Response response;
@@ -19,10 +27,16 @@ public class Outgoing {
     private Integer maxSmsSize;
     private Integer maxRecipient;
     private String recipientSeparator;
+    private Integer maxConcurrentRequests;
+    private Integer connectTimeoutMillis;
+    private Integer readTimeoutMillis;
     private Integer defaultMillisecondsBetweenMessages;
     private Integer defaultMaxSmsSize;
     private Integer defaultMaxRecipient;
     private String defaultRecipientSeparator;
+    private Integer defaultMaxConcurrentRequests;
+    private Integer defaultConnectTimeoutMillis;
+    private Integer defaultReadTimeoutMillis;
 
     public void readDefaults(SettingsFacade settingsFacade) {
         defaultMillisecondsBetweenMessages = Integer.valueOf(settingsFacade.getProperty(
@@ -30,6 +44,18 @@ public class Outgoing {
         defaultMaxSmsSize = Integer.valueOf(settingsFacade.getProperty(SMS_DEFAULT_MAX_SMS_SIZE));
         defaultMaxRecipient = Integer.valueOf(settingsFacade.getProperty(SMS_DEFAULT_MAX_RECIPIENT));
         defaultRecipientSeparator = settingsFacade.getProperty(SMS_DEFAULT_RECIPIENT_SEPARATOR);
+        // older sms-defaults.properties files don't have these
+        defaultMaxConcurrentRequests = readDefault(settingsFacade, SMS_DEFAULT_MAX_CONCURRENT_REQUESTS,
+                MAX_CONCURRENT_REQUESTS_FALLBACK);
+        defaultConnectTimeoutMillis = readDefault(settingsFacade, SMS_DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                CONNECT_TIMEOUT_MILLIS_FALLBACK);
+        defaultReadTimeoutMillis = readDefault(settingsFacade, SMS_DEFAULT_READ_TIMEOUT_MILLIS,
+                READ_TIMEOUT_MILLIS_FALLBACK);
+    }
+
+    private static Integer readDefault(SettingsFacade settingsFacade, String key, int fallback) {
+        String value = settingsFacade.getProperty(key);
+        return isBlank(value) ? fallback : Integer.valueOf(value);
     }
 
     public Request getRequest() {
@@ -108,6 +134,39 @@ public class Outgoing {
         this.recipientSeparator = recipientSeparator;
     }
 
+    public Integer getMaxConcurrentRequests() {
+        if (maxConcurrentRequests == null) {
+            maxConcurrentRequests = defaultMaxConcurrentRequests;
+        }
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public Integer getConnectTimeoutMillis() {
+        if (connectTimeoutMillis == null) {
+            connectTimeoutMillis = defaultConnectTimeoutMillis;
+        }
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(Integer connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public Integer getReadTimeoutMillis() {
+        if (readTimeoutMillis == null) {
+            readTimeoutMillis = defaultReadTimeoutMillis;
+        }
+        return readTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(Integer readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
     @Override
     public String toString() {
         return "Outgoing{" +
@@ -119,6 +178,9 @@ public class Outgoing {
                 ", maxSmsSize=" + maxSmsSize +
                 ", maxRecipient=" + maxRecipient +
                 ", recipientSeparator='" + recipientSeparator + '\'' +
+                ", maxConcurrentRequests=" + maxConcurrentRequests +
+                ", connectTimeoutMillis=" + connectTimeoutMillis +
+                ", readTimeoutMillis=" + readTimeoutMillis +
                 '}';
     }
 }
@@ -1,44 +1,55 @@
 package org.motechproject.sms.templates;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * How to generate the http request for a specific provider
  */
 public class Request {
-    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("(\\[[^\\]]+\\])");
     private String urlPath;
     private String recipientsSeparator;
     private Map<String, String> queryParameters = new HashMap<String, String>();
     private Map<String, String> bodyParameters = new HashMap<String, String>();
     private HttpMethodType type;
-    private Map<String, String> props;
-    private String processedUrlPath;
     private Boolean jsonContentType = false;
+    // the above, split into literals & tokens by compile()
+    private transient volatile Compiled compiled;
+
+    /**
+     * Splits the url path & parameters into their literal and [token] parts, done once when the templates are read,
+     * or on first use by whatever didn't get them through the TemplateReader
+     */
+    public void compile() {
+        compiled = new Compiled(this);
+    }
 
-    public String getUrlPath(Map<String, String> props) {
-        if (!props.equals(this.props)) {
-            StringBuffer sb = new StringBuffer();
-            Matcher m = PLACEHOLDER_PATTERN.matcher(urlPath);
-
-            while (m.find()) {
-                String repString = props.get(m.group(1).substring(1, m.group(1).length() - 1));
-                if (repString != null) {
-                    m.appendReplacement(sb, repString);
-                }
-            }
-            m.appendTail(sb);
-            processedUrlPath = sb.toString();
-            this.props = props;
+    private Compiled compiled() {
+        Compiled c = compiled;
+        if (c == null) {
+            c = new Compiled(this);
+            compiled = c;
         }
-        return processedUrlPath;
+        return c;
+    }
+
+    public String getUrlPath(Map<String, String> props) {
+        return compiled().urlPath.fill(props);
+    }
+
+    Map<String, TemplateString> getCompiledQueryParameters() {
+        return compiled().queryParameters;
+    }
+
+    Map<String, TemplateString> getCompiledBodyParameters() {
+        return compiled().bodyParameters;
     }
 
     public void setUrlPath(String urlPath) {
         this.urlPath = urlPath;
+        compiled = null;
     }
 
     public String getRecipientsSeparator() {
@@ -56,6 +67,7 @@ public class Request {
     public void setQueryParameters(Map<String, String> queryParameters) {
         if (queryParameters != null) {
             this.queryParameters = queryParameters;
+            compiled = null;
         }
     }
 
@@ -73,6 +85,7 @@ public class Request {
 
     public void setBodyParameters(Map<String, String> bodyParameters) {
         this.bodyParameters = bodyParameters;
+        compiled = null;
     }
 
     public Boolean getJsonContentType() {
@@ -91,9 +104,30 @@ public class Request {
                 ", queryParameters=" + queryParameters +
                 ", bodyParameters=" + bodyParameters +
                 ", type=" + type +
-                ", props=" + props +
-                ", processedUrlPath='" + processedUrlPath + '\'' +
                 ", jsonContentType=" + jsonContentType +
                 '}';
     }
+
+    private static final class Compiled {
+        private final TemplateString urlPath;
+        private final Map<String, TemplateString> queryParameters;
+        private final Map<String, TemplateString> bodyParameters;
+
+        private Compiled(Request request) {
+            urlPath = TemplateString.urlPath(request.urlPath);
+            queryParameters = compile(request.queryParameters);
+            bodyParameters = compile(request.bodyParameters);
+        }
+
+        private static Map<String, TemplateString> compile(Map<String, String> parameters) {
+            if (parameters == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, TemplateString> ret = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                ret.put(entry.getKey(), TemplateString.parameter(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(ret);
+        }
+    }
 }
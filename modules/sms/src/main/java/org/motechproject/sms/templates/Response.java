@@ -27,6 +27,7 @@ public class Response {
     private String extractSuccessMessageIdAndRecipient;
     private String extractFailureMessageAndRecipient;
     private String headerMessageId;
+    private Pattern successStatusPattern;
     private Pattern successResponsePattern;
     private Pattern extractSingleSuccessMessageIdPattern;
     private Pattern extractSingleFailureMessagePattern;
@@ -38,7 +39,10 @@ public class Response {
         if (isBlank(successStatus)) {
             return (status >= HTTP_SUCCESS_MIN && status <= HTTP_SUCCESS_MAX);
         }
-        return status.toString().matches(successStatus);
+        if (successStatusPattern == null) {
+            successStatusPattern = Pattern.compile(successStatus);
+        }
+        return successStatusPattern.matcher(status.toString()).matches();
     }
 
     public Boolean hasSuccessResponse() {
@@ -128,6 +132,41 @@ public class Response {
         return null;
     }
 
+    /**
+     * A matcher for extractSuccessMessageIdAndRecipient, meant to be reset() & reused for each line of a response
+     */
+    public Matcher successMessageIdAndRecipientMatcher() {
+        if (extractSuccessMessageIdAndRecipientPattern == null) {
+            extractSuccessMessageIdAndRecipientPattern = Pattern.compile(extractSuccessMessageIdAndRecipient);
+        }
+        Matcher m = extractSuccessMessageIdAndRecipientPattern.matcher("");
+        if (m.groupCount() != 2) {
+            throw new IllegalStateException(String.format("Template error, extractSuccessMessageIdAndRecipient: " +
+                    "Invalid number of search groups, expected: 2, actual: %s.", m.groupCount()));
+        }
+        return m;
+    }
+
+    /**
+     * A matcher for extractFailureMessageAndRecipient, meant to be reset() & reused for each line of a response
+     *
+     * @return null if the template has no extractFailureMessageAndRecipient, nothing is a failure line then
+     */
+    public Matcher failureMessageAndRecipientMatcher() {
+        if (extractFailureMessageAndRecipient == null || extractFailureMessageAndRecipient.length() == 0) {
+            return null;
+        }
+        if (extractFailureMessageAndRecipientPattern == null) {
+            extractFailureMessageAndRecipientPattern = Pattern.compile(extractFailureMessageAndRecipient);
+        }
+        Matcher m = extractFailureMessageAndRecipientPattern.matcher("");
+        if (m.groupCount() != 2) {
+            throw new IllegalStateException(String.format("Template error, extractFailureMessageAndRecipient: " +
+                    "Invalid number of search groups, expected: 2, actual: %s.", m.groupCount()));
+        }
+        return m;
+    }
+
     public String[] extractFailureMessageAndRecipient(String response) {
         if (extractFailureMessageAndRecipientPattern == null) {
             extractFailureMessageAndRecipientPattern = Pattern.compile(extractFailureMessageAndRecipient);
@@ -0,0 +1,136 @@
+package org.motechproject.sms.templates;
+
+/**
+ * How to reach providers we talk to over SMPP instead of HTTP. A template with an smpp section doesn't need an
+ * outgoing request nor response: messages go through a persistent transceiver bind, delivery receipts and incoming
+ * messages come back through it.
+ */
+public class Smpp {
+    private static final int DEFAULT_PORT = 2775;
+    private static final int DEFAULT_WINDOW_SIZE = 10;
+    private static final long DEFAULT_ENQUIRE_LINK_MILLIS = 30000;
+    private static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 10000;
+    // international, ISDN (E.164)
+    private static final int DEFAULT_TON = 1;
+    private static final int DEFAULT_NPI = 1;
+
+    private String host;
+    private Integer port;
+    private String systemType;
+    private String serviceType;
+    private Integer windowSize;
+    private Long enquireLinkMillis;
+    private Long responseTimeoutMillis;
+    private Integer sourceTon;
+    private Integer sourceNpi;
+    private Integer destTon;
+    private Integer destNpi;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Integer getPort() {
+        return port == null ? DEFAULT_PORT : port;
+    }
+
+    public void setPort(Integer port) {
+        this.port = port;
+    }
+
+    public String getSystemType() {
+        return systemType == null ? "" : systemType;
+    }
+
+    public void setSystemType(String systemType) {
+        this.systemType = systemType;
+    }
+
+    public String getServiceType() {
+        return serviceType == null ? "" : serviceType;
+    }
+
+    public void setServiceType(String serviceType) {
+        this.serviceType = serviceType;
+    }
+
+    /**
+     * How many submit_sm may be waiting for their response at any one time
+     */
+    public Integer getWindowSize() {
+        return (windowSize == null || windowSize < 1) ? DEFAULT_WINDOW_SIZE : windowSize;
+    }
+
+    public void setWindowSize(Integer windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public Long getEnquireLinkMillis() {
+        return enquireLinkMillis == null ? DEFAULT_ENQUIRE_LINK_MILLIS : enquireLinkMillis;
+    }
+
+    public void setEnquireLinkMillis(Long enquireLinkMillis) {
+        this.enquireLinkMillis = enquireLinkMillis;
+    }
+
+    public Long getResponseTimeoutMillis() {
+        return responseTimeoutMillis == null ? DEFAULT_RESPONSE_TIMEOUT_MILLIS : responseTimeoutMillis;
+    }
+
+    public void setResponseTimeoutMillis(Long responseTimeoutMillis) {
+        this.responseTimeoutMillis = responseTimeoutMillis;
+    }
+
+    public Integer getSourceTon() {
+        return sourceTon == null ? DEFAULT_TON : sourceTon;
+    }
+
+    public void setSourceTon(Integer sourceTon) {
+        this.sourceTon = sourceTon;
+    }
+
+    public Integer getSourceNpi() {
+        return sourceNpi == null ? DEFAULT_NPI : sourceNpi;
+    }
+
+    public void setSourceNpi(Integer sourceNpi) {
+        this.sourceNpi = sourceNpi;
+    }
+
+    public Integer getDestTon() {
+        return destTon == null ? DEFAULT_TON : destTon;
+    }
+
+    public void setDestTon(Integer destTon) {
+        this.destTon = destTon;
+    }
+
+    public Integer getDestNpi() {
+        return destNpi == null ? DEFAULT_NPI : destNpi;
+    }
+
+    public void setDestNpi(Integer destNpi) {
+        this.destNpi = destNpi;
+    }
+
+    @Override
+    public String toString() {
+        return "Smpp{" +
+                "host='" + host + '\'' +
+                ", port=" + port +
+                ", systemType='" + systemType + '\'' +
+                ", serviceType='" + serviceType + '\'' +
+                ", windowSize=" + windowSize +
+                ", enquireLinkMillis=" + enquireLinkMillis +
+                ", responseTimeoutMillis=" + responseTimeoutMillis +
+                ", sourceTon=" + sourceTon +
+                ", sourceNpi=" + sourceNpi +
+                ", destTon=" + destTon +
+                ", destNpi=" + destNpi +
+                '}';
+    }
+}
@@ -11,11 +11,9 @@ import org.motechproject.server.config.SettingsFacade;
 import org.springframework.http.MediaType;
 
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -26,21 +24,23 @@ public class Template {
     public static final String MESSAGE_PLACEHOLDER = "$message";
     public static final String RECIPIENTS_PLACEHOLDER = "$recipients";
     public static final Pattern FIND_TOKEN_PATTERN = Pattern.compile("\\[(\\w*)\\]");
+    // Gson instances are thread safe, no need for one per request
+    private static final Gson GSON = new Gson();
 
     private Outgoing outgoing;
     private Status status;
     private Incoming incoming;
+    private Smpp smpp;
     private String name;
     private List<String> configurables;
 
     public HttpMethod generateRequestFor(Map<String, String> props) {
+        Request request = outgoing.getRequest();
         HttpMethod httpMethod;
-        if (HttpMethodType.POST.equals(outgoing.getRequest().getType())) {
-            httpMethod = new PostMethod(outgoing.getRequest().getUrlPath(props));
-            if (outgoing.getRequest().getJsonContentType()) {
-                Map<String, String> jsonParams = getJsonParameters(outgoing.getRequest().getBodyParameters(), props);
-                Gson gson = new Gson();
-                String json = gson.toJson(jsonParams);
+        if (HttpMethodType.POST.equals(request.getType())) {
+            httpMethod = new PostMethod(request.getUrlPath(props));
+            if (request.getJsonContentType()) {
+                String json = GSON.toJson(fillParameters(request.getCompiledBodyParameters(), props));
                 StringRequestEntity requestEntity = null;
                 try {
                     requestEntity = new StringRequestEntity(json, MediaType.APPLICATION_JSON_VALUE, "UTF-8");
@@ -51,62 +51,42 @@ public class Template {
                 ((PostMethod) httpMethod).setRequestEntity(requestEntity);
             } else {
                 httpMethod.setRequestHeader("Content-Type", PostMethod.FORM_URL_ENCODED_CONTENT_TYPE);
-                addBodyParameters((PostMethod) httpMethod, props);
+                addBodyParameters((PostMethod) httpMethod, request.getCompiledBodyParameters(), props);
             }
         } else {
-            httpMethod = new GetMethod(outgoing.getRequest().getUrlPath(props));
+            httpMethod = new GetMethod(request.getUrlPath(props));
         }
-        httpMethod.setQueryString(addQueryParameters(props));
+        httpMethod.setQueryString(addQueryParameters(request.getCompiledQueryParameters(), props));
 
         return httpMethod;
     }
 
-    private NameValuePair[] addQueryParameters(Map<String, String> props) {
-        List<NameValuePair> queryStringValues = new ArrayList<NameValuePair>();
-        Map<String, String> queryParameters = outgoing.getRequest().getQueryParameters();
-        for (Map.Entry< String, String > entry : queryParameters.entrySet()) {
-            String value = placeHolderOrLiteral(entry.getValue(), props);
-            queryStringValues.add(new NameValuePair(entry.getKey(), value));
+    private static NameValuePair[] addQueryParameters(Map<String, TemplateString> queryParameters,
+                                                      Map<String, String> props) {
+        NameValuePair[] queryStringValues = new NameValuePair[queryParameters.size()];
+        int i = 0;
+        for (Map.Entry<String, TemplateString> entry : queryParameters.entrySet()) {
+            queryStringValues[i++] = new NameValuePair(entry.getKey(), entry.getValue().fill(props));
         }
-        return queryStringValues.toArray(new NameValuePair[queryStringValues.size()]);
+        return queryStringValues;
     }
 
-    private Map<String, String> getJsonParameters(Map<String, String> bodyParameters, Map<String, String> props) {
-        Map<String, String> ret = new HashMap<String, String>();
-        for (Map.Entry<String, String> entry: bodyParameters.entrySet()) {
-            String value = placeHolderOrLiteral(entry.getValue(), props);
-            ret.put(entry.getKey(), value);
+    private static Map<String, String> fillParameters(Map<String, TemplateString> bodyParameters,
+                                                      Map<String, String> props) {
+        Map<String, String> ret = new HashMap<String, String>(bodyParameters.size() * 2);
+        for (Map.Entry<String, TemplateString> entry : bodyParameters.entrySet()) {
+            ret.put(entry.getKey(), entry.getValue().fill(props));
         }
         return ret;
     }
 
-    private void addBodyParameters(PostMethod postMethod, Map<String, String> props) {
-        Map<String, String> bodyParameters = outgoing.getRequest().getBodyParameters();
-        for (Map.Entry<String, String> entry: bodyParameters.entrySet()) {
-            String value = placeHolderOrLiteral(entry.getValue(), props);
-            postMethod.setParameter(entry.getKey(), value);
+    private static void addBodyParameters(PostMethod postMethod, Map<String, TemplateString> bodyParameters,
+                                          Map<String, String> props) {
+        for (Map.Entry<String, TemplateString> entry : bodyParameters.entrySet()) {
+            postMethod.setParameter(entry.getKey(), entry.getValue().fill(props));
         }
     }
 
-    // return input string replacing [tokens] with their values from props
-    private static String placeHolderOrLiteral(String value, Map<String, String> props) {
-        StringBuffer sb = new StringBuffer();
-        Matcher matcher = FIND_TOKEN_PATTERN.matcher(value);
-
-        while (matcher.find()) {
-            String repString = props.get(matcher.group(1));
-            if (repString != null) {
-                matcher.appendReplacement(sb, repString);
-            } else {
-                throw new IllegalStateException(String.format("Template error! Unable to find value for [%s]",
-                        matcher.group(1)));
-            }
-        }
-        matcher.appendTail(sb);
-
-        return sb.toString();
-    }
-
     public String recipientsAsString(List<String> recipients) {
         return StringUtils.join(recipients.iterator(), outgoing.getRequest().getRecipientsSeparator());
     }
@@ -119,6 +99,13 @@ public class Template {
         return incoming;
     }
 
+    /**
+     * How to reach the provider over SMPP, null for providers we talk to over HTTP
+     */
+    public Smpp getSmpp() {
+        return smpp;
+    }
+
     public String getName() {
         return name;
     }
@@ -143,12 +130,23 @@ public class Template {
         outgoing.readDefaults(settingsFacade);
     }
 
+    /**
+     * Prepares the outgoing request so that generateRequestFor doesn't have to parse the template for every message
+     */
+    public void compile() {
+        // SMPP templates have no request
+        if (outgoing.getRequest() != null) {
+            outgoing.getRequest().compile();
+        }
+    }
+
     @Override
     public String toString() {
         return "Template{" +
                 "outgoing=" + outgoing +
                 ", status=" + status +
                 ", incoming=" + incoming +
+                ", smpp=" + smpp +
                 ", name='" + name + '\'' +
                 ", configurables=" + configurables +
                 '}';
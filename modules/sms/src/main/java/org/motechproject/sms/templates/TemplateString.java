@@ -0,0 +1,87 @@
+package org.motechproject.sms.templates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A template value, ie: "Hello [name]!", split once into its literal and [token] parts so that filling it in for a
+ * message is a plain concatenation rather than a regex search & replace. Values are inserted as they are: unlike
+ * Matcher.appendReplacement, a '$' or '\' in a message is not an error.
+ */
+final class TemplateString {
+    private static final Pattern URL_TOKEN_PATTERN = Pattern.compile("\\[([^\\]]+)\\]");
+    private static final int EXPECTED_VALUE_LENGTH = 16;
+
+    // always one more literal than tokens: literal, token, literal, ..., token, literal
+    private final String[] literals;
+    private final String[] tokens;
+    private final boolean failOnMissingValue;
+    private final int literalsLength;
+
+    private TemplateString(String[] literals, String[] tokens, boolean failOnMissingValue) {
+        this.literals = literals;
+        this.tokens = tokens;
+        this.failOnMissingValue = failOnMissingValue;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal == null ? 0 : literal.length();
+        }
+        literalsLength = length;
+    }
+
+    /**
+     * A query or body parameter, every [token] must have a value
+     */
+    static TemplateString parameter(String value) {
+        return compile(value, Template.FIND_TOKEN_PATTERN, true);
+    }
+
+    /**
+     * A url path, [tokens] without a value are left as they are
+     */
+    static TemplateString urlPath(String value) {
+        return compile(value, URL_TOKEN_PATTERN, false);
+    }
+
+    private static TemplateString compile(String value, Pattern tokenPattern, boolean failOnMissingValue) {
+        if (value == null) {
+            return new TemplateString(new String[] {null}, new String[0], failOnMissingValue);
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = tokenPattern.matcher(value);
+        int start = 0;
+        while (matcher.find()) {
+            literals.add(value.substring(start, matcher.start()));
+            tokens.add(matcher.group(1));
+            start = matcher.end();
+        }
+        literals.add(value.substring(start));
+        return new TemplateString(literals.toArray(new String[literals.size()]),
+                tokens.toArray(new String[tokens.size()]), failOnMissingValue);
+    }
+
+    String fill(Map<String, String> props) {
+        if (tokens.length == 0) {
+            return literals[0];
+        }
+        StringBuilder sb = new StringBuilder(literalsLength + tokens.length * EXPECTED_VALUE_LENGTH);
+        for (int i = 0; i < tokens.length; i++) {
+            sb.append(literals[i]);
+            String value = props.get(tokens[i]);
+            if (value != null) {
+                sb.append(value);
+            } else if (failOnMissingValue) {
+                throw new IllegalStateException(String.format("Template error! Unable to find value for [%s]",
+                        tokens[i]));
+            } else {
+                sb.append('[').append(tokens[i]).append(']');
+            }
+        }
+        sb.append(literals[tokens.length]);
+        return sb.toString();
+    }
+}
@@ -16,6 +16,7 @@ public class Templates {
     public Templates(SettingsFacade settingFacade, List<Template> templates) {
         for (Template template : templates) {
             template.readDefaults(settingFacade);
+            template.compile();
             this.templates.put(template.getName(), template);
         }
     }
@@ -2,21 +2,17 @@ package org.motechproject.sms.web;
 
 import org.joda.time.DateTime;
 import org.motechproject.event.listener.EventRelay;
-import org.motechproject.server.config.SettingsFacade;
 import org.motechproject.sms.alert.MotechStatusMessage;
 import org.motechproject.sms.audit.DeliveryStatus;
 import org.motechproject.sms.audit.SmsAuditService;
 import org.motechproject.sms.audit.SmsRecord;
 import org.motechproject.sms.configs.Config;
-import org.motechproject.sms.configs.ConfigReader;
-import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
 import org.motechproject.sms.templates.Template;
-import org.motechproject.sms.templates.TemplateReader;
-import org.motechproject.sms.templates.Templates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -41,21 +37,14 @@ public class IncomingController {
     @Autowired
     private MotechStatusMessage motechStatusMessage;
     private Logger logger = LoggerFactory.getLogger(IncomingController.class);
-    private ConfigReader configReader;
-    private Configs configs;
-    private Templates templates;
+    private ConfigsCache configsCache;
     private EventRelay eventRelay;
     private SmsAuditService smsAuditService;
 
     @Autowired
-    public IncomingController(@Qualifier("smsSettings") SettingsFacade settingsFacade, EventRelay eventRelay,
-                              TemplateReader templateReader, SmsAuditService smsAuditService) {
+    public IncomingController(ConfigsCache configsCache, EventRelay eventRelay, SmsAuditService smsAuditService) {
         this.eventRelay = eventRelay;
-        configReader = new ConfigReader(settingsFacade);
-        //todo: this means we'll crash/error out when a new config is created and we get an incoming call before
-        //todo: restarting the module but going to the new config system (with change notification) will fix that
-        configs = configReader.getConfigs();
-        templates = templateReader.getTemplates();
+        this.configsCache = configsCache;
         this.smsAuditService = smsAuditService;
     }
 
@@ -73,6 +62,7 @@ public class IncomingController {
 
         logger.info("Incoming SMS - configName = {}, params = {}", configName, params);
 
+        ConfigsSnapshot configs = configsCache.getSnapshot();
         Config config;
         if (configs.hasConfig(configName)) {
             config = configs.getConfig(configName);
@@ -82,7 +72,7 @@ public class IncomingController {
             motechStatusMessage.alert(msg);
             return;
         }
-        Template template = templates.getTemplate(config.getTemplateName());
+        Template template = configs.getTemplate(config);
 
         if (params.containsKey(template.getIncoming().getSenderKey())) {
             sender = params.get(template.getIncoming().getSenderKey());
@@ -1,13 +1,9 @@
 package org.motechproject.sms.web;
 
-import org.motechproject.server.config.SettingsFacade;
-import org.motechproject.sms.configs.ConfigReader;
 import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
 import org.motechproject.sms.templates.TemplateForWeb;
-import org.motechproject.sms.templates.TemplateReader;
-import org.motechproject.sms.templates.Templates;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -27,36 +23,30 @@ import java.util.Map;
  */
 @Controller
 public class SettingsController {
-    private SettingsFacade settingsFacade;
-    private TemplateReader templateReader;
+    private ConfigsCache configsCache;
 
     @Autowired
-    public SettingsController(@Qualifier("smsSettings") SettingsFacade settingsFacade, TemplateReader templateReader) {
-        this.settingsFacade = settingsFacade;
-        this.templateReader = templateReader;
+    public SettingsController(ConfigsCache configsCache) {
+        this.configsCache = configsCache;
     }
 
     @RequestMapping(value = "/templates", method = RequestMethod.GET)
     @ResponseBody
     public Map<String, TemplateForWeb> getTemplates() {
-        Templates templates = templateReader.getTemplates();
-        return templates.templatesForWeb();
+        return configsCache.getTemplates().templatesForWeb();
     }
 
     @RequestMapping(value = "/configs", method = RequestMethod.GET)
     @ResponseBody
     public Configs getConfigs() {
-        ConfigReader configReader = new ConfigReader(settingsFacade);
-        return configReader.getConfigs();
+        return configsCache.getSnapshot().getConfigs();
     }
 
     @RequestMapping(value = "/configs", method = RequestMethod.POST)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public Configs setConfigs(@RequestBody Configs configs) {
-        ConfigReader configReader = new ConfigReader(settingsFacade);
-        configReader.setConfigs(configs);
-        return configReader.getConfigs();
+        return configsCache.setConfigs(configs).getConfigs();
     }
 
     @ExceptionHandler(Exception.class)
@@ -1,29 +1,22 @@
 package org.motechproject.sms.web;
 
-import org.motechproject.commons.couchdb.query.QueryParam;
 import org.motechproject.event.listener.EventRelay;
-import org.motechproject.server.config.SettingsFacade;
 import org.motechproject.sms.SmsEventSubjects;
 import org.motechproject.sms.alert.MotechStatusMessage;
 import org.motechproject.sms.audit.DeliveryStatus;
 import org.motechproject.sms.audit.SmsAuditService;
+import org.motechproject.sms.audit.SmsCorrelationIndex;
 import org.motechproject.sms.audit.SmsRecord;
-import org.motechproject.sms.audit.SmsRecordSearchCriteria;
-import org.motechproject.sms.audit.SmsRecords;
 import org.motechproject.sms.configs.Config;
-import org.motechproject.sms.configs.ConfigReader;
-import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
 import org.motechproject.sms.templates.Status;
 import org.motechproject.sms.templates.Template;
-import org.motechproject.sms.templates.TemplateReader;
-import org.motechproject.sms.templates.Templates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -49,81 +42,23 @@ public class StatusController {
     @Autowired
     private MotechStatusMessage motechStatusMessage;
     private Logger logger = LoggerFactory.getLogger(StatusController.class);
-    private ConfigReader configReader;
-    private Configs configs;
-    private Templates templates;
+    private ConfigsCache configsCache;
     private EventRelay eventRelay;
     private SmsAuditService smsAuditService;
-    private static final int RECORD_FIND_RETRY_COUNT = 3;
-    private static final int RECORD_FIND_TIMEOUT = 500;
+    private SmsCorrelationIndex smsCorrelationIndex;
 
     @Autowired
-    public StatusController(@Qualifier("smsSettings") SettingsFacade settingsFacade, EventRelay eventRelay,
-                            TemplateReader templateReader, SmsAuditService smsAuditService) {
+    public StatusController(ConfigsCache configsCache, EventRelay eventRelay, SmsAuditService smsAuditService,
+                            SmsCorrelationIndex smsCorrelationIndex) {
         this.eventRelay = eventRelay;
-        configReader = new ConfigReader(settingsFacade);
-        //todo: this means we'd crash/error out when a new config is created and we get a status update callback before
-        //todo: restarting the module  -  so for now we'll read configs each time handle() gets called
-        //todo: but ultimately we'll want something like: configs = configReader.getConfigs()
-        templates = templateReader.getTemplates();
+        this.configsCache = configsCache;
         this.smsAuditService = smsAuditService;
-    }
-
-    private SmsRecord findFirstByProviderMessageId(SmsRecords smsRecords, String providerMessageId) {
-        for (SmsRecord smsRecord : smsRecords.getRecords()) {
-            if (smsRecord.getProviderId().equals(providerMessageId)) {
-                return smsRecord;
-            }
-        }
-        return null;
+        this.smsCorrelationIndex = smsCorrelationIndex;
     }
 
     private SmsRecord findOrCreateSmsRecord(String configName, String providerMessageId, String statusString) {
-        int retry = 0;
         SmsRecord smsRecord;
-        SmsRecords smsRecords;
-        SmsRecord existingSmsRecord = null;
-        QueryParam queryParam = new QueryParam();
-
-        queryParam.setSortBy("timestamp");
-        queryParam.setReverse(true);
-
-        // Try to find an existing SMS record using the provider message ID
-        // NOTE: Only works if the provider guarantees the message id is unique. So far, all do.
-        do {
-            //seems that lucene takes a while to index, so try a couple of times and delay in between
-            if (retry > 0) {
-                logger.debug("Trying again to find log record with motechId {}, try {}", providerMessageId, retry + 1);
-                try {
-                    Thread.sleep(RECORD_FIND_TIMEOUT);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-            smsRecords = smsAuditService.findAllSmsRecords(new SmsRecordSearchCriteria()
-                    .withConfig(configName)
-                    .withProviderId(providerMessageId)
-                    .withQueryParam(queryParam));
-            retry++;
-        } while (retry < RECORD_FIND_RETRY_COUNT && CollectionUtils.isEmpty(smsRecords.getRecords()));
-        if (CollectionUtils.isEmpty(smsRecords.getRecords())) {
-            // If we couldn't find a record by provider message ID try using the MOTECH ID
-            smsRecords = smsAuditService.findAllSmsRecords(new SmsRecordSearchCriteria()
-                    .withConfig(configName)
-                    .withMotechId(providerMessageId)
-                    .withQueryParam(queryParam));
-            if (!CollectionUtils.isEmpty(smsRecords.getRecords())) {
-                logger.debug("Found log record with matching motechId {}", providerMessageId);
-                existingSmsRecord = smsRecords.getRecords().get(0);
-            }
-        } else {
-            //todo: temporary kludge: lucene can't find exact strings, so we're looping on results until we find
-            //todo: an exact match. Remove when we switch to SEUSS.
-            existingSmsRecord = findFirstByProviderMessageId(smsRecords, providerMessageId);
-            if (existingSmsRecord != null) {
-                logger.debug("Found log record with matching providerId {}", providerMessageId);
-            }
-        }
+        SmsRecord existingSmsRecord = smsCorrelationIndex.find(configName, providerMessageId);
 
         if (existingSmsRecord == null) {
             String msg = String.format("Received status update but couldn't find a log record with matching " +
@@ -186,8 +121,7 @@ public class StatusController {
     public void handle(@PathVariable String configName, @RequestParam Map<String, String> params) {
         logger.info("SMS Status - configName = {}, params = {}", configName, params);
 
-        //todo: for now re-read configs every call, we'll change to the new config notifications when it's ready
-        configs = configReader.getConfigs();
+        ConfigsSnapshot configs = configsCache.getSnapshot();
 
         Config config;
         if (configs.hasConfig(configName)) {
@@ -199,7 +133,7 @@ public class StatusController {
             motechStatusMessage.alert(msg);
             config = configs.getDefaultConfig();
         }
-        Template template = templates.getTemplate(config.getTemplateName());
+        Template template = configs.getTemplate(config);
         Status status = template.getStatus();
 
         if (status.hasMessageIdKey() && params != null && params.containsKey(status.getMessageIdKey())) {
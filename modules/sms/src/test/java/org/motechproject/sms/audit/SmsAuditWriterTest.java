@@ -0,0 +1,119 @@
+package org.motechproject.sms.audit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.support.TransactionCallback;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
+
+public class SmsAuditWriterTest {
+
+    @Mock
+    private SmsRecordsDataService smsRecordsDataService;
+
+    private SmsAuditWriter smsAuditWriter;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        when(smsRecordsDataService.doInTransaction(any(TransactionCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return ((TransactionCallback) invocation.getArguments()[0]).doInTransaction(null);
+            }
+        });
+        smsAuditWriter = new SmsAuditWriter(smsRecordsDataService);
+    }
+
+    private SmsRecord record(String motechId) {
+        return new SmsRecord("config", OUTBOUND, "12065551212", "hello", null, DeliveryStatus.PENDING, null,
+                motechId, null, null);
+    }
+
+    @Test
+    public void shouldWriteEverythingQueuedBeforeShutdown() {
+        smsAuditWriter.start();
+        for (int i = 0; i < 1000; i++) {
+            smsAuditWriter.write(record("id" + i));
+        }
+        smsAuditWriter.stop();
+
+        verify(smsRecordsDataService, times(1000)).create(any(SmsRecord.class));
+        assertEquals(0, smsAuditWriter.getQueueDepth());
+        assertEquals(1000, smsAuditWriter.getWrittenRecords());
+    }
+
+    @Test
+    public void shouldWriteOnTheCallersThreadWhenNotRunning() {
+        SmsRecord smsRecord = record("id");
+        smsAuditWriter.write(smsRecord);
+        verify(smsRecordsDataService).create(smsRecord);
+    }
+
+    @Test
+    public void shouldWriteEachBatchInOneTransaction() throws InterruptedException {
+        smsAuditWriter.start();
+        for (int i = 0; i < 10; i++) {
+            smsAuditWriter.write(record("id" + i));
+        }
+        // well within the flush interval, so the flusher writes them all at once rather than stop() draining them
+        long deadline = System.currentTimeMillis() + 5000;
+        while (smsAuditWriter.getWrittenRecords() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        smsAuditWriter.stop();
+
+        verify(smsRecordsDataService, times(10)).create(any(SmsRecord.class));
+        verify(smsRecordsDataService, times(1)).doInTransaction(any(TransactionCallback.class));
+        assertEquals(10, smsAuditWriter.getWrittenRecords());
+    }
+
+    @Test
+    public void shouldNotLoseRecordsWrittenWhileStopping() throws InterruptedException {
+        smsAuditWriter.start();
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 2000; i++) {
+                    smsAuditWriter.write(record("id" + i));
+                    started.countDown();
+                }
+            }
+        });
+        writer.start();
+        started.await();
+        smsAuditWriter.stop();
+        writer.join();
+
+        verify(smsRecordsDataService, times(2000)).create(any(SmsRecord.class));
+        assertEquals(0, smsAuditWriter.getQueueDepth());
+    }
+
+    @Test
+    public void shouldKeepGoingWhenARecordCantBeWritten() {
+        SmsRecord bad = record("bad");
+        SmsRecord good = record("good");
+        doThrow(new IllegalStateException("db down")).when(smsRecordsDataService).create(bad);
+
+        smsAuditWriter.start();
+        smsAuditWriter.write(bad);
+        smsAuditWriter.write(good);
+        smsAuditWriter.stop();
+
+        verify(smsRecordsDataService).create(good);
+        assertEquals(1, smsAuditWriter.getWrittenRecords());
+    }
+}
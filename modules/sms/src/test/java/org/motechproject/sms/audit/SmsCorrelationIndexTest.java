@@ -0,0 +1,100 @@
+package org.motechproject.sms.audit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.joda.time.DateTime;
+import org.mockito.Mock;
+
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.motechproject.sms.audit.SmsDirection.OUTBOUND;
+
+public class SmsCorrelationIndexTest {
+
+    private static final String CONFIG = "config";
+
+    @Mock
+    private SmsAuditService smsAuditService;
+    @Mock
+    private SmsCorrelationsDataService smsCorrelationsDataService;
+
+    private SmsCorrelationIndex smsCorrelationIndex;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        smsCorrelationIndex = new SmsCorrelationIndex(smsAuditService, smsCorrelationsDataService);
+        when(smsAuditService.findAllSmsRecords(any(SmsRecordSearchCriteria.class))).thenReturn(new SmsRecords());
+        when(smsCorrelationsDataService.findByProviderId(anyString(), anyString()))
+                .thenReturn(Collections.<SmsCorrelation>emptyList());
+    }
+
+    private SmsRecord record(String config, String motechId, String providerId) {
+        return new SmsRecord(config, OUTBOUND, "12065551212", "hello", null, DeliveryStatus.DISPATCHED, null,
+                motechId, providerId, null);
+    }
+
+    @Test
+    public void shouldFindAcknowledgedMessagesWithoutQueryingTheAuditLog() {
+        SmsRecord smsRecord = record(CONFIG, "motech-1", "provider-1");
+        smsCorrelationIndex.add(smsRecord);
+
+        assertEquals(smsRecord, smsCorrelationIndex.find(CONFIG, "provider-1"));
+        verify(smsCorrelationsDataService).create(new SmsCorrelation(smsRecord));
+        verify(smsCorrelationsDataService, never()).findByProviderId(anyString(), anyString());
+        verify(smsAuditService, never()).findAllSmsRecords(any(SmsRecordSearchCriteria.class));
+    }
+
+    @Test
+    public void shouldFindSavedCorrelationsOfMessagesNoLongerInMemory() {
+        SmsCorrelation older = new SmsCorrelation(CONFIG, "provider-1", "motech-0", "12065551213", "bye",
+                new DateTime(2014, 1, 1, 0, 0));
+        SmsCorrelation latest = new SmsCorrelation(CONFIG, "provider-1", "motech-1", "12065551212", "hello",
+                new DateTime(2014, 2, 1, 0, 0));
+        when(smsCorrelationsDataService.findByProviderId(CONFIG, "provider-1")).thenReturn(asList(older, latest));
+
+        SmsRecord smsRecord = smsCorrelationIndex.find(CONFIG, "provider-1");
+
+        assertEquals("motech-1", smsRecord.getMotechId());
+        assertEquals("12065551212", smsRecord.getPhoneNumber());
+        assertEquals("hello", smsRecord.getMessageContent());
+        verify(smsAuditService, never()).findAllSmsRecords(any(SmsRecordSearchCriteria.class));
+    }
+
+    @Test
+    public void shouldNotAnswerMotechIdsFromMemory() {
+        // the recipients of a message share its motechId, only the audit log can tell them apart
+        smsCorrelationIndex.add(record(CONFIG, "motech-1", "provider-1"));
+        smsCorrelationIndex.add(new SmsRecord(CONFIG, OUTBOUND, "12065551213", "hello", null,
+                DeliveryStatus.DISPATCHED, null, "motech-1", "provider-2", null));
+
+        assertNull(smsCorrelationIndex.find(CONFIG, "motech-1"));
+        verify(smsAuditService, times(2)).findAllSmsRecords(any(SmsRecordSearchCriteria.class));
+    }
+
+    @Test
+    public void shouldNotMixUpConfigs() {
+        smsCorrelationIndex.add(record(CONFIG, "motech-1", "provider-1"));
+        assertNull(smsCorrelationIndex.find("other", "provider-1"));
+    }
+
+    @Test
+    public void shouldFallBackOnTheAuditLogForExactMatches() {
+        SmsRecord partialMatch = record(CONFIG, "motech-2", "provider-20");
+        SmsRecord exactMatch = record(CONFIG, "motech-2", "provider-2");
+        when(smsAuditService.findAllSmsRecords(any(SmsRecordSearchCriteria.class)))
+                .thenReturn(new SmsRecords(2, asList(partialMatch, exactMatch)));
+
+        assertEquals(exactMatch, smsCorrelationIndex.find(CONFIG, "provider-2"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.motechproject.sms.configs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.sms.templates.Template;
+import org.motechproject.sms.templates.Templates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ConfigsSnapshotTest {
+
+    private static final String NAME_ONE = "one";
+    private static final String NAME_TWO = "two";
+    private static final String TEMPLATE_ONE = "template-one";
+    private static final String UNKNOWN_TEMPLATE = "unknown";
+
+    @Mock
+    private Templates templates;
+
+    private Template templateOne = new Template();
+    private Config configOne, configTwo;
+    private Configs configs = new Configs();
+
+    @Before
+    public void setup() {
+        initMocks(this);
+        configOne = new Config();
+        configOne.setName(NAME_ONE);
+        configOne.setTemplateName(TEMPLATE_ONE);
+        configTwo = new Config();
+        configTwo.setName(NAME_TWO);
+        configTwo.setTemplateName(UNKNOWN_TEMPLATE);
+        List<Config> configList = new ArrayList<>();
+        configList.add(configOne);
+        configList.add(configTwo);
+        configs.setConfigs(configList);
+        configs.setDefaultConfigName(NAME_TWO);
+        when(templates.getTemplate(TEMPLATE_ONE)).thenReturn(templateOne);
+    }
+
+    @Test
+    public void shouldResolveTemplates() {
+        ConfigsSnapshot snapshot = new ConfigsSnapshot(configs, templates);
+        assertEquals(templateOne, snapshot.getTemplate(configOne));
+        assertNull(snapshot.getTemplate(configTwo));
+    }
+
+    @Test
+    public void shouldFindConfigs() {
+        ConfigsSnapshot snapshot = new ConfigsSnapshot(configs, templates);
+        assertTrue(snapshot.hasConfig(NAME_ONE));
+        assertFalse(snapshot.hasConfig("three"));
+        assertEquals(configOne, snapshot.getConfig(NAME_ONE));
+        assertEquals(configTwo, snapshot.getConfigOrDefault(null));
+        assertEquals(configTwo, snapshot.getDefaultConfig());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowWhenGettingInvalidConfig() {
+        new ConfigsSnapshot(configs, templates).getConfig("three");
+    }
+
+    @Test
+    public void shouldNotSeeLaterChangesToTheConfigList() {
+        ConfigsSnapshot snapshot = new ConfigsSnapshot(configs, templates);
+        Config configThree = new Config();
+        configThree.setName("three");
+        configs.getConfigs().add(configThree);
+        assertFalse(snapshot.hasConfig("three"));
+    }
+}
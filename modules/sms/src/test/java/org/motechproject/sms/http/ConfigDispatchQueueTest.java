@@ -0,0 +1,134 @@
+package org.motechproject.sms.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Outgoing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigDispatchQueueTest {
+
+    private static final int PARTS = 20;
+
+    private ConfigDispatchQueue queue;
+
+    @Before
+    public void setUp() {
+        Outgoing outgoing = new Outgoing();
+        outgoing.setMillisecondsBetweenMessages(0);
+        outgoing.setMaxConcurrentRequests(4);
+        queue = new ConfigDispatchQueue("config", outgoing);
+    }
+
+    @After
+    public void tearDown() {
+        queue.shutdown(1000);
+    }
+
+    @Test
+    public void shouldSendThePartsOfAMessageInOrder() throws InterruptedException {
+        final ConcurrentMap<List<String>, List<String>> sent = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(3 * PARTS);
+        SmsSender sender = new SmsSender() {
+            @Override
+            public boolean send(OutgoingSms sms) {
+                sent.putIfAbsent(sms.getRecipients(), Collections.synchronizedList(new ArrayList<String>()));
+                sent.get(sms.getRecipients()).add(sms.getMessage());
+                latch.countDown();
+                return true;
+            }
+        };
+
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < PARTS; ++i) {
+            parts.add("part " + i);
+            for (String recipient : asList("123", "456", "789")) {
+                assertTrue(queue.submit(new OutgoingSms("config", asList(recipient), "part " + i), sender, null));
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (String recipient : asList("123", "456", "789")) {
+            assertEquals(parts, sent.get(asList(recipient)));
+        }
+    }
+
+    @Test
+    public void shouldKeepThePartsOfAMessageInOrderWhenTheQueueIsReplaced() throws InterruptedException {
+        final ConcurrentMap<List<String>, List<String>> sent = new ConcurrentHashMap<>();
+        final CountDownLatch retiredMayGo = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(3 * PARTS);
+        SmsSender sender = new SmsSender() {
+            @Override
+            public boolean send(OutgoingSms sms) {
+                try {
+                    if (!sms.getMessage().startsWith("new")) {
+                        retiredMayGo.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                sent.putIfAbsent(sms.getRecipients(), Collections.synchronizedList(new ArrayList<String>()));
+                sent.get(sms.getRecipients()).add(sms.getMessage());
+                latch.countDown();
+                return true;
+            }
+        };
+
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < PARTS / 2; ++i) {
+            parts.add("part " + i);
+            for (String recipient : asList("123", "456", "789")) {
+                assertTrue(queue.submit(new OutgoingSms("config", asList(recipient), "part " + i), sender, null));
+            }
+        }
+        Outgoing outgoing = new Outgoing();
+        outgoing.setMillisecondsBetweenMessages(0);
+        outgoing.setMaxConcurrentRequests(3);
+        ConfigDispatchQueue newQueue = new ConfigDispatchQueue(queue, outgoing);
+        queue.retire();
+        try {
+            for (int i = PARTS / 2; i < PARTS; ++i) {
+                parts.add("new part " + i);
+                for (String recipient : asList("123", "456", "789")) {
+                    assertTrue(newQueue.submit(new OutgoingSms("config", asList(recipient), "new part " + i), sender,
+                            null));
+                }
+            }
+            retiredMayGo.countDown();
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            for (String recipient : asList("123", "456", "789")) {
+                assertEquals(parts, sent.get(asList(recipient)));
+            }
+        } finally {
+            newQueue.shutdown(1000);
+        }
+    }
+
+    @Test
+    public void shouldTurnMessagesAwayOnceRetired() {
+        queue.retire();
+
+        assertFalse(queue.submit(new OutgoingSms("config", asList("123"), "message"), new SmsSender() {
+            @Override
+            public boolean send(OutgoingSms sms) {
+                return true;
+            }
+        }, null));
+    }
+}
@@ -0,0 +1,110 @@
+package org.motechproject.sms.http;
+
+import com.google.gson.Gson;
+import org.apache.commons.httpclient.Header;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.sms.SmsEventSubjects;
+import org.motechproject.sms.alert.MotechStatusMessage;
+import org.motechproject.sms.audit.DeliveryStatus;
+import org.motechproject.sms.audit.SmsRecord;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Outgoing;
+import org.motechproject.sms.templates.Response;
+import org.motechproject.sms.templates.Template;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class MultilineResponseHandlerTest {
+    @Mock
+    private Template template;
+
+    @Mock
+    private MotechStatusMessage motechStatusMessage;
+
+    private Config config;
+    private OutgoingSms sms;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        Response response = new Gson().fromJson("{" +
+                "\"multiLineRecipientResponse\": true," +
+                "\"extractSuccessMessageIdAndRecipient\": \"^ID: (.*) To: (.*)$\"," +
+                "\"extractFailureMessageAndRecipient\": \"^ERR: (.*) To: (.*)$\"" +
+                "}", Response.class);
+        Outgoing outgoing = new Outgoing();
+        outgoing.setResponse(response);
+        when(template.getOutgoing()).thenReturn(outgoing);
+
+        config = new Config();
+        config.setName("clickatell");
+        config.setMaxRetries(3);
+
+        sms = new OutgoingSms("clickatell", Arrays.asList("111", "222", "333"), "hello");
+    }
+
+    private MultilineResponseHandler handle(String response) throws IOException {
+        MultilineResponseHandler handler = new MultilineResponseHandler(template, config, motechStatusMessage);
+        handler.handle(sms, new BufferedReader(new StringReader(response)), new Header[0]);
+        return handler;
+    }
+
+    @Test
+    public void shouldHandleEachLine() throws IOException {
+        MultilineResponseHandler handler = handle("ID: a1 To: 111\r\nERR: 114, Cannot route To: 222\nID: a3 To: 333\n\n");
+
+        List<SmsRecord> records = handler.getAuditRecords();
+        assertEquals(3, records.size());
+        assertEquals(DeliveryStatus.DISPATCHED, records.get(0).getDeliveryStatus());
+        assertEquals("a1", records.get(0).getProviderId());
+        assertEquals("111", records.get(0).getPhoneNumber());
+        assertEquals(DeliveryStatus.RETRYING, records.get(1).getDeliveryStatus());
+        assertEquals("114, Cannot route", records.get(1).getErrorMessage());
+        assertEquals("a3", records.get(2).getProviderId());
+
+        assertEquals(3, handler.getEvents().size());
+        assertEquals(SmsEventSubjects.DISPATCHED, handler.getEvents().get(0).getSubject());
+        assertEquals(SmsEventSubjects.RETRYING, handler.getEvents().get(1).getSubject());
+    }
+
+    @Test
+    public void shouldHandleResponsesOfTemplatesWithoutAFailureRegex() throws IOException {
+        Outgoing outgoing = new Outgoing();
+        outgoing.setResponse(new Gson().fromJson("{" +
+                "\"multiLineRecipientResponse\": true," +
+                "\"extractSuccessMessageIdAndRecipient\": \"^ID: (.*) To: (.*)$\"" +
+                "}", Response.class));
+        when(template.getOutgoing()).thenReturn(outgoing);
+
+        MultilineResponseHandler handler = handle("ID: a1 To: 111\nID: a2 To: 222\n");
+
+        assertEquals(2, handler.getAuditRecords().size());
+        assertEquals(DeliveryStatus.DISPATCHED, handler.getAuditRecords().get(1).getDeliveryStatus());
+
+        handler = handle("ID: a1 To: 111\nERR: 114, Cannot route To: 222\n");
+
+        assertEquals(2, handler.getAuditRecords().size());
+        assertEquals(DeliveryStatus.RETRYING, handler.getAuditRecords().get(1).getDeliveryStatus());
+        assertEquals(SmsEventSubjects.RETRYING, handler.getEvents().get(1).getSubject());
+    }
+
+    @Test
+    public void shouldTreatEmptyResponseAsUnparseable() throws IOException {
+        MultilineResponseHandler handler = handle("");
+
+        assertEquals(1, handler.getAuditRecords().size());
+        assertEquals(DeliveryStatus.RETRYING, handler.getAuditRecords().get(0).getDeliveryStatus());
+        assertEquals(SmsEventSubjects.RETRYING, handler.getEvents().get(0).getSubject());
+    }
+}
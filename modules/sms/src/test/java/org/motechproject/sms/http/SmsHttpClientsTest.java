@@ -0,0 +1,85 @@
+package org.motechproject.sms.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.ConfigProp;
+import org.motechproject.sms.templates.Outgoing;
+import org.motechproject.sms.templates.Template;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SmsHttpClientsTest {
+    @Mock
+    private Template template;
+
+    private SmsHttpClients smsHttpClients;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        Outgoing outgoing = new Outgoing();
+        outgoing.setMaxConcurrentRequests(2);
+        outgoing.setConnectTimeoutMillis(1000);
+        outgoing.setReadTimeoutMillis(1000);
+        outgoing.setHasAuthentication(true);
+        when(template.getOutgoing()).thenReturn(outgoing);
+        smsHttpClients = new SmsHttpClients();
+    }
+
+    @After
+    public void tearDown() {
+        smsHttpClients.shutdown();
+    }
+
+    private static ConfigProp prop(String name, String value) {
+        ConfigProp prop = new ConfigProp();
+        prop.setName(name);
+        prop.setValue(value);
+        return prop;
+    }
+
+    private static Config config(String name) {
+        Config config = new Config();
+        config.setName(name);
+        config.setProps(Arrays.asList(prop("username", "foo"), prop("password", "bar")));
+        return config;
+    }
+
+    @Test
+    public void shouldReuseClientForSameConfig() {
+        Config config = config("foo");
+
+        ProviderHttpClient client = smsHttpClients.clientFor(config, template);
+
+        assertSame(client, smsHttpClients.clientFor(config, template));
+        assertSame(client, smsHttpClients.getClient("foo"));
+    }
+
+    @Test
+    public void shouldUseOneClientPerConfig() {
+        ProviderHttpClient foo = smsHttpClients.clientFor(config("foo"), template);
+        ProviderHttpClient bar = smsHttpClients.clientFor(config("bar"), template);
+
+        assertNotSame(foo, bar);
+        assertNull(smsHttpClients.getClient("baz"));
+    }
+
+    @Test
+    public void shouldReplaceClientWhenConfigIsReloaded() {
+        ProviderHttpClient client = smsHttpClients.clientFor(config("foo"), template);
+
+        ProviderHttpClient reloaded = smsHttpClients.clientFor(config("foo"), template);
+
+        assertNotSame(client, reloaded);
+        assertSame(reloaded, smsHttpClients.getClient("foo"));
+    }
+}
@@ -0,0 +1,149 @@
+package org.motechproject.sms.http;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.scheduler.contract.RunOnceSchedulableJob;
+import org.motechproject.scheduler.service.MotechSchedulerService;
+import org.motechproject.sms.SmsEventSubjects;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
+import org.motechproject.sms.service.OutgoingSms;
+import org.motechproject.sms.templates.Outgoing;
+import org.motechproject.sms.templates.Template;
+import org.motechproject.sms.templates.Templates;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SmsRetrySchedulerTest {
+    private static final String CONFIG = "config";
+
+    @Mock
+    private MotechSchedulerService schedulerService;
+    @Mock
+    private ConfigsCache configsCache;
+    @Mock
+    private Templates templates;
+    @Mock
+    private Template template;
+
+    private Outgoing outgoing;
+    private SmsRetryScheduler smsRetryScheduler;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        Config config = new Config();
+        config.setName(CONFIG);
+        config.setTemplateName("template");
+        Configs configs = new Configs();
+        configs.setConfigs(Arrays.asList(config));
+
+        outgoing = new Outgoing();
+        outgoing.setExponentialBackOffRetries(true);
+        when(templates.getTemplate("template")).thenReturn(template);
+        when(template.getOutgoing()).thenReturn(outgoing);
+        when(configsCache.getSnapshot()).thenReturn(new ConfigsSnapshot(configs, templates));
+
+        smsRetryScheduler = new SmsRetryScheduler(schedulerService, configsCache);
+    }
+
+    private OutgoingSms failedSms(int failureCount) {
+        OutgoingSms sms = new OutgoingSms(CONFIG, Arrays.asList("12065551212"), "hello");
+        sms.setFailureCount(failureCount);
+        return sms;
+    }
+
+    @Test
+    public void shouldBackOffExponentially() {
+        assertEquals(SmsRetryScheduler.BASE_DELAY_MILLIS, SmsRetryScheduler.retryDelay(1, true));
+        assertEquals(SmsRetryScheduler.BASE_DELAY_MILLIS * 2, SmsRetryScheduler.retryDelay(2, true));
+        assertEquals(SmsRetryScheduler.BASE_DELAY_MILLIS * 4, SmsRetryScheduler.retryDelay(3, true));
+        assertEquals(SmsRetryScheduler.MAX_DELAY_MILLIS, SmsRetryScheduler.retryDelay(100, true));
+        assertEquals(SmsRetryScheduler.BASE_DELAY_MILLIS, SmsRetryScheduler.retryDelay(3, false));
+    }
+
+    @Test
+    public void shouldScheduleRetryWithJitteredDelay() {
+        long before = System.currentTimeMillis();
+
+        smsRetryScheduler.scheduleRetry(failedSms(3));
+
+        ArgumentCaptor<RunOnceSchedulableJob> job = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
+        verify(schedulerService).safeScheduleRunOnceJob(job.capture());
+        long delay = job.getValue().getStartDate().getTime() - before;
+        long expected = SmsRetryScheduler.retryDelay(3, true);
+        assertTrue(delay >= expected / 2);
+        assertTrue(delay <= expected + 1000);
+        assertEquals(SmsEventSubjects.RETRY_DUE, job.getValue().getMotechEvent().getSubject());
+        assertEquals(1, smsRetryScheduler.getQueueDepth(CONFIG));
+    }
+
+    @Test
+    public void shouldCountDownQueueDepthWhenRetryIsDue() {
+        smsRetryScheduler.scheduleRetry(failedSms(1));
+        smsRetryScheduler.scheduleRetry(failedSms(1));
+
+        smsRetryScheduler.retryDue(failedSms(1), null);
+        assertEquals(1, smsRetryScheduler.getQueueDepth(CONFIG));
+
+        smsRetryScheduler.retryDue(failedSms(1), null);
+        smsRetryScheduler.retryDue(failedSms(1), null);
+        assertEquals(0, smsRetryScheduler.getQueueDepth(CONFIG));
+    }
+
+    @Test
+    public void shouldOpenCircuitAfterConsecutiveFailures() {
+        for (int i = 1; i < CircuitBreaker.FAILURES_BEFORE_OPENING; i++) {
+            smsRetryScheduler.recordFailure(CONFIG);
+        }
+        assertFalse(smsRetryScheduler.isOpen(CONFIG));
+
+        smsRetryScheduler.recordFailure(CONFIG);
+        assertTrue(smsRetryScheduler.isOpen(CONFIG));
+
+        smsRetryScheduler.recordSuccess(CONFIG);
+        assertFalse(smsRetryScheduler.isOpen(CONFIG));
+    }
+
+    @Test
+    public void shouldHoldMessagesBackWhileCircuitIsOpen() {
+        for (int i = 0; i < CircuitBreaker.FAILURES_BEFORE_OPENING; i++) {
+            smsRetryScheduler.recordFailure(CONFIG);
+        }
+        long before = System.currentTimeMillis();
+
+        smsRetryScheduler.deferUntilClosed(failedSms(0), null);
+
+        ArgumentCaptor<RunOnceSchedulableJob> job = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
+        verify(schedulerService).safeScheduleRunOnceJob(job.capture());
+        assertTrue(job.getValue().getStartDate().getTime() >= before + CircuitBreaker.MIN_OPEN_MILLIS);
+    }
+
+    @Test
+    public void shouldHandBackTheListenerOfADeferredMessage() {
+        DispatchListener listener = mock(DispatchListener.class);
+
+        smsRetryScheduler.deferUntilClosed(failedSms(0), listener);
+
+        ArgumentCaptor<RunOnceSchedulableJob> job = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
+        verify(schedulerService).safeScheduleRunOnceJob(job.capture());
+        String jobId = (String) job.getValue().getMotechEvent().getParameters().get(MotechSchedulerService.JOB_ID_KEY);
+        assertNull(smsRetryScheduler.retryDue(failedSms(0), "another job"));
+        assertSame(listener, smsRetryScheduler.retryDue(failedSms(0), jobId));
+        assertNull(smsRetryScheduler.retryDue(failedSms(0), jobId));
+    }
+}
@@ -0,0 +1,53 @@
+package org.motechproject.sms.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldNotWaitWhileTokensAreAvailable() {
+        TokenBucket bucket = new TokenBucket(1000, 2);
+        assertEquals(0, bucket.reserve(System.nanoTime()));
+        assertEquals(0, bucket.reserve(System.nanoTime()));
+    }
+
+    @Test
+    public void shouldSpaceOutRequestsOnceTheBucketIsEmpty() {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(ONE_SECOND, bucket.reserve(now));
+        assertEquals(2 * ONE_SECOND, bucket.reserve(now));
+    }
+
+    @Test
+    public void shouldRefillOverTime() {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now + ONE_SECOND));
+    }
+
+    @Test
+    public void shouldNeverWaitWithoutADelay() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void shouldNotHandOutMoreThanCapacity() {
+        TokenBucket bucket = new TokenBucket(60000, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+}
@@ -0,0 +1,250 @@
+package org.motechproject.sms.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.motechproject.sms.audit.SmsCampaignRecord;
+import org.motechproject.sms.audit.SmsCampaignRecordsDataService;
+import org.motechproject.sms.audit.SmsCampaignStatus;
+import org.motechproject.sms.configs.Config;
+import org.motechproject.sms.configs.Configs;
+import org.motechproject.sms.configs.ConfigsCache;
+import org.motechproject.sms.configs.ConfigsSnapshot;
+import org.motechproject.sms.http.DispatchListener;
+import org.motechproject.sms.http.SmsDispatcher;
+import org.motechproject.sms.templates.Outgoing;
+import org.motechproject.sms.templates.Template;
+import org.motechproject.sms.templates.Templates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class SmsCampaignRunnerTest {
+
+    private static final String CONFIG = "config";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Mock
+    private ConfigsCache configsCache;
+    @Mock
+    private Templates templates;
+    @Mock
+    private Template template;
+    @Mock
+    private SmsDispatcher smsDispatcher;
+    @Mock
+    private SmsCampaignRecordsDataService smsCampaignRecordsDataService;
+
+    private SmsCampaignRunner smsCampaignRunner;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        Config config = new Config();
+        config.setName(CONFIG);
+        config.setSplitHeader("");
+        config.setSplitFooter("");
+        config.setExcludeLastFooter(true);
+        config.setTemplateName("template");
+        Configs configs = new Configs();
+        configs.setConfigs(Arrays.asList(config));
+
+        Outgoing outgoing = new Outgoing();
+        outgoing.setMaxRecipient(3);
+        outgoing.setMaxSmsSize(160);
+
+        when(templates.getTemplate("template")).thenReturn(template);
+        when(template.getOutgoing()).thenReturn(outgoing);
+        when(configsCache.getSnapshot()).thenReturn(new ConfigsSnapshot(configs, templates));
+        when(smsCampaignRecordsDataService.create(any(SmsCampaignRecord.class))).thenAnswer(
+                new Answer<SmsCampaignRecord>() {
+                    @Override
+                    public SmsCampaignRecord answer(InvocationOnMock invocation) {
+                        return (SmsCampaignRecord) invocation.getArguments()[0];
+                    }
+                });
+
+        providerTakes("");
+
+        smsCampaignRunner = new SmsCampaignRunner(configsCache, smsDispatcher, smsCampaignRecordsDataService);
+    }
+
+    /**
+     * Has the mocked dispatcher send messages right away, the provider taking all but those to the given recipient
+     */
+    private void providerTakes(final String allBut) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                OutgoingSms sms = (OutgoingSms) invocation.getArguments()[0];
+                DispatchListener listener = (DispatchListener) invocation.getArguments()[1];
+                if (listener.beforeSend(sms)) {
+                    listener.sent(sms, !sms.getRecipients().contains(allBut));
+                }
+                return null;
+            }
+        }).when(smsDispatcher).dispatch(any(OutgoingSms.class), any(DispatchListener.class));
+    }
+
+    private List<String> recipients(int count) {
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recipients.add("1206555" + i);
+        }
+        return recipients;
+    }
+
+    private SmsCampaignRecord awaitCompletion(String campaignId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        ArgumentCaptor<SmsCampaignRecord> captor = ArgumentCaptor.forClass(SmsCampaignRecord.class);
+        while (System.currentTimeMillis() < deadline) {
+            SmsCampaignRecord record = smsCampaignRunner.getCampaign(campaignId);
+            if (record == null) {
+                verify(smsCampaignRecordsDataService, atLeastOnce()).update(captor.capture());
+                return captor.getValue();
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Campaign didn't complete");
+    }
+
+    @Test
+    public void shouldSendOneRequestPerRecipientChunk() throws InterruptedException {
+        String campaignId = smsCampaignRunner.start(new BulkSms(CONFIG, recipients(7).iterator(), "hello"));
+        SmsCampaignRecord record = awaitCompletion(campaignId);
+
+        ArgumentCaptor<OutgoingSms> captor = ArgumentCaptor.forClass(OutgoingSms.class);
+        verify(smsDispatcher, times(3)).dispatch(captor.capture(), any(DispatchListener.class));
+        assertEquals(3, captor.getAllValues().get(0).getRecipients().size());
+        assertEquals(1, captor.getAllValues().get(2).getRecipients().size());
+        assertEquals(SmsCampaignStatus.COMPLETED, record.getStatus());
+        assertEquals(Long.valueOf(7), record.getRecipients());
+        assertEquals(Long.valueOf(3), record.getProviderRequests());
+    }
+
+    @Test
+    public void shouldPersonalizeMessages() throws InterruptedException {
+        SmsPersonalizer personalizer = new SmsPersonalizer() {
+            @Override
+            public String messageFor(String recipient, String message) {
+                return message + " " + recipient;
+            }
+        };
+        String campaignId = smsCampaignRunner.start(new BulkSms(CONFIG, Arrays.asList("1", "2").iterator(),
+                "hello", personalizer));
+        awaitCompletion(campaignId);
+
+        ArgumentCaptor<OutgoingSms> captor = ArgumentCaptor.forClass(OutgoingSms.class);
+        verify(smsDispatcher, times(2)).dispatch(captor.capture(), any(DispatchListener.class));
+        assertEquals("hello 1", captor.getAllValues().get(0).getMessage());
+        assertEquals("hello 2", captor.getAllValues().get(1).getMessage());
+    }
+
+    @Test
+    public void shouldCountOnlyTheRequestsTheProviderTook() throws InterruptedException {
+        providerTakes("12065553");
+
+        SmsCampaignRecord record = awaitCompletion(smsCampaignRunner.start(new BulkSms(CONFIG,
+                recipients(7).iterator(), "hello")));
+
+        assertEquals(SmsCampaignStatus.COMPLETED, record.getStatus());
+        assertEquals(Long.valueOf(4), record.getRecipients());
+        assertEquals(Long.valueOf(2), record.getProviderRequests());
+        assertEquals(Long.valueOf(1), record.getFailedRequests());
+    }
+
+    @Test
+    public void shouldHoldQueuedMessagesWhilePaused() throws InterruptedException {
+        final BlockingQueue<Object[]> queued = new LinkedBlockingQueue<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                queued.add(invocation.getArguments());
+                return null;
+            }
+        }).when(smsDispatcher).dispatch(any(OutgoingSms.class), any(DispatchListener.class));
+
+        String campaignId = smsCampaignRunner.start(new BulkSms(CONFIG, recipients(2).iterator(), "hello"));
+        Object[] request = queued.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        smsCampaignRunner.pause(campaignId);
+
+        assertFalse(((DispatchListener) request[1]).beforeSend((OutgoingSms) request[0]));
+        assertEquals(SmsCampaignStatus.PAUSED, smsCampaignRunner.getCampaign(campaignId).getStatus());
+
+        smsCampaignRunner.resume(campaignId);
+        request = queued.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(((DispatchListener) request[1]).beforeSend((OutgoingSms) request[0]));
+        ((DispatchListener) request[1]).sent((OutgoingSms) request[0], true);
+
+        SmsCampaignRecord record = awaitCompletion(campaignId);
+        assertEquals(SmsCampaignStatus.COMPLETED, record.getStatus());
+        assertEquals(Long.valueOf(2), record.getRecipients());
+        assertEquals(Long.valueOf(1), record.getProviderRequests());
+    }
+
+    @Test
+    public void shouldHoldRequestsBehindADeferredOneUntilItIsSent() throws InterruptedException {
+        final BlockingQueue<Object[]> queued = new LinkedBlockingQueue<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                queued.add(invocation.getArguments());
+                return null;
+            }
+        }).when(smsDispatcher).dispatch(any(OutgoingSms.class), any(DispatchListener.class));
+
+        String campaignId = smsCampaignRunner.start(new BulkSms(CONFIG, recipients(4).iterator(), "hello"));
+        Object[] first = queued.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        Object[] second = queued.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        ((DispatchListener) first[1]).deferred((OutgoingSms) first[0]);
+        assertFalse(((DispatchListener) second[1]).beforeSend((OutgoingSms) second[0]));
+
+        smsCampaignRunner.pause(campaignId);
+        // the retry of the deferred request is held too
+        assertFalse(((DispatchListener) first[1]).beforeSend((OutgoingSms) first[0]));
+        assertEquals(Long.valueOf(0), smsCampaignRunner.getCampaign(campaignId).getFailedRequests());
+
+        smsCampaignRunner.resume(campaignId);
+        for (int i = 0; i < 2; i++) {
+            Object[] request = queued.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals(i == 0 ? first[0] : second[0], request[0]);
+            assertTrue(((DispatchListener) request[1]).beforeSend((OutgoingSms) request[0]));
+            ((DispatchListener) request[1]).sent((OutgoingSms) request[0], true);
+        }
+
+        SmsCampaignRecord record = awaitCompletion(campaignId);
+        assertEquals(SmsCampaignStatus.COMPLETED, record.getStatus());
+        assertEquals(Long.valueOf(4), record.getRecipients());
+        assertEquals(Long.valueOf(2), record.getProviderRequests());
+        assertEquals(Long.valueOf(0), record.getFailedRequests());
+    }
+
+    @Test
+    public void shouldFailCampaignsInterruptedByARestart() {
+        SmsCampaignRecord record = new SmsCampaignRecord("campaign", CONFIG, SmsCampaignStatus.RUNNING, null);
+        when(smsCampaignRecordsDataService.findByStatus(SmsCampaignStatus.RUNNING)).thenReturn(Arrays.asList(record));
+
+        smsCampaignRunner.failInterruptedCampaigns();
+
+        verify(smsCampaignRecordsDataService).update(record);
+        assertEquals(SmsCampaignStatus.FAILED, record.getStatus());
+    }
+}
@@ -0,0 +1,187 @@
+package org.motechproject.sms.smpp;
+
+import org.junit.Test;
+import org.motechproject.sms.audit.DeliveryStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SmppPduTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final SmppAddress SOURCE = new SmppAddress(1, 1, "12065551212");
+    private static final SmppAddress DESTINATION = new SmppAddress(1, 1, "12065553434");
+
+    private static byte[] write(SmppPdu pdu) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        pdu.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static SmppPdu read(byte[] bytes) throws IOException {
+        return SmppPdu.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static SmppPdu roundTrip(SmppPdu pdu) throws IOException {
+        return read(write(pdu));
+    }
+
+    private static byte[] deliverSm(int esmClass, int dataCoding, byte[] shortMessage, byte[] receiptedMessageId)
+            throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        // service_type, source, destination
+        out.writeByte(0);
+        out.writeByte(1);
+        out.writeByte(1);
+        out.write("12065553434".getBytes(ASCII));
+        out.writeByte(0);
+        out.writeByte(1);
+        out.writeByte(1);
+        out.write("12065551212".getBytes(ASCII));
+        out.writeByte(0);
+        out.writeByte(esmClass);
+        // protocol_id, priority_flag, schedule_delivery_time, validity_period, registered_delivery,
+        // replace_if_present_flag
+        out.write(new byte[6]);
+        out.writeByte(dataCoding);
+        out.writeByte(0);
+        out.writeByte(shortMessage.length);
+        out.write(shortMessage);
+        if (receiptedMessageId != null) {
+            out.writeShort(0x001E);
+            out.writeShort(receiptedMessageId.length + 1);
+            out.write(receiptedMessageId);
+            out.writeByte(0);
+        }
+
+        ByteArrayOutputStream pdu = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(pdu);
+        header.writeInt(SmppPdu.HEADER_LENGTH + body.size());
+        header.writeInt(SmppPdu.DELIVER_SM);
+        header.writeInt(0);
+        header.writeInt(42);
+        header.write(body.toByteArray());
+        return pdu.toByteArray();
+    }
+
+    @Test
+    public void shouldWriteCommandLengthInHeader() throws IOException {
+        byte[] bytes = write(SmppPdu.bindTransceiver(1, "smppclient1", "password", ""));
+
+        assertEquals(bytes.length, new DataInputStream(new ByteArrayInputStream(bytes)).readInt());
+        SmppPdu pdu = read(bytes);
+        assertEquals(SmppPdu.BIND_TRANSCEIVER, pdu.getCommandId());
+        assertEquals(1, pdu.getSequenceNumber());
+        assertFalse(pdu.isResponse());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectInvalidCommandLength() throws IOException {
+        read(new byte[] {0, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+    }
+
+    @Test
+    public void shouldAnswerRequestsWithTheirSequenceNumber() throws IOException {
+        SmppPdu request = read(deliverSm(0, 0, "hi".getBytes(ASCII), null));
+
+        SmppPdu response = roundTrip(SmppPdu.responseTo(request, SmppPdu.ESME_ROK));
+
+        assertEquals(SmppPdu.DELIVER_SM_RESP, response.getCommandId());
+        assertEquals(42, response.getSequenceNumber());
+        assertTrue(response.isResponse());
+        // deliver_sm_resp carries an empty message_id
+        assertEquals("", response.readMessageId());
+    }
+
+    @Test
+    public void shouldSubmitAsciiMessagesInTheDefaultAlphabet() throws IOException {
+        // submit_sm and deliver_sm bodies share the same layout
+        DeliverSm submitted = roundTrip(SmppPdu.submitSm(7, SOURCE, DESTINATION, "", "hello world")).readDeliverSm();
+
+        assertEquals("12065551212", submitted.getSource().getAddress());
+        assertEquals("12065553434", submitted.getDestination().getAddress());
+        assertEquals("hello world", submitted.getMessage());
+        assertFalse(submitted.isDeliveryReceipt());
+    }
+
+    @Test
+    public void shouldSubmitOtherMessagesInUcs2() throws IOException {
+        String message = "नमस्ते world";
+
+        DeliverSm submitted = roundTrip(SmppPdu.submitSm(7, SOURCE, DESTINATION, "", message)).readDeliverSm();
+
+        assertEquals(message, submitted.getMessage());
+    }
+
+    @Test
+    public void shouldSubmitLongMessagesAsPayload() throws IOException {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            message.append("0123456789");
+        }
+
+        DeliverSm submitted = roundTrip(SmppPdu.submitSm(7, SOURCE, DESTINATION, "", message.toString()))
+                .readDeliverSm();
+
+        assertEquals(message.toString(), submitted.getMessage());
+    }
+
+    @Test
+    public void shouldReadDeliveryReceipt() throws IOException {
+        String receipt = "id:0815 sub:001 dlvrd:001 submit date:1402181315 done date:1402181315 stat:DELIVRD " +
+                "err:000 Text:hello world";
+
+        DeliverSm deliverSm = read(deliverSm(0x04, 0, receipt.getBytes(ASCII), null)).readDeliverSm();
+
+        assertTrue(deliverSm.isDeliveryReceipt());
+        assertEquals("0815", deliverSm.getReceiptMessageId());
+        assertEquals("DELIVRD", deliverSm.getReceiptStat());
+        assertEquals(DeliveryStatus.DELIVERY_CONFIRMED, deliverSm.getReceiptDeliveryStatus());
+    }
+
+    @Test
+    public void shouldPreferReceiptedMessageIdOverReceiptText() throws IOException {
+        String receipt = "id:0815 sub:001 dlvrd:000 stat:UNDELIV err:001";
+
+        DeliverSm deliverSm = read(deliverSm(0x04, 0, receipt.getBytes(ASCII), "abc123".getBytes(ASCII)))
+                .readDeliverSm();
+
+        assertEquals("abc123", deliverSm.getReceiptMessageId());
+        assertEquals(DeliveryStatus.FAILURE_CONFIRMED, deliverSm.getReceiptDeliveryStatus());
+    }
+
+    @Test
+    public void shouldReadReceiptTextInTheDefaultAlphabetWhateverTheDataCoding() throws IOException {
+        String receipt = "id:0815 sub:001 dlvrd:001 stat:DELIVRD err:000";
+
+        DeliverSm deliverSm = read(deliverSm(0x04, 0x08, receipt.getBytes(ASCII), null)).readDeliverSm();
+
+        assertEquals("0815", deliverSm.getReceiptMessageId());
+    }
+
+    @Test
+    public void shouldReadIncomingMessage() throws IOException {
+        DeliverSm deliverSm = read(deliverSm(0, 0x08, "héllo".getBytes("UTF-16BE"), null)).readDeliverSm();
+
+        assertFalse(deliverSm.isDeliveryReceipt());
+        assertEquals("héllo", deliverSm.getMessage());
+        assertEquals("12065553434", deliverSm.getSource().getAddress());
+    }
+
+    @Test
+    public void shouldLeaveUnknownReceiptStatsDispatched() {
+        DeliverSm deliverSm = new DeliverSm(SOURCE, DESTINATION, 0x04, "id:1 stat:ENROUTE err:000", null);
+
+        assertEquals(DeliveryStatus.DISPATCHED, deliverSm.getReceiptDeliveryStatus());
+        assertNull(new DeliverSm(SOURCE, DESTINATION, 0x04, "garbage", null).getReceiptMessageId());
+    }
+}
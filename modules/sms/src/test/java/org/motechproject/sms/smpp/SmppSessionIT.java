@@ -0,0 +1,114 @@
+package org.motechproject.sms.smpp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.sms.audit.DeliveryStatus;
+import org.motechproject.sms.templates.Smpp;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Talks to SMPPSim, start it first with tools/SMPPSim/startsmppsim.sh
+ */
+public class SmppSessionIT {
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final int MESSAGES = 25;
+    private static final SmppAddress SOURCE = new SmppAddress(1, 1, "12065551212");
+
+    private final BlockingQueue<String> submitted = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> failed = new LinkedBlockingQueue<>();
+    private final BlockingQueue<DeliverSm> delivered = new LinkedBlockingQueue<>();
+    private Smpp smpp;
+    private SmppSession session;
+
+    @Before
+    public void setUp() {
+        smpp = new Smpp();
+        smpp.setHost("localhost");
+        smpp.setWindowSize(5);
+        smpp.setEnquireLinkMillis(1000L);
+        session = new SmppSession("it", smpp, "smppclient1", "password", new SmppSession.Listener() {
+            @Override
+            public void delivered(DeliverSm deliverSm) {
+                delivered.add(deliverSm);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+    }
+
+    private SmppSession.SubmitCallback callback() {
+        return new SmppSession.SubmitCallback() {
+            @Override
+            public void submitted(String messageId) {
+                submitted.add(messageId);
+            }
+
+            @Override
+            public void failed(int commandStatus, String reason) {
+                failed.add(reason);
+            }
+        };
+    }
+
+    @Test
+    public void shouldSubmitThroughTheWindowAndReceiveDeliveryReceipts() throws Exception {
+        session.bind();
+        for (int i = 0; i < MESSAGES; i++) {
+            session.submit(SOURCE, new SmppAddress(1, 1, "120655500" + i), "hello " + i, callback());
+        }
+
+        Set<String> messageIds = new HashSet<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            String messageId = submitted.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(messageId);
+            messageIds.add(messageId);
+        }
+        assertEquals(MESSAGES, messageIds.size());
+        assertTrue(failed.isEmpty());
+
+        // receipts may also be for messages sent by earlier runs
+        DeliverSm receipt;
+        do {
+            receipt = delivered.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(receipt);
+        } while (!messageIds.contains(receipt.getReceiptMessageId()));
+        assertTrue(receipt.isDeliveryReceipt());
+        assertEquals(DeliveryStatus.DELIVERY_CONFIRMED, receipt.getReceiptDeliveryStatus());
+    }
+
+    @Test
+    public void shouldKeepTheBindAlive() throws Exception {
+        session.bind();
+
+        Thread.sleep(smpp.getEnquireLinkMillis() * 3);
+
+        assertTrue(session.isBound());
+    }
+
+    @Test
+    public void shouldFailSubmitsWhenUnableToBind() throws Exception {
+        SmppSession wrongPassword = new SmppSession("wrong", smpp, "smppclient1", "wrong", null);
+        try {
+            wrongPassword.submit(SOURCE, new SmppAddress(1, 1, "12065550000"), "hello", callback());
+
+            assertNotNull(failed.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertFalse(wrongPassword.isBound());
+        } finally {
+            wrongPassword.close();
+        }
+    }
+}
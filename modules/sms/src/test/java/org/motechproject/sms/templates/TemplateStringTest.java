@@ -0,0 +1,50 @@
+package org.motechproject.sms.templates;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemplateStringTest {
+    private Map<String, String> props;
+
+    @Before
+    public void setUp() {
+        props = new HashMap<>();
+        props.put("recipients", "12065551212");
+        props.put("message", "hello world");
+        props.put("api_key", "abc");
+    }
+
+    @Test
+    public void shouldFillParameterTokens() {
+        assertEquals("to 12065551212: hello world",
+                TemplateString.parameter("to [recipients]: [message]").fill(props));
+    }
+
+    @Test
+    public void shouldReturnLiteralParameterAsIs() {
+        assertEquals("literal", TemplateString.parameter("literal").fill(props));
+    }
+
+    @Test
+    public void shouldInsertValuesVerbatim() {
+        props.put("message", "costs $5 \\ day");
+
+        assertEquals("costs $5 \\ day", TemplateString.parameter("[message]").fill(props));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailOnMissingParameterValue() {
+        TemplateString.parameter("[password]").fill(props);
+    }
+
+    @Test
+    public void shouldLeaveUnknownUrlPathTokens() {
+        assertEquals("http://provider/abc/[unknown]/send",
+                TemplateString.urlPath("http://provider/[api_key]/[unknown]/send").fill(props));
+    }
+}